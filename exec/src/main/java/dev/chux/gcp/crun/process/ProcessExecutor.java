@@ -27,6 +27,10 @@ class ProcessExecutor implements Consumer<ProcessProvider> {
 
     final ProcessBuilder builder = provider.getBuilder();
     builder.command(fixArguments(builder));
+    if (builder.redirectError() == ProcessBuilder.Redirect.PIPE) {
+      // only stdout is read: stderr is merged into it, so that a chatty process never blocks on a full pipe.
+      builder.redirectErrorStream(true);
+    }
     logger.info("command: {}", builder.command());
     
     try {
@@ -35,7 +35,15 @@ public class ProcessModule extends AbstractModule {
   @Qualifier @BindingAnnotation
   public @interface ProcessMapper {}
 
+  // threads which read process output: see `ProcessOutputPump`.
+  @Target({ FIELD, PARAMETER, METHOD })
+  @Retention(RUNTIME)
+  @Qualifier @BindingAnnotation
+  public @interface OutputReaders {}
+
   protected void configure() {
+    bind(ProcessOutputPump.class).in(Scopes.SINGLETON);
+
     install(new FactoryModuleBuilder()
         .implement(ProcessOutput.class, ProcessOutputSink.class)
         .build(ProcessOutputFactory.class));
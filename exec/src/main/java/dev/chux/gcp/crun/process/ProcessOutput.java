@@ -3,10 +3,14 @@ package dev.chux.gcp.crun.process;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.function.Supplier;
+import com.google.common.base.Optional;
 import com.google.common.io.ByteSink;
 
 public interface ProcessOutput extends Supplier<ByteSink> {
 
   public long from(final InputStream stream) throws IOException;
 
+  // counters of the transfer in progress, or of the last one; absent until `from(...)` is called.
+  public Optional<ProcessOutputStats> stats();
+
 }
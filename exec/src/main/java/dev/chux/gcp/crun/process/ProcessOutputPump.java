@@ -0,0 +1,441 @@
+package dev.chux.gcp.crun.process;
+
+import java.lang.invoke.MethodHandles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.Inject;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// copies process output without tying reads from the process to writes downstream:
+//   - a reader ( on `@OutputReaders` threads, if bound ) fills chunks of `process.output.chunk_size` bytes,
+//     and queues up to `process.output.queue_size` of them for the writer ( the thread which called `transfer(...)` ),
+//     so that a slow downstream ( i.e.: an HTTP client ) does not immediately stall the process on a full pipe.
+//   - chunks are pooled and reused by all transfers; `Process` only exposes streams, so heap arrays
+//     are used: direct buffers would only add a copy on both sides.
+//   - once the queue is full, `process.output.overflow` decides: `block` the reader ( back-pressure to the process ),
+//     `drop_oldest` queued output, or `spill` output to a file under `process.output.spill_dir` until the writer catches up.
+//   - if writing downstream fails, the process output is still read ( and discarded ) until it ends,
+//     so that the process is never blocked on a pipe that nobody reads.
+//   - counters of every transfer are logged once it is done, and readable while it goes: see `ProcessOutput#stats()`.
+final class ProcessOutputPump {
+
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String PROPERTY_CHUNK_SIZE = "process.output.chunk_size";
+    public static final String PROPERTY_QUEUE_SIZE = "process.output.queue_size";
+    public static final String PROPERTY_OVERFLOW = "process.output.overflow";
+    public static final String PROPERTY_SPILL_DIR = "process.output.spill_dir";
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final String DEFAULT_OVERFLOW = "block";
+
+    // how many idle chunks are kept, across all transfers.
+    private static final int MAX_POOLED_CHUNKS = 1024;
+
+    // upper bound on how long the writer waits before checking whether the transfer is done.
+    private static final long POLL_MILLIS = 100l;
+
+    enum Overflow {
+        BLOCK,
+        DROP_OLDEST,
+        SPILL;
+
+        static Overflow of(
+            final String overflow
+        ) {
+            try {
+                return valueOf(overflow.trim().toUpperCase());
+            } catch(final IllegalArgumentException e) {
+                logger.warn("invalid {}: {}", PROPERTY_OVERFLOW, overflow);
+            }
+            return BLOCK;
+        }
+    }
+
+    private static final class Chunk {
+
+        private final byte[] data;
+        private int length = 0;
+
+        private Chunk(
+            final int size
+        ) {
+            this.data = new byte[size];
+        }
+
+    }
+
+    // signals the writer that the reader is done; it carries no output, and is never pooled.
+    private static final Chunk EOF = new Chunk(0);
+
+    private final int chunkSize;
+    private final int queueSize;
+    private final Overflow overflow;
+    private final Path spillDir;
+
+    private final Queue<Chunk> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+
+    // used unless the application binds `@OutputReaders`, i.e.: to follow its execution model.
+    private ExecutorService readers = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setNameFormat("process-output-%d")
+            .setDaemon(true)
+            .build());
+
+    @Inject
+    ProcessOutputPump(
+        final ConfigService configService
+    ) {
+        this.chunkSize = Math.max(512,
+            configService.getIntAppProp(PROPERTY_CHUNK_SIZE).or(DEFAULT_CHUNK_SIZE));
+        this.queueSize = Math.max(1,
+            configService.getIntAppProp(PROPERTY_QUEUE_SIZE).or(DEFAULT_QUEUE_SIZE));
+        this.overflow = Overflow.of(
+            configService.getAppPropOrDefault(PROPERTY_OVERFLOW, DEFAULT_OVERFLOW));
+        this.spillDir = Paths.get(
+            configService.getAppPropOrDefault(PROPERTY_SPILL_DIR, System.getProperty("java.io.tmpdir")));
+        logger.info("{}", this);
+    }
+
+    @Inject(optional=true)
+    void setReaders(
+        @ProcessModule.OutputReaders
+        final ExecutorService readers
+    ) {
+        // no transfer has started yet: the default pool has no threads.
+        this.readers.shutdown();
+        this.readers = readers;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+            .add("chunk_size", this.chunkSize)
+            .add("queue_size", this.queueSize)
+            .add("overflow", this.overflow)
+            .add("spill_dir", this.spillDir)
+            .add("pooled", this.pooled.get())
+            .toString();
+    }
+
+    // blocks until all of `input` is written to `output`, or writing to `output` fails;
+    //   `stats` are updated as the transfer goes.
+    long transfer(
+        final InputStream input,
+        final OutputStream output,
+        final ProcessOutputStats stats
+    ) throws IOException {
+        final Transfer transfer = new Transfer(input, output, stats);
+        this.readers.execute(transfer::read);
+        try {
+            return transfer.write();
+        } finally {
+            stats.finish();
+            logger.info("output: {}", stats);
+        }
+    }
+
+    private Chunk acquire() {
+        final Chunk chunk = this.pool.poll();
+        if ( chunk == null ) {
+            return new Chunk(this.chunkSize);
+        }
+        this.pooled.decrementAndGet();
+        return chunk;
+    }
+
+    private void release(
+        final Chunk chunk
+    ) {
+        if ( chunk == EOF ) {
+            return;
+        }
+        chunk.length = 0;
+        if ( this.pooled.incrementAndGet() <= MAX_POOLED_CHUNKS ) {
+            this.pool.offer(chunk);
+        } else {
+            this.pooled.decrementAndGet();
+        }
+    }
+
+    private final class Transfer {
+
+        private final InputStream input;
+        private final OutputStream output;
+        private final ProcessOutputStats stats;
+
+        // a single producer ( the reader ) and a single consumer ( the writer ); with `drop_oldest`
+        //   the reader also takes from the head of the queue, so it must be safe for both to do so.
+        private final BlockingQueue<Chunk> queue;
+        private final Spill spill;
+
+        private volatile boolean done = false;
+        private volatile boolean failed = false;
+        private volatile IOException readFailure = null;
+
+        private Transfer(
+            final InputStream input,
+            final OutputStream output,
+            final ProcessOutputStats stats
+        ) {
+            this.input = input;
+            this.output = output;
+            this.stats = stats;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.spill = (overflow == Overflow.SPILL) ? new Spill(stats) : null;
+        }
+
+        private void read() {
+            try {
+                while ( true ) {
+                    final Chunk chunk = acquire();
+                    final int length = this.input.read(chunk.data, 0, chunk.data.length);
+                    if ( length < 0 ) {
+                        release(chunk);
+                        break;
+                    }
+                    chunk.length = length;
+                    this.stats.read(length);
+                    if ( this.failed ) {
+                        // nobody is writing anymore: keep the process going.
+                        release(chunk);
+                        continue;
+                    }
+                    this.enqueue(chunk);
+                }
+            } catch(final IOException e) {
+                this.readFailure = e;
+            } catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.readFailure = new IOException("interrupted while reading process output", e);
+            } catch(final Exception e) {
+                logger.error("failed to read process output =>\n{}", getStackTraceAsString(e));
+                this.readFailure = new IOException(e);
+            } finally {
+                this.done = true;
+                // wake up the writer, unless it is busy anyway.
+                this.queue.offer(EOF);
+                if ( this.failed && this.spill != null ) {
+                    this.spill.close();
+                }
+            }
+        }
+
+        private void enqueue(
+            final Chunk chunk
+        ) throws IOException, InterruptedException {
+            switch ( overflow ) {
+                case DROP_OLDEST:
+                    while ( !this.queue.offer(chunk) ) {
+                        final Chunk oldest = this.queue.poll();
+                        if ( oldest != null ) {
+                            this.stats.dropped(oldest.length);
+                            release(oldest);
+                        }
+                    }
+                    break;
+
+                case SPILL:
+                    if ( !this.spill.offer(chunk, this.queue) ) {
+                        this.spill.write(chunk);
+                        release(chunk);
+                    }
+                    break;
+
+                default:
+                    if ( !this.queue.offer(chunk) ) {
+                        final long start = System.nanoTime();
+                        this.queue.put(chunk);
+                        this.stats.blocked(System.nanoTime() - start);
+                    }
+            }
+            this.stats.queueDepth(this.queue.size());
+        }
+
+        private long write() throws IOException {
+            long written = 0;
+            try {
+                while ( true ) {
+                    Chunk chunk = this.queue.poll();
+                    if ( chunk == null && this.spill != null ) {
+                        // the queue is drained before spilled output: it was queued before it.
+                        chunk = acquire();
+                        final int length = this.spill.read(chunk);
+                        if ( length > 0 ) {
+                            chunk.length = length;
+                        } else {
+                            release(chunk);
+                            chunk = null;
+                        }
+                    }
+                    if ( chunk == null ) {
+                        // `done` is checked first: once it is set, all output is either queued or spilled.
+                        if ( this.done && this.queue.isEmpty() && (this.spill == null || this.spill.isEmpty()) ) {
+                            break;
+                        }
+                        chunk = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        if ( chunk == null ) {
+                            continue;
+                        }
+                    }
+                    this.stats.queueDepth(this.queue.size());
+                    if ( chunk.length > 0 ) {
+                        this.output.write(chunk.data, 0, chunk.length);
+                        this.stats.written(chunk.length);
+                        written += chunk.length;
+                    }
+                    release(chunk);
+                }
+            } catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.fail();
+                throw new IOException("interrupted while writing process output", e);
+            } catch(final IOException | RuntimeException e) {
+                this.fail();
+                throw e;
+            }
+            if ( this.spill != null ) {
+                this.spill.close();
+            }
+            if ( this.readFailure != null ) {
+                throw this.readFailure;
+            }
+            return written;
+        }
+
+        // stops queueing output, and returns queued chunks to the pool; the reader keeps draining the process.
+        private void fail() {
+            this.failed = true;
+            Chunk chunk;
+            while ( (chunk = this.queue.poll()) != null ) {
+                release(chunk);
+            }
+            if ( this.done && this.spill != null ) {
+                this.spill.close();
+            }
+        }
+
+    }
+
+    // output written by the reader while the writer is behind; it is read back in the same order.
+    //   while anything is spilled, the reader does not queue, so that output is never reordered.
+    private final class Spill {
+
+        private final ProcessOutputStats stats;
+
+        private FileChannel channel = null;
+        private Path file = null;
+        private boolean spilling = false;
+        private long writePosition = 0;
+        private long readPosition = 0;
+
+        private Spill(
+            final ProcessOutputStats stats
+        ) {
+            this.stats = stats;
+        }
+
+        // queues `chunk` unless output is being spilled, or the queue is full.
+        private synchronized boolean offer(
+            final Chunk chunk,
+            final BlockingQueue<Chunk> queue
+        ) {
+            if ( this.spilling ) {
+                return false;
+            }
+            return queue.offer(chunk);
+        }
+
+        private synchronized void write(
+            final Chunk chunk
+        ) throws IOException {
+            if ( this.channel == null ) {
+                Files.createDirectories(spillDir);
+                this.file = Files.createTempFile(spillDir, "process-output-", ".spill");
+                this.channel = FileChannel.open(this.file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                logger.info("spilling process output: {}", this.file);
+            }
+            this.spilling = true;
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+            while ( buffer.hasRemaining() ) {
+                this.writePosition += this.channel.write(buffer, this.writePosition);
+            }
+            this.stats.spilled(chunk.length);
+        }
+
+        // returns how many bytes were read into `chunk`; once all spilled output is read, queueing resumes.
+        private synchronized int read(
+            final Chunk chunk
+        ) throws IOException {
+            if ( this.readPosition >= this.writePosition ) {
+                if ( this.spilling ) {
+                    this.spilling = false;
+                    this.readPosition = this.writePosition = 0;
+                    this.channel.truncate(0);
+                }
+                return -1;
+            }
+            final int length = (int) Math.min(chunk.data.length, this.writePosition - this.readPosition);
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, length);
+            while ( buffer.hasRemaining() ) {
+                final int read = this.channel.read(buffer, this.readPosition + buffer.position());
+                if ( read < 0 ) {
+                    throw new IOException("truncated spill: " + this.file);
+                }
+            }
+            this.readPosition += length;
+            return length;
+        }
+
+        private synchronized boolean isEmpty() {
+            return this.readPosition >= this.writePosition;
+        }
+
+        private synchronized void close() {
+            if ( this.channel == null ) {
+                return;
+            }
+            try {
+                this.channel.close();
+            } catch(final IOException e) {
+                logger.warn("failed to delete spill {}: {}", this.file, e.getMessage());
+            }
+            this.channel = null;
+            this.spilling = false;
+            this.readPosition = this.writePosition = 0;
+        }
+
+    }
+
+}
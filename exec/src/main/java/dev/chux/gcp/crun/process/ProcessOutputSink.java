@@ -1,7 +1,7 @@
 package dev.chux.gcp.crun.process;
 
+import com.google.common.base.Optional;
 import com.google.common.io.ByteSink;
-import com.google.common.io.ByteStreams;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import dev.chux.gcp.crun.process.ProcessOutput;
@@ -12,12 +12,15 @@ import java.io.OutputStream;
 
 class ProcessOutputSink implements ProcessOutput {
 
+    private final ProcessOutputPump pump;
     private final OutputStream stream;
     private final boolean closeable;
     private final ByteSink sink;
+    private volatile Optional<ProcessOutputStats> stats = Optional.absent();
 
     @AssistedInject
-    ProcessOutputSink(@Assisted OutputStream stream, @Assisted boolean closeable) {
+    ProcessOutputSink(ProcessOutputPump pump, @Assisted OutputStream stream, @Assisted boolean closeable) {
+        this.pump = pump;
         this.stream = stream;
         this.closeable = closeable;
         this.sink = new Sink(stream);
@@ -31,15 +34,25 @@ class ProcessOutputSink implements ProcessOutput {
     }
 
     private long copy(final InputStream stream) throws IOException {
-        // `copy(...)` will not close streams;
-        // see: https://github.com/google/guava/blob/v33.4.0/guava/src/com/google/common/io/ByteStreams.java#L99-L112
-        return ByteStreams.copy((InputStream) stream, (OutputStream) this.stream);
+        // same as `ByteStreams.copy(...)`: streams are not closed, but reads and writes are decoupled;
+        // see: `ProcessOutputPump`
+        final ProcessOutputStats stats = new ProcessOutputStats();
+        this.stats = Optional.of(stats);
+        return this.pump.transfer(stream, this.stream, stats);
+    }
+
+    public Optional<ProcessOutputStats> stats() {
+        return this.stats;
     }
 
     private long sink(final InputStream stream) throws IOException {
-        // `writeFrom(...)` closes the stream;
+        // same as `ByteSink#writeFrom(...)`: the output stream is flushed, and closed;
         // see: https://github.com/google/guava/blob/v33.4.0/guava/src/com/google/common/io/ByteSink.java#L118-L120
-        return this.sink.writeFrom(stream);
+        try (final OutputStream output = this.sink.openStream()) {
+            final long written = this.copy(stream);
+            output.flush();
+            return written;
+        }
     }
 
     public ByteSink get() {
@@ -0,0 +1,143 @@
+package dev.chux.gcp.crun.process;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// counters of a single transfer of process output ( see: `ProcessOutputPump` ):
+//   - every counter has a single writer: the reader thread, or the writer thread.
+//   - queue depth is sampled by both whenever they touch the queue, so it is approximate.
+//   - `read` and `written` differ by what is queued, spilled, or was dropped.
+//   - they may be read at any time, i.e.: while the process is running, via `ProcessOutput#stats()`.
+public final class ProcessOutputStats {
+
+    private final long startedAt = System.nanoTime();
+    private volatile long finishedAt = 0;
+
+    private volatile long read = 0;
+    private volatile long written = 0;
+    private volatile long dropped = 0;
+    private volatile long spilled = 0;
+    private volatile long blocked = 0;
+
+    private volatile int queueDepth = 0;
+    private volatile int maxQueueDepth = 0;
+
+    ProcessOutputStats() {}
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+            .add("read", this.read)
+            .add("written", this.written)
+            .add("dropped", this.dropped)
+            .add("spilled", this.spilled)
+            .add("blocked_ms", this.blockedMillis())
+            .add("read_bps", this.readRate())
+            .add("write_bps", this.writeRate())
+            .add("queue_depth", this.queueDepth)
+            .add("max_queue_depth", this.maxQueueDepth)
+            .add("finished", this.isFinished())
+            .toString();
+    }
+
+    void read(
+        final int bytes
+    ) {
+        this.read += bytes;
+    }
+
+    void written(
+        final int bytes
+    ) {
+        this.written += bytes;
+    }
+
+    void dropped(
+        final int bytes
+    ) {
+        this.dropped += bytes;
+    }
+
+    void spilled(
+        final int bytes
+    ) {
+        this.spilled += bytes;
+    }
+
+    void blocked(
+        final long nanos
+    ) {
+        this.blocked += nanos;
+    }
+
+    void queueDepth(
+        final int depth
+    ) {
+        this.queueDepth = depth;
+        if ( depth > this.maxQueueDepth ) {
+            this.maxQueueDepth = depth;
+        }
+    }
+
+    void finish() {
+        this.finishedAt = System.nanoTime();
+    }
+
+    public boolean isFinished() {
+        return this.finishedAt != 0;
+    }
+
+    // bytes read from the process.
+    public long read() {
+        return this.read;
+    }
+
+    // bytes written downstream.
+    public long written() {
+        return this.written;
+    }
+
+    // bytes discarded by `drop_oldest`.
+    public long dropped() {
+        return this.dropped;
+    }
+
+    // bytes written to the spill file by `spill`.
+    public long spilled() {
+        return this.spilled;
+    }
+
+    // time the reader waited for room in the queue: back-pressure applied to the process.
+    public long blockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.blocked);
+    }
+
+    // bytes per second read from the process, since the transfer started and until it finished.
+    public long readRate() {
+        return this.rate(this.read);
+    }
+
+    // bytes per second written downstream.
+    public long writeRate() {
+        return this.rate(this.written);
+    }
+
+    // chunks waiting for the writer, as last sampled.
+    public int queueDepth() {
+        return this.queueDepth;
+    }
+
+    public int maxQueueDepth() {
+        return this.maxQueueDepth;
+    }
+
+    private long rate(
+        final long bytes
+    ) {
+        final long finishedAt = this.finishedAt;
+        final long elapsed = ((finishedAt == 0) ? System.nanoTime() : finishedAt) - this.startedAt;
+        return (elapsed <= 0) ? 0 : (long) (bytes / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+    }
+
+}
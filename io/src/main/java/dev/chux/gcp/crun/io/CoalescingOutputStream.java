@@ -0,0 +1,167 @@
+package dev.chux.gcp.crun.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// coalesces small writes into larger ones, bounded by size and by time:
+//   - bytes are forwarded ( and flushed ) once `size` bytes are pending, or `millis` after
+//     the first of them was written, whichever comes first.
+//   - `flush()` does not force pending bytes out, they are forwarded within the time budget;
+//     `drain()` forwards them right away.
+// the `timer` tracks deadlines, and forwards expired bytes unless a `flusher` is given, so that
+//   a slow downstream only delays its own stream; the stream is synchronized.
+//   - both are owned by the caller, i.e.: `ExecutionModel#newScheduledExecutor`.
+public class CoalescingOutputStream extends OutputStream {
+
+  private final OutputStream stream;
+  private final byte[] buffer;
+  private final long millis;
+  private final ScheduledExecutorService timer;
+  private final Executor flusher;
+
+  private int position = 0;
+  private ScheduledFuture<?> deadline;
+  // failures of the timer are reported to the next writer
+  private IOException error;
+
+  public CoalescingOutputStream(
+    final OutputStream stream,
+    final int size,
+    final long millis,
+    final ScheduledExecutorService timer
+  ) {
+    this(stream, size, millis, timer, timer);
+  }
+
+  public CoalescingOutputStream(
+    final OutputStream stream,
+    final int size,
+    final long millis,
+    final ScheduledExecutorService timer,
+    final Executor flusher
+  ) {
+    checkArgument(size > 0, "invalid size: %s", size);
+    checkArgument(millis > 0, "invalid millis: %s", millis);
+    this.stream = checkNotNull(stream);
+    this.buffer = new byte[size];
+    this.millis = millis;
+    this.timer = checkNotNull(timer);
+    this.flusher = checkNotNull(flusher);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("size", this.buffer.length)
+      .add("millis", this.millis)
+      .add("pending", this.position)
+      .toString();
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(
+    final byte[] bytes,
+    final int offset,
+    final int length
+  ) throws IOException {
+    this.check();
+    if ( length <= 0 ) {
+      return;
+    }
+    if ( length > (this.buffer.length - this.position) ) {
+      this.drain();
+    }
+    if ( length >= this.buffer.length ) {
+      // nothing to coalesce with
+      this.stream.write(bytes, offset, length);
+      this.stream.flush();
+      return;
+    }
+    System.arraycopy(bytes, offset, this.buffer, this.position, length);
+    this.position += length;
+    if ( this.position == this.buffer.length ) {
+      this.drain();
+    } else if ( this.deadline == null ) {
+      try {
+        this.deadline = this.timer.schedule(this::due, this.millis, TimeUnit.MILLISECONDS);
+      } catch(final RejectedExecutionException e) {
+        // the timer is shut down: pending bytes are forwarded once `size` are pending, or by `drain()`.
+      }
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    this.check();
+    // pending bytes are forwarded by the time budget
+  }
+
+  public synchronized void drain() throws IOException {
+    this.check();
+    if ( this.deadline != null ) {
+      this.deadline.cancel(false);
+      this.deadline = null;
+    }
+    if ( this.position > 0 ) {
+      final int length = this.position;
+      this.position = 0;
+      this.stream.write(this.buffer, 0, length);
+    }
+    this.stream.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      this.drain();
+    } finally {
+      this.stream.close();
+    }
+  }
+
+  // runs on the timer thread: it must only block on the stream when the timer is the flusher.
+  private void due() {
+    if ( this.flusher == this.timer ) {
+      this.expire();
+      return;
+    }
+    try {
+      this.flusher.execute(this::expire);
+    } catch(final RejectedExecutionException e) {
+      // the flusher is shut down: pending bytes are forwarded once `size` are pending, or by `drain()`.
+    }
+  }
+
+  private synchronized void expire() {
+    if ( this.position == 0 || this.error != null ) {
+      return;
+    }
+    try {
+      this.drain();
+    } catch(final IOException e) {
+      this.error = e;
+    }
+  }
+
+  private void check() throws IOException {
+    if ( this.error != null ) {
+      throw this.error;
+    }
+  }
+
+}
@@ -0,0 +1,277 @@
+package dev.chux.gcp.crun.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.lang.invoke.VarHandle;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// fans out a single output to any number of subscribers, without ever blocking its writer:
+//   - output is written once into a bounded ring buffer; subscribers read it with their own cursor.
+//   - subscribers that fall behind by more than the capacity of the buffer lose output,
+//     according to their `Overflow` policy, and then resume at the start of the next line.
+//   - subscribers transfer output on their own threads, and poll for new output.
+public class OutputBroadcaster extends OutputStream {
+
+  public enum Overflow {
+    // skip to the oldest output still in the buffer
+    DROP,
+    // skip to the latest output
+    LATEST;
+
+    public static Overflow of(final String overflow) {
+      return Overflow.valueOf(overflow.trim().toUpperCase());
+    }
+  }
+
+  private static final byte LINE_BREAK = '\n';
+
+  private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private final byte[] buffer;
+  private final int mask;
+  private final Overflow overflow;
+
+  // total number of bytes written so far: `writing` is published before the buffer is written,
+  // and `written` after; bytes from `writing - capacity` to `written` are readable.
+  private volatile long writing = 0;
+  private volatile long written = 0;
+  private volatile boolean closed = false;
+
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+  // `capacity` is rounded up to the next power of 2.
+  public OutputBroadcaster(
+    final int capacity,
+    final Overflow overflow
+  ) {
+    checkArgument(capacity > 0 && capacity <= (1 << 30), "invalid capacity: %s", capacity);
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.buffer = new byte[Math.max(size, 1)];
+    this.mask = this.buffer.length - 1;
+    this.overflow = checkNotNull(overflow);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("capacity", this.buffer.length)
+      .add("overflow", this.overflow)
+      .add("written", this.written)
+      .add("subscriptions", this.subscriptions.size())
+      .add("closed", this.closed)
+      .toString();
+  }
+
+  public int capacity() {
+    return this.buffer.length;
+  }
+
+  public long written() {
+    return this.written;
+  }
+
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public void write(final int b) {
+    this.write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  // writers only contend with each other, never with subscribers.
+  @Override
+  public synchronized void write(
+    final byte[] bytes,
+    final int offset,
+    final int length
+  ) {
+    if ( this.closed || length <= 0 ) {
+      return;
+    }
+    // only the latest `capacity` bytes can be read
+    final int skip = Math.max(0, length - this.buffer.length);
+    final long start = this.written + skip;
+    final long end = this.written + length;
+
+    this.writing = end;
+    // subscribers must see `writing` before the bytes it overwrites
+    VarHandle.storeStoreFence();
+
+    int from = offset + skip;
+    long position = start;
+    while ( position < end ) {
+      final int index = (int) (position & this.mask);
+      final int n = (int) Math.min(end - position, this.buffer.length - index);
+      System.arraycopy(bytes, from, this.buffer, index, n);
+      from += n;
+      position += n;
+    }
+
+    this.written = end;
+  }
+
+  @Override
+  public void flush() {
+    // subscribers poll for output
+  }
+
+  // subscribers drain the remaining output, and then complete.
+  @Override
+  public void close() {
+    this.closed = true;
+  }
+
+  // subscriptions start at the latest output.
+  public Subscription subscribe() {
+    return this.subscribe(this.overflow);
+  }
+
+  public Subscription subscribe(
+    final Overflow overflow
+  ) {
+    final Subscription subscription = new Subscription(checkNotNull(overflow), this.written);
+    this.subscriptions.add(subscription);
+    return subscription;
+  }
+
+  public final class Subscription {
+
+    private final Overflow overflow;
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    private long cursor;
+    // output is line oriented: after a gap, skip to the start of the next line
+    private boolean resync;
+    // whether the last byte transferred was not a line break
+    private boolean partial = false;
+
+    private Subscription(
+      final Overflow overflow,
+      final long cursor
+    ) {
+      this.overflow = overflow;
+      this.cursor = cursor;
+      // subscriptions to a running output start at the next line
+      this.resync = (cursor > 0)
+        && (OutputBroadcaster.this.buffer[(int) ((cursor - 1) & OutputBroadcaster.this.mask)] != LINE_BREAK);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("overflow", this.overflow)
+        .add("cursor", this.cursor)
+        .add("dropped", this.dropped())
+        .toString();
+    }
+
+    public long dropped() {
+      return this.dropped.get();
+    }
+
+    // transfers output to `stream` until the broadcaster is closed and drained;
+    // returns the number of bytes transferred.
+    public long transferTo(
+      final OutputStream stream
+    ) throws IOException, InterruptedException {
+      final byte[] chunk = new byte[OutputBroadcaster.this.buffer.length];
+      long transferred = 0;
+      try {
+        while ( true ) {
+          // read `closed` first: output written before closing is drained
+          final boolean closed = OutputBroadcaster.this.closed;
+          final int n = this.read(chunk);
+          if ( n > 0 ) {
+            this.partial = (chunk[n - 1] != LINE_BREAK);
+            stream.write(chunk, 0, n);
+            stream.flush();
+            transferred += n;
+          } else if ( closed ) {
+            return transferred;
+          } else if ( Thread.interrupted() ) {
+            throw new InterruptedException();
+          } else {
+            LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+          }
+        }
+      } finally {
+        OutputBroadcaster.this.subscriptions.remove(this);
+      }
+    }
+
+    // copies available output into `chunk`; returns the number of bytes copied.
+    private int read(
+      final byte[] chunk
+    ) {
+      final byte[] buffer = OutputBroadcaster.this.buffer;
+      final int mask = OutputBroadcaster.this.mask;
+      while ( true ) {
+        final long end = OutputBroadcaster.this.written;
+        if ( (OutputBroadcaster.this.writing - this.cursor) > buffer.length ) {
+          this.overflow(end);
+        }
+        if ( this.cursor >= end ) {
+          return 0;
+        }
+
+        int length = (int) (end - this.cursor);
+        final int index = (int) (this.cursor & mask);
+        final int n = Math.min(length, buffer.length - index);
+        System.arraycopy(buffer, index, chunk, 0, n);
+        System.arraycopy(buffer, 0, chunk, n, length - n);
+
+        // bytes that were overwritten while being copied are lost
+        VarHandle.loadLoadFence();
+        if ( (OutputBroadcaster.this.writing - this.cursor) > buffer.length ) {
+          continue;
+        }
+
+        this.cursor = end;
+        if ( !this.resync ) {
+          return length;
+        }
+
+        int start = 0;
+        while ( start < length && chunk[start] != LINE_BREAK ) {
+          start++;
+        }
+        if ( start == length ) {
+          continue;
+        }
+        this.resync = false;
+        // a partial line that was already transferred is terminated by the line break
+        if ( !this.partial ) {
+          start++;
+        }
+        length -= start;
+        System.arraycopy(chunk, start, chunk, 0, length);
+        if ( length > 0 ) {
+          return length;
+        }
+      }
+    }
+
+    private void overflow(
+      final long end
+    ) {
+      final long oldest = OutputBroadcaster.this.writing - OutputBroadcaster.this.buffer.length;
+      final long next = (this.overflow == Overflow.LATEST) ? Math.max(oldest, end) : oldest;
+      this.dropped.addAndGet(next - this.cursor);
+      this.cursor = next;
+      this.resync = true;
+    }
+
+  }
+
+}
@@ -0,0 +1,270 @@
+package dev.chux.gcp.crun.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+// append-only log of an output, split into fixed size memory-mapped segment files:
+//   - bytes are addressed by their offset since the start of the output.
+//   - a sparse time index maps points in time to offsets, so that output may be replayed from a timestamp.
+//   - readers transfer bytes from the segment files to their target, and may follow the log until it is closed.
+//   - deleting the log waits for readers: files are only removed once the last reader is done.
+// a single thread writes at a time; any number of threads may read.
+public class SegmentedLog extends OutputStream {
+
+  private static final String SEGMENT_FORMAT = "%020d.log";
+
+  private static final long INDEX_INTERVAL_MILLIS = 1000l;
+
+  private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private final Path dir;
+  private final int segmentSize;
+  private final long created;
+
+  private final List<FileChannel> segments = new CopyOnWriteArrayList<>();
+  // `{ millis, offset }`: output at `offset` was written at `millis`, or later.
+  private final List<long[]> timeIndex = new CopyOnWriteArrayList<>();
+
+  private volatile long size = 0;
+  private volatile long modified;
+  private volatile boolean closed = false;
+
+  private MappedByteBuffer segment;
+  private long lastIndexed = 0;
+
+  // guarded by `this`: readers in `transferTo`, and whether the log must be deleted once they are done.
+  private int readers = 0;
+  private boolean deleted = false;
+
+  public SegmentedLog(
+    final Path dir,
+    final int segmentSize
+  ) throws IOException {
+    checkArgument(segmentSize > 0, "invalid segment size: %s", segmentSize);
+    this.dir = Files.createDirectories(dir);
+    this.segmentSize = segmentSize;
+    this.created = System.currentTimeMillis();
+    this.modified = this.created;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("dir", this.dir)
+      .add("size", this.size)
+      .add("segments", this.segments.size())
+      .add("closed", this.closed)
+      .add("readers", this.readers)
+      .toString();
+  }
+
+  public Path dir() {
+    return this.dir;
+  }
+
+  public long size() {
+    return this.size;
+  }
+
+  public long created() {
+    return this.created;
+  }
+
+  public long modified() {
+    return this.modified;
+  }
+
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(
+    final byte[] bytes,
+    final int offset,
+    final int length
+  ) throws IOException {
+    if ( this.closed || length <= 0 ) {
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    if ( (now - this.lastIndexed) >= INDEX_INTERVAL_MILLIS ) {
+      this.timeIndex.add(new long[] { now, this.size });
+      this.lastIndexed = now;
+    }
+
+    int from = offset;
+    int remaining = length;
+    while ( remaining > 0 ) {
+      if ( this.segment == null || !this.segment.hasRemaining() ) {
+        this.roll();
+      }
+      final int n = Math.min(remaining, this.segment.remaining());
+      this.segment.put(bytes, from, n);
+      from += n;
+      remaining -= n;
+      // publish bytes to readers
+      this.size += n;
+    }
+    this.modified = now;
+  }
+
+  // every segment but the last one is full: segment `i` starts at offset `i * segmentSize`.
+  private void roll() throws IOException {
+    final Path path = this.dir.resolve(String.format(SEGMENT_FORMAT, this.size));
+    final FileChannel channel = FileChannel.open(path,
+      StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+    this.segments.add(channel);
+  }
+
+  // readers following the log stop once they reach its end.
+  @Override
+  public synchronized void close() throws IOException {
+    if ( this.closed ) {
+      return;
+    }
+    if ( this.segment != null ) {
+      // the last segment is mapped beyond the end of the output
+      final FileChannel last = this.segments.get(this.segments.size() - 1);
+      this.segment.force();
+      this.segment = null;
+      last.truncate(this.size % this.segmentSize == 0 ? this.segmentSize : this.size % this.segmentSize);
+    }
+    this.closed = true;
+  }
+
+  // new readers get nothing from a deleted log; files are removed once current readers are done.
+  public synchronized void delete() throws IOException {
+    this.close();
+    this.deleted = true;
+    if ( this.readers == 0 ) {
+      this.deleteFiles();
+    }
+  }
+
+  private synchronized boolean acquire() {
+    if ( this.deleted ) {
+      return false;
+    }
+    this.readers += 1;
+    return true;
+  }
+
+  private synchronized void release() throws IOException {
+    this.readers -= 1;
+    if ( this.readers == 0 && this.deleted ) {
+      this.deleteFiles();
+    }
+  }
+
+  // must be called holding `this`, once the log is deleted and has no readers.
+  private void deleteFiles() throws IOException {
+    for ( final FileChannel channel : this.segments ) {
+      channel.close();
+    }
+    this.segments.clear();
+    try ( final Stream<Path> files = Files.list(this.dir) ) {
+      for ( final Path file : (Iterable<Path>) files::iterator ) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(this.dir);
+  }
+
+  // offset of the output written at `millis`, or shortly before.
+  public long offsetOf(
+    final long millis
+  ) {
+    long offset = 0;
+    for ( final long[] entry : this.timeIndex ) {
+      if ( entry[0] > millis ) {
+        break;
+      }
+      offset = entry[1];
+    }
+    return offset;
+  }
+
+  // transfers output from `offset` to `stream`; returns the offset reached.
+  //   when `follow` is set, it blocks until the log is closed, transferring output as it is written.
+  //   nothing is transferred from a log which was already deleted.
+  public long transferTo(
+    final long offset,
+    final OutputStream stream,
+    final boolean follow
+  ) throws IOException, InterruptedException {
+    final long position = Math.max(0, offset);
+    if ( !this.acquire() ) {
+      return position;
+    }
+    try {
+      return this.transferTo(position, Channels.newChannel(stream), stream, follow);
+    } finally {
+      this.release();
+    }
+  }
+
+  private long transferTo(
+    final long offset,
+    final WritableByteChannel target,
+    final OutputStream stream,
+    final boolean follow
+  ) throws IOException, InterruptedException {
+    long position = offset;
+    while ( true ) {
+      // read `closed` first: output written before closing is transferred
+      final boolean closed = this.closed;
+      final long end = this.size;
+      if ( position < end ) {
+        final long n = this.transfer(position, end, target);
+        position += n;
+        stream.flush();
+        if ( n > 0 ) {
+          continue;
+        }
+      } else if ( closed || !follow ) {
+        return position;
+      }
+      if ( Thread.interrupted() ) {
+        throw new InterruptedException();
+      }
+      LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+    }
+  }
+
+  private long transfer(
+    final long position,
+    final long end,
+    final WritableByteChannel target
+  ) throws IOException {
+    final int index = (int) (position / this.segmentSize);
+    final long base = (long) index * this.segmentSize;
+    final long count = Math.min(end, base + this.segmentSize) - position;
+    return this.segments.get(index).transferTo(position - base, count, target);
+  }
+
+}
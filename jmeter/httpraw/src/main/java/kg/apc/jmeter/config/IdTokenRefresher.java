@@ -0,0 +1,125 @@
+package kg.apc.jmeter.config;
+
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// ID tokens of a test, fetched away from the sampling threads:
+//   - the 1st token is fetched when the test starts; samplers only read the latest token given to `sink`.
+//   - tokens are refreshed `ahead` seconds before they expire ( JWT `exp` claim ), or every `interval` seconds
+//     when their expiration is unknown.
+//   - a failed refresh keeps the current token, and is retried after `retry` seconds.
+public class IdTokenRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(IdTokenRefresher.class);
+    private static final Pattern EXP = Pattern.compile("\"exp\"\\s*:\\s*(\\d+)");
+
+    private final String name;
+    private final Callable<String> source;
+    private final Consumer<String> sink;
+    private final ScheduledExecutorService scheduler;
+    private final long ahead;
+    private final long interval;
+    private final long retry;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile String token;
+
+    public IdTokenRefresher(
+        final String name,
+        final Callable<String> source,
+        final Consumer<String> sink,
+        final ScheduledExecutorService scheduler,
+        final long ahead,
+        final long interval,
+        final long retry
+    ) {
+        this.name = name;
+        this.source = source;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.ahead = ahead;
+        this.interval = interval;
+        this.retry = Math.max(1, retry);
+    }
+
+    // fetches the 1st token in the caller's thread: samplers must not start without it.
+    public String start() {
+        refresh();
+        return token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void refresh() {
+        long delay;
+        try {
+            final String token = source.call();
+            if (token == null || token.isEmpty()) {
+                throw new IllegalStateException("empty token");
+            }
+            this.token = token;
+            sink.accept(token);
+            log.info("token[" + name + "|" + refreshes.getAndIncrement() + "]="
+                + token.substring(0, Math.min(15, token.length())) + "...|" + DigestUtils.sha1Hex(token));
+            delay = nextRefresh(token, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        } catch (Exception ex) {
+            failures.incrementAndGet();
+            log.error("Cannot refresh token[" + name + "], retrying in " + retry + "s", ex);
+            delay = retry;
+        }
+        try {
+            scheduler.schedule(this::refresh, delay, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            // the test is over
+        }
+    }
+
+    // seconds until the token must be replaced.
+    long nextRefresh(final String token, final long nowSeconds) {
+        final long expiresAt = expiresAt(token);
+        if (expiresAt <= 0) {
+            return interval;
+        }
+        return Math.max(retry, expiresAt - ahead - nowSeconds);
+    }
+
+    // `exp` claim of a JWT, in seconds since the epoch; `0` if the token is not a JWT or has no `exp`.
+    static long expiresAt(final String token) {
+        final String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return 0;
+        }
+        try {
+            final String claims = new String(Base64.getUrlDecoder().decode(parts[1]), UTF_8);
+            final Matcher exp = EXP.matcher(claims);
+            return exp.find() ? Long.parseLong(exp.group(1)) : 0;
+        } catch (IllegalArgumentException ex) {
+            return 0;
+        }
+    }
+}
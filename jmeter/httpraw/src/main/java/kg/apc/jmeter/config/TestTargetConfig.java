@@ -0,0 +1,267 @@
+package kg.apc.jmeter.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.jmeter.engine.JMeterEngine;
+import org.apache.jmeter.engine.StandardJMeterEngine;
+import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.testelement.ThreadListener;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.util.JMeterUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// target of a test, set up once when the test starts instead of by samplers in setup / looping thread groups:
+//   - the target URL is built once, and published as the JMeter property `url_property`.
+//   - if an `audience` is given, ID tokens for it are published as the JMeter property `token_property`,
+//     and refreshed ahead of their expiration by a single background thread: see `IdTokenRefresher`.
+//   - if a `duration` is given, the test is stopped if it is still running `grace` seconds after it.
+public class TestTargetConfig
+        extends AbstractTestElement
+        implements NoThreadClone, TestStateListener, ThreadListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TestTargetConfig.class);
+
+    public static final String TEST_ID = "test_id";
+    public static final String METHOD = "method";
+    public static final String PROTO = "proto";
+    public static final String HOST = "host";
+    public static final String PORT = "port";
+    public static final String PATH = "path";
+    public static final String URL_PROPERTY = "url_property";
+    public static final String AUDIENCE = "audience";
+    public static final String TOKEN_URL = "token_url";
+    public static final String TOKEN_PROPERTY = "token_property";
+    public static final String DURATION = "duration";
+
+    public static final String DEFAULT_URL_PROPERTY = "gcp_run_test_url";
+    public static final String DEFAULT_TOKEN_PROPERTY = "gcp_run_test_token";
+    // the audience is appended to it; see: https://cloud.google.com/run/docs/securing/service-identity#identity_tokens
+    public static final String DEFAULT_TOKEN_URL =
+        "http://metadata/computeMetadata/v1/instance/service-accounts/default/identity?audience=";
+
+    private static final String TOKEN_REFRESH_AHEAD = "kg.apc.jmeter.config.TokenRefreshAhead";
+    private static final String TOKEN_REFRESH_INTERVAL = "kg.apc.jmeter.config.TokenRefreshInterval";
+    private static final String TOKEN_RETRY_INTERVAL = "kg.apc.jmeter.config.TokenRetryInterval";
+    private static final String TOKEN_TIMEOUT = "kg.apc.jmeter.config.TokenTimeout";
+    private static final String STOP_GRACE = "kg.apc.jmeter.config.StopGrace";
+
+    private transient volatile ScheduledExecutorService scheduler;
+    private transient volatile IdTokenRefresher tokens;
+    // the engine running this test: only known by sampling threads.
+    private transient volatile JMeterEngine engine;
+
+    public TestTargetConfig() {
+        super();
+    }
+
+    @Override
+    public void testStarted() {
+        final String url = getUrl();
+        JMeterUtils.setProperty(getUrlProperty(), url);
+        log.info("TEST[" + getTestId() + "] = " + getMethod() + " " + url);
+
+        engine = null;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("test-target-" + getTestId())
+            .setDaemon(true)
+            .build());
+
+        final String audience = getAudience();
+        if (!audience.isEmpty()) {
+            final String tokenProperty = getTokenProperty();
+            tokens = new IdTokenRefresher(getTestId(),
+                () -> fetchToken(getTokenUrl(), audience),
+                token -> JMeterUtils.setProperty(tokenProperty, token),
+                scheduler,
+                JMeterUtils.getPropDefault(TOKEN_REFRESH_AHEAD, 300L),
+                JMeterUtils.getPropDefault(TOKEN_REFRESH_INTERVAL, 600L),
+                JMeterUtils.getPropDefault(TOKEN_RETRY_INTERVAL, 30L));
+            tokens.start();
+        }
+
+        final long duration = getDuration();
+        if (duration > 0) {
+            final long grace = JMeterUtils.getPropDefault(STOP_GRACE, 10L);
+            scheduler.schedule(() -> stopTest(duration + grace), duration + grace, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void testStarted(String host) {
+        testStarted();
+    }
+
+    @Override
+    public void testEnded() {
+        final ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        final IdTokenRefresher tokens = this.tokens;
+        if (tokens != null) {
+            log.info("TEST[" + getTestId() + "] tokens: " + tokens.getRefreshes() + " fetched, " + tokens.getFailures() + " failed");
+        }
+        this.scheduler = null;
+        this.tokens = null;
+        this.engine = null;
+    }
+
+    @Override
+    public void testEnded(String host) {
+        testEnded();
+    }
+
+    @Override
+    public void threadStarted() {
+        if (engine == null) {
+            engine = JMeterContextService.getContext().getEngine();
+        }
+    }
+
+    @Override
+    public void threadFinished() {
+    }
+
+    private void stopTest(final long seconds) {
+        log.warn("TEST[" + getTestId() + "] still running after " + seconds + "s: stopping it");
+        final JMeterEngine engine = this.engine;
+        if (engine != null) {
+            engine.stopTest(true);
+        } else {
+            StandardJMeterEngine.stopEngineNow();
+        }
+    }
+
+    private static String fetchToken(final String tokenUrl, final String audience) throws IOException {
+        final int timeout = JMeterUtils.getPropDefault(TOKEN_TIMEOUT, 10000);
+        final HttpURLConnection connection = (HttpURLConnection)
+            new URL(tokenUrl + URLEncoder.encode(audience, "UTF-8")).openConnection();
+        try {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Metadata-Flavor", "Google");
+            final int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status + " from " + tokenUrl);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return new String(ByteStreams.toByteArray(in), UTF_8).trim();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public String getUrl() {
+        return getProto() + "://" + getHost() + ":" + getPort() + getPath();
+    }
+
+    public String getTestId() {
+        return getPropertyAsString(TEST_ID);
+    }
+
+    public void setTestId(String testId) {
+        setProperty(TEST_ID, testId);
+    }
+
+    public String getMethod() {
+        return getPropertyAsString(METHOD, "GET");
+    }
+
+    public void setMethod(String method) {
+        setProperty(METHOD, method);
+    }
+
+    public String getProto() {
+        return getPropertyAsString(PROTO, "https");
+    }
+
+    public void setProto(String proto) {
+        setProperty(PROTO, proto);
+    }
+
+    public String getHost() {
+        return getPropertyAsString(HOST);
+    }
+
+    public void setHost(String host) {
+        setProperty(HOST, host);
+    }
+
+    public String getPort() {
+        return getPropertyAsString(PORT, "443");
+    }
+
+    public void setPort(String port) {
+        setProperty(PORT, port);
+    }
+
+    public String getPath() {
+        return getPropertyAsString(PATH, "/");
+    }
+
+    public void setPath(String path) {
+        setProperty(PATH, path);
+    }
+
+    public String getUrlProperty() {
+        return getPropertyAsString(URL_PROPERTY, DEFAULT_URL_PROPERTY);
+    }
+
+    public void setUrlProperty(String urlProperty) {
+        setProperty(URL_PROPERTY, urlProperty);
+    }
+
+    public String getAudience() {
+        return getPropertyAsString(AUDIENCE).trim();
+    }
+
+    public void setAudience(String audience) {
+        setProperty(AUDIENCE, audience);
+    }
+
+    public String getTokenUrl() {
+        return getPropertyAsString(TOKEN_URL, DEFAULT_TOKEN_URL);
+    }
+
+    public void setTokenUrl(String tokenUrl) {
+        setProperty(TOKEN_URL, tokenUrl);
+    }
+
+    public String getTokenProperty() {
+        return getPropertyAsString(TOKEN_PROPERTY, DEFAULT_TOKEN_PROPERTY);
+    }
+
+    public void setTokenProperty(String tokenProperty) {
+        setProperty(TOKEN_PROPERTY, tokenProperty);
+    }
+
+    // seconds; `0` or empty: the test is not stopped by this element.
+    public long getDuration() {
+        try {
+            return Long.parseLong(getPropertyAsString(DURATION).trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    public void setDuration(String duration) {
+        setProperty(DURATION, duration);
+    }
+}
@@ -0,0 +1,156 @@
+package kg.apc.jmeter.config;
+
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import javax.swing.*;
+import kg.apc.jmeter.JMeterPluginsUtils;
+import org.apache.jmeter.config.gui.AbstractConfigGui;
+import org.apache.jmeter.testelement.TestElement;
+
+public class TestTargetConfigGui extends AbstractConfigGui {
+
+    public static final String WIKIPAGE = "TestTargetConfig";
+    private JTextField testId;
+    private JTextField method;
+    private JTextField proto;
+    private JTextField host;
+    private JTextField port;
+    private JTextField path;
+    private JTextField urlProperty;
+    private JTextField audience;
+    private JTextField tokenUrl;
+    private JTextField tokenProperty;
+    private JTextField duration;
+
+    public TestTargetConfigGui() {
+        super();
+        init();
+        initFields();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return JMeterPluginsUtils.prefixLabel("Test Target & ID Token Config");
+    }
+
+    @Override
+    public String getLabelResource() {
+        return getClass().getCanonicalName();
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        if (element instanceof TestTargetConfig) {
+            TestTargetConfig config = (TestTargetConfig) element;
+            testId.setText(config.getTestId());
+            method.setText(config.getMethod());
+            proto.setText(config.getProto());
+            host.setText(config.getHost());
+            port.setText(config.getPort());
+            path.setText(config.getPath());
+            urlProperty.setText(config.getUrlProperty());
+            audience.setText(config.getAudience());
+            tokenUrl.setText(config.getTokenUrl());
+            tokenProperty.setText(config.getTokenProperty());
+            duration.setText(config.getPropertyAsString(TestTargetConfig.DURATION));
+        }
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        TestTargetConfig config = new TestTargetConfig();
+        modifyTestElement(config);
+        config.setComment(JMeterPluginsUtils.getWikiLinkText(WIKIPAGE));
+        return config;
+    }
+
+    @Override
+    public void modifyTestElement(TestElement te) {
+        configureTestElement(te);
+        if (te instanceof TestTargetConfig) {
+            TestTargetConfig config = (TestTargetConfig) te;
+            config.setTestId(testId.getText());
+            config.setMethod(method.getText());
+            config.setProto(proto.getText());
+            config.setHost(host.getText());
+            config.setPort(port.getText());
+            config.setPath(path.getText());
+            config.setUrlProperty(urlProperty.getText());
+            config.setAudience(audience.getText());
+            config.setTokenUrl(tokenUrl.getText());
+            config.setTokenProperty(tokenProperty.getText());
+            config.setDuration(duration.getText());
+        }
+    }
+
+    @Override
+    public void clearGui() {
+        super.clearGui();
+        initFields();
+    }
+
+    private void init() {
+        setLayout(new BorderLayout(0, 5));
+        setBorder(makeBorder());
+
+        add(JMeterPluginsUtils.addHelpLinkToPanel(makeTitlePanel(), WIKIPAGE), BorderLayout.NORTH);
+
+        JPanel mainPanel = new JPanel(new GridBagLayout());
+
+        GridBagConstraints labelConstraints = new GridBagConstraints();
+        labelConstraints.anchor = GridBagConstraints.FIRST_LINE_END;
+        labelConstraints.insets = new java.awt.Insets(2, 0, 0, 0);
+
+        GridBagConstraints editConstraints = new GridBagConstraints();
+        editConstraints.anchor = GridBagConstraints.FIRST_LINE_START;
+        editConstraints.weightx = 1.0;
+        editConstraints.fill = GridBagConstraints.HORIZONTAL;
+        editConstraints.insets = new java.awt.Insets(2, 0, 0, 0);
+
+        int row = 0;
+        testId = addField(mainPanel, labelConstraints, editConstraints, row++, "Test ID: ");
+        method = addField(mainPanel, labelConstraints, editConstraints, row++, "HTTP method: ");
+        proto = addField(mainPanel, labelConstraints, editConstraints, row++, "Protocol: ");
+        host = addField(mainPanel, labelConstraints, editConstraints, row++, "Host: ");
+        port = addField(mainPanel, labelConstraints, editConstraints, row++, "Port: ");
+        path = addField(mainPanel, labelConstraints, editConstraints, row++, "Path: ");
+        urlProperty = addField(mainPanel, labelConstraints, editConstraints, row++, "URL property name: ");
+        audience = addField(mainPanel, labelConstraints, editConstraints, row++, "ID token audience (empty: no token): ");
+        tokenUrl = addField(mainPanel, labelConstraints, editConstraints, row++, "ID token URL: ");
+        tokenProperty = addField(mainPanel, labelConstraints, editConstraints, row++, "ID token property name: ");
+        duration = addField(mainPanel, labelConstraints, editConstraints, row++, "Stop test after (seconds): ");
+
+        JPanel container = new JPanel(new BorderLayout());
+        container.add(mainPanel, BorderLayout.NORTH);
+        add(container, BorderLayout.CENTER);
+    }
+
+    private JTextField addField(JPanel panel, GridBagConstraints labelConstraints, GridBagConstraints editConstraints, int row, String label) {
+        JTextField field = new JTextField(20);
+        addToPanel(panel, labelConstraints, 0, row, new JLabel(label, JLabel.RIGHT));
+        addToPanel(panel, editConstraints, 1, row, field);
+        return field;
+    }
+
+    private void addToPanel(JPanel panel, GridBagConstraints constraints, int col, int row, JComponent component) {
+        constraints.gridx = col;
+        constraints.gridy = row;
+        panel.add(component, constraints);
+    }
+
+    private void initFields() {
+        testId.setText("${__P(tid)}");
+        method.setText("${__P(http_method,GET)}");
+        proto.setText("${__P(proto,https)}");
+        host.setText("${__P(host)}");
+        port.setText("${__P(port,443)}");
+        path.setText("${__P(path,/)}");
+        urlProperty.setText(TestTargetConfig.DEFAULT_URL_PROPERTY);
+        audience.setText("");
+        tokenUrl.setText(TestTargetConfig.DEFAULT_TOKEN_URL);
+        tokenProperty.setText(TestTargetConfig.DEFAULT_TOKEN_PROPERTY);
+        duration.setText("${__P(duration,0)}");
+    }
+}
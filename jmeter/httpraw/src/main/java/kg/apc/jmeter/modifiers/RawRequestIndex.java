@@ -0,0 +1,154 @@
+package kg.apc.jmeter.modifiers;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+
+import com.google.common.io.BaseEncoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// offsets and lengths of the records of a raw data file, over a read-only memory-mapped region:
+//   - the file is scanned once; records are then read by any number of threads without locking.
+//   - each thread reads through its own view of the region, into its own reusable array.
+// records are `<length>[ <comment>]<newline><length bytes>`, and end with a zero length or at the end of the file;
+// i.e.: the format read by `RawRequestSourcePreProcessor`.
+public class RawRequestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RawRequestIndex.class);
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final ByteBuffer region;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int size;
+
+    private final ThreadLocal<Reader> readers = new ThreadLocal<Reader>() {
+        @Override
+        protected Reader initialValue() {
+            return new Reader(region.duplicate());
+        }
+    };
+
+    private RawRequestIndex(final ByteBuffer region, final int[] offsets, final int[] lengths, final int size) {
+        this.region = region;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.size = size;
+    }
+
+    // the file must not be truncated while it is indexed: reading records past its new end fails.
+    public static RawRequestIndex build(final Path path) throws IOException {
+        final MappedByteBuffer region;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be indexed: " + path + " (" + file.size() + " bytes)");
+            }
+            region = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+
+        int[] offsets = new int[64];
+        int[] lengths = new int[64];
+        int size = 0;
+
+        final int limit = region.limit();
+        int i = 0;
+        while (true) {
+            // ignore newlines before length marker
+            while (i < limit && isNewline(region.get(i))) {
+                i++;
+            }
+            final int metaStart = i;
+            while (i < limit && !isNewline(region.get(i))) {
+                i++;
+            }
+            if (i == limit) {
+                // a length marker must be followed by a newline
+                break;
+            }
+            final int length = parseLength(region, metaStart, i);
+            // if we have \r\n then skip \n
+            i++;
+            if (i < limit && region.get(i) == LF) {
+                i++;
+            }
+            if (length == 0) {
+                break;
+            }
+            if (length > limit - i) {
+                throw new IOException("Expected chunk size (" + length + ") exceeds the end of file: " + path
+                    + " (record " + (size + 1) + ")");
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            offsets[size] = i;
+            lengths[size] = length;
+            size++;
+            i += length;
+        }
+
+        log.info("Indexed " + size + " requests in " + path);
+        return new RawRequestIndex(region, offsets, lengths, size);
+    }
+
+    private static boolean isNewline(final byte b) {
+        return b == CR || b == LF;
+    }
+
+    private static int parseLength(final ByteBuffer region, final int from, final int to) throws IOException {
+        final byte[] meta = new byte[to - from];
+        for (int i = 0; i < meta.length; i++) {
+            meta[i] = region.get(from + i);
+        }
+        final String line = new String(meta, RawRequestSourcePreProcessor.binaryCharset).trim();
+        try {
+            return Integer.parseInt(line.split(RawRequestSourcePreProcessor.regexp)[0]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Error reading chunk size near: " + line, ex);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(final int record, final boolean hex) {
+        final Reader reader = readers.get();
+        final int length = reader.read(offsets[record], lengths[record]);
+        if (hex) {
+            return HEX.encode(reader.bytes, 0, length);
+        }
+        return new String(reader.bytes, 0, length, RawRequestSourcePreProcessor.binaryCharset);
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer view;
+        private byte[] bytes = new byte[0];
+
+        private Reader(final ByteBuffer view) {
+            this.view = view;
+        }
+
+        private int read(final int offset, final int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            view.limit(offset + length).position(offset);
+            view.get(bytes, 0, length);
+            return length;
+        }
+    }
+}
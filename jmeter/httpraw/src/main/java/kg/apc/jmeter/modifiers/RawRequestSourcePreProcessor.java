@@ -7,6 +7,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
 import kg.apc.jmeter.EndOfFileException;
 import kg.apc.jmeter.RuntimeEOFException;
 import org.apache.commons.io.IOExceptionWithCause;
@@ -31,7 +33,12 @@ public class RawRequestSourcePreProcessor
     public static final String FILENAME = "filename";
     public static final String REWIND = "rewind";
     public static final String ENCODE_HEX = "isHex";
+    public static final String INDEXED = "indexed";
     private FileChannel file;
+    // indexed mode: records are claimed by threads with a counter, instead of reading the file sequentially
+    private transient volatile RawRequestIndex index;
+    private transient volatile boolean indexUnavailable;
+    private final AtomicLong nextRecord = new AtomicLong();
     private ByteBuffer metaBuf = null;
     private ByteBuffer oneByte = null;
     public static final Charset binaryCharset = Charset.forName("UTF8");
@@ -41,7 +48,51 @@ public class RawRequestSourcePreProcessor
     }
 
     @Override
-    public synchronized void process() {
+    public void process() {
+        if (isIndexed()) {
+            final RawRequestIndex index = getIndex();
+            if (index != null) {
+                processIndexed(index);
+                return;
+            }
+        }
+        processSequential();
+    }
+
+    private void processIndexed(final RawRequestIndex index) {
+        final long record = nextRecord.getAndIncrement();
+        final int size = index.size();
+        if (size == 0 || (record >= size && !getRewindOnEOF())) {
+            throw endOfFile(new EndOfFileException(getFileName()));
+        }
+
+        final String rawData = index.get((int) (record % size), isHexEncode());
+        final JMeterVariables vars = JMeterContextService.getContext().getVariables();
+        if (vars != null) {
+            vars.put(getVarName(), rawData);
+        }
+    }
+
+    // the file is indexed once; if it cannot be, records are read sequentially.
+    private RawRequestIndex getIndex() {
+        RawRequestIndex index = this.index;
+        if (index != null || indexUnavailable) {
+            return index;
+        }
+        synchronized (this) {
+            if (this.index == null && !indexUnavailable) {
+                try {
+                    this.index = RawRequestIndex.build(Paths.get(getFileName()));
+                } catch (IOException ex) {
+                    log.error("Cannot index file, reading it sequentially: " + getFileName(), ex);
+                    indexUnavailable = true;
+                }
+            }
+            return this.index;
+        }
+    }
+
+    private synchronized void processSequential() {
         if (file == null) {
             log.info("Creating file object: " + getFileName());
             try {
@@ -65,14 +116,10 @@ public class RawRequestSourcePreProcessor
                 } catch (IOException ex1) {
                     log.error("Cannot rewind", ex1);
                 }
-                process();
+                processSequential();
                 return;
             } else {
-                log.info("End of file reached: " + getFileName());
-                if (JMeterContextService.getContext().getThread() != null) {
-                    JMeterContextService.getContext().getThread().stop();
-                }
-                throw new RuntimeEOFException("End of file reached", ex);
+                throw endOfFile(ex);
             }
         } catch (IOException ex) {
             log.error("Error reading next chunk", ex);
@@ -85,6 +132,14 @@ public class RawRequestSourcePreProcessor
         }
     }
 
+    private RuntimeEOFException endOfFile(final EndOfFileException ex) {
+        log.info("End of file reached: " + getFileName());
+        if (JMeterContextService.getContext().getThread() != null) {
+            JMeterContextService.getContext().getThread().stop();
+        }
+        return new RuntimeEOFException("End of file reached", ex);
+    }
+
     private synchronized String readNextChunk(int capacity)
             throws IOException {
         if (capacity == 0) {
@@ -178,6 +233,7 @@ public class RawRequestSourcePreProcessor
     public void setFileName(String filename) {
         setProperty(FILENAME, filename);
         file = null;
+        resetIndex();
     }
 
     public void setRewindOnEOF(boolean isRew) {
@@ -196,6 +252,20 @@ public class RawRequestSourcePreProcessor
         setProperty(ENCODE_HEX, b);
     }
 
+    public boolean isIndexed() {
+        return getPropertyAsBoolean(INDEXED);
+    }
+
+    public void setIndexed(boolean b) {
+        setProperty(INDEXED, b);
+    }
+
+    private synchronized void resetIndex() {
+        index = null;
+        indexUnavailable = false;
+        nextRecord.set(0);
+    }
+
     @Override
     public void testStarted() {
         testStarted("");
@@ -206,6 +276,11 @@ public class RawRequestSourcePreProcessor
         // performance concerns and copying ability
         metaBuf=ByteBuffer.allocateDirect(1024);
         oneByte=ByteBuffer.allocateDirect(1);
+        // pre-scan the file, so that threads only claim records
+        resetIndex();
+        if (isIndexed() && !getFileName().isEmpty()) {
+            getIndex();
+        }
     }
 
     @Override
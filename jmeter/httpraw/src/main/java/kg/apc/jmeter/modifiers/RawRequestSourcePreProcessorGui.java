@@ -20,6 +20,7 @@ public class RawRequestSourcePreProcessorGui extends AbstractPreProcessorGui {
     private JButton checkButton;
     private JTextArea checkInfo;
     private JCheckBox encodeHex;
+    private JCheckBox indexed;
 
     public RawRequestSourcePreProcessorGui() {
         super();
@@ -44,6 +45,7 @@ public class RawRequestSourcePreProcessorGui extends AbstractPreProcessorGui {
         variableName.setText(element.getPropertyAsString(RawRequestSourcePreProcessor.VARIABLE_NAME));
         fileName.setText(element.getPropertyAsString(RawRequestSourcePreProcessor.FILENAME));
         encodeHex.setSelected(element.getPropertyAsBoolean(RawRequestSourcePreProcessor.ENCODE_HEX));
+        indexed.setSelected(element.getPropertyAsBoolean(RawRequestSourcePreProcessor.INDEXED));
     }
 
     @Override
@@ -63,6 +65,7 @@ public class RawRequestSourcePreProcessorGui extends AbstractPreProcessorGui {
             preproc.setVarName(variableName.getText());
             preproc.setFileName(fileName.getText());
             preproc.setEncodeHex(encodeHex.isSelected());
+            preproc.setIndexed(indexed.isSelected());
         }
     }
 
@@ -107,15 +110,18 @@ public class RawRequestSourcePreProcessorGui extends AbstractPreProcessorGui {
         addToPanel(mainPanel, labelConstraints, 0, 3, new JLabel("Encode read data as HEX: ", JLabel.RIGHT));
         addToPanel(mainPanel, editConstraints, 1, 3, encodeHex = new JCheckBox());
 
+        addToPanel(mainPanel, labelConstraints, 0, 4, new JLabel("Index file at test start: ", JLabel.RIGHT));
+        addToPanel(mainPanel, editConstraints, 1, 4, indexed = new JCheckBox());
+
         editConstraints.insets = new java.awt.Insets(4, 0, 0, 0);
         labelConstraints.insets = new java.awt.Insets(4, 0, 0, 2);
 
-        addToPanel(mainPanel, labelConstraints, 0, 4, checkButton = new JButton("Check File Consistency"));
+        addToPanel(mainPanel, labelConstraints, 0, 5, checkButton = new JButton("Check File Consistency"));
 
         labelConstraints.insets = new java.awt.Insets(4, 0, 0, 0);
 
         checkInfo = new JTextArea();
-        addToPanel(mainPanel, editConstraints, 1, 4, GuiBuilderHelper.getTextAreaScrollPaneContainer(checkInfo, 10));
+        addToPanel(mainPanel, editConstraints, 1, 5, GuiBuilderHelper.getTextAreaScrollPaneContainer(checkInfo, 10));
         checkButton.addActionListener(new CheckConsistencyAction(fileName, checkInfo));
         checkInfo.setEditable(false);
         checkInfo.setOpaque(false);
@@ -137,5 +143,6 @@ public class RawRequestSourcePreProcessorGui extends AbstractPreProcessorGui {
         fileName.setText("");
         checkInfo.setText("");
         encodeHex.setSelected(false);
+        indexed.setSelected(false);
     }
 }
@@ -0,0 +1,96 @@
+package kg.apc.jmeter.samplers;
+
+import java.io.IOException;
+
+import java.nio.channels.ByteChannel;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// idle keep-alive connections of a single JMeter thread, by `scheme://host:port`:
+//   - a thread sends one request at a time, so it keeps at most one idle connection per destination.
+//   - least recently used connections are closed when there are more than `maxIdle` destinations.
+//   - connections idle for longer than `keepAliveTimeout` are closed instead of being reused.
+// not thread-safe: samplers are cloned per thread, and so are their pools.
+public class ChannelPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ChannelPool.class);
+
+    private final int maxIdle;
+    private final long keepAliveTimeoutNanos;
+
+    private final LinkedHashMap<String, IdleChannel> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ChannelPool(final int maxIdle, final long keepAliveTimeoutMillis) {
+        this.maxIdle = maxIdle;
+        this.keepAliveTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveTimeoutMillis);
+    }
+
+    // the idle connection to `key`, if any; it is removed from the pool.
+    public ByteChannel take(final String key) {
+        final IdleChannel channel = idle.remove(key);
+        if (channel == null) {
+            return null;
+        }
+        if (!channel.channel.isOpen()) {
+            return null;
+        }
+        if ((System.nanoTime() - channel.idleSince) > keepAliveTimeoutNanos) {
+            close(key, channel.channel);
+            return null;
+        }
+        return channel.channel;
+    }
+
+    public void release(final String key, final ByteChannel channel) {
+        if (maxIdle <= 0) {
+            close(key, channel);
+            return;
+        }
+        final IdleChannel previous = idle.put(key, new IdleChannel(channel, System.nanoTime()));
+        if (previous != null && previous.channel != channel) {
+            close(key, previous.channel);
+        }
+        final Iterator<Map.Entry<String, IdleChannel>> eldest = idle.entrySet().iterator();
+        while (idle.size() > maxIdle) {
+            final Map.Entry<String, IdleChannel> entry = eldest.next();
+            eldest.remove();
+            close(entry.getKey(), entry.getValue().channel);
+        }
+    }
+
+    public int size() {
+        return idle.size();
+    }
+
+    public void closeAll() {
+        for (final Map.Entry<String, IdleChannel> entry : idle.entrySet()) {
+            close(entry.getKey(), entry.getValue().channel);
+        }
+        idle.clear();
+    }
+
+    private static void close(final String key, final ByteChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.warn("Exception while closing idle channel to " + key, ex);
+        }
+    }
+
+    private static final class IdleChannel {
+
+        private final ByteChannel channel;
+        private final long idleSince;
+
+        private IdleChannel(final ByteChannel channel, final long idleSince) {
+            this.channel = channel;
+            this.idleSince = idleSince;
+        }
+    }
+}
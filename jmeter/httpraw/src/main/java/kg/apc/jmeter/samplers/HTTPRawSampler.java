@@ -9,9 +9,16 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.StandardSocketOptions;
 
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -19,27 +26,29 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
-import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Optional;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
-import javax.net.ssl.SSLParameters;
-import javax.net.ssl.SNIHostName;
 
 import kg.apc.io.SocketChannelWithTimeouts;
 
+import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.UnsignedLong;
 
-import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.testelement.ThreadListener;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
 import org.apache.jmeter.util.JMeterUtils;
 
 import org.slf4j.Logger;
@@ -49,50 +58,98 @@ import tlschannel.ClientTlsChannel;
 import tlschannel.SniSslContextFactory;
 import tlschannel.TlsChannel;
 
-public class HTTPRawSampler extends AbstractIPSampler {
+public class HTTPRawSampler extends AbstractIPSampler implements ThreadListener, TestStateListener {
     
     private static final String FILE_NAME = "fileName";
     private static final String KEEPALIVE = "keepalive";
     private static final String HTTPS = "https";
     private static final String PARSE = "parse";
+    private static final String DISCARD = "discard";
 
-    private static final String RNpattern = "\\r\\n";
-    private static final String SPACE = " ";
+    private static final String HEAD = "HEAD ";
     // 
     private static final Logger log = LoggerFactory.getLogger(HTTPRawSampler.class);
-    private static final Pattern anyContent = Pattern.compile(".+", Pattern.DOTALL);
-    private SocketChannel savedSock;
+    private volatile ByteChannel savedSock;
     private static final int fileSendingChunk = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.FileReadChunkSize", 1024 * 4);
+    private static final int requestFileCacheSize = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.RequestFileCacheSize", 16);
+    private static final long requestFileMaxCachedSize = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.RequestFileMaxCachedSize", 16L * 1024 * 1024);
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+    // request files are loaded once and shared by all threads
+    private static final RequestFileCache requestFiles = new RequestFileCache(requestFileCacheSize, requestFileMaxCachedSize);
+    // samplers are cloned per thread: request buffers are reused across samples
+    private transient CharsetEncoder requestEncoder;
+    private transient String requestData;
+    private transient ByteBuffer requestHead;
+    private transient ByteBuffer requestFile;
+    private transient ByteBuffer requestBody;
+    private final transient ByteBuffer[] request = new ByteBuffer[2];
+    private static final int maxIdleConnections = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.MaxIdleConnections", 4);
+    private static final long keepAliveTimeout = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.KeepAliveTimeout", 30000L);
+    // keep-alive connections are pooled per thread, by destination
+    private final transient ChannelPool idleChannels = new ChannelPool(maxIdleConnections, keepAliveTimeout);
+    private final transient HTTPResponseParser responseParser = new HTTPResponseParser();
+    // response bodies are parsed as they arrive: see `readResponse`
+    private final transient ByteArrayOutputStream responseData = new ByteArrayOutputStream();
+    private final transient WritableByteChannel responseChannel = Channels.newChannel(responseData);
+    private transient MessageDigest responseDigest;
+    private final transient HTTPResponseParser.BodySink bodySink = this::onBody;
+    private static final int tlsSessionCacheSize = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.TLSSessionCacheSize", 1024);
+    private static final int tlsSessionTimeout = JMeterUtils.getPropDefault("kg.apc.jmeter.samplers.TLSSessionTimeout", 3600);
+    private static final String TLS_HANDSHAKE = "tls.handshake";
+    private static final String TLS_HANDSHAKE_TIME = "tls.handshake.time";
+    // TLS sessions are shared by all threads, so that handshakes to the same host are resumed
+    private static volatile TLSClientCache tlsClients;
+    // handshakes recorded when the test started.
+    private transient volatile TLSClientCache.Snapshot tlsStarted;
     
     public HTTPRawSampler() {
         super();
         log.debug("File reading chunk size: " + fileSendingChunk);
     }
     
-    @Override
-    public SampleResult sample(Entry entry) {
-        SampleResult res = super.sample(entry);
-        if (isParseResult()) {
-            parseResponse(res);
-        }
-        return res;
-    }
-    
+    // reads the response into the per-thread receive buffer, and parses it as it arrives:
+    //   - raw mode keeps the whole response, up to `recvDataLimit`.
+    //   - parse mode keeps the status line and headers apart, and the de-chunked body up to `recvDataLimit`.
+    //   - discard mode keeps only the size and the MD5 digest of the body, as JMeter does with `MD5` samples.
     protected byte[] readResponse(
         final ByteChannel channel,
         SampleResult res
     ) throws IOException {
-        final ByteArrayOutputStream response = new ByteArrayOutputStream();
-        
+        final boolean parse = isParseResult();
+        final boolean discard = isDiscardBody();
+        final HTTPResponseParser.BodySink sink = (parse || discard) ? bodySink : null;
+
+        responseData.reset();
+        if (discard) {
+            getResponseDigest().reset();
+        }
+
         long responseSize = 0;
         
         if (log.isDebugEnabled()) {
             log.debug("Start reading response");
         }
 
+        final ByteBuffer recvBuf = getRecvBuf();
         try {
-            responseSize = ByteStreams.copy(channel, Channels.newChannel(response));
-            if (response.size() < 1) {
+            recvBuf.clear();
+            int read;
+            boolean complete = false;
+            // stop as soon as the response is complete: keep-alive servers do not close the connection
+            while (!complete && (read = channel.read(recvBuf)) != -1) {
+                if (responseSize == 0 && read > 0) {
+                    res.latencyEnd();
+                }
+                responseSize += read;
+                recvBuf.flip();
+                complete = responseParser.update(recvBuf, sink);
+                // keep reading past `recvDataLimit` to measure the whole response
+                if (sink == null && responseData.size() <= recvDataLimit) {
+                    responseChannel.write(recvBuf);
+                }
+                recvBuf.clear();
+            }
+            if (responseSize < 1) {
                 log.warn("Read no bytes from socket, seems it was closed. Let it be so.");
                 channel.close();
             }
@@ -105,78 +162,206 @@ public class HTTPRawSampler extends AbstractIPSampler {
             log.debug("Done reading response");
         }
         
-        res.sampleEnd();
-        if (!isUseKeepAlive()) {
-            channel.close();
-        }
-        
         res.setBytes(
             UnsignedLong.valueOf(responseSize).intValue()
         );
-        return response.toByteArray();
+        // network size: JMeter reports `headersSize + bodySize` as the sample bytes
+        final long bodySize = (sink == null) ? responseSize : responseParser.getBodyLength();
+        res.setHeadersSize(UnsignedLong.valueOf(responseSize - bodySize).intValue());
+        res.setBodySize(UnsignedLong.valueOf(bodySize).intValue());
+
+        if (parse && responseParser.isHTTP()) {
+            res.setResponseCode(Integer.toString(responseParser.getStatusCode()));
+            res.setResponseMessage(responseParser.getStatusMessage());
+            res.setResponseHeaders(responseParser.getHeaders());
+        }
+
+        if (discard && responseSize > 0) {
+            final String md5 = BaseEncoding.base16().lowerCase().encode(getResponseDigest().digest());
+            return md5.getBytes(StandardCharsets.US_ASCII);
+        }
+        return responseData.toByteArray();
     }
-    
-    private void parseResponse(SampleResult res) {
-        Scanner scanner = new Scanner(res.getResponseDataAsString());
-        scanner.useDelimiter(RNpattern);
-        
-        if (!scanner.hasNextLine()) {
-            return;
+
+    private void onBody(final ByteBuffer buf, final int from, final int to) {
+        final int position = buf.position();
+        final int limit = buf.limit();
+        buf.limit(to).position(from);
+        try {
+            if (isDiscardBody()) {
+                responseDigest.update(buf);
+            } else if (responseData.size() <= recvDataLimit) {
+                responseChannel.write(buf);
+            }
+        } catch (IOException ex) {
+            // writes to memory do not fail
+            throw new IllegalStateException(ex);
+        } finally {
+            buf.limit(limit).position(position);
         }
-        
-        String httpStatus = scanner.nextLine();
-        
-        int s = httpStatus.indexOf(SPACE);
-        int e = httpStatus.indexOf(SPACE, s + 1);
-        if (s < e) {
-            String rc = httpStatus.substring(s, e).trim();
+    }
+
+    private MessageDigest getResponseDigest() {
+        if (responseDigest == null) {
             try {
-                int rcInt = Integer.parseInt(rc);
-                if (rcInt < 100 || rcInt > 599) {
-                    return;
+                responseDigest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return responseDigest;
+    }
+    
+    @Override
+    protected byte[] processIO(SampleResult res) throws Exception {
+        final boolean keepAlive = isUseKeepAlive();
+        final String key = getConnectionKey();
+        final String data = getRequestData();
+
+        ByteChannel socket = keepAlive ? idleChannels.take(key) : null;
+        boolean reused = (socket != null);
+        while (true) {
+            if (socket == null) {
+                // connect time includes the TLS handshake, latency is measured from here on
+                socket = getSocketChannel();
+            } else if (isHTTPS()) {
+                setHandshakeVariables("none", 0);
+            }
+            res.connectEnd();
+            savedSock = socket;
+
+            byte[] response = null;
+            try {
+                sendRequest(socket, data);
+                responseParser.reset(data.startsWith(HEAD));
+                response = readResponse(socket, res);
+            } catch (IOException ex) {
+                close(socket);
+                if (!reused) {
+                    throw ex;
                 }
-                res.setResponseCode(rc);
-                res.setResponseMessage(httpStatus.substring(e).trim());
-            } catch (NumberFormatException ex) {
-                return;
             }
-        } else {
-            return;
+
+            // idle connections may have been closed by the server: retry once on a new connection
+            // parsed responses may have an empty body: only responses without a status line nor body are missing
+            if (reused && (response == null || (!responseParser.isHTTP() && responseParser.getBodyLength() == 0))) {
+                log.debug("Reused connection was closed by the server: " + key);
+                close(socket);
+                socket = null;
+                reused = false;
+                continue;
+            }
+
+            res.sampleEnd();
+            if (keepAlive && responseParser.isKeepAlive() && socket.isOpen()) {
+                idleChannels.release(key, socket);
+            } else {
+                close(socket);
+            }
+            savedSock = null;
+            return response;
         }
+    }
 
-        if (!scanner.hasNextLine()) {
-            return;
+    private void sendRequest(final ByteChannel socket, final String data) throws IOException {
+        final String filename = getFileToSend();
+        final Optional<ByteBuffer> body = getRequestBody(filename);
+        request[0] = getRequestHead(data);
+        request[1] = body.orElse(EMPTY_BUFFER);
+        write(socket, request);
+        if (!filename.isEmpty() && !body.isPresent()) {
+            // too large to be cached
+            sendFile(filename, socket);
         }
+        if (log.isDebugEnabled()) {
+            log.debug("Sent request");
+        }
+    }
 
-        StringBuilder headers = new StringBuilder();
-        String line;
-        while (scanner.hasNextLine() && !(line = scanner.nextLine()).isEmpty()) {
-            headers.append(line).append(CRLF);
+    private String getConnectionKey() {
+        return (isHTTPS() ? "https://" : "http://") + getHostName() + ":" + getPort();
+    }
+
+    private static void close(final ByteChannel channel) {
+        if (!channel.isOpen()) {
+            return;
         }
-        res.setResponseHeaders(headers.toString());
-        
-        if (scanner.hasNext()) {
-            res.setResponseData(scanner.next(anyContent).getBytes());
-        } else {
-            res.setResponseData("".getBytes());
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.warn("Exception while closing channel: ", ex);
         }
-        
     }
     
-    @Override
-    protected byte[] processIO(SampleResult res) throws Exception {
-        final ByteChannel socket = getSocketChannel();
-        if (!getRequestData().isEmpty()) {
-            final ByteBuffer sendBuf = ByteBuffer.wrap(
-                getRequestData().getBytes(StandardCharsets.UTF_8)
-            );
-            socket.write(sendBuf);
+    // the request head is encoded once, and again only when it changes; i.e.: it contains variables.
+    private ByteBuffer getRequestHead(final String data) {
+        if (requestHead != null && data.equals(requestData)) {
+            requestHead.rewind();
+            return requestHead;
         }
-        sendFile(getFileToSend(), socket);
-        if (log.isDebugEnabled()) {
-            log.debug("Sent request");
+        if (requestEncoder == null) {
+            // same replacements as `String#getBytes`
+            requestEncoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        final int maxSize = (int) Math.ceil(data.length() * (double) requestEncoder.maxBytesPerChar());
+        if (requestHead == null || requestHead.capacity() < maxSize) {
+            requestHead = ByteBuffer.allocateDirect(Math.max(maxSize, fileSendingChunk));
+        }
+        requestHead.clear();
+        requestEncoder.reset();
+        requestEncoder.encode(CharBuffer.wrap(data), requestHead, true);
+        requestEncoder.flush(requestHead);
+        requestHead.flip();
+        requestData = data;
+        return requestHead;
+    }
+
+    private Optional<ByteBuffer> getRequestBody(final String filename) throws IOException {
+        if (filename.isEmpty()) {
+            return Optional.empty();
+        }
+        final Optional<ByteBuffer> file = requestFiles.get(Paths.get(filename));
+        if (!file.isPresent()) {
+            return file;
+        }
+        if (file.get() != requestFile) {
+            // the file was loaded for the first time, or reloaded
+            requestFile = file.get();
+            requestBody = requestFile.duplicate();
+        }
+        requestBody.rewind();
+        return Optional.of(requestBody);
+    }
+
+    private static void write(
+        final ByteChannel channel,
+        final ByteBuffer[] buffers
+    ) throws IOException {
+        // `SocketChannelWithTimeouts` does not implement gathering writes
+        if (channel instanceof GatheringByteChannel
+                && !(channel instanceof SocketChannelWithTimeouts)) {
+            final GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            while (hasRemaining(buffers)) {
+                gathering.write(buffers);
+            }
+            return;
+        }
+        for (final ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         }
-        return readResponse(socket, res);
+    }
+
+    private static boolean hasRemaining(final ByteBuffer[] buffers) {
+        for (final ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
     }
     
     protected ByteChannel getSocketChannel() throws Exception {
@@ -219,27 +404,45 @@ public class HTTPRawSampler extends AbstractIPSampler {
 
         log.info("{} > {}", s.getLocalSocketAddress(), address);
 
-        final SSLContext sslContext = SSLContext.getDefault();
+        final TLSClientCache tlsClients = getTLSClients();
+        final SSLEngine engine = tlsClients.newEngine(serverName, address.getPort());
 
-        final SSLEngine engine = sslContext
-        .createSSLEngine(
-            serverName,
-            address.getPort()
-        );
-        engine.setUseClientMode(true);
-
-        // ALL Google APIs and Services require SNI
-        final SSLParameters sslParams = engine.getSSLParameters();
-        sslParams.setEndpointIdentificationAlgorithm("HTTPS");
-        sslParams.setServerNames(
-            Collections.singletonList(
-                new SNIHostName(serverName)
-            )
-        );
+        final TlsChannel channel = ClientTlsChannel.newBuilder(socket, engine).build();
+        // handshake eagerly, so that it is accounted as connect time
+        final long handshakeStart = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        channel.handshake();
+        final long handshakeNanos = System.nanoTime() - start;
 
-        engine.setSSLParameters(sslParams);
+        final boolean resumed = TLSClientCache.isResumed(engine.getSession(), handshakeStart);
+        tlsClients.record(resumed, handshakeNanos);
+        setHandshakeVariables(resumed ? "resumed" : "full", TimeUnit.NANOSECONDS.toMillis(handshakeNanos));
+        return channel;
+    }
 
-        return ClientTlsChannel.newBuilder(socket, engine).build();
+    private static TLSClientCache getTLSClients() throws GeneralSecurityException {
+        TLSClientCache clients = tlsClients;
+        if (clients == null) {
+            synchronized (HTTPRawSampler.class) {
+                clients = tlsClients;
+                if (clients == null) {
+                    final SSLContext sslContext = SSLContext.getInstance("TLS");
+                    sslContext.init(null, null, null);
+                    clients = new TLSClientCache(sslContext, tlsSessionCacheSize, tlsSessionTimeout);
+                    tlsClients = clients;
+                }
+            }
+        }
+        return clients;
+    }
+
+    // `tls.handshake` is one of: `full`, `resumed`, or `none` when an idle connection is reused.
+    private static void setHandshakeVariables(final String handshake, final long millis) {
+        final JMeterVariables vars = JMeterContextService.getContext().getVariables();
+        if (vars != null) {
+            vars.put(TLS_HANDSHAKE, handshake);
+            vars.put(TLS_HANDSHAKE_TIME, Long.toString(millis));
+        }
     }
     
     @Override
@@ -280,6 +483,14 @@ public class HTTPRawSampler extends AbstractIPSampler {
         setProperty(PARSE, selected);
     }
     
+    public boolean isDiscardBody() {
+        return getPropertyAsBoolean(DISCARD);
+    }
+    
+    public void setDiscardBody(boolean selected) {
+        setProperty(DISCARD, selected);
+    }
+    
     public String getFileToSend() {
         return getPropertyAsString(FILE_NAME);
     }
@@ -288,8 +499,49 @@ public class HTTPRawSampler extends AbstractIPSampler {
         setProperty(FILE_NAME, text);
     }
     
+    @Override
+    public void testStarted() {
+        final TLSClientCache clients = tlsClients;
+        tlsStarted = (clients == null) ? TLSClientCache.Snapshot.EMPTY : clients.snapshot();
+    }
+
+    @Override
+    public void testStarted(String host) {
+        testStarted();
+    }
+
+    @Override
+    public void testEnded() {
+        final TLSClientCache clients = tlsClients;
+        if (clients == null) {
+            return;
+        }
+        // only the handshakes of this test: the cache outlives it in embedded or long-lived JVMs.
+        final TLSClientCache.Snapshot handshakes = clients.snapshot()
+            .since((tlsStarted == null) ? TLSClientCache.Snapshot.EMPTY : tlsStarted);
+        log.info("TLS handshakes: " + handshakes);
+        JMeterUtils.setProperty(TLS_HANDSHAKE + ".full", Long.toString(handshakes.getFullHandshakes()));
+        JMeterUtils.setProperty(TLS_HANDSHAKE + ".resumed", Long.toString(handshakes.getResumedHandshakes()));
+        JMeterUtils.setProperty(TLS_HANDSHAKE + ".histogram", handshakes.getHandshakeHistogram());
+    }
+
+    @Override
+    public void testEnded(String host) {
+        testEnded();
+    }
+
+    @Override
+    public void threadStarted() {
+    }
+
+    @Override
+    public void threadFinished() {
+        idleChannels.closeAll();
+    }
+
     @Override
     public boolean interrupt() {
+        final ByteChannel savedSock = this.savedSock;
         if (savedSock != null && savedSock.isOpen()) {
             try {
                 savedSock.close();
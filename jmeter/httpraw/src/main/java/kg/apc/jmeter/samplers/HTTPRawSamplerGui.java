@@ -18,6 +18,7 @@ public class HTTPRawSamplerGui
     private JTextField timeout;
     private JCheckBox keepAlive;
     private JCheckBox parseResult;
+    private JCheckBox discardBody;
     private JCheckBox isHTTPS;
     private JTextArea requestData;
     private JTextField fileName;
@@ -49,6 +50,7 @@ public class HTTPRawSamplerGui
             isHTTPS.setSelected(rawSampler.isHTTPS());
             requestData.setText(rawSampler.getRequestData());
             parseResult.setSelected(rawSampler.isParseResult());
+            discardBody.setSelected(rawSampler.isDiscardBody());
             fileName.setText(rawSampler.getFileToSend());
         }
     }
@@ -80,6 +82,7 @@ public class HTTPRawSamplerGui
             rawSampler.setRequestData(transformCRLF(requestData.getText()));
             rawSampler.setFileToSend(fileName.getText());
             rawSampler.setParseResult(parseResult.isSelected());
+            rawSampler.setDiscardBody(discardBody.isSelected());
         }
     }
 
@@ -161,6 +164,9 @@ public class HTTPRawSamplerGui
         addToPanel(mainPanel, labelConstraints, 0, 8, new JLabel("HTTPS: ", JLabel.RIGHT));
         addToPanel(mainPanel, editConstraints, 1, 8, isHTTPS = new JCheckBox());
 
+        addToPanel(mainPanel, labelConstraints, 0, 9, new JLabel("Discard response body: ", JLabel.RIGHT));
+        addToPanel(mainPanel, editConstraints, 1, 9, discardBody = new JCheckBox());
+
         JPanel container = new JPanel(new BorderLayout());
         container.add(mainPanel, BorderLayout.NORTH);
         add(container, BorderLayout.CENTER);
@@ -183,6 +189,7 @@ public class HTTPRawSamplerGui
                 + "Connection: close\r\n"
                 + "\r\n");
         parseResult.setSelected(true);
+        discardBody.setSelected(false);
         fileName.setText("");
     }
 }
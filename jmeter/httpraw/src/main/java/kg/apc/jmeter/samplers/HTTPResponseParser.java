@@ -0,0 +1,405 @@
+package kg.apc.jmeter.samplers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+// incremental, byte-level HTTP/1.1 response parser: reads responses as they arrive,
+// and tells when they are complete without waiting for the server to close the connection.
+//   - the status line and headers are kept; body bytes are handed to a `BodySink`, de-chunked.
+//   - bodies are framed by `Transfer-Encoding: chunked`, `Content-Length`, or the end of the connection.
+//   - responses that do not start with `HTTP/` are read until the connection is closed, as a body.
+public class HTTPResponseParser {
+
+    // receives body bytes from `from` to `to` of `buf`; it may move `position` and `limit`, but must restore them.
+    public interface BodySink {
+        void onBody(ByteBuffer buf, int from, int to);
+    }
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte[] CRLF = {CR, LF};
+    private static final byte[] HTTP = "HTTP/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_0 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION = "connection".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+
+    // lines longer than this are not HTTP: the response is read until the connection is closed
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_CLOSE, COMPLETE
+    }
+
+    private State state;
+    private boolean headRequest;
+    private BodySink sink;
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    // header lines, each one followed by CRLF
+    private byte[] headers = new byte[1024];
+    private int headersLength;
+
+    private boolean http;
+    private boolean http10;
+    private int statusCode;
+    private String statusMessage;
+    private long contentLength;
+    private boolean chunked;
+    private boolean close;
+    private boolean keepAlive;
+    private long remaining;
+    private long bodyLength;
+
+    public HTTPResponseParser() {
+        reset(false);
+    }
+
+    // must be called before reading every response; responses to `HEAD` requests have no body.
+    public void reset(final boolean headRequest) {
+        this.headRequest = headRequest;
+        state = State.STATUS_LINE;
+        lineLength = 0;
+        http = false;
+        statusCode = 0;
+        statusMessage = "";
+        bodyLength = 0;
+        resetHeaders();
+    }
+
+    private void resetHeaders() {
+        headersLength = 0;
+        http10 = false;
+        contentLength = -1;
+        chunked = false;
+        close = false;
+        keepAlive = false;
+        remaining = 0;
+    }
+
+    public boolean update(final ByteBuffer buf) {
+        return update(buf, null);
+    }
+
+    // scans bytes from `position` to `limit` without consuming them; returns `true` once the response is complete.
+    public boolean update(final ByteBuffer buf, final BodySink sink) {
+        this.sink = sink;
+        int i = buf.position();
+        final int limit = buf.limit();
+        while (i < limit && state != State.COMPLETE) {
+            switch (state) {
+                case BODY:
+                case CHUNK_DATA: {
+                    final int n = (int) Math.min(remaining, limit - i);
+                    onBody(buf, i, i + n);
+                    remaining -= n;
+                    i += n;
+                    if (remaining == 0) {
+                        state = (state == State.BODY) ? State.COMPLETE : State.CHUNK_END;
+                    }
+                    break;
+                }
+                case UNTIL_CLOSE:
+                    onBody(buf, i, limit);
+                    i = limit;
+                    break;
+                default:
+                    onByte(buf.get(i++));
+            }
+        }
+        this.sink = null;
+        return state == State.COMPLETE;
+    }
+
+    public boolean isComplete() {
+        return state == State.COMPLETE;
+    }
+
+    // whether the connection may be used for another request once this response is complete.
+    public boolean isKeepAlive() {
+        return state == State.COMPLETE && !close && (!http10 || keepAlive);
+    }
+
+    // whether the response started with a valid status line.
+    public boolean isHTTP() {
+        return http;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    // header lines of the final response, without the status line; each one followed by CRLF.
+    public String getHeaders() {
+        return new String(headers, 0, headersLength, StandardCharsets.ISO_8859_1);
+    }
+
+    // body bytes read so far, without chunk framing.
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    private void onBody(final ByteBuffer buf, final int from, final int to) {
+        if (from == to) {
+            return;
+        }
+        bodyLength += (to - from);
+        if (sink != null) {
+            sink.onBody(buf, from, to);
+        }
+    }
+
+    private void onByte(final byte b) {
+        if (state == State.STATUS_LINE && lineLength < HTTP.length && b != HTTP[lineLength]) {
+            append(b);
+            notHTTP(lineLength);
+            lineLength = 0;
+            return;
+        }
+        if (b == LF) {
+            final int length = (lineLength > 0 && line[lineLength - 1] == CR) ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            onLine(length);
+            return;
+        }
+        if (lineLength == MAX_LINE_LENGTH) {
+            if (state == State.STATUS_LINE) {
+                notHTTP(lineLength);
+            } else {
+                untilClose();
+            }
+            lineLength = 0;
+            return;
+        }
+        append(b);
+    }
+
+    private void append(final byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private void onLine(final int length) {
+        switch (state) {
+            case STATUS_LINE:
+                onStatusLine(length);
+                break;
+            case HEADERS:
+                if (length == 0) {
+                    onHeadersEnd();
+                } else {
+                    onHeader(length);
+                }
+                break;
+            case CHUNK_SIZE:
+                onChunkSize(length);
+                break;
+            case CHUNK_END:
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (length == 0) {
+                    state = State.COMPLETE;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // `HTTP/1.1 200 OK`
+    private void onStatusLine(final int length) {
+        resetHeaders();
+        http10 = startsWith(line, 0, length, HTTP_1_0);
+        final int space = indexOf(line, 0, length, (byte) ' ');
+        if (space < 0 || length < space + 4 || (length > space + 4 && line[space + 4] != ' ')) {
+            notHTTP(length, CRLF);
+            return;
+        }
+        int code = 0;
+        for (int i = space + 1; i < space + 4; i++) {
+            final int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                notHTTP(length, CRLF);
+                return;
+            }
+            code = code * 10 + digit;
+        }
+        if (code < 100 || code > 599) {
+            notHTTP(length, CRLF);
+            return;
+        }
+        http = true;
+        statusCode = code;
+        statusMessage = (length > space + 5)
+            ? new String(line, space + 5, length - space - 5, StandardCharsets.ISO_8859_1).trim()
+            : "";
+        state = State.HEADERS;
+    }
+
+    private void onHeader(final int length) {
+        if (headersLength + length + CRLF.length > headers.length) {
+            headers = Arrays.copyOf(headers, Math.max(headers.length * 2, headersLength + length + CRLF.length));
+        }
+        System.arraycopy(line, 0, headers, headersLength, length);
+        headersLength += length;
+        System.arraycopy(CRLF, 0, headers, headersLength, CRLF.length);
+        headersLength += CRLF.length;
+
+        final int colon = indexOf(line, 0, length, (byte) ':');
+        if (colon < 0) {
+            return;
+        }
+        int from = colon + 1;
+        int to = length;
+        while (from < to && isWhitespace(line[from])) {
+            from++;
+        }
+        while (to > from && isWhitespace(line[to - 1])) {
+            to--;
+        }
+        if (equalsIgnoreCase(line, 0, colon, CONTENT_LENGTH)) {
+            contentLength = parseLong(line, from, to, 10);
+        } else if (equalsIgnoreCase(line, 0, colon, TRANSFER_ENCODING)) {
+            // `chunked` must be the last coding
+            chunked = endsWithIgnoreCase(line, from, to, CHUNKED);
+        } else if (equalsIgnoreCase(line, 0, colon, CONNECTION)) {
+            close |= containsIgnoreCase(line, from, to, CLOSE);
+            keepAlive |= containsIgnoreCase(line, from, to, KEEP_ALIVE);
+        }
+    }
+
+    private void onHeadersEnd() {
+        if (statusCode >= 100 && statusCode < 200 && statusCode != 101) {
+            // interim response: the final one follows
+            state = State.STATUS_LINE;
+        } else if (statusCode == 101) {
+            untilClose();
+        } else if (headRequest || statusCode == 204 || statusCode == 304) {
+            state = State.COMPLETE;
+        } else if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength >= 0) {
+            remaining = contentLength;
+            state = (contentLength == 0) ? State.COMPLETE : State.BODY;
+        } else {
+            untilClose();
+        }
+    }
+
+    // `1a;extension=value`
+    private void onChunkSize(final int length) {
+        int to = indexOf(line, 0, length, (byte) ';');
+        if (to < 0) {
+            to = length;
+        }
+        while (to > 0 && isWhitespace(line[to - 1])) {
+            to--;
+        }
+        final long size = parseLong(line, 0, to, 16);
+        if (size < 0) {
+            untilClose();
+        } else if (size == 0) {
+            state = State.TRAILERS;
+        } else {
+            remaining = size;
+            state = State.CHUNK_DATA;
+        }
+    }
+
+    // bytes read so far are part of the body, which is read until the connection is closed.
+    private void notHTTP(final int length, final byte[]... terminator) {
+        untilClose();
+        onBody(ByteBuffer.wrap(line, 0, length), 0, length);
+        for (final byte[] bytes : terminator) {
+            onBody(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+    }
+
+    private void untilClose() {
+        state = State.UNTIL_CLOSE;
+        close = true;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int indexOf(final byte[] bytes, final int from, final int to, final byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final int from, final int to, final byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // `lowercase` must be lowercase ASCII
+    private static boolean equalsIgnoreCase(final byte[] bytes, final int from, final int to, final byte[] lowercase) {
+        return (to - from) == lowercase.length && regionMatchesIgnoreCase(bytes, from, lowercase);
+    }
+
+    private static boolean endsWithIgnoreCase(final byte[] bytes, final int from, final int to, final byte[] lowercase) {
+        return (to - from) >= lowercase.length && regionMatchesIgnoreCase(bytes, to - lowercase.length, lowercase);
+    }
+
+    private static boolean containsIgnoreCase(final byte[] bytes, final int from, final int to, final byte[] lowercase) {
+        for (int i = from; i <= to - lowercase.length; i++) {
+            if (regionMatchesIgnoreCase(bytes, i, lowercase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatchesIgnoreCase(final byte[] bytes, final int from, final byte[] lowercase) {
+        for (int i = 0; i < lowercase.length; i++) {
+            final byte b = bytes[from + i];
+            final byte c = (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+            if (c != lowercase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // `-1` if not a valid non-negative number
+    private static long parseLong(final byte[] bytes, final int from, final int to, final int radix) {
+        if (from >= to || (to - from) > 15) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final int digit = Character.digit(bytes[i], radix);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+}
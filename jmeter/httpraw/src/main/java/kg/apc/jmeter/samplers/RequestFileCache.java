@@ -0,0 +1,97 @@
+package kg.apc.jmeter.samplers;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import java.util.Optional;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// read-only direct buffers holding the content of request files, shared by all threads:
+//   - files are loaded once, and reloaded when their size or modification time change;
+//     i.e.: when the request file of a test is regenerated.
+//   - files are pre-loaded instead of memory-mapped: regenerating a file truncates it,
+//     which is unsafe while it is mapped.
+public class RequestFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestFileCache.class);
+
+    private final Cache<Path, RequestFile> files;
+    private final long maxFileSize;
+
+    public RequestFileCache(final int maxFiles, final long maxFileSize) {
+        this.files = CacheBuilder.newBuilder()
+            .maximumSize(maxFiles)
+            .build();
+        this.maxFileSize = maxFileSize;
+    }
+
+    // returns the shared buffer holding the content of `path`: callers must write a `duplicate()` of it.
+    // empty if the file is too large to be cached.
+    public Optional<ByteBuffer> get(final Path path) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attrs.size() > maxFileSize) {
+            return Optional.empty();
+        }
+
+        final RequestFile cached = files.getIfPresent(path);
+        if (cached != null && cached.isCurrent(attrs)) {
+            return Optional.of(cached.content);
+        }
+
+        final RequestFile loaded = load(path, attrs);
+        files.put(path, loaded);
+        return Optional.of(loaded.content);
+    }
+
+    public void invalidateAll() {
+        files.invalidateAll();
+    }
+
+    private static RequestFile load(
+        final Path path,
+        final BasicFileAttributes attrs
+    ) throws IOException {
+        final ByteBuffer content = ByteBuffer.allocateDirect((int) attrs.size());
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            // a file that shrinks while being read is reloaded on next use: its attributes changed
+            while (content.hasRemaining() && file.read(content) != -1) {
+                // keep reading
+            }
+        }
+        content.flip();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded request file: " + path + " (" + content.limit() + " bytes)");
+        }
+        return new RequestFile(attrs.size(), attrs.lastModifiedTime(), content.asReadOnlyBuffer());
+    }
+
+    private static final class RequestFile {
+
+        private final long size;
+        private final FileTime lastModified;
+        private final ByteBuffer content;
+
+        private RequestFile(final long size, final FileTime lastModified, final ByteBuffer content) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        private boolean isCurrent(final BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified.equals(attrs.lastModifiedTime());
+        }
+    }
+}
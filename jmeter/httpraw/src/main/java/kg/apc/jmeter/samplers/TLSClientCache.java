@@ -0,0 +1,169 @@
+package kg.apc.jmeter.samplers;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+// TLS client state shared by all threads, so that repeated handshakes to the same host are resumed:
+//   - a single `SSLContext`, whose client session cache holds the sessions / tickets to resume.
+//   - `SSLParameters` ( SNI, endpoint identification ) are built once per host.
+//   - full and resumed handshakes are counted, along with a histogram of their duration; see `Snapshot`.
+public class TLSClientCache {
+
+    // upper bounds, in milliseconds, of the handshake time histogram buckets; the last bucket is unbounded.
+    static final long[] HANDSHAKE_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final SSLContext sslContext;
+    private final ConcurrentMap<String, SSLParameters> parameters = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray fullHandshakes = new AtomicLongArray(HANDSHAKE_BUCKETS.length + 1);
+    private final AtomicLongArray resumedHandshakes = new AtomicLongArray(HANDSHAKE_BUCKETS.length + 1);
+
+    public TLSClientCache(
+        final SSLContext sslContext,
+        final int sessionCacheSize,
+        final int sessionTimeout
+    ) {
+        this.sslContext = sslContext;
+        final SSLSessionContext sessions = sslContext.getClientSessionContext();
+        if (sessions != null) {
+            sessions.setSessionCacheSize(sessionCacheSize);
+            sessions.setSessionTimeout(sessionTimeout);
+        }
+    }
+
+    // engines must be created with the peer's host and port: they are the key to find sessions to resume.
+    public SSLEngine newEngine(final String host, final int port) {
+        final SSLEngine engine = sslContext.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        engine.setSSLParameters(parameters.computeIfAbsent(host, this::newParameters));
+        return engine;
+    }
+
+    private SSLParameters newParameters(final String host) {
+        final SSLParameters params = sslContext.getDefaultSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        // ALL Google APIs and Services require SNI
+        params.setServerNames(Collections.singletonList(new SNIHostName(host)));
+        return params;
+    }
+
+    // resumed sessions were created before the handshake that resumed them.
+    public static boolean isResumed(final SSLSession session, final long handshakeStartMillis) {
+        return session.getCreationTime() < handshakeStartMillis;
+    }
+
+    public void record(final boolean resumed, final long handshakeNanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(handshakeNanos);
+        int bucket = 0;
+        while (bucket < HANDSHAKE_BUCKETS.length && millis > HANDSHAKE_BUCKETS[bucket]) {
+            bucket++;
+        }
+        (resumed ? resumedHandshakes : fullHandshakes).incrementAndGet(bucket);
+    }
+
+    public long getFullHandshakes() {
+        return snapshot().getFullHandshakes();
+    }
+
+    public long getResumedHandshakes() {
+        return snapshot().getResumedHandshakes();
+    }
+
+    // `<=1ms:0 <=2ms:3 ... >5000ms:0` for all handshakes.
+    public String getHandshakeHistogram() {
+        return snapshot().getHandshakeHistogram();
+    }
+
+    // counters are never reset, as they are shared by all tests in the JVM:
+    //   the handshakes of a single test are the difference between snapshots taken when it starts and ends.
+    public Snapshot snapshot() {
+        return new Snapshot(copy(fullHandshakes), copy(resumedHandshakes));
+    }
+
+    private static long[] copy(final AtomicLongArray counters) {
+        final long[] copy = new long[counters.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counters.get(i);
+        }
+        return copy;
+    }
+
+    public static final class Snapshot {
+
+        public static final Snapshot EMPTY = new Snapshot(
+            new long[HANDSHAKE_BUCKETS.length + 1], new long[HANDSHAKE_BUCKETS.length + 1]);
+
+        private final long[] fullHandshakes;
+        private final long[] resumedHandshakes;
+
+        private Snapshot(final long[] fullHandshakes, final long[] resumedHandshakes) {
+            this.fullHandshakes = fullHandshakes;
+            this.resumedHandshakes = resumedHandshakes;
+        }
+
+        // handshakes recorded since `start`.
+        public Snapshot since(final Snapshot start) {
+            final long[] full = new long[fullHandshakes.length];
+            final long[] resumed = new long[resumedHandshakes.length];
+            for (int i = 0; i < full.length; i++) {
+                full[i] = fullHandshakes[i] - start.fullHandshakes[i];
+                resumed[i] = resumedHandshakes[i] - start.resumedHandshakes[i];
+            }
+            return new Snapshot(full, resumed);
+        }
+
+        public long getFullHandshakes() {
+            return sum(fullHandshakes);
+        }
+
+        public long getResumedHandshakes() {
+            return sum(resumedHandshakes);
+        }
+
+        public String getHandshakeHistogram() {
+            final StringBuilder histogram = new StringBuilder();
+            for (int i = 0; i <= HANDSHAKE_BUCKETS.length; i++) {
+                if (i > 0) {
+                    histogram.append(' ');
+                }
+                if (i < HANDSHAKE_BUCKETS.length) {
+                    histogram.append("<=").append(HANDSHAKE_BUCKETS[i]);
+                } else {
+                    histogram.append('>').append(HANDSHAKE_BUCKETS[i - 1]);
+                }
+                histogram.append("ms:").append(fullHandshakes[i] + resumedHandshakes[i]);
+            }
+            return histogram.toString();
+        }
+
+        private static long sum(final long[] counters) {
+            long sum = 0;
+            for (final long counter : counters) {
+                sum += counter;
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "full=" + getFullHandshakes()
+                + " resumed=" + getResumedHandshakes()
+                + " time=[" + getHandshakeHistogram() + "]";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,96 @@
+package kg.apc.jmeter.config;
+
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class IdTokenRefresherTest {
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    static String jwt(final String claims) {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(UTF_8)) + "."
+            + encoder.encodeToString(claims.getBytes(UTF_8)) + ".signature";
+    }
+
+    @Test
+    public void testExpiresAt() {
+        System.out.println("expiresAt");
+        assertEquals(1700003600L, IdTokenRefresher.expiresAt(jwt("{\"aud\":\"https://x\",\"exp\": 1700003600,\"iat\":1700000000}")));
+        assertEquals(0L, IdTokenRefresher.expiresAt(jwt("{\"aud\":\"https://x\"}")));
+        assertEquals(0L, IdTokenRefresher.expiresAt("not-a-jwt"));
+        assertEquals(0L, IdTokenRefresher.expiresAt("a.%%%.c"));
+    }
+
+    @Test
+    public void testNextRefresh() {
+        System.out.println("nextRefresh");
+        IdTokenRefresher instance = new IdTokenRefresher("test", () -> "", token -> {}, scheduler, 300, 600, 30);
+        // refreshed 5 minutes ahead of expiration
+        assertEquals(3300L, instance.nextRefresh(jwt("{\"exp\":1700003600}"), 1700000000L));
+        // never sooner than a retry
+        assertEquals(30L, instance.nextRefresh(jwt("{\"exp\":1700000100}"), 1700000000L));
+        // unknown expiration
+        assertEquals(600L, instance.nextRefresh("opaque", 1700000000L));
+    }
+
+    @Test
+    public void testStart() {
+        System.out.println("start");
+        final String token = jwt("{\"exp\":" + (System.currentTimeMillis() / 1000 + 3600) + "}");
+        final AtomicReference<String> sink = new AtomicReference<>();
+        IdTokenRefresher instance = new IdTokenRefresher("test", () -> token, sink::set, scheduler, 300, 600, 30);
+        assertEquals(token, instance.start());
+        assertEquals(token, sink.get());
+        assertEquals(1, instance.getRefreshes());
+        assertEquals(0, instance.getFailures());
+    }
+
+    @Test
+    public void testRefresh_failureKeepsToken() throws Exception {
+        System.out.println("refresh_failureKeepsToken");
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicReference<String> sink = new AtomicReference<>();
+        // an already expiring token is refreshed after `retry` seconds
+        IdTokenRefresher instance = new IdTokenRefresher("test", () -> {
+            if (calls.incrementAndGet() == 1) {
+                return jwt("{\"exp\":1}");
+            }
+            throw new IllegalStateException("metadata server unavailable");
+        }, sink::set, scheduler, 300, 600, 1);
+        final String token = instance.start();
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (instance.getFailures() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, instance.getFailures());
+        assertEquals(token, instance.getToken());
+        assertEquals(token, sink.get());
+    }
+
+    @Test
+    public void testStart_afterShutdown() {
+        System.out.println("start_afterShutdown");
+        scheduler.shutdownNow();
+        IdTokenRefresher instance = new IdTokenRefresher("test", () -> "opaque", token -> {}, scheduler, 300, 600, 30);
+        assertEquals("opaque", instance.start());
+    }
+}
@@ -0,0 +1,100 @@
+
+package kg.apc.jmeter.config;
+
+import kg.apc.emulators.TestJMeterUtils;
+import org.apache.jmeter.testelement.TestElement;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TestTargetConfigGuiTest {
+
+    public TestTargetConfigGuiTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        TestJMeterUtils.createJmeterEnv();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getStaticLabel method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testGetStaticLabel() {
+        System.out.println("getStaticLabel");
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        String result = instance.getStaticLabel();
+        assertTrue(result.length()>0);
+    }
+
+    /**
+     * Test of getLabelResource method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testGetLabelResource() {
+        System.out.println("getLabelResource");
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        String result = instance.getLabelResource();
+        assertTrue(result.length()>0);
+    }
+
+    /**
+     * Test of configure method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testConfigure() {
+        System.out.println("configure");
+        TestElement element = new TestTargetConfig();
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        instance.configure(element);
+    }
+
+    /**
+     * Test of createTestElement method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testCreateTestElement() {
+        System.out.println("createTestElement");
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        TestElement result = instance.createTestElement();
+        assertTrue(result instanceof TestTargetConfig);
+    }
+
+    /**
+     * Test of modifyTestElement method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testModifyTestElement() {
+        System.out.println("modifyTestElement");
+        TestElement te = new TestTargetConfig();
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        instance.modifyTestElement(te);
+    }
+
+    /**
+     * Test of clearGui method, of class TestTargetConfigGui.
+     */
+    @Test
+    public void testClearGui() {
+        System.out.println("clearGui");
+        TestTargetConfigGui instance = new TestTargetConfigGui();
+        instance.clearGui();
+    }
+
+}
\ No newline at end of file
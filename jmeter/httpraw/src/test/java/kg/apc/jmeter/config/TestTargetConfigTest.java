@@ -0,0 +1,100 @@
+package kg.apc.jmeter.config;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpServer;
+
+import kg.apc.emulators.TestJMeterUtils;
+import org.apache.jmeter.util.JMeterUtils;
+import org.junit.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class TestTargetConfigTest {
+
+    private HttpServer server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        TestJMeterUtils.createJmeterEnv();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static TestTargetConfig newConfig() {
+        TestTargetConfig instance = new TestTargetConfig();
+        instance.setTestId("tid");
+        instance.setMethod("POST");
+        instance.setProto("https");
+        instance.setHost("example.com");
+        instance.setPort("8443");
+        instance.setPath("/test");
+        return instance;
+    }
+
+    @Test
+    public void testGetUrl() {
+        System.out.println("getUrl");
+        assertEquals("https://example.com:8443/test", newConfig().getUrl());
+        assertEquals("https://:443/", new TestTargetConfig().getUrl());
+    }
+
+    @Test
+    public void testGetDuration() {
+        System.out.println("getDuration");
+        TestTargetConfig instance = new TestTargetConfig();
+        assertEquals(0, instance.getDuration());
+        instance.setDuration("60");
+        assertEquals(60, instance.getDuration());
+        instance.setDuration("${__P(duration)}");
+        assertEquals(0, instance.getDuration());
+    }
+
+    @Test
+    public void testTestStarted_url() {
+        System.out.println("testStarted_url");
+        TestTargetConfig instance = newConfig();
+        instance.setUrlProperty("test_target_url");
+        instance.testStarted();
+        try {
+            assertEquals("https://example.com:8443/test", JMeterUtils.getProperty("test_target_url"));
+        } finally {
+            instance.testEnded();
+        }
+    }
+
+    @Test
+    public void testTestStarted_token() throws Exception {
+        System.out.println("testStarted_token");
+        final String token = IdTokenRefresherTest.jwt("{\"exp\":" + (System.currentTimeMillis() / 1000 + 3600) + "}");
+        final AtomicReference<String> request = new AtomicReference<>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/identity", exchange -> {
+            request.set(exchange.getRequestURI().getRawQuery() + "|" + exchange.getRequestHeaders().getFirst("Metadata-Flavor"));
+            final byte[] body = (token + "\n").getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TestTargetConfig instance = newConfig();
+        instance.setAudience("https://example.com/test");
+        instance.setTokenUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/identity?audience=");
+        instance.setTokenProperty("test_target_token");
+        instance.testStarted();
+        try {
+            assertEquals(token, JMeterUtils.getProperty("test_target_token"));
+            assertEquals("audience=https%3A%2F%2Fexample.com%2Ftest|Google", request.get());
+        } finally {
+            instance.testEnded();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package kg.apc.jmeter.modifiers;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class RawRequestIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBuild() throws IOException {
+        System.out.println("build");
+        File file = folder.newFile("rawdata.txt");
+        Files.write(file.toPath(), "\r\n4 first\r\nTEST\n\n2\r\nOK\r\n0\r\nIGNORED".getBytes(StandardCharsets.UTF_8));
+        RawRequestIndex instance = RawRequestIndex.build(file.toPath());
+        assertEquals(2, instance.size());
+        assertEquals("TEST", instance.get(0, false));
+        assertEquals("OK", instance.get(1, false));
+        assertEquals("4f4b", instance.get(1, true));
+    }
+
+    @Test
+    public void testBuild_empty() throws IOException {
+        System.out.println("build_empty");
+        File file = folder.newFile("empty.txt");
+        assertEquals(0, RawRequestIndex.build(file.toPath()).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testBuild_broken() throws IOException {
+        System.out.println("build_broken");
+        String path = RawRequestIndexTest.class.getResource("/rawdata_broken.txt").getPath();
+        RawRequestIndex.build(Paths.get(path));
+    }
+}
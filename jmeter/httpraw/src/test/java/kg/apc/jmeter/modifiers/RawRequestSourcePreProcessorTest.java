@@ -10,6 +10,7 @@ import org.junit.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -138,6 +139,113 @@ public class RawRequestSourcePreProcessorTest {
         }
     }
 
+    @Test
+    public void testProcess_indexed() {
+        System.out.println("indexed");
+        RawRequestSourcePreProcessor sequential = new RawRequestSourcePreProcessor();
+        sequential.testStarted();
+        sequential.setFileName(basedir + "/rawdata_crlf_metaline.txt");
+        sequential.setRewindOnEOF(true);
+
+        RawRequestSourcePreProcessor instance = new RawRequestSourcePreProcessor();
+        instance.setFileName(basedir + "/rawdata_crlf_metaline.txt");
+        instance.setRewindOnEOF(true);
+        instance.setIndexed(true);
+        instance.testStarted();
+        for (int n = 1; n < 12; n++) {
+            sequential.process();
+            String expected = JMeterContextService.getContext().getVariables().get(sequential.getVarName());
+            instance.process();
+            String result = JMeterContextService.getContext().getVariables().get(instance.getVarName());
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testProcess_indexed_eof() {
+        System.out.println("indexed_eof");
+        RawRequestSourcePreProcessor instance = new RawRequestSourcePreProcessor();
+        instance.setFileName(basedir + "/rawdata_nonzeroterm.txt");
+        instance.setIndexed(true);
+        instance.testStarted();
+        int n = 1;
+        try {
+            for (; n < 20; n++) {
+                instance.process();
+            }
+            fail("EOF expected");
+        } catch (RuntimeEOFException ex) {
+            assertEquals(6, n);
+        }
+    }
+
+    @Test
+    public void testProcess_indexed_hex() {
+        System.out.println("indexed_hex");
+        RawRequestSourcePreProcessor instance = new RawRequestSourcePreProcessor();
+        instance.testStarted();
+        instance.setEncodeHex(true);
+        instance.setIndexed(true);
+        instance.setFileName(basedir + "/protobuf.one.ammo");
+        instance.setVarName("rawData");
+        instance.process();
+        byte[] ar = BinaryTCPClientImpl.hexStringToByteArray(JMeterContextService.getContext().getVariables().get(instance.getVarName()));
+
+        assertTrue(63 != ar[210]);
+        assertEquals(3130, ar.length);
+        assertEquals(12, ar[1]);
+    }
+
+    @Test
+    public void testProcess_indexed_broken() {
+        System.out.println("indexed_broken");
+        RawRequestSourcePreProcessor instance = new RawRequestSourcePreProcessor();
+        instance.setFileName(basedir + "/rawdata_broken.txt");
+        instance.setIndexed(true);
+        instance.testStarted();
+        int n = 1;
+        try {
+            for (; n < 20; n++) {
+                instance.process();
+            }
+        } catch (RuntimeException ex) {
+            // falls back to reading the file sequentially
+            assertEquals(3, n);
+        }
+    }
+
+    @Test
+    public void testProcess_indexed_concurrent() throws InterruptedException {
+        System.out.println("indexed_concurrent");
+        final RawRequestSourcePreProcessor instance = new RawRequestSourcePreProcessor();
+        instance.setFileName(basedir + "/rawdata_zeroterm_looped.txt");
+        instance.setIndexed(true);
+        instance.testStarted();
+
+        final AtomicInteger claimed = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            instance.process();
+                            claimed.incrementAndGet();
+                        }
+                    } catch (RuntimeEOFException ex) {
+                        // all records claimed
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(5, claimed.get());
+    }
+
     @Test
     public void testProcess_file_not_found() {
         System.out.println("file_not_found");
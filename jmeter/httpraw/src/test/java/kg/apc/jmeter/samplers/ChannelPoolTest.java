@@ -0,0 +1,63 @@
+package kg.apc.jmeter.samplers;
+
+import kg.apc.emulators.SocketChannelEmul;
+import org.junit.*;
+
+import java.nio.channels.ByteChannel;
+
+import static org.junit.Assert.*;
+
+public class ChannelPoolTest {
+
+    @Test
+    public void testTake() throws Exception {
+        System.out.println("take");
+        ChannelPool instance = new ChannelPool(4, 60000);
+        SocketChannelEmul channel = new SocketChannelEmul();
+        assertNull(instance.take("http://localhost:80"));
+        instance.release("http://localhost:80", channel);
+        assertNull(instance.take("https://localhost:443"));
+        assertSame(channel, instance.take("http://localhost:80"));
+        assertNull(instance.take("http://localhost:80"));
+    }
+
+    @Test
+    public void testTake_closed() throws Exception {
+        System.out.println("take_closed");
+        ChannelPool instance = new ChannelPool(4, 60000);
+        SocketChannelEmul channel = new SocketChannelEmul();
+        instance.release("http://localhost:80", channel);
+        channel.close();
+        assertNull(instance.take("http://localhost:80"));
+    }
+
+    @Test
+    public void testTake_expired() throws Exception {
+        System.out.println("take_expired");
+        ChannelPool instance = new ChannelPool(4, 0);
+        SocketChannelEmul channel = new SocketChannelEmul();
+        instance.release("http://localhost:80", channel);
+        Thread.sleep(1);
+        assertNull(instance.take("http://localhost:80"));
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testRelease_evictsLeastRecentlyUsed() throws Exception {
+        System.out.println("release_evictsLeastRecentlyUsed");
+        ChannelPool instance = new ChannelPool(2, 60000);
+        ByteChannel first = new SocketChannelEmul();
+        ByteChannel second = new SocketChannelEmul();
+        ByteChannel third = new SocketChannelEmul();
+        instance.release("http://first:80", first);
+        instance.release("http://second:80", second);
+        instance.release("http://third:80", third);
+        assertEquals(2, instance.size());
+        assertFalse(first.isOpen());
+        assertTrue(second.isOpen());
+        instance.closeAll();
+        assertEquals(0, instance.size());
+        assertFalse(second.isOpen());
+        assertFalse(third.isOpen());
+    }
+}
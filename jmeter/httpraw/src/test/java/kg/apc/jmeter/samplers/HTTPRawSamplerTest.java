@@ -13,6 +13,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+
+import com.google.common.io.BaseEncoding;
 
 import static org.junit.Assert.*;
 
@@ -22,14 +27,31 @@ public class HTTPRawSamplerTest {
 
     private class HTTPRawSamplerEmul extends HTTPRawSampler {
 
-        SocketChannelEmul sockEmul = new SocketChannelEmul();
+        SocketChannelEmul sockEmul = new GatheringSocketChannelEmul();
+        int channelsOpened = 0;
 
         @Override
-        protected AbstractSelectableChannel getChannel() throws IOException {
+        protected SocketChannel getChannel() throws IOException {
+            channelsOpened++;
             return sockEmul;
         }
     }
 
+    // `SocketChannelEmul` does not implement gathering writes
+    private static class GatheringSocketChannelEmul extends SocketChannelEmul {
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (srcs[i].hasRemaining()) {
+                    written += write(srcs[i]);
+                }
+            }
+            return written;
+        }
+    }
+
     public HTTPRawSamplerTest() {
     }
 
@@ -114,6 +136,46 @@ public class HTTPRawSamplerTest {
         assertTrue(!instance.sockEmul.isOpen());
     }
 
+    @Test
+    public void testSample_chunked() throws MalformedURLException, IOException {
+        System.out.println("sample_chunked");
+        String req = "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+        String resp = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4\r\nTEST\r\nA\r\n0123456789\r\n0\r\n\r\n";
+        instance.setRequestData(req);
+        instance.setParseResult(true);
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+
+        SampleResult result = instance.sample(null);
+        assertTrue(result.isSuccessful());
+        assertEquals("200", result.getResponseCode());
+        assertEquals("OK", result.getResponseMessage());
+        assertEquals("Transfer-Encoding: chunked\r\n", result.getResponseHeaders());
+        assertEquals("TEST0123456789", result.getResponseDataAsString());
+    }
+
+    @Test
+    public void testSample_discard() throws Exception {
+        System.out.println("sample_discard");
+        String req = "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+        String body = TestJMeterUtils.getTestData(100000);
+        String resp = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+        instance.setRequestData(req);
+        instance.setParseResult(true);
+        instance.setDiscardBody(true);
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+
+        SampleResult result = instance.sample(null);
+        String md5 = BaseEncoding.base16().lowerCase()
+                .encode(MessageDigest.getInstance("MD5").digest(body.getBytes()));
+        assertTrue(result.isSuccessful());
+        assertEquals("200", result.getResponseCode());
+        assertEquals(md5, result.getResponseDataAsString());
+        assertEquals(resp.length(), result.getBytes());
+    }
+
     /**
      * Test of sample method, of class HTTPRawSampler.
      */
@@ -121,7 +183,7 @@ public class HTTPRawSamplerTest {
     public void testSample_keepalive() throws MalformedURLException, IOException {
         System.out.println("sample");
         String req = "TEST";
-        String resp = "TEST";
+        String resp = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nTEST";
         instance.setRequestData(req);
         instance.setUseKeepAlive(true);
 
@@ -136,6 +198,59 @@ public class HTTPRawSamplerTest {
         assertFalse(instance.sockEmul.isOpen());
     }
 
+    @Test
+    public void testSample_keepalive_reused() throws MalformedURLException, IOException {
+        System.out.println("sample_keepalive_reused");
+        String req = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        String resp = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nTEST\r\n0\r\n\r\n";
+        instance.setRequestData(req);
+        instance.setUseKeepAlive(true);
+        instance.setParseResult(true);
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+        SampleResult result = instance.sample(null);
+        assertEquals("200", result.getResponseCode());
+        assertTrue(instance.sockEmul.isOpen());
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+        result = instance.sample(null);
+        assertEquals("200", result.getResponseCode());
+        assertTrue(result.isSuccessful());
+        assertEquals(1, instance.channelsOpened);
+
+        instance.threadFinished();
+        assertFalse(instance.sockEmul.isOpen());
+    }
+
+    @Test
+    public void testSample_keepalive_serverClose() throws MalformedURLException, IOException {
+        System.out.println("sample_keepalive_serverClose");
+        String resp = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\nConnection: close\r\n\r\nTEST";
+        instance.setRequestData("TEST");
+        instance.setUseKeepAlive(true);
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+        instance.sample(null);
+        assertFalse(instance.sockEmul.isOpen());
+    }
+
+    @Test
+    public void testSample_keepalive_stale() throws MalformedURLException, IOException {
+        System.out.println("sample_keepalive_stale");
+        String resp = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nTEST";
+        instance.setRequestData("TEST");
+        instance.setUseKeepAlive(true);
+
+        instance.sockEmul.setBytesToRead(ByteBuffer.wrap(resp.getBytes()));
+        instance.sample(null);
+        assertEquals(1, instance.channelsOpened);
+
+        // the server closed the idle connection: the request is sent again on a new one
+        instance.sockEmul.setBytesToRead(ByteBuffer.allocate(0));
+        instance.sample(null);
+        assertEquals(2, instance.channelsOpened);
+    }
+
     /**
      * Test of setUseKeepAlive method, of class HTTPRawSampler.
      */
@@ -321,6 +436,57 @@ public class HTTPRawSamplerTest {
         assertEquals(new File(file).length() + prefix.length(), instance.sockEmul.getWrittenBytesCount());
     }
 
+    @Test
+    public void testProcessIO_fileTwice() throws Exception {
+        System.out.println("processIO");
+        instance.setPort("0");
+        String file = this.getClass().getResource("/testSendFile.raw").getPath();
+        instance.setFileToSend(file);
+        SampleResult res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        assertEquals(2 * new File(file).length(), instance.sockEmul.getWrittenBytesCount());
+    }
+
+    @Test
+    public void testProcessIO_fileRegenerated() throws Exception {
+        System.out.println("processIO");
+        instance.setPort("0");
+        File file = File.createTempFile("testSendFile", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "first".getBytes());
+        instance.setFileToSend(file.getPath());
+        SampleResult res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        assertEquals(ByteBuffer.wrap("first".getBytes()), instance.sockEmul.getWrittenBytes());
+
+        Files.write(file.toPath(), "second".getBytes());
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 1000));
+        res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        assertEquals(ByteBuffer.wrap("second".getBytes()), instance.sockEmul.getWrittenBytes());
+    }
+
+    @Test
+    public void testProcessIO_requestDataChanged() throws Exception {
+        System.out.println("processIO");
+        instance.setRequestData("GET /first HTTP/1.1\r\n\r\n");
+        SampleResult res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        String req = "GET /s\u00e9cond HTTP/1.1\r\n\r\n";
+        instance.setRequestData(req);
+        res = new SampleResult();
+        res.sampleStart();
+        instance.processIO(res);
+        assertEquals(ByteBuffer.wrap(req.getBytes("UTF-8")), instance.sockEmul.getWrittenBytes());
+    }
+
     /**
      * Test of getFileToSend method, of class HTTPRawSampler.
      */
@@ -0,0 +1,173 @@
+package kg.apc.jmeter.samplers;
+
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class HTTPResponseParserTest {
+
+    private HTTPResponseParser instance;
+
+    @Before
+    public void setUp() {
+        instance = new HTTPResponseParser();
+    }
+
+    @Test
+    public void testUpdate_contentLength() {
+        System.out.println("update_contentLength");
+        assertTrue(update("HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nTEST"));
+        assertEquals(200, instance.getStatusCode());
+        assertTrue(instance.isKeepAlive());
+    }
+
+    @Test
+    public void testUpdate_contentLength_partial() {
+        System.out.println("update_contentLength_partial");
+        assertFalse(update("HTTP/1.1 200 OK\r\ncontent-length:  10 \r\n\r\nTEST"));
+        assertFalse(instance.isKeepAlive());
+        assertTrue(update("TESTTE"));
+    }
+
+    @Test
+    public void testUpdate_chunked_byteByByte() {
+        System.out.println("update_chunked_byteByByte");
+        String resp = "HTTP/1.1 200 OK\r\nTransfer-Encoding: gzip, chunked\r\n\r\n"
+                + "4;ext=1\r\nTEST\r\nA\r\n0123456789\r\n0\r\nX-Trailer: 1\r\n\r\n";
+        for (int i = 0; i < resp.length() - 1; i++) {
+            assertFalse(update(resp.substring(i, i + 1)));
+        }
+        assertTrue(update(resp.substring(resp.length() - 1)));
+        assertTrue(instance.isKeepAlive());
+    }
+
+    @Test
+    public void testUpdate_noBody() {
+        System.out.println("update_noBody");
+        assertTrue(update("HTTP/1.1 204 No Content\r\n\r\n"));
+        instance.reset(false);
+        assertTrue(update("HTTP/1.1 304 Not Modified\r\nContent-Length: 100\r\n\r\n"));
+        instance.reset(true);
+        assertTrue(update("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n"));
+    }
+
+    @Test
+    public void testUpdate_interim() {
+        System.out.println("update_interim");
+        assertFalse(update("HTTP/1.1 100 Continue\r\n\r\n"));
+        assertTrue(update("HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n"));
+        assertEquals(201, instance.getStatusCode());
+    }
+
+    @Test
+    public void testUpdate_untilClose() {
+        System.out.println("update_untilClose");
+        assertFalse(update("HTTP/1.1 200 OK\r\n\r\nTEST"));
+        assertFalse(instance.isComplete());
+        assertFalse(instance.isKeepAlive());
+    }
+
+    @Test
+    public void testUpdate_notHTTP() {
+        System.out.println("update_notHTTP");
+        assertFalse(update("TEST\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(instance.isKeepAlive());
+    }
+
+    @Test
+    public void testIsKeepAlive_connection() {
+        System.out.println("isKeepAlive_connection");
+        assertTrue(update("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(instance.isKeepAlive());
+        instance.reset(false);
+        assertTrue(update("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(instance.isKeepAlive());
+        instance.reset(false);
+        assertTrue(update("HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 0\r\n\r\n"));
+        assertTrue(instance.isKeepAlive());
+    }
+
+    @Test
+    public void testUpdate_doesNotConsume() {
+        System.out.println("update_doesNotConsume");
+        ByteBuffer buf = ByteBuffer.wrap("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes());
+        assertTrue(instance.update(buf));
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    public void testUpdate_statusAndHeaders() {
+        System.out.println("update_statusAndHeaders");
+        assertTrue(update("HTTP/1.1 404 Not Found \r\nContent-Length: 0\r\nX-Test: 1\r\n\r\n"));
+        assertTrue(instance.isHTTP());
+        assertEquals(404, instance.getStatusCode());
+        assertEquals("Not Found", instance.getStatusMessage());
+        assertEquals("Content-Length: 0\r\nX-Test: 1\r\n", instance.getHeaders());
+    }
+
+    @Test
+    public void testUpdate_bodySink_chunked() {
+        System.out.println("update_bodySink_chunked");
+        String resp = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4\r\nTEST\r\nA\r\n0123456789\r\n0\r\n\r\n";
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < resp.length(); i += 7) {
+            update(resp.substring(i, Math.min(i + 7, resp.length())), body);
+        }
+        assertTrue(instance.isComplete());
+        assertEquals("TEST0123456789", body.toString());
+        assertEquals(14, instance.getBodyLength());
+        assertEquals("Transfer-Encoding: chunked\r\n", instance.getHeaders());
+    }
+
+    @Test
+    public void testUpdate_bodySink_untilClose() {
+        System.out.println("update_bodySink_untilClose");
+        StringBuilder body = new StringBuilder();
+        assertFalse(update("HTTP/1.0 200 OK\r\n\r\nTE", body));
+        assertFalse(update("ST", body));
+        assertEquals("TEST", body.toString());
+    }
+
+    @Test
+    public void testUpdate_bodySink_notHTTP() {
+        System.out.println("update_bodySink_notHTTP");
+        StringBuilder body = new StringBuilder();
+        assertFalse(update("HTTX\r\nTEST", body));
+        assertFalse(instance.isHTTP());
+        assertEquals("HTTX\r\nTEST", body.toString());
+        instance.reset(false);
+        body.setLength(0);
+        assertFalse(update("HTTP/1.1 abc\r\nTEST", body));
+        assertFalse(instance.isHTTP());
+        assertEquals("HTTP/1.1 abc\r\nTEST", body.toString());
+    }
+
+    @Test
+    public void testUpdate_bodySink_doesNotConsume() {
+        System.out.println("update_bodySink_doesNotConsume");
+        ByteBuffer buf = ByteBuffer.wrap("HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nTEST".getBytes());
+        final int[] range = new int[2];
+        assertTrue(instance.update(buf, (b, from, to) -> {
+            range[0] = from;
+            range[1] = to;
+        }));
+        assertEquals(0, buf.position());
+        assertEquals(buf.capacity() - 4, range[0]);
+        assertEquals(buf.capacity(), range[1]);
+    }
+
+    private boolean update(String data) {
+        return instance.update(ByteBuffer.wrap(data.getBytes()));
+    }
+
+    private boolean update(String data, final StringBuilder body) {
+        return instance.update(ByteBuffer.wrap(data.getBytes()), (buf, from, to) -> {
+            for (int i = from; i < to; i++) {
+                body.append((char) buf.get(i));
+            }
+        });
+    }
+}
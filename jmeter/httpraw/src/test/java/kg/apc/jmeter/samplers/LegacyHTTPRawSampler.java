@@ -0,0 +1,157 @@
+package kg.apc.jmeter.samplers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.UnsignedLong;
+
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+
+// the plain HTTP path of `HTTPRawSampler` as it was before requests were cached and responses were parsed
+// as they arrive; kept only as the baseline of the benchmarks:
+//   - the request head is encoded, and the request file is opened and streamed, on every sample.
+//   - the response is copied whole, and parsed afterwards with a `Scanner` over all of it.
+abstract class LegacyHTTPRawSampler extends AbstractIPSampler {
+
+    private static final String RNpattern = "\\r\\n";
+    private static final String SPACE = " ";
+    private static final Pattern anyContent = Pattern.compile(".+", Pattern.DOTALL);
+
+    private String fileToSend = "";
+    private boolean parseResult;
+
+    public void setFileToSend(final String fileToSend) {
+        this.fileToSend = fileToSend;
+    }
+
+    public void setParseResult(final boolean parseResult) {
+        this.parseResult = parseResult;
+    }
+
+    @Override
+    protected abstract SocketChannel getChannel() throws IOException;
+
+    @Override
+    public boolean interrupt() {
+        return true;
+    }
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = super.sample(entry);
+        if (parseResult) {
+            parseResponse(res);
+        }
+        return res;
+    }
+
+    @Override
+    protected byte[] processIO(SampleResult res) throws Exception {
+        final ByteChannel socket = getSocketChannel();
+        if (!getRequestData().isEmpty()) {
+            final ByteBuffer sendBuf = ByteBuffer.wrap(
+                getRequestData().getBytes(StandardCharsets.UTF_8)
+            );
+            socket.write(sendBuf);
+        }
+        sendFile(fileToSend, socket);
+        return readResponse(socket, res);
+    }
+
+    private ByteChannel getSocketChannel() throws IOException {
+        final SocketChannel socket = getChannel();
+        socket.connect(new InetSocketAddress(getHostName(), Integer.parseInt(getPort())));
+        return socket;
+    }
+
+    private byte[] readResponse(
+        final ByteChannel channel,
+        SampleResult res
+    ) throws IOException {
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        final long responseSize = ByteStreams.copy(channel, Channels.newChannel(response));
+        res.sampleEnd();
+        channel.close();
+        res.setBytes(
+            UnsignedLong.valueOf(responseSize).intValue()
+        );
+        return response.toByteArray();
+    }
+
+    private void sendFile(
+        final String filename,
+        final ByteChannel socket
+    ) throws IOException {
+        if (filename.isEmpty()) {
+            return;
+        }
+
+        final ReadableByteChannel source = Files.newByteChannel(
+            Paths.get(filename), EnumSet.of(StandardOpenOption.READ)
+        );
+
+        ByteStreams.copy(source, socket);
+        source.close();
+    }
+
+    static void parseResponse(SampleResult res) {
+        Scanner scanner = new Scanner(res.getResponseDataAsString());
+        scanner.useDelimiter(RNpattern);
+
+        if (!scanner.hasNextLine()) {
+            return;
+        }
+
+        String httpStatus = scanner.nextLine();
+
+        int s = httpStatus.indexOf(SPACE);
+        int e = httpStatus.indexOf(SPACE, s + 1);
+        if (s < e) {
+            String rc = httpStatus.substring(s, e).trim();
+            try {
+                int rcInt = Integer.parseInt(rc);
+                if (rcInt < 100 || rcInt > 599) {
+                    return;
+                }
+                res.setResponseCode(rc);
+                res.setResponseMessage(httpStatus.substring(e).trim());
+            } catch (NumberFormatException ex) {
+                return;
+            }
+        } else {
+            return;
+        }
+
+        if (!scanner.hasNextLine()) {
+            return;
+        }
+
+        StringBuilder headers = new StringBuilder();
+        String line;
+        while (scanner.hasNextLine() && !(line = scanner.nextLine()).isEmpty()) {
+            headers.append(line).append(CRLF);
+        }
+        res.setResponseHeaders(headers.toString());
+
+        if (scanner.hasNext()) {
+            res.setResponseData(scanner.next(anyContent).getBytes());
+        } else {
+            res.setResponseData("".getBytes());
+        }
+    }
+}
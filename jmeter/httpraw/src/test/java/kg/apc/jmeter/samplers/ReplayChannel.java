@@ -0,0 +1,153 @@
+package kg.apc.jmeter.samplers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Collections;
+import java.util.Set;
+
+// in-memory connection for benchmarks: replays a response, and copies written bytes into a
+// reused direct buffer, as the kernel would, so that requests are not free to write.
+//   - unlike `SocketChannelEmul`, it keeps nothing per sample: the sampler is all that is measured.
+//   - gathering writes are supported, as they are by `SocketChannel`.
+class ReplayChannel extends SocketChannel {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 80);
+
+    private final ByteBuffer response;
+    private final ByteBuffer wire;
+    private long written;
+
+    ReplayChannel(final ByteBuffer response, final ByteBuffer wire) {
+        super(SelectorProvider.provider());
+        this.response = response.duplicate();
+        this.wire = wire;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        if (!response.hasRemaining()) {
+            return -1;
+        }
+        final int n = Math.min(dst.remaining(), response.remaining());
+        final int limit = response.limit();
+        response.limit(response.position() + n);
+        dst.put(response);
+        response.limit(limit);
+        return n;
+    }
+
+    @Override
+    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+        long read = 0;
+        for (int i = offset; i < offset + length && response.hasRemaining(); i++) {
+            read += Math.max(0, read(dsts[i]));
+        }
+        return (read == 0 && !response.hasRemaining()) ? -1 : read;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final int n = src.remaining();
+        while (src.hasRemaining()) {
+            wire.clear();
+            final int limit = src.limit();
+            src.limit(src.position() + Math.min(wire.remaining(), src.remaining()));
+            wire.put(src);
+            src.limit(limit);
+        }
+        written += n;
+        return n;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        long n = 0;
+        for (int i = offset; i < offset + length; i++) {
+            n += write(srcs[i]);
+        }
+        return n;
+    }
+
+    @Override
+    public SocketChannel bind(final SocketAddress local) {
+        return this;
+    }
+
+    @Override
+    public <T> SocketChannel setOption(final SocketOption<T> name, final T value) {
+        return this;
+    }
+
+    @Override
+    public <T> T getOption(final SocketOption<T> name) {
+        return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public SocketChannel shutdownInput() {
+        return this;
+    }
+
+    @Override
+    public SocketChannel shutdownOutput() {
+        return this;
+    }
+
+    @Override
+    public Socket socket() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionPending() {
+        return false;
+    }
+
+    @Override
+    public boolean connect(final SocketAddress remote) {
+        return true;
+    }
+
+    @Override
+    public boolean finishConnect() {
+        return true;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    protected void implCloseSelectableChannel() {
+    }
+
+    @Override
+    protected void implConfigureBlocking(final boolean block) {
+    }
+}
@@ -0,0 +1,83 @@
+package kg.apc.jmeter.samplers;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class RequestFileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RequestFileCache instance;
+
+    @Before
+    public void setUp() {
+        instance = new RequestFileCache(4, 16);
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        System.out.println("get");
+        Path path = write("body", "TEST");
+        Optional<ByteBuffer> result = instance.get(path);
+        assertTrue(result.isPresent());
+        assertTrue(result.get().isDirect());
+        assertTrue(result.get().isReadOnly());
+        assertEquals(ByteBuffer.wrap("TEST".getBytes()), result.get());
+    }
+
+    @Test
+    public void testGet_unchanged() throws IOException {
+        System.out.println("get_unchanged");
+        Path path = write("body", "TEST");
+        ByteBuffer first = instance.get(path).get();
+        assertSame(first, instance.get(path).get());
+    }
+
+    @Test
+    public void testGet_regenerated() throws IOException {
+        System.out.println("get_regenerated");
+        Path path = write("body", "TEST");
+        ByteBuffer first = instance.get(path).get();
+        FileTime lastModified = Files.getLastModifiedTime(path);
+        Files.write(path, "TSET".getBytes());
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        ByteBuffer second = instance.get(path).get();
+        assertNotSame(first, second);
+        assertEquals(ByteBuffer.wrap("TSET".getBytes()), second);
+    }
+
+    @Test
+    public void testGet_empty() throws IOException {
+        System.out.println("get_empty");
+        Path path = write("body", "");
+        assertEquals(0, instance.get(path).get().remaining());
+    }
+
+    @Test
+    public void testGet_tooLarge() throws IOException {
+        System.out.println("get_tooLarge");
+        Path path = write("body", "01234567890123456789");
+        assertFalse(instance.get(path).isPresent());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testGet_missing() throws IOException {
+        System.out.println("get_missing");
+        instance.get(folder.getRoot().toPath().resolve("missing"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), content.getBytes());
+    }
+}
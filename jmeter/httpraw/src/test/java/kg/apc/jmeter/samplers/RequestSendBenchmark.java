@@ -0,0 +1,110 @@
+package kg.apc.jmeter.samplers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kg.apc.emulators.TestJMeterUtils;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.openjdk.jmh.annotations.*;
+
+// samples per second of a single thread, i.e.: per core, replaying a request file of `bodySize` bytes:
+//   - `legacy` opens and streams the file, and encodes the request head, on every sample.
+//   - `cached` sends the cached file and the reused head with a single gathering write.
+//   - responses are tiny, and connections are in memory: see `ReplayChannel`.
+// run with:
+//   mvn -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+//   java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main RequestSendBenchmark
+//   the same for `ResponseParseBenchmark`.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class RequestSendBenchmark {
+
+    private static final String REQUEST = "POST /api/v1/items HTTP/1.1\r\n"
+        + "Host: 127.0.0.1\r\n"
+        + "User-Agent: jmeter-plugins-httpraw\r\n"
+        + "Content-Type: application/octet-stream\r\n"
+        + "Connection: close\r\n\r\n";
+    private static final ByteBuffer RESPONSE = ByteBuffer.wrap(
+        "HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\nOK".getBytes(StandardCharsets.US_ASCII));
+
+    @Param({"0", "1024", "65536"})
+    public int bodySize;
+
+    private final ByteBuffer wire = ByteBuffer.allocateDirect(64 * 1024);
+    private File body;
+    private HTTPRawSampler cached;
+    private LegacyHTTPRawSampler legacy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        TestJMeterUtils.createJmeterEnv();
+        JMeterUtils.setProperty(AbstractIPSampler.RESULT_DATA_LIMIT, Integer.toString(Integer.MAX_VALUE));
+
+        final byte[] bytes = new byte[bodySize];
+        new Random(bodySize).nextBytes(bytes);
+        body = File.createTempFile("request-", ".bin");
+        body.deleteOnExit();
+        Files.write(body.toPath(), bytes);
+        final String fileToSend = (bodySize == 0) ? "" : body.getAbsolutePath();
+
+        cached = new HTTPRawSampler() {
+            @Override
+            protected SocketChannel getChannel() {
+                return new ReplayChannel(RESPONSE, wire);
+            }
+        };
+        cached.setFileToSend(fileToSend);
+
+        legacy = new LegacyHTTPRawSampler() {
+            @Override
+            protected SocketChannel getChannel() {
+                return new ReplayChannel(RESPONSE, wire);
+            }
+        };
+        legacy.setFileToSend(fileToSend);
+
+        for (final AbstractIPSampler sampler : new AbstractIPSampler[] {cached, legacy}) {
+            sampler.setHostName("127.0.0.1");
+            sampler.setPort("80");
+            sampler.setTimeout("0");
+            sampler.setRequestData(REQUEST);
+        }
+
+        // both must send the same request, and get the same response
+        check(cached.sample(null));
+        check(legacy.sample(null));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        body.delete();
+    }
+
+    private static void check(final SampleResult res) {
+        if (!res.isSuccessful() || !res.getResponseDataAsString().endsWith("OK")) {
+            throw new IllegalStateException("unexpected response: " + res.getResponseDataAsString());
+        }
+    }
+
+    @Benchmark
+    public SampleResult cached() {
+        return cached.sample(null);
+    }
+
+    @Benchmark
+    public SampleResult legacy() {
+        return legacy.sample(null);
+    }
+}
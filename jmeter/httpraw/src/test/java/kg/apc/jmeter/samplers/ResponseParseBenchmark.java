@@ -0,0 +1,103 @@
+package kg.apc.jmeter.samplers;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kg.apc.emulators.TestJMeterUtils;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.openjdk.jmh.annotations.*;
+
+// samples per second of a single thread, i.e.: per core, receiving a response with a body of `bodySize` bytes:
+//   - `scanner` reads the raw response, and parses it afterwards with a `Scanner`, as before.
+//   - `parsed` parses the response as it arrives, keeping the body.
+//   - `discarded` parses the response as it arrives, keeping only the size and MD5 digest of the body.
+//   - connections are in memory: see `ReplayChannel`; run it as `RequestSendBenchmark`.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(1)
+@State(Scope.Thread)
+public class ResponseParseBenchmark {
+
+    private static final String REQUEST = "GET /api/v1/items HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n\r\n";
+    private static final char[] TEXT = "abcdefghijklmnopqrstuvwxyz0123456789 \n".toCharArray();
+
+    @Param({"1024", "102400", "10485760"})
+    public int bodySize;
+
+    private final ByteBuffer wire = ByteBuffer.allocateDirect(64 * 1024);
+    private ByteBuffer response;
+    private HTTPRawSampler raw;
+    private HTTPRawSampler parsed;
+    private HTTPRawSampler discarded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TestJMeterUtils.createJmeterEnv();
+        JMeterUtils.setProperty(AbstractIPSampler.RESULT_DATA_LIMIT, Integer.toString(Integer.MAX_VALUE));
+
+        final Random random = new Random(bodySize);
+        final StringBuilder body = new StringBuilder(bodySize);
+        for (int i = 0; i < bodySize; i++) {
+            body.append(TEXT[random.nextInt(TEXT.length)]);
+        }
+        response = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "Content-Length: " + bodySize + "\r\n"
+            + "Connection: close\r\n\r\n" + body).getBytes(StandardCharsets.US_ASCII));
+
+        raw = sampler();
+        parsed = sampler();
+        parsed.setParseResult(true);
+        discarded = sampler();
+        discarded.setDiscardBody(true);
+
+        // all of them must read the whole response
+        check(scanner().getResponseData().length == bodySize, "scanner");
+        check(parsed().getResponseData().length == bodySize, "parsed");
+        check(discarded().getBodySize() == bodySize, "discarded");
+    }
+
+    private HTTPRawSampler sampler() {
+        final HTTPRawSampler sampler = new HTTPRawSampler() {
+            @Override
+            protected SocketChannel getChannel() {
+                return new ReplayChannel(response, wire);
+            }
+        };
+        sampler.setHostName("127.0.0.1");
+        sampler.setPort("80");
+        sampler.setTimeout("0");
+        sampler.setRequestData(REQUEST);
+        return sampler;
+    }
+
+    private static void check(final boolean condition, final String benchmark) {
+        if (!condition) {
+            throw new IllegalStateException("unexpected response: " + benchmark);
+        }
+    }
+
+    @Benchmark
+    public SampleResult scanner() {
+        final SampleResult res = raw.sample(null);
+        LegacyHTTPRawSampler.parseResponse(res);
+        return res;
+    }
+
+    @Benchmark
+    public SampleResult parsed() {
+        return parsed.sample(null);
+    }
+
+    @Benchmark
+    public SampleResult discarded() {
+        return discarded.sample(null);
+    }
+}
@@ -0,0 +1,150 @@
+package kg.apc.jmeter.samplers;
+
+import org.junit.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import tlschannel.ClientTlsChannel;
+import tlschannel.TlsChannel;
+
+import static org.junit.Assert.*;
+
+public class TLSClientCacheTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static KeyStore keyStore;
+    private SSLServerSocket server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TLSClientCacheTest.class.getResourceAsStream("/localhost.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testNewEngine() throws Exception {
+        System.out.println("newEngine");
+        TLSClientCache instance = new TLSClientCache(clientContext(), 16, 60);
+        SSLEngine engine = instance.newEngine("localhost", 443);
+        assertTrue(engine.getUseClientMode());
+        SSLParameters params = engine.getSSLParameters();
+        assertEquals("HTTPS", params.getEndpointIdentificationAlgorithm());
+        assertEquals(new SNIHostName("localhost"), params.getServerNames().get(0));
+        assertEquals("localhost", engine.getPeerHost());
+        assertEquals(443, engine.getPeerPort());
+    }
+
+    @Test
+    public void testHandshake_resumed() throws Exception {
+        System.out.println("handshake_resumed");
+        startServer();
+        TLSClientCache instance = new TLSClientCache(clientContext(), 16, 60);
+        assertFalse(handshake(instance));
+        assertTrue(handshake(instance));
+        assertEquals(1, instance.getFullHandshakes());
+        assertEquals(1, instance.getResumedHandshakes());
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        System.out.println("record");
+        TLSClientCache instance = new TLSClientCache(clientContext(), 16, 60);
+        instance.record(false, TimeUnit.MILLISECONDS.toNanos(1));
+        instance.record(true, TimeUnit.MILLISECONDS.toNanos(3));
+        instance.record(true, TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, instance.getFullHandshakes());
+        assertEquals(2, instance.getResumedHandshakes());
+        assertEquals("<=1ms:1 <=2ms:0 <=5ms:1 <=10ms:0 <=20ms:0 <=50ms:0 <=100ms:0 <=200ms:0 "
+                + "<=500ms:0 <=1000ms:0 <=2000ms:0 <=5000ms:0 >5000ms:1", instance.getHandshakeHistogram());
+    }
+
+    @Test
+    public void testSnapshot_since() throws Exception {
+        System.out.println("snapshot_since");
+        TLSClientCache instance = new TLSClientCache(clientContext(), 16, 60);
+        instance.record(false, TimeUnit.MILLISECONDS.toNanos(1));
+        instance.record(true, TimeUnit.MILLISECONDS.toNanos(3));
+        TLSClientCache.Snapshot start = instance.snapshot();
+        instance.record(true, TimeUnit.MILLISECONDS.toNanos(3));
+        instance.record(false, TimeUnit.SECONDS.toNanos(10));
+        TLSClientCache.Snapshot handshakes = instance.snapshot().since(start);
+        assertEquals(1, handshakes.getFullHandshakes());
+        assertEquals(1, handshakes.getResumedHandshakes());
+        assertEquals("<=1ms:0 <=2ms:0 <=5ms:1 <=10ms:0 <=20ms:0 <=50ms:0 <=100ms:0 <=200ms:0 "
+                + "<=500ms:0 <=1000ms:0 <=2000ms:0 <=5000ms:0 >5000ms:1", handshakes.getHandshakeHistogram());
+        assertEquals(2, instance.getFullHandshakes());
+        assertEquals(2, instance.snapshot().since(TLSClientCache.Snapshot.EMPTY).getResumedHandshakes());
+    }
+
+    // whether the handshake was resumed
+    private boolean handshake(TLSClientCache instance) throws Exception {
+        SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()));
+        SSLEngine engine = instance.newEngine("localhost", server.getLocalPort());
+        try (TlsChannel channel = ClientTlsChannel.newBuilder(socket, engine).build()) {
+            long handshakeStart = System.currentTimeMillis();
+            long start = System.nanoTime();
+            channel.handshake();
+            boolean resumed = TLSClientCache.isResumed(engine.getSession(), handshakeStart);
+            instance.record(resumed, System.nanoTime() - start);
+            // TLS 1.3 session tickets are sent after the handshake
+            channel.write(ByteBuffer.wrap("x".getBytes()));
+            channel.read(ByteBuffer.allocate(1));
+            return resumed;
+        }
+    }
+
+    private void startServer() throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket s = server.accept()) {
+                    InputStream in = s.getInputStream();
+                    OutputStream out = s.getOutputStream();
+                    in.read();
+                    out.write('x');
+                    out.flush();
+                } catch (Exception ex) {
+                    // closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        return context;
+    }
+}
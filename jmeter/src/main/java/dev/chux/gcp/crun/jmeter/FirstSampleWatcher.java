@@ -0,0 +1,81 @@
+package dev.chux.gcp.crun.jmeter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// records when the first sample line goes through a test's output:
+//   CSV sample lines start with a 13 digits epoch followed by a comma,
+//   header and log lines never do; once the first sample is seen
+//   this stream becomes a plain pass-through.
+class FirstSampleWatcher extends FilterOutputStream {
+
+  private static final Logger logger = LoggerFactory.getLogger(FirstSampleWatcher.class);
+
+  private static final int EPOCH_DIGITS = 13;
+
+  private final JMeterTestConfig config;
+
+  // number of leading digits of the current line, `-1` when the line is not a sample.
+  private int digits = 0;
+  private boolean seen = false;
+
+  FirstSampleWatcher(
+    final OutputStream stream,
+    final JMeterTestConfig config
+  ) {
+    super(stream);
+    this.config = config;
+  }
+
+  @Override
+  public void write(
+    final int b
+  ) throws IOException {
+    if ( !this.seen ) {
+      this.watch((byte) b);
+    }
+    this.out.write(b);
+  }
+
+  @Override
+  public void write(
+    final byte[] b,
+    final int off,
+    final int len
+  ) throws IOException {
+    for ( int i = off, end = off + len; !this.seen && i < end; i++ ) {
+      this.watch(b[i]);
+    }
+    this.out.write(b, off, len);
+  }
+
+  private void watch(
+    final byte b
+  ) {
+    if ( b == '\n' ) {
+      this.digits = 0;
+    } else if ( this.digits < 0 ) {
+      return;
+    } else if ( b >= '0' && b <= '9' ) {
+      this.digits += 1;
+    } else if ( b == ',' && this.digits == EPOCH_DIGITS ) {
+      this.onFirstSample();
+    } else {
+      this.digits = -1;
+    }
+  }
+
+  private void onFirstSample() {
+    this.seen = true;
+    final long now = System.currentTimeMillis();
+    this.config.firstSample(now);
+    final long started = this.config.started();
+    logger.info("{}/first sample: engine={} | {}ms",
+      this.config.id(), this.config.engine(), (started > 0)? (now - started) : -1);
+  }
+
+}
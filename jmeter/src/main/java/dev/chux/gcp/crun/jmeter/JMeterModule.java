@@ -3,17 +3,32 @@ package dev.chux.gcp.crun.jmeter;
 import java.util.Map;
 
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 
 import com.google.common.collect.Maps;
 
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestAdmission;
+import dev.chux.gcp.crun.jmeter.batch.JMeterTestBatchService;
+import dev.chux.gcp.crun.jmeter.cluster.JMeterTestCoordinator;
 import dev.chux.gcp.crun.jmeter.config.JMeterTestProvider;
 import dev.chux.gcp.crun.jmeter.config.JMeterTestDirProvider;
+import dev.chux.gcp.crun.jmeter.engine.EmbeddedJMeterEngine;
+import dev.chux.gcp.crun.jmeter.engine.JMeterWorkerPool;
+import dev.chux.gcp.crun.jmeter.engine.OpenModelEngine;
+import dev.chux.gcp.crun.jmeter.logs.JMeterTestLogService;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
+import dev.chux.gcp.crun.process.ProcessModule;
+import dev.chux.gcp.crun.rest.ExecutionModel;
 
 import dev.chux.gcp.crun.jmeter.rest.RestModule;
 
@@ -50,8 +65,28 @@ public class JMeterModule extends AbstractModule {
 
     bind(RequestFileGenerator.class).in(Scopes.SINGLETON);
     bind(JMeterTestService.class).in(Scopes.SINGLETON);
+    bind(EmbeddedJMeterEngine.class).in(Scopes.SINGLETON);
+    bind(OpenModelEngine.class).in(Scopes.SINGLETON);
+    // workers are started along with JMaaS
+    bind(JMeterWorkerPool.class).asEagerSingleton();
+    bind(JMeterTestMetricsService.class).in(Scopes.SINGLETON);
+    bind(GeneratorMonitor.class).in(Scopes.SINGLETON);
+    bind(JMeterTestLogService.class).in(Scopes.SINGLETON);
+    bind(JMeterTestResultService.class).in(Scopes.SINGLETON);
+    bind(JMeterTestAdmission.class).in(Scopes.SINGLETON);
+    bind(JMeterTestCoordinator.class).in(Scopes.SINGLETON);
+    // queued batches are resumed along with JMaaS
+    bind(JMeterTestBatchService.class).asEagerSingleton();
 
     install(new RestModule());
   }
 
+  // test output is read on threads of the execution model: see `ProcessOutputPump`.
+  @Provides @Singleton @ProcessModule.OutputReaders
+  ExecutorService processOutputReaders(
+    final ExecutionModel executionModel
+  ) {
+    return executionModel.newExecutor("jmeter-output", /* daemon */ true);
+  }
+
 }
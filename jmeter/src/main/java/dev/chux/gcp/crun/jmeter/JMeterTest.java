@@ -2,9 +2,12 @@ package dev.chux.gcp.crun.jmeter;
 
 import java.io.OutputStream;
 
+import java.util.Map;
+
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 
+import dev.chux.gcp.crun.process.ProcessOutputStats;
 import dev.chux.gcp.crun.process.ProcessProvider;
 
 public interface JMeterTest extends ProcessProvider, Supplier<JMeterTestConfig> {
@@ -19,6 +22,10 @@ public interface JMeterTest extends ProcessProvider, Supplier<JMeterTestConfig>
 
   public String script();
 
+  public String plan();
+
+  public Map<String, String> properties();
+
   public Optional<
     OutputStream
   > stream();
@@ -27,4 +34,7 @@ public interface JMeterTest extends ProcessProvider, Supplier<JMeterTestConfig>
 
   public long finishedAt();
 
+  // how its output is being copied: absent until it starts producing output.
+  public Optional<ProcessOutputStats> outputStats();
+
 }
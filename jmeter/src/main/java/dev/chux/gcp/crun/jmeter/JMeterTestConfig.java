@@ -1,10 +1,13 @@
 package dev.chux.gcp.crun.jmeter;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.Since;
@@ -21,6 +24,11 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 
 public class JMeterTestConfig {
 
+  public static final String ENGINE_PROCESS = "process";
+  public static final String ENGINE_EMBEDDED = "embedded";
+  public static final String ENGINE_POOLED = "pooled";
+  public static final String ENGINE_OPEN = "open";
+
   @Since(1.0)
   @Expose(deserialize=true, serialize=true)
   @SerializedName(value="id")
@@ -131,6 +139,16 @@ public class JMeterTestConfig {
   @SerializedName(value="rampup_steps")
   private int rampupSteps = 0;
 
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="engine")
+  private String engine = ENGINE_PROCESS;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="keepalive")
+  private boolean keepAlive = false;
+
   private class Timestamps {
 
     @Since(1.0)
@@ -148,6 +166,11 @@ public class JMeterTestConfig {
     @SerializedName(value="finished")
     private long finished = 0;
 
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="first_sample")
+    private long firstSample = 0;
+
     private Timestamps(
       final long created
     ) {
@@ -165,6 +188,12 @@ public class JMeterTestConfig {
   @SerializedName(value="timestamps")
   private final Timestamps timestamps;
 
+  // annotations set while the test runs, i.e.: `generator-saturated`.
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="flags")
+  private final Set<String> flags = Sets.newConcurrentHashSet();
+
   public JMeterTestConfig(
     @CheckForNull @NonNull final String name,
     @CheckForNull @NonNull final String instanceID,
@@ -241,6 +270,7 @@ public class JMeterTestConfig {
       .add("jmx", this.jmx())
       .add("mode", this.mode())
       .add("host", this.host())
+      .add("engine", this.engine())
       .toString();
   }
 
@@ -381,6 +411,40 @@ public class JMeterTestConfig {
     return this;
   }
 
+  public String engine() {
+    return this.engine;
+  }
+
+  public JMeterTestConfig engine(
+    @Nullable final String engine
+  ) {
+    this.engine = fromNullable(engine).or(ENGINE_PROCESS);
+    return this;
+  }
+
+  public boolean embedded() {
+    return this.engine.equalsIgnoreCase(ENGINE_EMBEDDED);
+  }
+
+  public boolean pooled() {
+    return this.engine.equalsIgnoreCase(ENGINE_POOLED);
+  }
+
+  public boolean open() {
+    return this.engine.equalsIgnoreCase(ENGINE_OPEN);
+  }
+
+  public boolean keepAlive() {
+    return this.keepAlive;
+  }
+
+  public JMeterTestConfig keepAlive(
+    final boolean keepAlive
+  ) {
+    this.keepAlive = keepAlive;
+    return this;
+  }
+
   public long started() {
     return this.timestamps.started;
   }
@@ -403,4 +467,27 @@ public class JMeterTestConfig {
     return this;
   }
 
+  public long firstSample() {
+    return this.timestamps.firstSample;
+  }
+
+  public JMeterTestConfig firstSample(
+    final long timestamp
+  ) {
+    this.timestamps.firstSample = timestamp;
+    return this;
+  }
+
+  public Set<String> flags() {
+    return ImmutableSet.copyOf(this.flags);
+  }
+
+  public JMeterTestConfig flag(
+    @CheckForNull @NonNull final String flag
+  ) {
+    checkArgument(!isNullOrEmpty(flag), "flag is required");
+    this.flags.add(flag);
+    return this;
+  }
+
 }
@@ -4,7 +4,6 @@ package dev.chux.gcp.crun.jmeter;
 import java.util.function.Consumer;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import com.google.inject.assistedinject.Assisted;
@@ -13,10 +12,11 @@ import com.google.inject.assistedinject.AssistedInject;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.ListenableScheduledFuture;
 
+import dev.chux.gcp.crun.jmeter.engine.EmbeddedJMeterEngine;
+import dev.chux.gcp.crun.jmeter.engine.JMeterWorkerPool;
+import dev.chux.gcp.crun.jmeter.engine.OpenModelEngine;
 import dev.chux.gcp.crun.process.ProcessModule.ProcessConsumer;
 import dev.chux.gcp.crun.process.ProcessProvider;
 
@@ -34,12 +34,12 @@ public class JMeterTestExecutorImpl implements JMeterTestExecutor {
 
   private static final Logger logger = LoggerFactory.getLogger(JMeterTestExecutorImpl.class);
 
-  private static final ListeningScheduledExecutorService EXECUTOR =
-    MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(3));
-
   private final JMeterTestService jMeterTestService;
   private final JMeterTestFactory jMeterTestFactory;
   private final Consumer<ProcessProvider> processConsumer;
+  private final Consumer<JMeterTest> embeddedEngine;
+  private final Consumer<JMeterTest> workerPool;
+  private final Consumer<JMeterTest> openModelEngine;
   private final JMeterTest test;
 
   @AssistedInject
@@ -50,11 +50,17 @@ public class JMeterTestExecutorImpl implements JMeterTestExecutor {
       final Consumer<
         ProcessProvider
       > processConsumer,
+    final EmbeddedJMeterEngine embeddedEngine,
+    final JMeterWorkerPool workerPool,
+    final OpenModelEngine openModelEngine,
     @Assisted final JMeterTest test
   ) {
     this.jMeterTestService = jMeterTestService;
     this.jMeterTestFactory = jMeterTestFactory;
     this.processConsumer = processConsumer;
+    this.embeddedEngine = embeddedEngine;
+    this.workerPool = workerPool;
+    this.openModelEngine = openModelEngine;
     this.test = checkNotNull(test);
     checkState(!isNullOrEmpty(test.id()));
   }
@@ -74,7 +80,7 @@ public class JMeterTestExecutorImpl implements JMeterTestExecutor {
   private ListenableScheduledFuture startWatchdog(
     final JMeterTest test
   ) {
-    return EXECUTOR.scheduleAtFixedRate(
+    return this.jMeterTestService.watchdogs().scheduleAtFixedRate(
       this.jMeterTestFactory.createWatchdog(test),
       3l, 3l, TimeUnit.SECONDS
     );
@@ -128,7 +134,19 @@ public class JMeterTestExecutorImpl implements JMeterTestExecutor {
     final ListenableScheduledFuture watchdog = this.startWatchdog(test);
     logger.info("starting test: {}", test);
     this.clockIn(config);
-    this.processConsumer.accept(test);
+    if ( config.embedded() ) {
+      // run the JMX plan within this JVM
+      this.embeddedEngine.accept(test);
+    } else if ( config.pooled() ) {
+      // run the JMX plan using a pre-started JVM
+      this.workerPool.accept(test);
+    } else if ( config.open() ) {
+      // issue requests on schedule without a JMX plan
+      this.openModelEngine.accept(test);
+    } else {
+      // fork a new `jmeter` process
+      this.processConsumer.accept(test);
+    }
     this.clockOut(config);
     logger.info("test complete: {}", test);
     this.stopWatchdog(watchdog, test);
@@ -5,6 +5,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.inject.Inject;
@@ -16,9 +17,10 @@ import com.google.inject.assistedinject.AssistedInject;
 import com.google.common.base.Optional;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Function;
-import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
 
 import dev.chux.gcp.crun.ConfigService;
@@ -26,6 +28,7 @@ import dev.chux.gcp.crun.ConfigService;
 import dev.chux.gcp.crun.process.ProcessProvider;
 import dev.chux.gcp.crun.process.ProcessOutput;
 import dev.chux.gcp.crun.process.ProcessOutputFactory;
+import dev.chux.gcp.crun.process.ProcessOutputStats;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +37,7 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
 import static dev.chux.gcp.crun.jmeter.rest.RunJMeterTestController.DEFAULT_TRACE_ID;
@@ -45,9 +49,6 @@ public class JMeterTestImpl implements JMeterTest {
   private static final String JMETER_BIN = "jmeter";
   private static final String HTTPS = "https";
 
-  private static final CharMatcher CONFIG_SEPARATOR = CharMatcher.anyOf(",;:_-|");
-  private static final Splitter CONFIG_SPLITTER = Splitter.on(CONFIG_SEPARATOR).omitEmptyStrings().trimResults();
-
   private final String version;
   private final String jMeterVersion;
 
@@ -61,6 +62,10 @@ public class JMeterTestImpl implements JMeterTest {
   private final Provider<String> jmeterTestProvider;
 
   private final AtomicBoolean started;
+  private final Supplier<Map<String, String>> properties;
+
+  // output of the current, or last, execution: see `outputStats()`.
+  private volatile Optional<ProcessOutput> output = absent();
 
   @AssistedInject
   public JMeterTestImpl(
@@ -120,6 +125,7 @@ public class JMeterTestImpl implements JMeterTest {
     this.requestFileGenerator = requestFileGenerator;
     this.processOutputFactory = processOutputFactory;
     this.started = new AtomicBoolean(false);
+    this.properties = Suppliers.memoize(this::newProperties);
 
     this.jmeterTestDirProvider = jmeterTestDirProvider;
     this.jmeterTestProvider = jmeterTestProvider;
@@ -161,6 +167,18 @@ public class JMeterTestImpl implements JMeterTest {
       .or(this.jmeterTestProvider.get());
   }
 
+  @Override
+  public final String plan() {
+    return this.jmeterTestDirProvider.get() + "/" + this.script() + ".jmx";
+  }
+
+  @Override
+  public final Map<String, String> properties() {
+    // properties are computed only once as generating
+    //   the request file is not an idempotent operation.
+    return this.properties.get();
+  }
+
   @Override
   public final Optional<OutputStream> stream() {
     return this.stream;
@@ -184,10 +202,23 @@ public class JMeterTestImpl implements JMeterTest {
   @Override
   public ProcessOutput getOutput() {
     final Optional<OutputStream> stream = this.stream();
-    if( stream.isPresent() ) {
-      return this.processOutputFactory.create(stream.get(), this.closeable);
-    }
-    return this.processOutputFactory.create(System.out, /* closeable */ false);
+    final ProcessOutput output = stream.isPresent()
+      ? this.processOutputFactory.create(this.watch(stream.get()), this.closeable)
+      : this.processOutputFactory.create(this.watch(System.out), /* closeable */ false);
+    this.output = Optional.of(output);
+    return output;
+  }
+
+  @Override
+  public Optional<ProcessOutputStats> outputStats() {
+    final Optional<ProcessOutput> output = this.output;
+    return output.isPresent() ? output.get().stats() : Optional.<ProcessOutputStats>absent();
+  }
+
+  private OutputStream watch(
+    final OutputStream stream
+  ) {
+    return new FirstSampleWatcher(stream, this.jMeterTestConfig);
   }
 
   private String getVersion(
@@ -205,151 +236,170 @@ public class JMeterTestImpl implements JMeterTest {
   private final List<String> command() {
     final ImmutableList.Builder<String> cmd = ImmutableList.<String>builder();
 
-    final String jmx = this.jmx();
+    final String jmx = this.plan();
 
     logger.debug("JMX: {}", jmx);
 
-    this.setID(
-      cmd.add(JMETER_BIN, "-n",
-        "-l", "/dev/stdout",
-        "-j", "/dev/stdout",
-        "-t", jmx)
-      )
-      .setName(cmd)
-      .setProto(cmd)
-      .setMethod(cmd)
-      .setHost(cmd)
-      .setPath(cmd)
-      .setPort(cmd)
-      .setConfig(cmd)
-      .setProperties(cmd)
-      .setVersion(cmd)
-      .setJMeterVersion(cmd)
-      .setTraceID(cmd)
-      .setInstanceID(cmd)
-      .setRequestTimeout(cmd)
-      .setRequestFile(cmd);
+    cmd.add(JMETER_BIN, "-n",
+      "-l", "/dev/stdout",
+      "-j", "/dev/stdout",
+      "-t", jmx);
+
+    for ( final Map.Entry<String, String> property : this.properties().entrySet() ) {
+      cmd.add("-J" + property.getKey() + "=" + property.getValue());
+    }
 
     return cmd.build();
   }
 
+  private final Map<String, String> newProperties() {
+    final ImmutableMap.Builder<String, String> props = ImmutableMap.<String, String>builder();
+
+    this.setID(props)
+      .setName(props)
+      .setProto(props)
+      .setMethod(props)
+      .setHost(props)
+      .setPath(props)
+      .setPort(props)
+      .setConfig(props)
+      .setProperties(props)
+      .setVersion(props)
+      .setJMeterVersion(props)
+      .setTraceID(props)
+      .setInstanceID(props)
+      .setRequestTimeout(props)
+      .setKeepAlive(props)
+      .setRequestFile(props);
+
+    return props.build();
+  }
+
   private final JMeterTestImpl setProperty(
-    final ImmutableList.Builder<String> cmd, final String key, final String value) {
-    cmd.add("-J" + key + "=" + value);
+    final ImmutableMap.Builder<String, String> props, final String key, final String value) {
+    props.put(key, nullToEmpty(value));
     return this;
   }
 
   private final JMeterTestImpl setIntProperty(
-    final ImmutableList.Builder<String> cmd, final String key, final int value) {
-      return this.setProperty(cmd, key, Integer.toString(value, 10));
+    final ImmutableMap.Builder<String, String> props, final String key, final int value) {
+      return this.setProperty(props, key, Integer.toString(value, 10));
   }
 
   private final JMeterTestImpl setBoolProperty(
-    final ImmutableList.Builder<String> cmd, final String key, final boolean value) {
-      return this.setProperty(cmd, key, Boolean.toString(value));
+    final ImmutableMap.Builder<String, String> props, final String key, final boolean value) {
+      return this.setProperty(props, key, Boolean.toString(value));
   }
 
   private final JMeterTestImpl setID(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "tid", this.id());
+    return this.setProperty(props, "tid", this.id());
   }
 
   private final JMeterTestImpl setName(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "test_name", this.name());
+    return this.setProperty(props, "test_name", this.name());
   }
 
   private final JMeterTestImpl setHost(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "host", this.host());
+    return this.setProperty(props, "host", this.host());
   }
 
   private final JMeterTestImpl setPath(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "path", this.path());
+    return this.setProperty(props, "path", this.path());
   }
 
   private final JMeterTestImpl setProto(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
     final String proto = this.proto();
-    return this.setProperty(cmd, "proto", proto)
-      .setBoolProperty(cmd, "https", proto.equalsIgnoreCase(HTTPS));
+    return this.setProperty(props, "proto", proto)
+      .setBoolProperty(props, "https", proto.equalsIgnoreCase(HTTPS));
   }
 
   private final JMeterTestImpl setMethod(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "http_method", this.method());
+    return this.setProperty(props, "http_method", this.method());
   }
 
   private final JMeterTestImpl setPort(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setIntProperty(cmd, "port", this.port());
+    return this.setIntProperty(props, "port", this.port());
   }
 
   private final JMeterTestImpl setTraceID(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "trace_id", this.traceID());
+    return this.setProperty(props, "trace_id", this.traceID());
   }
 
   private final JMeterTestImpl setInstanceID(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "instance_id", this.instanceID());
+    return this.setProperty(props, "instance_id", this.instanceID());
   }
 
   private final JMeterTestImpl setConfig(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
     if ( this.mode().equalsIgnoreCase("qps") ) {
-      return this.setProfile(cmd);
+      return this.setProfile(props);
     }
-    return this.setProperty(cmd, "threads_schedule", this.threads());
+    return this.setProperty(props, "threads_schedule", this.threads());
   }
 
   private final JMeterTestImpl setVersion(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "jmaas_version", this.version);
+    return this.setProperty(props, "jmaas_version", this.version);
   }
 
   private final JMeterTestImpl setJMeterVersion(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setProperty(cmd, "jm_version", this.jMeterVersion);
+    return this.setProperty(props, "jm_version", this.jMeterVersion);
   }
 
   private final JMeterTestImpl setRequestTimeout(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
+  ) {
+    return this.setIntProperty(props, "request_timeout", this.requestTimeout());
+  }
+
+  private final JMeterTestImpl setKeepAlive(
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setIntProperty(cmd, "request_timeout", this.requestTimeout());
+    final boolean keepAlive = this.jMeterTestConfig.keepAlive();
+    return this.setBoolProperty(props, "keepalive", keepAlive)
+      .setProperty(props, "connection", keepAlive ? "keep-alive" : "close");
   }
 
   private final JMeterTestImpl setRequestFile(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
     final Optional<Path> requestFilePath = this.requestFileGenerator.apply(this);
     if ( requestFilePath.isPresent() ) {
       final Path path = requestFilePath.get();
-      return this.setProperty(cmd, "request_file", path.toString());
+      return this.setProperty(props, "request_file", path.toString());
     }
     return this;
   }
 
   private final JMeterTestImpl setProperties(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
-    return this.setIntProperty(cmd, "concurrency", this.jMeterTestConfig.concurrency())
-      .setIntProperty(cmd, "duration", this.jMeterTestConfig.duration())
-      .setIntProperty(cmd, "rampup_time", this.jMeterTestConfig.rampupTime())
-      .setIntProperty(cmd, "rampup_steps", this.jMeterTestConfig.rampupSteps());
+    return this.setIntProperty(props, "concurrency", this.jMeterTestConfig.concurrency())
+      .setIntProperty(props, "duration", this.jMeterTestConfig.duration())
+      .setIntProperty(props, "rampup_time", this.jMeterTestConfig.rampupTime())
+      .setIntProperty(props, "rampup_steps", this.jMeterTestConfig.rampupSteps());
   }
 
   private final String mode() {
@@ -381,23 +431,19 @@ public class JMeterTestImpl implements JMeterTest {
     return this.jMeterTestConfig.path().or("/");
   }
 
-  private final String jmx() {
-    return this.jmeterTestDirProvider.get() + "/" + this.script() + ".jmx";
-  }
-
   private final int requestTimeout() {
     return this.jMeterTestConfig.maxLatency() + 1000;
   }
 
   private final JMeterTestImpl setProfile(
-    final ImmutableList.Builder<String> cmd
+    final ImmutableMap.Builder<String, String> props
   ) {
     final Optional<String> profile = this.jMeterTestConfig.profile();
     if (!profile.isPresent()) {
       return this;
     }
     final String value = profile.get();
-    return this.setProfile(cmd, CONFIG_SPLITTER.splitToList(value));
+    return this.setProfile(props, LoadProfile.split(value));
   }
 
   private final int maxQPS(
@@ -410,7 +456,7 @@ public class JMeterTestImpl implements JMeterTest {
   }
 
   private final JMeterTestImpl setProfile(
-    final ImmutableList.Builder<String> cmd,
+    final ImmutableMap.Builder<String, String> props,
     final List<String> profile
   ) {
     final int sizeOfProfile = profile.size();
@@ -500,17 +546,15 @@ public class JMeterTestImpl implements JMeterTest {
       loadProfile.deleteCharAt(loadProfile.length()-1);
     }
 
-    // see: https://jmeter-plugins.org/wiki/ThroughputShapingTimer/#How-Many-Threads-I-Need-To-Produce-Desired-RPS
-    // lit: `RPS * <max response time> / 1000`
-    final int threads = (maxQPS*this.jMeterTestConfig.maxLatency())/1000;
+    final int threads = LoadProfile.threadsForQPS(maxQPS, this.jMeterTestConfig.maxLatency());
 
-    final String threadsStr = Integer.toString(50*threads, 10);
+    final String threadsStr = Integer.toString(threads, 10);
     final String durationStr = Integer.toString(duration, 10);
 
     final String threadsSchedule = "spawn(" + threadsStr + ",0s,0s," + durationStr + "s,1s)";
 
-    return this.setProperty(cmd, "threads_schedule", threadsSchedule)
-                .setProperty(cmd, "load_profile", loadProfile.toString());
+    return this.setProperty(props, "threads_schedule", threadsSchedule)
+                .setProperty(props, "load_profile", loadProfile.toString());
   }
 
   private final String threads() {
@@ -519,7 +563,7 @@ public class JMeterTestImpl implements JMeterTest {
       return "spawn(0,0s,0s,0s,0s)";
     }
     final String t = threads.get();
-    return this.threads(CONFIG_SPLITTER.splitToList(t));
+    return this.threads(LoadProfile.split(t));
   }
 
   private final String threads(
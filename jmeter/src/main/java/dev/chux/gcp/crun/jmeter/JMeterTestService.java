@@ -1,22 +1,27 @@
 package dev.chux.gcp.crun.jmeter;
 
+import java.io.IOException;
 import java.io.OutputStream;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.name.Named;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
@@ -24,10 +29,17 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 
-import dev.chux.gcp.crun.io.ProxyOutputStream;
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.io.OutputBroadcaster;
+import dev.chux.gcp.crun.io.SegmentedLog;
+import dev.chux.gcp.crun.jmeter.logs.JMeterTestLogService;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
+import dev.chux.gcp.crun.rest.ExecutionModel;
 
-import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.io.output.TeeOutputStream;
 
 import org.slf4j.Logger;
@@ -39,6 +51,7 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
@@ -47,25 +60,59 @@ public class JMeterTestService {
 
   private static final Logger logger = LoggerFactory.getLogger(JMeterTestService.class);
 
+  public static final String PROPERTY_STREAM_BUFFER_SIZE = "jmeter.stream.buffer_size";
+  public static final String PROPERTY_STREAM_OVERFLOW = "jmeter.stream.overflow";
+
+  // KiB
+  private static final int DEFAULT_STREAM_BUFFER_SIZE = 1024;
+  private static final String DEFAULT_STREAM_OVERFLOW = "drop";
+
   private final JMeterTestFactory jMeterTestFactory;
   private final Provider<String> jmeterTestProvider;
   private final Map<String, JMeterTest> jmeterTestStorage;
-
-  private final Map<String, ProxyOutputStream> streams = Maps.newConcurrentMap();
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+  private final JMeterTestLogService jMeterTestLogService;
+  private final GeneratorMonitor generatorMonitor;
+  private final JMeterTestResultService jMeterTestResultService;
+  private final int streamBufferSize;
+  private final OutputBroadcaster.Overflow streamOverflow;
+
+  private final Map<String, OutputBroadcaster> streams = Maps.newConcurrentMap();
   private final Map<String, ListenableFuture<JMeterTest>> tests = Maps.newConcurrentMap();
+  // IDs of tests which are starting or running: see `reserve(...)`.
+  private final Set<String> ids = Sets.newConcurrentHashSet();
+
+  // concurrent tests are bounded by `JMeterTestAdmission`, not by the size of this pool.
+  private final ListeningExecutorService executor;
+  // flushes the output of running tests.
+  private final ListeningScheduledExecutorService watchdogs;
 
-  private static final ListeningExecutorService EXECUTOR =
-    MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(5));
-  
   @Inject
   JMeterTestService(
     final JMeterTestFactory jMeterTestFactory,
     @Named("jmeter://test.jmx") final Provider<String> jmeterTestProvider,
-    final Map<String, JMeterTest> jmeterTestStorage
+    final Map<String, JMeterTest> jmeterTestStorage,
+    final JMeterTestMetricsService jMeterTestMetricsService,
+    final JMeterTestLogService jMeterTestLogService,
+    final GeneratorMonitor generatorMonitor,
+    final JMeterTestResultService jMeterTestResultService,
+    final ConfigService configService,
+    final ExecutionModel executionModel
   ) {
     this.jMeterTestFactory = jMeterTestFactory;
     this.jmeterTestProvider = jmeterTestProvider;
     this.jmeterTestStorage = jmeterTestStorage;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+    this.jMeterTestLogService = jMeterTestLogService;
+    this.generatorMonitor = generatorMonitor;
+    this.jMeterTestResultService = jMeterTestResultService;
+    this.streamBufferSize = configService
+      .getIntAppProp(PROPERTY_STREAM_BUFFER_SIZE).or(DEFAULT_STREAM_BUFFER_SIZE) * 1024;
+    this.streamOverflow = OutputBroadcaster.Overflow.of(
+      configService.getAppPropOrDefault(PROPERTY_STREAM_OVERFLOW, DEFAULT_STREAM_OVERFLOW)
+    );
+    this.executor = MoreExecutors.listeningDecorator(executionModel.newExecutor("jmeter-test"));
+    this.watchdogs = MoreExecutors.listeningDecorator(executionModel.newScheduledExecutor("jmeter-watchdog", 3));
   }
 
   public final ListenableFuture<JMeterTest> start(
@@ -75,10 +122,10 @@ public class JMeterTestService {
     final Optional<String> path, final Map<String, String> query, final Map<String, String> headers,
     final Optional<String> body, final Optional<String> threads, final Optional<String> profile,
     final int concurrency, final int duration, final int rampupTime, final int rampupSteps,
-    final int minLatency, final int maxLatency
+    final int minLatency, final int maxLatency, final Optional<String> engine, final boolean keepAlive
   ) {
     return this.start(callback, instanceID, id, traceID, jmx, mode, proto, method, host, port, path, query, headers, body,
-      threads, profile, concurrency, duration, rampupTime, rampupSteps, System.out, false, minLatency, maxLatency);
+      threads, profile, concurrency, duration, rampupTime, rampupSteps, System.out, false, minLatency, maxLatency, engine, keepAlive);
   }
 
   public final ListenableFuture<JMeterTest> start(
@@ -89,7 +136,7 @@ public class JMeterTestService {
     final Optional<String> body, final Optional<String> threads, final Optional<String> profile,
     final int concurrency, final int duration, final int rampupTime, final int rampupSteps,
     final OutputStream outputStream, final boolean closeableOutputStream,
-    final int minLatency, final int maxLatency
+    final int minLatency, final int maxLatency, final Optional<String> engine, final boolean keepAlive
   ) {
 
     checkArgument(!isNullOrEmpty(instanceID), "instanceID is required");
@@ -97,6 +144,30 @@ public class JMeterTestService {
     checkArgument(!isNullOrEmpty(host), "host is required");
     checkArgument(!isNullOrEmpty(mode), "mode is required");
 
+    // metrics, logs, and streams are registered by ID: it must be owned by this test.
+    checkState(this.ids.contains(id), "test ID is not reserved: %s", id);
+
+    try {
+      return this.startReserved(callback, instanceID, id, traceID, jmx, mode, proto, method, host, port,
+        path, query, headers, body, threads, profile, concurrency, duration, rampupTime, rampupSteps,
+        outputStream, closeableOutputStream, minLatency, maxLatency, engine, keepAlive);
+    } catch(final RuntimeException e) {
+      // the test will never run: nothing may be left registered for its ID.
+      this.abort(id);
+      throw e;
+    }
+  }
+
+  private ListenableFuture<JMeterTest> startReserved(
+    final FutureCallback<JMeterTest> callback, final String instanceID,
+    final String id, final Optional<String> traceID, final Optional<String> jmx, final String mode,
+    final Optional<String> proto, final Optional<String> method, final String host, final Optional<Integer> port,
+    final Optional<String> path, final Map<String, String> query, final Map<String, String> headers,
+    final Optional<String> body, final Optional<String> threads, final Optional<String> profile,
+    final int concurrency, final int duration, final int rampupTime, final int rampupSteps,
+    final OutputStream outputStream, final boolean closeableOutputStream,
+    final int minLatency, final int maxLatency, final Optional<String> engine, final boolean keepAlive
+  ) {
     final String JMX = this.jmx(jmx);
     final String name = this.name(instanceID, id, JMX);
 
@@ -111,7 +182,9 @@ public class JMeterTestService {
     .concurrency(concurrency)
     .duration(duration)
     .rampupTime(rampupTime)
-    .rampupSteps(rampupSteps);
+    .rampupSteps(rampupSteps)
+    .engine(engine.orNull())
+    .keepAlive(keepAlive);
 
     // create a `connectable` output stream
     final OutputStream teeStream = this.wrapStream(config, outputStream);
@@ -126,17 +199,19 @@ public class JMeterTestService {
       return this.test(id).or(immediateFuture(t.get()));
     }
 
+    this.generatorMonitor.watch(test);
+
     // create a test execution delegate
     final JMeterTestExecutor executor = this.jMeterTestFactory.createExecutor(test);
 
     // start JMeter test asynchronously
-    final ListenableFuture<JMeterTest> futureTest = EXECUTOR.submit(executor);
+    final ListenableFuture<JMeterTest> futureTest = this.executor.submit(executor);
 
     // add the jmaas test execution delegate as a callback
-    Futures.<JMeterTest>addCallback(futureTest, executor, EXECUTOR);
+    Futures.<JMeterTest>addCallback(futureTest, executor, this.executor);
 
     // add the jmaas client provided callback
-    Futures.<JMeterTest>addCallback(futureTest, callback, EXECUTOR);
+    Futures.<JMeterTest>addCallback(futureTest, callback, this.executor);
 
     // save a reference to this test's `Future`
     final ListenableFuture<
@@ -153,6 +228,23 @@ public class JMeterTestService {
     return producedValue;
   }
 
+  // atomically claims `id` for a new test, before anything is registered for it;
+  //   `false` if a test with the same ID is already starting or running.
+  //   the ID is released once the test is complete, or by `release(...)` if it is never started.
+  public final boolean reserve(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    return this.ids.add(id);
+  }
+
+  public final void release(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    this.ids.remove(id);
+  }
+
   public final Executor executor(
     final String id
   ) {
@@ -162,7 +254,7 @@ public class JMeterTestService {
       >
     > test = this.test(id);
     if ( test.isPresent() ) {
-      return EXECUTOR;
+      return this.executor;
     }
     return MoreExecutors.directExecutor();
   }
@@ -185,6 +277,11 @@ public class JMeterTestService {
     );
   }
 
+  // tests which are running, or waiting for their output to be fully transferred.
+  public final List<JMeterTest> getAll() {
+    return ImmutableList.copyOf(this.jmeterTestStorage.values());
+  }
+
   public final Optional<
     ListenableFuture<
       JMeterTest
@@ -214,19 +311,23 @@ public class JMeterTestService {
   }
 
   private Optional<
-    ProxyOutputStream
+    OutputBroadcaster
   > stream(final String id) {
     checkArgument(!isNullOrEmpty(id));
     return fromNullable(this.streams.get(id));
   }
 
+  // blocks while the output of the test is transferred to `stream`:
+  //   any number of clients may connect to the same test; clients that fall behind
+  //   lose output according to `overflow`, and never slow down the test.
   public final Optional<
     ListenableFuture<
       JMeterTest
     >
   > connect(
     final String id,
-    final OutputStream stream
+    final OutputStream stream,
+    final Optional<OutputBroadcaster.Overflow> overflow
   ) throws Exception {
     final Optional<
       ListenableFuture<
@@ -235,12 +336,21 @@ public class JMeterTestService {
     > test = this.test(id);
     if ( test.isPresent() ) {
       final Optional<
-        ProxyOutputStream
+        OutputBroadcaster
       > s = this.stream(id);
       if ( s.isPresent() ) {
-        s.get().setReference(stream).flush();
+        final OutputBroadcaster.Subscription subscription =
+          s.get().subscribe(overflow.or(this.streamOverflow));
         
-        logger.info("connected to test: {}", test.get());
+        logger.info("connected to test: {} {}", test.get(), subscription);
+
+        try {
+          subscription.transferTo(stream);
+        } catch(final IOException e) {
+          logger.warn("{}/client disconnected: {}", id, e.getMessage());
+        }
+
+        logger.info("disconnected from test: {} {}", id, subscription);
 
         // return a non-cancelable `Future`:
         //   prevent unexpected/unwanted cancelations.
@@ -260,9 +370,47 @@ public class JMeterTestService {
     >
   > connect(
     final JMeterTest test,
-    final OutputStream stream
+    final OutputStream stream,
+    final Optional<OutputBroadcaster.Overflow> overflow
+  ) throws Exception {
+    return this.connect(test.id(), stream, overflow);
+  }
+
+  public final boolean replayable(
+    final String id
+  ) {
+    return this.jMeterTestLogService.get(id).isPresent();
+  }
+
+  // blocks while the output of the test is replayed from `from` to `stream`, and then followed until
+  //   the test is complete; `from` resolves an offset: see `fromOffset` and `fromMillis`.
+  //   output of complete tests may be replayed until their logs are deleted.
+  public final boolean replay(
+    final String id,
+    final OutputStream stream,
+    final Function<SegmentedLog, Long> from
   ) throws Exception {
-    return this.connect(test.id(), stream);
+    final Optional<SegmentedLog> log = this.jMeterTestLogService.get(id);
+    if ( !log.isPresent() ) {
+      return false;
+    }
+    final long offset = from.apply(log.get());
+    logger.info("replaying test: {} from {}: {}", id, offset, log.get());
+    try {
+      final long end = log.get().transferTo(offset, stream, /* follow */ true);
+      logger.info("replayed test: {} until {}", id, end);
+    } catch(final IOException e) {
+      logger.warn("{}/client disconnected: {}", id, e.getMessage());
+    }
+    return true;
+  }
+
+  public static final Function<SegmentedLog, Long> fromOffset(final long offset) {
+    return log -> offset;
+  }
+
+  public static final Function<SegmentedLog, Long> fromMillis(final long millis) {
+    return log -> log.offsetOf(millis);
   }
 
   private final String jmx(
@@ -275,13 +423,21 @@ public class JMeterTestService {
     final JMeterTestConfig config,
     final OutputStream stream
   ) {
-    // tee output to a proxy stream to allow other threads to connect to it.
-    //   the default instance of `ProxyOutputStream` is backed by `NullOutputStream`,
-    //   so as long as no threads connect to a test's output stream, it tees into void.
-    final ProxyOutputStream proxyStream = new ProxyOutputStream();
-    final OutputStream teeStream = new TeeOutputStream(stream, proxyStream);
-    this.streams.putIfAbsent(config.id(), proxyStream);
-    return teeStream;
+    // tee output to a broadcaster to allow other threads to connect to it.
+    //   output is written once into a bounded buffer; as long as no threads
+    //   connect to a test's output stream, it is simply overwritten.
+    final OutputBroadcaster broadcaster = new OutputBroadcaster(this.streamBufferSize, this.streamOverflow);
+    final OutputStream broadcastStream = new TeeOutputStream(stream, broadcaster);
+    this.streams.putIfAbsent(config.id(), broadcaster);
+    // output is also appended to a log, so that it may be replayed.
+    final Optional<OutputStream> log = this.jMeterTestLogService.create(config.id());
+    final OutputStream teeStream = log.isPresent()
+      ? new TeeOutputStream(broadcastStream, log.get())
+      : broadcastStream;
+    // metrics are fed first so that they are recorded even if a client goes away.
+    final OutputStream metricsStream = this.jMeterTestMetricsService
+      .watch(config.id(), config.mode(), config.profile());
+    return new TeeOutputStream(metricsStream, teeStream);
   }
 
   private final JMeterTest newJMeterTest(
@@ -308,6 +464,10 @@ public class JMeterTestService {
       .toString();
   }
 
+  final ListeningScheduledExecutorService watchdogs() {
+    return this.watchdogs;
+  }
+
   final void clean(
     final JMeterTest test
   ) {
@@ -332,24 +492,40 @@ public class JMeterTestService {
       }
     }
 
-    final Optional<ProxyOutputStream> stream =
+    this.jMeterTestLogService.complete(id);
+    final Optional<OutputBroadcaster> stream =
       fromNullable(this.streams.remove(id));
     if ( stream.isPresent() ) {
-      final ProxyOutputStream s = stream.get();
-      try {
-        s.flush();
-      } catch(final Exception e) {
-        logger.error(
-          "{}/failed to flush '{}' =>\n{}",
-          id, s, getStackTraceAsString(e)
-        );
-      }
-      s.setReference(NullOutputStream.INSTANCE);
+      // connected clients drain the remaining output, and disconnect.
+      stream.get().close();
     }
     this.tests.remove(id);
     this.jmeterTestStorage.remove(id, test);
+    this.jMeterTestMetricsService.complete(id);
+    this.generatorMonitor.complete(id);
+    // keep the outcome of the test once it is no longer running
+    this.jMeterTestResultService.store(test.get(), this.jMeterTestMetricsService.get(id));
+    // only now may a new test with the same ID be started.
+    this.ids.remove(id);
 
     logger.info("< {}", this.toString());
   }
 
+  private void abort(
+    final String id
+  ) {
+    this.jMeterTestLogService.complete(id);
+    final Optional<OutputBroadcaster> stream = fromNullable(this.streams.remove(id));
+    if ( stream.isPresent() ) {
+      stream.get().close();
+    }
+    this.tests.remove(id);
+    this.jmeterTestStorage.remove(id);
+    this.jMeterTestMetricsService.complete(id);
+    // a later test with the same ID must not inherit the saturation of this one
+    this.generatorMonitor.complete(id);
+    this.ids.remove(id);
+    logger.warn("{}/aborted: {}", id, this.toString());
+  }
+
 }
@@ -0,0 +1,125 @@
+package dev.chux.gcp.crun.jmeter;
+
+import java.util.List;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+// sizing of a test's load profile: shared by test instrumentation and admission control.
+public final class LoadProfile {
+
+  private static final CharMatcher CONFIG_SEPARATOR = CharMatcher.anyOf(",;:_-|");
+  private static final Splitter CONFIG_SPLITTER = Splitter.on(CONFIG_SEPARATOR).omitEmptyStrings().trimResults();
+
+  // see: https://jmeter-plugins.org/wiki/ThroughputShapingTimer/#How-Many-Threads-I-Need-To-Produce-Desired-RPS
+  // threads are over-provisioned so that the timer is never starved.
+  private static final int THREADS_MULTIPLIER = 50;
+
+  private LoadProfile() {}
+
+  public static List<String> split(
+    final String config
+  ) {
+    if ( isNullOrEmpty(config) ) {
+      return ImmutableList.of();
+    }
+    return CONFIG_SPLITTER.splitToList(config);
+  }
+
+  // lit: `RPS * <max response time> / 1000`
+  public static int threadsForQPS(
+    final int maxQPS,
+    final int maxLatency
+  ) {
+    final long threads = ((long) maxQPS * maxLatency) / 1000l;
+    return Ints.saturatedCast(THREADS_MULTIPLIER * threads);
+  }
+
+  // lit: `RPS * <max response time> / 1000`, without over-provisioning:
+  //   the open model engine issues requests on schedule, so it only needs room for the requests in flight.
+  public static int requestsInFlight(
+    final int maxQPS,
+    final int maxLatency
+  ) {
+    final long requests = (((long) maxQPS * maxLatency) + 999l) / 1000l;
+    return Math.max(1, Ints.saturatedCast(requests));
+  }
+
+  // highest QPS of a `qps` profile in the form of `3-tuples`: `start_qps,end_qps,duration`.
+  public static int maxQPS(
+    final List<String> profile
+  ) {
+    if ( (profile.size() % 3) != 0 ) {
+      return 0;
+    }
+    int maxQPS = 0;
+    for ( int index = 0; index < profile.size(); index++ ) {
+      if ( (index % 3) == 2 ) {
+        continue;
+      }
+      final Optional<Integer> qps = fromNullable(Ints.tryParse(profile.get(index)));
+      if ( !qps.isPresent() ) {
+        return 0;
+      }
+      // non-positive QPS are executed as `1`
+      maxQPS = Math.max(maxQPS, Math.max(1, qps.get().intValue()));
+    }
+    return maxQPS;
+  }
+
+  // all steps of a `concurrency` schedule may overlap: the worst case is all of their threads at once.
+  public static int maxThreads(
+    final List<String> schedule
+  ) {
+    if ( (schedule.size() % 5) != 0 ) {
+      return 0;
+    }
+    long threads = 0;
+    for ( int index = 0; index < schedule.size(); index += 5 ) {
+      final Optional<Integer> count = fromNullable(Ints.tryParse(schedule.get(index)));
+      if ( !count.isPresent() || count.get().intValue() <= 0 ) {
+        return 0;
+      }
+      threads += count.get().intValue();
+    }
+    return Ints.saturatedCast(threads);
+  }
+
+  // threads that JMeter will use at most to execute a test.
+  public static int threads(
+    final String mode,
+    final Optional<String> concurrency,
+    final Optional<String> qps,
+    final int threads,
+    final int maxLatency
+  ) {
+    return threads(mode, concurrency, qps, threads, maxLatency, /* open */ false);
+  }
+
+  // threads, or requests in flight when using the open model engine, needed at most to execute a test.
+  public static int threads(
+    final String mode,
+    final Optional<String> concurrency,
+    final Optional<String> qps,
+    final int threads,
+    final int maxLatency,
+    final boolean open
+  ) {
+    if ( open && mode.equalsIgnoreCase("qps") ) {
+      // requests time out after `max_latency + 1000` milliseconds
+      return requestsInFlight(maxQPS(split(qps.orNull())), maxLatency + 1000);
+    }
+    if ( mode.equalsIgnoreCase("qps") ) {
+      return threadsForQPS(maxQPS(split(qps.orNull())), maxLatency);
+    }
+    // legacy tests are configured using a fixed number of threads
+    return Math.max(maxThreads(split(concurrency.orNull())), threads);
+  }
+
+}
@@ -0,0 +1,465 @@
+package dev.chux.gcp.crun.jmeter.admission;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.LoadProfile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+// decides how many tests may run concurrently on this instance:
+//   - every test reserves its estimated cost ( threads, memory, and file descriptors ) while it is running.
+//   - a test is admitted if its cost fits in the remaining budget, and if the live CPU, memory
+//     and file descriptors usage of the instance allow it.
+//   - 1 test is always admitted when no other tests are running, regardless of its cost.
+//   - the embedded engine executes 1 test at a time, so at most 1 embedded test is admitted.
+//   - open model tests cost the requests they keep in flight instead of threads, and share the JMaaS JVM.
+public class JMeterTestAdmission {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestAdmission.class);
+
+  public static final String PROPERTY_THREADS_PER_CPU = "jmeter.admission.threads_per_cpu";
+  public static final String PROPERTY_MEMORY_PER_TEST = "jmeter.admission.memory_per_test";
+  public static final String PROPERTY_MEMORY_PER_THREAD = "jmeter.admission.memory_per_thread";
+  public static final String PROPERTY_FDS_PER_TEST = "jmeter.admission.fds_per_test";
+  public static final String PROPERTY_HEADROOM = "jmeter.admission.headroom";
+  public static final String PROPERTY_MAX_CPU_LOAD = "jmeter.admission.max_cpu_load";
+  public static final String PROPERTY_QUEUE_TIMEOUT = "jmeter.admission.queue_timeout";
+
+  private static final int DEFAULT_THREADS_PER_CPU = 2000;
+  // MiB: `jmeter` starts a new JVM with `-Xmx1g -XX:MaxMetaspaceSize=256m`
+  private static final long DEFAULT_MEMORY_PER_TEST = 1280l;
+  // MiB: embedded tests share the JMaaS JVM
+  private static final long MEMORY_PER_EMBEDDED_TEST = 64l;
+  // KiB: thread stack plus sampler buffers
+  private static final long DEFAULT_MEMORY_PER_THREAD = 256l;
+  private static final long DEFAULT_FDS_PER_TEST = 128l;
+  // every JMeter thread holds at most 1 connection
+  private static final long FDS_PER_THREAD = 1l;
+  private static final double DEFAULT_HEADROOM = 0.1d;
+  private static final double DEFAULT_MAX_CPU_LOAD = 0.85d;
+  private static final int DEFAULT_QUEUE_TIMEOUT = 60;
+
+  private static final long MiB = 1024l * 1024l;
+  private static final long KiB = 1024l;
+
+  // live usage is not signaled: queued tests re-check it periodically.
+  private static final long RECHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  // tests take a while to start, and to release their resources.
+  private static final long TEST_OVERHEAD_MILLIS = 5000l;
+
+  private final OperatingSystemMXBean os;
+  private final int cpus;
+  private final long memoryPerTest;
+  private final long memoryPerThread;
+  private final long fdsPerTest;
+  private final double maxCpuLoad;
+  private final int queueTimeout;
+
+  private final JMeterTestCost capacity;
+
+  private final ReentrantLock lock = new ReentrantLock(/* fair */ true);
+  private final Condition released = this.lock.newCondition();
+
+  private final Map<String, Ticket> tickets = Maps.newLinkedHashMap();
+  private JMeterTestCost reserved = JMeterTestCost.ZERO;
+  private int queued = 0;
+
+  public final class Ticket implements AutoCloseable {
+
+    private final String id;
+    private final JMeterTestCost cost;
+    private final boolean embedded;
+    private final long expectedEnd;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private Ticket(
+      final String id,
+      final JMeterTestCost cost,
+      final boolean embedded,
+      final int duration
+    ) {
+      this.id = id;
+      this.cost = cost;
+      this.embedded = embedded;
+      this.expectedEnd = System.currentTimeMillis()
+        + TimeUnit.SECONDS.toMillis(duration) + TEST_OVERHEAD_MILLIS;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("id", this.id)
+        .add("embedded", this.embedded)
+        .addValue(this.cost)
+        .toString();
+    }
+
+    public String id() {
+      return this.id;
+    }
+
+    public JMeterTestCost cost() {
+      return this.cost;
+    }
+
+    // releasing a ticket more than once is a no-op.
+    @Override
+    public void close() {
+      if ( this.released.compareAndSet(false, true) ) {
+        JMeterTestAdmission.this.release(this);
+      }
+    }
+
+  }
+
+  public static final class Budget {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cpus")
+    private final int cpus;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cpu_load")
+    private final double cpuLoad;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="free_memory")
+    private final long freeMemory;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="open_fds")
+    private final long openFds;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="capacity")
+    private final JMeterTestCost capacity;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="reserved")
+    private final JMeterTestCost reserved;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="available")
+    private final JMeterTestCost available;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="tests")
+    private final List<String> tests;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="queued")
+    private final int queued;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="retry_after")
+    private final long retryAfter;
+
+    private Budget(
+      final int cpus,
+      final double cpuLoad,
+      final long freeMemory,
+      final long openFds,
+      final JMeterTestCost capacity,
+      final JMeterTestCost reserved,
+      final List<String> tests,
+      final int queued,
+      final long retryAfter
+    ) {
+      this.cpus = cpus;
+      this.cpuLoad = cpuLoad;
+      this.freeMemory = freeMemory;
+      this.openFds = openFds;
+      this.capacity = capacity;
+      this.reserved = reserved;
+      this.available = capacity.minus(reserved);
+      this.tests = tests;
+      this.queued = queued;
+      this.retryAfter = retryAfter;
+    }
+
+  }
+
+  @Inject
+  JMeterTestAdmission(
+    final ConfigService configService
+  ) {
+    this.os = ManagementFactory.getOperatingSystemMXBean();
+    this.cpus = Runtime.getRuntime().availableProcessors();
+
+    final int threadsPerCpu = configService
+      .getIntAppProp(PROPERTY_THREADS_PER_CPU)
+      .or(DEFAULT_THREADS_PER_CPU).intValue();
+    this.memoryPerTest = MiB * configService
+      .getLongAppProp(PROPERTY_MEMORY_PER_TEST)
+      .or(DEFAULT_MEMORY_PER_TEST).longValue();
+    this.memoryPerThread = KiB * configService
+      .getLongAppProp(PROPERTY_MEMORY_PER_THREAD)
+      .or(DEFAULT_MEMORY_PER_THREAD).longValue();
+    this.fdsPerTest = configService
+      .getLongAppProp(PROPERTY_FDS_PER_TEST)
+      .or(DEFAULT_FDS_PER_TEST).longValue();
+    this.maxCpuLoad = configService
+      .getDoubleAppProp(PROPERTY_MAX_CPU_LOAD)
+      .or(DEFAULT_MAX_CPU_LOAD).doubleValue();
+    this.queueTimeout = configService
+      .getIntAppProp(PROPERTY_QUEUE_TIMEOUT)
+      .or(DEFAULT_QUEUE_TIMEOUT).intValue();
+
+    final double headroom = configService
+      .getDoubleAppProp(PROPERTY_HEADROOM)
+      .or(DEFAULT_HEADROOM).doubleValue();
+    checkArgument(headroom >= 0d && headroom < 1d, "invalid headroom: %s", headroom);
+
+    final double usable = 1d - headroom;
+    this.capacity = new JMeterTestCost(
+      (long) (usable * this.cpus * threadsPerCpu),
+      (long) (usable * this.totalMemory()),
+      (long) (usable * this.maxFds()));
+
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("cpus", this.cpus)
+      .add("capacity", this.capacity)
+      .add("reserved", this.reserved)
+      .add("tests", this.tickets.keySet())
+      .toString();
+  }
+
+  // default number of seconds a test may wait to be admitted.
+  public int queueTimeout() {
+    return this.queueTimeout;
+  }
+
+  public JMeterTestCost cost(
+    final String mode,
+    final Optional<String> concurrency,
+    final Optional<String> qps,
+    final int threads,
+    final int maxLatency,
+    final boolean embedded,
+    final boolean open
+  ) {
+    final long t = LoadProfile.threads(mode, concurrency, qps, threads, maxLatency, open);
+    final long memory = ((embedded || open) ? (MiB * MEMORY_PER_EMBEDDED_TEST) : this.memoryPerTest)
+      + (t * this.memoryPerThread);
+    final long fds = this.fdsPerTest + (t * FDS_PER_THREAD);
+    return new JMeterTestCost(t, memory, fds);
+  }
+
+  // waits at most `timeout` for the test to be admitted; returns `absent` if it was not.
+  public Optional<Ticket> admit(
+    final String id,
+    final JMeterTestCost cost,
+    final boolean embedded,
+    final int duration,
+    final long timeout,
+    final TimeUnit unit
+  ) throws InterruptedException {
+    checkArgument(!isNullOrEmpty(id), "ID is required");
+    long remaining = unit.toNanos(timeout);
+    this.lock.lockInterruptibly();
+    try {
+      this.queued += 1;
+      try {
+        Optional<String> reason = this.reject(id, cost, embedded);
+        while ( reason.isPresent() ) {
+          if ( remaining <= 0l ) {
+            logger.warn("{}/rejected: {} | {} | {}", id, reason.get(), cost, this);
+            return absent();
+          }
+          final long wait = Math.min(remaining, RECHECK_INTERVAL_NANOS);
+          remaining -= (wait - this.released.awaitNanos(wait));
+          reason = this.reject(id, cost, embedded);
+        }
+      } finally {
+        this.queued -= 1;
+      }
+      final Ticket ticket = new Ticket(id, cost, embedded, duration);
+      this.tickets.put(id, ticket);
+      this.reserved = this.reserved.plus(cost);
+      logger.info("{}/admitted: {} | {}", id, cost, this);
+      return Optional.of(ticket);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  public Optional<Ticket> tryAdmit(
+    final String id,
+    final JMeterTestCost cost,
+    final boolean embedded,
+    final int duration
+  ) {
+    try {
+      return this.admit(id, cost, embedded, duration, 0l, TimeUnit.NANOSECONDS);
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return absent();
+    }
+  }
+
+  private void release(
+    final Ticket ticket
+  ) {
+    this.lock.lock();
+    try {
+      if ( this.tickets.remove(ticket.id, ticket) ) {
+        this.reserved = this.reserved.minus(ticket.cost);
+      }
+      logger.info("{}/released: {} | {}", ticket.id, ticket.cost, this);
+      this.released.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  // must be called holding `lock`: returns why the test cannot be admitted now.
+  private Optional<String> reject(
+    final String id,
+    final JMeterTestCost cost,
+    final boolean embedded
+  ) {
+    if ( this.tickets.containsKey(id) ) {
+      return Optional.of("test is already running");
+    }
+    if ( this.tickets.isEmpty() ) {
+      return absent();
+    }
+    if ( embedded ) {
+      for ( final Ticket ticket : this.tickets.values() ) {
+        if ( ticket.embedded ) {
+          return Optional.of("embedded engine is busy");
+        }
+      }
+    }
+    if ( !this.reserved.plus(cost).fits(this.capacity) ) {
+      return Optional.of("budget exhausted");
+    }
+    final double cpuLoad = this.cpuLoad();
+    if ( cpuLoad >= this.maxCpuLoad ) {
+      return Optional.of("CPU load is too high: " + cpuLoad);
+    }
+    final long freeMemory = this.freeMemory();
+    if ( freeMemory >= 0l && freeMemory < cost.memory() ) {
+      return Optional.of("not enough free memory: " + freeMemory);
+    }
+    final long openFds = this.openFds();
+    if ( openFds >= 0l && (openFds + cost.fds()) > this.maxFds() ) {
+      return Optional.of("not enough file descriptors: " + openFds);
+    }
+    return absent();
+  }
+
+  // seconds until the first running test is expected to be complete.
+  public long retryAfter() {
+    this.lock.lock();
+    try {
+      final long now = System.currentTimeMillis();
+      long next = Long.MAX_VALUE;
+      for ( final Ticket ticket : this.tickets.values() ) {
+        next = Math.min(next, ticket.expectedEnd - now);
+      }
+      if ( next == Long.MAX_VALUE ) {
+        next = TEST_OVERHEAD_MILLIS;
+      }
+      return Math.max(1l, TimeUnit.MILLISECONDS.toSeconds(next + 999l));
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  public Budget budget() {
+    final long retryAfter = this.retryAfter();
+    this.lock.lock();
+    try {
+      return new Budget(this.cpus, this.cpuLoad(),
+        this.freeMemory(), this.openFds(),
+        this.capacity, this.reserved,
+        ImmutableList.copyOf(this.tickets.keySet()),
+        this.queued, retryAfter);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  // the following are container aware: see `jdk.internal.platform.Metrics`.
+
+  private double cpuLoad() {
+    if ( this.os instanceof com.sun.management.OperatingSystemMXBean ) {
+      return ((com.sun.management.OperatingSystemMXBean) this.os).getCpuLoad();
+    }
+    return -1d;
+  }
+
+  private long totalMemory() {
+    if ( this.os instanceof com.sun.management.OperatingSystemMXBean ) {
+      return ((com.sun.management.OperatingSystemMXBean) this.os).getTotalMemorySize();
+    }
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  private long freeMemory() {
+    if ( this.os instanceof com.sun.management.OperatingSystemMXBean ) {
+      return ((com.sun.management.OperatingSystemMXBean) this.os).getFreeMemorySize();
+    }
+    return -1l;
+  }
+
+  private long maxFds() {
+    if ( this.os instanceof UnixOperatingSystemMXBean ) {
+      return ((UnixOperatingSystemMXBean) this.os).getMaxFileDescriptorCount();
+    }
+    return Long.MAX_VALUE;
+  }
+
+  private long openFds() {
+    if ( this.os instanceof UnixOperatingSystemMXBean ) {
+      return ((UnixOperatingSystemMXBean) this.os).getOpenFileDescriptorCount();
+    }
+    return -1l;
+  }
+
+}
@@ -0,0 +1,86 @@
+package dev.chux.gcp.crun.jmeter.admission;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// estimated resources required by a test while it is running.
+public final class JMeterTestCost {
+
+  static final JMeterTestCost ZERO = new JMeterTestCost(0l, 0l, 0l);
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="threads")
+  private final long threads;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="memory")
+  private final long memory;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="fds")
+  private final long fds;
+
+  JMeterTestCost(
+    final long threads,
+    final long memory,
+    final long fds
+  ) {
+    this.threads = Math.max(0l, threads);
+    this.memory = Math.max(0l, memory);
+    this.fds = Math.max(0l, fds);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("threads", this.threads)
+      .add("memory", this.memory)
+      .add("fds", this.fds)
+      .toString();
+  }
+
+  public long threads() {
+    return this.threads;
+  }
+
+  public long memory() {
+    return this.memory;
+  }
+
+  public long fds() {
+    return this.fds;
+  }
+
+  JMeterTestCost plus(
+    final JMeterTestCost cost
+  ) {
+    return new JMeterTestCost(
+      this.threads + cost.threads,
+      this.memory + cost.memory,
+      this.fds + cost.fds);
+  }
+
+  JMeterTestCost minus(
+    final JMeterTestCost cost
+  ) {
+    return new JMeterTestCost(
+      this.threads - cost.threads,
+      this.memory - cost.memory,
+      this.fds - cost.fds);
+  }
+
+  boolean fits(
+    final JMeterTestCost capacity
+  ) {
+    return this.threads <= capacity.threads
+      && this.memory <= capacity.memory
+      && this.fds <= capacity.fds;
+  }
+
+}
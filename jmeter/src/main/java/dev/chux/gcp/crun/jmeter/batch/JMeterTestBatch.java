@@ -0,0 +1,454 @@
+package dev.chux.gcp.crun.jmeter.batch;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// tests submitted together, executed in order; the whole batch is persisted as JSON so that
+//   queued tests survive restarts of JMaaS.
+public final class JMeterTestBatch {
+
+  public enum Status {
+    @SerializedName("queued") QUEUED,
+    @SerializedName("running") RUNNING,
+    @SerializedName("complete") COMPLETE,
+    @SerializedName("failed") FAILED,
+    @SerializedName("cancelled") CANCELLED;
+
+    private boolean done() {
+      return this == COMPLETE || this == FAILED || this == CANCELLED;
+    }
+  }
+
+  // outcome of a complete test, taken from its metrics.
+  public static final class Result {
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="samples")
+    private long samples;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="errors")
+    private long errors;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="error_rate")
+    private double errorRate;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="qps")
+    private double qps;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="p50")
+    private long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="p99")
+    private long p99;
+
+    private Result() {}
+
+    Result(
+      final JMeterTestMetrics.Snapshot snapshot
+    ) {
+      this.samples = snapshot.samples();
+      this.errors = snapshot.errors();
+      this.errorRate = snapshot.errorRate();
+      this.qps = snapshot.qps();
+      this.p50 = snapshot.latency().p50();
+      this.p99 = snapshot.latency().p99();
+    }
+
+  }
+
+  public static final class Test {
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="index")
+    private int index;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="id")
+    private String id;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="status")
+    private Status status = Status.QUEUED;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="started")
+    private long started = 0l;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="finished")
+    private long finished = 0l;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="error")
+    private String error;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="flags")
+    private Set<String> flags;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="result")
+    private Result result;
+
+    @Since(1.0)
+    @Expose(deserialize=true, serialize=true)
+    @SerializedName(value="test")
+    private JMeterTestDefinition definition;
+
+    // `true` once the test starts, `false` if it never will; not persisted.
+    private SettableFuture<Boolean> startup = SettableFuture.create();
+
+    private Test() {}
+
+    private Test(
+      final int index,
+      final String id,
+      final JMeterTestDefinition definition
+    ) {
+      this.index = index;
+      this.id = id;
+      this.definition = definition;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .omitNullValues()
+        .add("index", this.index)
+        .add("id", this.id)
+        .add("status", this.status)
+        .add("error", this.error)
+        .toString();
+    }
+
+    public String id() {
+      return this.id;
+    }
+
+    public JMeterTestDefinition definition() {
+      return this.definition;
+    }
+
+    public synchronized Status status() {
+      return this.status;
+    }
+
+    // blocks until the test starts; returns `false` if it never will.
+    public boolean awaitStart() throws Exception {
+      return this.startup().get().booleanValue();
+    }
+
+    synchronized void start() {
+      this.status = Status.RUNNING;
+      this.started = System.currentTimeMillis();
+      this.startup().set(Boolean.TRUE);
+    }
+
+    synchronized void complete(
+      final Optional<Result> result,
+      final Set<String> flags
+    ) {
+      this.status = Status.COMPLETE;
+      this.finished = System.currentTimeMillis();
+      this.result = result.orNull();
+      this.flags = flags.isEmpty() ? null : ImmutableSet.copyOf(flags);
+    }
+
+    synchronized void fail(
+      final String error
+    ) {
+      this.status = Status.FAILED;
+      this.finished = System.currentTimeMillis();
+      this.error = error;
+      this.startup().set(Boolean.FALSE);
+    }
+
+    // only queued tests may be cancelled.
+    synchronized boolean cancel() {
+      if ( this.status != Status.QUEUED ) {
+        return false;
+      }
+      this.status = Status.CANCELLED;
+      this.finished = System.currentTimeMillis();
+      this.startup().set(Boolean.FALSE);
+      return true;
+    }
+
+    // tests which were running when JMaaS stopped are executed again.
+    synchronized void restore() {
+      if ( this.status == Status.RUNNING ) {
+        this.status = Status.QUEUED;
+        this.started = 0l;
+      }
+      if ( this.status.done() ) {
+        this.startup().set(Boolean.valueOf(this.started > 0l));
+      }
+    }
+
+    private synchronized SettableFuture<Boolean> startup() {
+      // instances created by Gson skip field initializers
+      if ( this.startup == null ) {
+        this.startup = SettableFuture.create();
+      }
+      return this.startup;
+    }
+
+  }
+
+  public static final class Summary {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="tests")
+    private int tests = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="queued")
+    private int queued = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="running")
+    private int running = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="complete")
+    private int complete = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="failed")
+    private int failed = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cancelled")
+    private int cancelled = 0;
+
+    // complete tests flagged while running, i.e.: `generator-saturated`
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="flagged")
+    private int flagged = 0;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="samples")
+    private long samples = 0l;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="errors")
+    private long errors = 0l;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="error_rate")
+    private double errorRate = 0d;
+
+    private Summary(
+      final List<Test> tests
+    ) {
+      for ( final Test test : tests ) {
+        this.tests += 1;
+        switch ( test.status() ) {
+          case QUEUED:    this.queued += 1;    break;
+          case RUNNING:   this.running += 1;   break;
+          case COMPLETE:  this.complete += 1;  break;
+          case FAILED:    this.failed += 1;    break;
+          case CANCELLED: this.cancelled += 1; break;
+        }
+        synchronized(test) {
+          if ( test.flags != null ) {
+            this.flagged += 1;
+          }
+          if ( test.result != null ) {
+            this.samples += test.result.samples;
+            this.errors += test.result.errors;
+          }
+        }
+      }
+      this.errorRate = (this.samples == 0l) ? 0d : ((double) this.errors / this.samples);
+    }
+
+  }
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="id")
+  private String id;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="parallel")
+  private boolean parallel;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="status")
+  private Status status = Status.QUEUED;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="created")
+  private long created;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="started")
+  private long started = 0l;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="finished")
+  private long finished = 0l;
+
+  // recomputed every time the batch changes
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="summary")
+  private Summary summary;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="tests")
+  private List<Test> tests;
+
+  private JMeterTestBatch() {}
+
+  JMeterTestBatch(
+    final String id,
+    final boolean parallel,
+    final List<JMeterTestDefinition> definitions
+  ) {
+    this.id = id;
+    this.parallel = parallel;
+    this.created = System.currentTimeMillis();
+    final ImmutableList.Builder<Test> tests = ImmutableList.builder();
+    for ( int index = 0; index < definitions.size(); index++ ) {
+      final JMeterTestDefinition definition = definitions.get(index);
+      tests.add(new Test(index, definition.id().or(id + "-" + index), definition));
+    }
+    this.tests = tests.build();
+    this.summary = new Summary(this.tests);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return toStringHelper(this)
+      .add("id", this.id)
+      .add("parallel", this.parallel)
+      .add("status", this.status)
+      .add("tests", this.tests.size())
+      .toString();
+  }
+
+  public String id() {
+    return this.id;
+  }
+
+  public boolean parallel() {
+    return this.parallel;
+  }
+
+  public long created() {
+    return this.created;
+  }
+
+  public List<Test> tests() {
+    return this.tests;
+  }
+
+  public synchronized Status status() {
+    return this.status;
+  }
+
+  public synchronized long finished() {
+    return this.finished;
+  }
+
+  synchronized void start() {
+    this.status = Status.RUNNING;
+    if ( this.started == 0l ) {
+      this.started = System.currentTimeMillis();
+    }
+    this.update();
+  }
+
+  // a batch fails if none of its tests completed.
+  synchronized void finish() {
+    final Summary summary = this.update();
+    this.status = (summary.cancelled == summary.tests) ? Status.CANCELLED
+      : (summary.complete == 0) ? Status.FAILED : Status.COMPLETE;
+    this.finished = System.currentTimeMillis();
+  }
+
+  synchronized int cancel() {
+    int cancelled = 0;
+    for ( final Test test : this.tests ) {
+      if ( test.cancel() ) {
+        cancelled += 1;
+      }
+    }
+    if ( this.status == Status.QUEUED ) {
+      this.finish();
+    } else {
+      this.update();
+    }
+    return cancelled;
+  }
+
+  // returns `true` if the batch must be executed.
+  synchronized boolean restore() {
+    for ( final Test test : this.tests ) {
+      test.restore();
+    }
+    if ( this.status.done() ) {
+      this.update();
+      return false;
+    }
+    this.status = Status.QUEUED;
+    this.update();
+    return true;
+  }
+
+  synchronized Summary update() {
+    this.summary = new Summary(this.tests);
+    return this.summary;
+  }
+
+}
@@ -0,0 +1,525 @@
+package dev.chux.gcp.crun.jmeter.batch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestAdmission;
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestCost;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// runs batches of tests, one batch after the other, for as long as JMaaS runs:
+//   - batches are persisted as JSON under `jmeter.batch.dir`, and updated as their tests run;
+//     queued batches are loaded again when JMaaS starts, and tests which were running are executed again.
+//   - credential headers are never persisted: tests which need them fail instead of being executed again.
+//   - every test waits for `JMeterTestAdmission` instead of being rejected; tests of a `parallel` batch
+//     start as soon as they are admitted, otherwise every test starts once the previous one is complete.
+//   - tests run like `/run?async=true`: their output may be streamed, replayed, and their metrics queried.
+//   - tests of a batch share the instance's warm state: parsed plans of the `embedded` and `pooled`
+//     engines, and idle pooled workers started while the previous test was running.
+//   - finished batches are deleted after `jmeter.batch.retention.time` minutes.
+public class JMeterTestBatchService {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestBatchService.class);
+
+  public static final String PROPERTY_BATCH_DIR = "jmeter.batch.dir";
+  public static final String PROPERTY_BATCH_MAX_TESTS = "jmeter.batch.max_tests";
+  public static final String PROPERTY_BATCH_RETENTION_TIME = "jmeter.batch.retention.time";
+
+  private static final String PROPERTY_JMETER_MODES = "jmeter.modes";
+  private static final String PROPERTY_JMETER_ENGINE = "jmeter.engine";
+
+  private static final String DEFAULT_BATCH_DIR = "/tmp/jmaas/batches";
+  private static final int DEFAULT_BATCH_MAX_TESTS = 100;
+  // minutes
+  private static final long DEFAULT_BATCH_RETENTION_TIME = 1440l;
+
+  private static final String MODE_QPS = "qps";
+  private static final String MODE_CONCURRENCY = "concurrency";
+
+  private static final Set<String> ENGINES = ImmutableSet.of(
+    JMeterTestConfig.ENGINE_PROCESS, JMeterTestConfig.ENGINE_EMBEDDED,
+    JMeterTestConfig.ENGINE_POOLED, JMeterTestConfig.ENGINE_OPEN);
+
+  private static final String JSON = ".json";
+
+  private static final CharMatcher ID_CHARS = CharMatcher.inRange('a', 'z')
+    .or(CharMatcher.inRange('A', 'Z')).or(CharMatcher.inRange('0', '9')).or(CharMatcher.anyOf("._-")).precomputed();
+  private static final int MAX_ID_LENGTH = 128;
+
+  private final Gson gson;
+  private final JMeterTestService jMeterTestService;
+  private final JMeterTestAdmission jMeterTestAdmission;
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+
+  private final Path dir;
+  private final int maxTests;
+  private final long retentionMillis;
+  private final Set<String> modes;
+  private final String engine;
+  private final String instanceID;
+
+  private final Map<String, JMeterTestBatch> batches = Maps.newConcurrentMap();
+  private final BlockingQueue<JMeterTestBatch> queue = new LinkedBlockingQueue<>();
+
+  @Inject
+  public JMeterTestBatchService(
+    final Gson gson,
+    final ConfigService configService,
+    final ExecutionModel executionModel,
+    final JMeterTestService jMeterTestService,
+    final JMeterTestAdmission jMeterTestAdmission,
+    final JMeterTestMetricsService jMeterTestMetricsService
+  ) {
+    this.gson = gson;
+    this.jMeterTestService = jMeterTestService;
+    this.jMeterTestAdmission = jMeterTestAdmission;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+    this.dir = Paths.get(configService.getAppPropOrDefault(PROPERTY_BATCH_DIR, DEFAULT_BATCH_DIR));
+    this.maxTests = configService.getIntAppProp(PROPERTY_BATCH_MAX_TESTS).or(DEFAULT_BATCH_MAX_TESTS);
+    this.retentionMillis = TimeUnit.MINUTES.toMillis(
+      configService.getLongAppProp(PROPERTY_BATCH_RETENTION_TIME).or(DEFAULT_BATCH_RETENTION_TIME)
+    );
+    this.modes = ImmutableSet.copyOf(configService.getMultivalueAppProp(PROPERTY_JMETER_MODES));
+    this.engine = configService.getOptionalAppProp(PROPERTY_JMETER_ENGINE).or(JMeterTestConfig.ENGINE_PROCESS);
+    this.instanceID = configService.getOptionalSysProp("com.google.cloud.run.instance.id").or(newInstanceID());
+
+    this.load();
+
+    final ExecutorService executor = executionModel.newExecutor("jmeter-batch");
+    executor.execute(this::dispatch);
+
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("dir", this.dir)
+      .add("max_tests", this.maxTests)
+      .add("retention_millis", this.retentionMillis)
+      .add("batches", this.batches.size())
+      .add("queued", this.queue.size())
+      .toString();
+  }
+
+  public int maxTests() {
+    return this.maxTests;
+  }
+
+  public Optional<JMeterTestBatch> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    return fromNullable(this.batches.get(id));
+  }
+
+  // returns why a test cannot be executed; same rules as `/run`.
+  public Optional<String> validate(
+    final JMeterTestDefinition test
+  ) {
+    if ( !test.host().isPresent() ) {
+      return Optional.of("host is required");
+    }
+    final String mode = test.mode();
+    if ( !this.modes.contains(mode) ) {
+      return Optional.of("invalid mode: " + mode);
+    }
+    final String engine = test.engine().or(this.engine);
+    if ( !ENGINES.contains(engine) ) {
+      return Optional.of("invalid engine: " + engine);
+    }
+    if ( engine.equals(JMeterTestConfig.ENGINE_OPEN) && !mode.equals(MODE_QPS) ) {
+      return Optional.of("engine 'open' requires 'mode' to be set to 'qps'");
+    }
+    if ( mode.equals(MODE_QPS) && !test.qps().isPresent() ) {
+      return Optional.of("'qps' is required when 'mode' is set to 'qps'");
+    }
+    if ( mode.equals(MODE_CONCURRENCY) && !test.concurrency().isPresent() ) {
+      return Optional.of("'concurrency' is required when 'mode' is set to 'concurrency'");
+    }
+    if ( test.minLatency() <= 0 ) {
+      return Optional.of("'min_latency' must be greater than 0 milli seconds");
+    }
+    if ( test.maxLatency() < test.minLatency() ) {
+      return Optional.of("'max_latency' must be greater than 'min_latency'");
+    }
+    if ( test.duration() <= 0 ) {
+      return Optional.of("duration must be greater than 0");
+    }
+    return absent();
+  }
+
+  // batch IDs name files under `jmeter.batch.dir`: they must not reach outside of it.
+  public static boolean isValidID(
+    final String id
+  ) {
+    return !isNullOrEmpty(id) && id.length() <= MAX_ID_LENGTH
+      && ID_CHARS.matchesAllOf(id) && !id.equals(".") && !id.equals("..");
+  }
+
+  // queues a batch of valid tests; returns `absent` if a batch with the same ID exists.
+  public Optional<JMeterTestBatch> submit(
+    final String id,
+    final boolean parallel,
+    final List<JMeterTestDefinition> tests
+  ) {
+    checkArgument(isValidID(id), "invalid ID: %s", id);
+    checkArgument(!tests.isEmpty(), "tests are required");
+    checkArgument(tests.size() <= this.maxTests, "at most %s tests are allowed", this.maxTests);
+
+    this.retain();
+
+    final JMeterTestBatch batch = new JMeterTestBatch(id, parallel, tests);
+    if ( this.batches.putIfAbsent(id, batch) != null ) {
+      return absent();
+    }
+    this.persist(batch);
+    this.queue.add(batch);
+    logger.info("{}/queued: {} | {}", id, batch, this);
+    return Optional.of(batch);
+  }
+
+  // cancels the queued tests of a batch; running tests are not stopped.
+  public int cancel(
+    final JMeterTestBatch batch
+  ) {
+    final int cancelled = batch.cancel();
+    this.persist(batch);
+    logger.info("{}/cancelled: {} tests", batch.id(), cancelled);
+    return cancelled;
+  }
+
+  private void dispatch() {
+    while ( !Thread.currentThread().isInterrupted() ) {
+      final JMeterTestBatch batch;
+      try {
+        batch = this.queue.take();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      try {
+        this.run(batch);
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(final Exception e) {
+        logger.error("{}/batch failed =>\n{}", batch.id(), getStackTraceAsString(e));
+      }
+      batch.finish();
+      this.persist(batch);
+      logger.info("{}/finished: {}", batch.id(), batch);
+    }
+  }
+
+  private void run(
+    final JMeterTestBatch batch
+  ) throws Exception {
+    if ( batch.status() != JMeterTestBatch.Status.QUEUED ) {
+      // cancelled while queued
+      return;
+    }
+    batch.start();
+    this.persist(batch);
+    logger.info("{}/started: {}", batch.id(), batch);
+
+    final List<ListenableFuture<JMeterTest>> running = Lists.newArrayList();
+    for ( final JMeterTestBatch.Test test : batch.tests() ) {
+      if ( test.status() != JMeterTestBatch.Status.QUEUED ) {
+        continue;
+      }
+      final Optional<ListenableFuture<JMeterTest>> future = this.run(batch, test);
+      if ( !future.isPresent() ) {
+        continue;
+      }
+      if ( batch.parallel() ) {
+        running.add(future.get());
+      } else {
+        await(future.get());
+      }
+    }
+    for ( final ListenableFuture<JMeterTest> future : running ) {
+      await(future);
+    }
+  }
+
+  private Optional<ListenableFuture<JMeterTest>> run(
+    final JMeterTestBatch batch,
+    final JMeterTestBatch.Test test
+  ) throws InterruptedException {
+    final String id = test.id();
+    final JMeterTestDefinition t = test.definition();
+    final String engine = t.engine().or(this.engine);
+    final boolean embedded = engine.equals(JMeterTestConfig.ENGINE_EMBEDDED);
+    final boolean open = engine.equals(JMeterTestConfig.ENGINE_OPEN);
+
+    final JMeterTestCost cost = this.jMeterTestAdmission.cost(t.mode(),
+      t.concurrency(), t.qps(), t.threads(), t.maxLatency(), embedded, open);
+
+    // the ID is held while the test waits to be admitted, so that no other test may take it.
+    if ( !this.jMeterTestService.reserve(id) ) {
+      this.fail(batch, test, "test is already running: " + id);
+      return absent();
+    }
+
+    // tests of a batch wait for as long as it takes to be admitted, unless they are cancelled.
+    Optional<JMeterTestAdmission.Ticket> ticket = absent();
+    try {
+      while ( !ticket.isPresent() ) {
+        if ( test.status() != JMeterTestBatch.Status.QUEUED ) {
+          this.jMeterTestService.release(id);
+          return absent();
+        }
+        ticket = this.jMeterTestAdmission.admit(id, cost, embedded, t.duration(),
+          this.jMeterTestAdmission.queueTimeout(), TimeUnit.SECONDS);
+      }
+    } catch(final InterruptedException | RuntimeException e) {
+      this.jMeterTestService.release(id);
+      throw e;
+    }
+
+    final Callback callback = new Callback(batch, test, ticket.get());
+    try {
+      test.start();
+      batch.update();
+      this.persist(batch);
+      // output is kept by the test's stream and log only.
+      final ListenableFuture<JMeterTest> future = this.jMeterTestService.start(callback,
+        this.instanceID, id, absent(), t.jmx(), t.mode(), t.proto(), t.method(),
+        t.host().get(), t.port(), t.path(), t.query(), t.headers(), t.body(),
+        t.concurrency(), t.qps(), t.threads(), t.duration(), t.rampupTime(), t.rampupSteps(),
+        ByteStreams.nullOutputStream(), false /* closeable */,
+        t.minLatency(), t.maxLatency(), Optional.of(engine), t.keepAlive());
+      logger.info("{}/{}: started", batch.id(), id);
+      return Optional.of(future);
+    } catch(final RuntimeException e) {
+      // the test will never run: its resources must be released right away;
+      //   its ID was already released by `JMeterTestService#start`.
+      ticket.get().close();
+      this.fail(batch, test, String.valueOf(e.getMessage()));
+      return absent();
+    }
+  }
+
+  private void fail(
+    final JMeterTestBatch batch,
+    final JMeterTestBatch.Test test,
+    final String error
+  ) {
+    test.fail(error);
+    batch.update();
+    this.persist(batch);
+    logger.error("{}/{}: failed: {}", batch.id(), test.id(), error);
+  }
+
+  // waits for a test to be complete; its outcome is recorded by its callback.
+  private static void await(
+    final ListenableFuture<JMeterTest> future
+  ) throws InterruptedException {
+    try {
+      future.get();
+    } catch(final InterruptedException e) {
+      throw e;
+    } catch(final Exception e) {
+      // recorded by `Callback`
+    }
+  }
+
+  private final class Callback implements FutureCallback<JMeterTest> {
+
+    private final JMeterTestBatch batch;
+    private final JMeterTestBatch.Test test;
+    private final JMeterTestAdmission.Ticket ticket;
+
+    private Callback(
+      final JMeterTestBatch batch,
+      final JMeterTestBatch.Test test,
+      final JMeterTestAdmission.Ticket ticket
+    ) {
+      this.batch = batch;
+      this.test = test;
+      this.ticket = ticket;
+    }
+
+    @Override
+    public void onSuccess(final JMeterTest t) {
+      this.ticket.close();
+      final Optional<JMeterTestMetrics> metrics = jMeterTestMetricsService.get(this.test.id());
+      final Optional<JMeterTestBatch.Result> result = metrics.isPresent()
+        ? Optional.of(new JMeterTestBatch.Result(metrics.get().snapshot().test()))
+        : Optional.<JMeterTestBatch.Result>absent();
+      this.test.complete(result, (t == null) ? ImmutableSet.<String>of() : t.get().flags());
+      this.batch.update();
+      persist(this.batch);
+      logger.info("{}/{}: complete", this.batch.id(), this.test.id());
+    }
+
+    @Override
+    public void onFailure(final Throwable t) {
+      this.ticket.close();
+      fail(this.batch, this.test, String.valueOf(t.getMessage()));
+    }
+
+  }
+
+  private Path path(
+    final String id,
+    final String suffix
+  ) {
+    checkArgument(isValidID(id), "invalid ID: %s", id);
+    final Path dir = this.dir.normalize();
+    final Path path = dir.resolve(id + suffix).normalize();
+    checkArgument(path.startsWith(dir) && !path.equals(dir), "invalid ID: %s", id);
+    return path;
+  }
+
+  // the batch is written to a temporary file first, so that a crash never leaves a partial batch.
+  private void persist(
+    final JMeterTestBatch batch
+  ) {
+    final Path path = this.path(batch.id(), JSON);
+    final Path tmp = this.path(batch.id(), JSON + ".tmp");
+    try {
+      Files.createDirectories(this.dir);
+      synchronized(batch) {
+        final JsonElement json = this.gson.toJsonTree(batch, JMeterTestBatch.class);
+        for ( final JsonElement test : json.getAsJsonObject().getAsJsonArray("tests") ) {
+          final JsonObject t = test.getAsJsonObject();
+          if ( t.has("test") ) {
+            JMeterTestResultService.redact(t.get("test"));
+          }
+        }
+        try ( final Writer writer = Files.newBufferedWriter(tmp, UTF_8) ) {
+          this.gson.toJson(json, writer);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } catch(final Exception e) {
+      logger.error("{}/failed to persist batch '{}' =>\n{}", batch.id(), path, getStackTraceAsString(e));
+    }
+  }
+
+  // loads all batches, and queues the unfinished ones in the same order they were created.
+  private void load() {
+    if ( !Files.isDirectory(this.dir) ) {
+      return;
+    }
+    final List<JMeterTestBatch> loaded = Lists.newArrayList();
+    try ( final DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "*" + JSON) ) {
+      for ( final Path file : files ) {
+        try ( final Reader reader = Files.newBufferedReader(file, UTF_8) ) {
+          final JMeterTestBatch batch = this.gson.fromJson(reader, JMeterTestBatch.class);
+          if ( batch != null && isValidID(batch.id()) && batch.tests() != null ) {
+            loaded.add(batch);
+          }
+        } catch(final Exception e) {
+          logger.error("failed to load batch '{}' =>\n{}", file, getStackTraceAsString(e));
+        }
+      }
+    } catch(final IOException e) {
+      logger.error("failed to load batches from '{}' =>\n{}", this.dir, getStackTraceAsString(e));
+      return;
+    }
+    loaded.sort(Comparator.comparingLong(JMeterTestBatch::created));
+    for ( final JMeterTestBatch batch : loaded ) {
+      this.batches.put(batch.id(), batch);
+      if ( batch.restore() ) {
+        for ( final JMeterTestBatch.Test test : batch.tests() ) {
+          if ( test.status() == JMeterTestBatch.Status.QUEUED && redacted(test.definition()) ) {
+            this.fail(batch, test, "credential headers are not persisted: submit the test again");
+          }
+        }
+        this.queue.add(batch);
+        logger.info("{}/restored: {}", batch.id(), batch);
+      }
+    }
+    this.retain();
+  }
+
+  // deletes batches which finished more than `jmeter.batch.retention.time` minutes ago.
+  private void retain() {
+    final long deadline = System.currentTimeMillis() - this.retentionMillis;
+    for ( final JMeterTestBatch batch : ImmutableList.copyOf(this.batches.values()) ) {
+      final long finished = batch.finished();
+      if ( finished == 0l || finished > deadline ) {
+        continue;
+      }
+      this.batches.remove(batch.id(), batch);
+      try {
+        Files.deleteIfExists(this.path(batch.id(), JSON));
+        logger.info("{}/deleted: {}", batch.id(), batch);
+      } catch(final IOException e) {
+        logger.error("{}/failed to delete batch =>\n{}", batch.id(), getStackTraceAsString(e));
+      }
+    }
+  }
+
+  private static boolean redacted(
+    final JMeterTestDefinition test
+  ) {
+    return test.headers().containsValue(JMeterTestResultService.REDACTED);
+  }
+
+  private static String newInstanceID() {
+    final UUID uuid = UUID.randomUUID();
+    return Hashing.sha256().newHasher()
+      .putLong(uuid.getMostSignificantBits())
+      .putLong(uuid.getLeastSignificantBits())
+      .putLong(System.nanoTime())
+      .hash().toString();
+  }
+
+}
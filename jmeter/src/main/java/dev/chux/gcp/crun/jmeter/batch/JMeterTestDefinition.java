@@ -0,0 +1,231 @@
+package dev.chux.gcp.crun.jmeter.batch;
+
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Strings.emptyToNull;
+
+// a test of a batch: same fields, and names, as `JMeterTestConfig`, and the same defaults as `/run`.
+public final class JMeterTestDefinition {
+
+  private static final int DEFAULT_MIN_LATENCY = 1;
+  private static final int DEFAULT_MAX_LATENCY = 1000;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="id")
+  private String id;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="script")
+  private String jmx;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="mode")
+  private String mode;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="proto")
+  private String proto;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="method")
+  private String method;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="host")
+  private String host;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="port")
+  private Integer port;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="path")
+  private String path;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="params")
+  private Map<String, String> query;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="headers")
+  private Map<String, String> headers;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="payload")
+  private String body;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="min_latency")
+  private Integer minLatency;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="max_latency")
+  private Integer maxLatency;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="concurrency")
+  private String concurrency;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="qps")
+  private String qps;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="duration")
+  private int duration = 0;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="threads")
+  private int threads = 0;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="rampup_time")
+  private int rampupTime = 0;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="rampup_steps")
+  private int rampupSteps = 0;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="engine")
+  private String engine;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="keepalive")
+  private boolean keepAlive = false;
+
+  private JMeterTestDefinition() {}
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .omitNullValues()
+      .add("id", this.id)
+      .add("script", this.jmx)
+      .add("mode", this.mode)
+      .add("host", this.host)
+      .add("path", this.path)
+      .add("qps", this.qps)
+      .add("concurrency", this.concurrency)
+      .add("duration", this.duration)
+      .add("engine", this.engine)
+      .toString();
+  }
+
+  public Optional<String> id() {
+    return fromNullable(emptyToNull(this.id));
+  }
+
+  public Optional<String> jmx() {
+    return fromNullable(emptyToNull(this.jmx));
+  }
+
+  // same default as `/run`
+  public String mode() {
+    return fromNullable(emptyToNull(this.mode)).or("concurrency").toLowerCase();
+  }
+
+  public Optional<String> proto() {
+    return fromNullable(emptyToNull(this.proto));
+  }
+
+  public Optional<String> method() {
+    return fromNullable(emptyToNull(this.method));
+  }
+
+  public Optional<String> host() {
+    return fromNullable(emptyToNull(this.host));
+  }
+
+  public Optional<Integer> port() {
+    return fromNullable(this.port);
+  }
+
+  public Optional<String> path() {
+    return fromNullable(emptyToNull(this.path));
+  }
+
+  public Map<String, String> query() {
+    return (this.query == null) ? ImmutableMap.of() : this.query;
+  }
+
+  public Map<String, String> headers() {
+    return (this.headers == null) ? ImmutableMap.of() : this.headers;
+  }
+
+  public Optional<String> body() {
+    return fromNullable(emptyToNull(this.body));
+  }
+
+  public int minLatency() {
+    return fromNullable(this.minLatency).or(DEFAULT_MIN_LATENCY).intValue();
+  }
+
+  public int maxLatency() {
+    return fromNullable(this.maxLatency).or(DEFAULT_MAX_LATENCY).intValue();
+  }
+
+  public Optional<String> concurrency() {
+    return fromNullable(emptyToNull(this.concurrency));
+  }
+
+  public Optional<String> qps() {
+    return fromNullable(emptyToNull(this.qps));
+  }
+
+  public int duration() {
+    return this.duration;
+  }
+
+  public int threads() {
+    return this.threads;
+  }
+
+  public int rampupTime() {
+    return this.rampupTime;
+  }
+
+  public int rampupSteps() {
+    return this.rampupSteps;
+  }
+
+  public Optional<String> engine() {
+    final Optional<String> engine = fromNullable(emptyToNull(this.engine));
+    return engine.isPresent() ? Optional.of(engine.get().toLowerCase()) : engine;
+  }
+
+  public boolean keepAlive() {
+    return this.keepAlive;
+  }
+
+}
@@ -0,0 +1,414 @@
+package dev.chux.gcp.crun.jmeter.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import dev.chux.gcp.crun.jmeter.output.JMeterSample;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// one logical test executed by several JMaaS workers:
+//   - the load profile is split proportionally across all workers, and shards are started in parallel.
+//   - worker outputs are merged line by line: samples are forwarded as is, the CSV header only once,
+//     and every other line is prefixed by the worker that produced it.
+//   - when a worker is lost, what remains of its shard is split across the surviving workers.
+public class DistributedJMeterTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(DistributedJMeterTest.class);
+
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_LINE_SIZE = 64 * 1024;
+
+  private static final byte[] CRLF = "\r\n".getBytes(UTF_8);
+
+  private final String id;
+  private final String mode;
+  private final List<int[]> steps;
+  private final List<String> workers;
+  private final String method;
+  private final Map<String, String> params;
+  private final Map<String, String> headers;
+  private final Optional<String> body;
+
+  private final HttpClient client;
+  private final Executor executor;
+  private final OutputStream output;
+
+  private final Phaser shards = new Phaser(1);
+  private final Set<String> lost = Sets.newConcurrentHashSet();
+  private final AtomicInteger attempts = new AtomicInteger(0);
+  private final AtomicInteger failed = new AtomicInteger(0);
+
+  private boolean header = false;
+  private long startedAt = 0;
+
+  private final class Shard implements Runnable {
+
+    private final String id;
+    private final String worker;
+    private final List<int[]> steps;
+    // seconds since the start of the logical test at which this shard was started.
+    private final int offset;
+
+    private Shard(
+      final String id,
+      final String worker,
+      final List<int[]> steps,
+      final int offset
+    ) {
+      this.id = id;
+      this.worker = worker;
+      this.steps = steps;
+      this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("id", this.id)
+        .add("worker", this.worker)
+        .add("profile", LoadShards.format(this.steps))
+        .add("offset", this.offset)
+        .toString();
+    }
+
+    private URI uri() {
+      final StringBuilder uri = new StringBuilder(this.worker)
+        .append("/test/run/").append(encode(this.id)).append('?');
+      for ( final Map.Entry<String, String> param : this.params().entrySet() ) {
+        uri.append(encode(param.getKey()))
+          .append('=').append(encode(param.getValue())).append('&');
+      }
+      uri.setLength(uri.length() - 1);
+      return URI.create(uri.toString());
+    }
+
+    private Map<String, String> params() {
+      final Map<String, String> params = Maps.newLinkedHashMap(DistributedJMeterTest.this.params);
+      params.put("id", this.id);
+      params.put("mode", mode);
+      params.put("method", method);
+      params.put(mode.equalsIgnoreCase(LoadShards.MODE_QPS) ? "qps" : "concurrency", LoadShards.format(this.steps));
+      params.put("duration", Integer.toString(LoadShards.duration(mode, this.steps), 10));
+      params.put("async", "false");
+      params.put("output", "res");
+      return params;
+    }
+
+    private HttpRequest request() {
+      final HttpRequest.Builder request = HttpRequest.newBuilder(this.uri())
+        .header("Accept", "text/plain");
+      for ( final Map.Entry<String, String> header : headers.entrySet() ) {
+        request.header(header.getKey(), header.getValue());
+      }
+      if ( body.isPresent() ) {
+        return request.method("POST", HttpRequest.BodyPublishers.ofString(body.get(), UTF_8)).build();
+      }
+      return request.GET().build();
+    }
+
+    @Override
+    public void run() {
+      boolean complete = false;
+      boolean retry = true;
+      try {
+        logger.info("{}/shard/start: {}", DistributedJMeterTest.this.id, this);
+        final HttpResponse<InputStream> response = client.send(this.request(), HttpResponse.BodyHandlers.ofInputStream());
+        final int status = response.statusCode();
+        try ( final InputStream stream = response.body() ) {
+          if ( status == 200 ) {
+            complete = this.copy(stream);
+          } else {
+            // 4xx responses other than `409 Conflict` and `429 Too Many Requests` will fail anywhere.
+            retry = (status >= 500) || (status == 409) || (status == 429);
+            log(this.worker, "---- shard/rejected: <" + this.id + "> status=" + status + " ----");
+          }
+        }
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        retry = false;
+      } catch(final Exception e) {
+        logger.error("{}/shard/failed: {}\n{}", DistributedJMeterTest.this.id, this, getStackTraceAsString(e));
+      } finally {
+        try {
+          if ( complete ) {
+            logger.info("{}/shard/complete: {}", DistributedJMeterTest.this.id, this);
+          } else {
+            lost(this, retry);
+          }
+        } finally {
+          shards.arriveAndDeregister();
+        }
+      }
+    }
+
+    // forwards complete lines into the merged output; returns `true` if the worker reported the test as stopped.
+    private boolean copy(
+      final InputStream stream
+    ) throws IOException {
+      final byte[] stopped = ("---- test/stopped: <" + this.id + "> ----").getBytes(UTF_8);
+      final byte[] buffer = new byte[READ_BUFFER_SIZE];
+      byte[] line = new byte[READ_BUFFER_SIZE];
+      int length = 0;
+      boolean complete = false;
+      int read;
+      while ( (read = stream.read(buffer)) >= 0 ) {
+        int start = 0;
+        for ( int i = 0; i < read; i++ ) {
+          if ( buffer[i] != '\n' ) {
+            continue;
+          }
+          final int count = i - start;
+          if ( length == 0 ) {
+            complete |= this.line(buffer, start, count, stopped);
+          } else {
+            line = append(line, length, buffer, start, count);
+            length = Math.min(length + count, MAX_LINE_SIZE);
+            complete |= this.line(line, 0, length, stopped);
+            length = 0;
+          }
+          start = i + 1;
+        }
+        if ( start < read ) {
+          line = append(line, length, buffer, start, read - start);
+          length = Math.min(length + (read - start), MAX_LINE_SIZE);
+        }
+        if ( stream.available() == 0 ) {
+          flush();
+        }
+      }
+      return complete;
+    }
+
+    private boolean line(
+      final byte[] b,
+      final int off,
+      int len,
+      final byte[] stopped
+    ) throws IOException {
+      if ( len > 0 && b[off + len - 1] == '\r' ) {
+        len -= 1;
+      }
+      if ( JMeterSample.isSample(b, off, len) ) {
+        sample(b, off, len);
+        return false;
+      }
+      if ( JMeterSample.isHeader(b, off, len) ) {
+        header(b, off, len);
+        return false;
+      }
+      log(this.worker, new String(b, off, len, UTF_8));
+      return Arrays.equals(b, off, off + len, stopped, 0, stopped.length);
+    }
+
+  }
+
+  DistributedJMeterTest(
+    final String id,
+    final String mode,
+    final String profile,
+    final List<String> workers,
+    final String method,
+    final Map<String, String> params,
+    final Map<String, String> headers,
+    final Optional<String> body,
+    final HttpClient client,
+    final Executor executor,
+    final OutputStream output
+  ) {
+    this.id = id;
+    this.mode = mode;
+    this.steps = LoadShards.parse(mode, profile);
+    checkArgument(!this.steps.isEmpty(), "invalid profile: %s", profile);
+    checkArgument(!workers.isEmpty(), "no workers available");
+    this.workers = ImmutableList.copyOf(workers);
+    this.method = method;
+    this.params = ImmutableMap.copyOf(params);
+    this.headers = ImmutableMap.copyOf(headers);
+    this.body = body;
+    this.client = client;
+    this.executor = executor;
+    this.output = output;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("id", this.id)
+      .add("mode", this.mode)
+      .add("profile", LoadShards.format(this.steps))
+      .add("workers", this.workers)
+      .add("lost", this.lost)
+      .add("shards", this.attempts.get())
+      .add("failed", this.failed.get())
+      .toString();
+  }
+
+  public String id() {
+    return this.id;
+  }
+
+  public int duration() {
+    return LoadShards.duration(this.mode, this.steps);
+  }
+
+  public List<String> workers() {
+    return this.workers;
+  }
+
+  // starts all shards and blocks until all of them, including redistributed ones, are complete;
+  // returns `true` if the whole profile was executed.
+  public boolean run() throws IOException {
+    this.startedAt = System.currentTimeMillis();
+    this.start(this.workers, this.steps, 0);
+    this.shards.arriveAndAwaitAdvance();
+    this.flush();
+    logger.info("{}/complete: {}", this.id, this);
+    return this.failed.get() == 0;
+  }
+
+  private void start(
+    final List<String> workers,
+    final List<int[]> steps,
+    final int offset
+  ) {
+    final List<List<int[]>> shards = LoadShards.split(this.mode, steps, workers.size());
+    for ( int i = 0; i < workers.size(); i++ ) {
+      final List<int[]> s = shards.get(i);
+      if ( s.isEmpty() ) {
+        continue;
+      }
+      final Shard shard = new Shard(this.id + "-" + this.attempts.incrementAndGet(), workers.get(i), s, offset);
+      // register before submitting: the test is not complete until this shard is.
+      this.shards.register();
+      try {
+        this.executor.execute(shard);
+      } catch(final RuntimeException e) {
+        this.shards.arriveAndDeregister();
+        throw e;
+      }
+    }
+  }
+
+  private void lost(
+    final Shard shard,
+    final boolean retry
+  ) {
+    this.lost.add(shard.worker);
+
+    final int elapsed = (int) TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - this.startedAt);
+    final List<int[]> remaining = LoadShards.remaining(this.mode, shard.steps, elapsed - shard.offset);
+
+    final List<String> workers = Lists.newArrayList();
+    for ( final String worker : this.workers ) {
+      if ( !this.lost.contains(worker) ) {
+        workers.add(worker);
+      }
+    }
+
+    log(shard.worker, "---- worker/lost: <" + shard.id + "> remaining=" + LoadShards.format(remaining) + " ----");
+
+    if ( remaining.isEmpty() ) {
+      return;
+    }
+    if ( !retry || workers.isEmpty() ) {
+      logger.error("{}/shard/lost: {} | remaining load cannot be redistributed: {}", this.id, shard, this);
+      this.failed.incrementAndGet();
+      return;
+    }
+    logger.warn("{}/shard/lost: {} | redistributing across: {}", this.id, shard, workers);
+    this.start(workers, remaining, elapsed);
+  }
+
+  private synchronized void sample(
+    final byte[] b,
+    final int off,
+    final int len
+  ) throws IOException {
+    this.output.write(b, off, len);
+    this.output.write(CRLF);
+  }
+
+  private synchronized void header(
+    final byte[] b,
+    final int off,
+    final int len
+  ) throws IOException {
+    if ( !this.header ) {
+      this.header = true;
+      this.sample(b, off, len);
+    }
+  }
+
+  private synchronized void log(
+    final String worker,
+    final String line
+  ) {
+    try {
+      this.output.write(("[" + worker + "] " + line + "\r\n").getBytes(UTF_8));
+    } catch(final IOException e) {
+      logger.error("{}/failed to write: {}\n{}", this.id, line, getStackTraceAsString(e));
+    }
+  }
+
+  private synchronized void flush() throws IOException {
+    this.output.flush();
+  }
+
+  private static byte[] append(
+    byte[] line,
+    final int length,
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    // lines longer than `MAX_LINE_SIZE` are truncated
+    final int count = Math.min(len, MAX_LINE_SIZE - length);
+    if ( count <= 0 ) {
+      return line;
+    }
+    if ( (length + count) > line.length ) {
+      line = Arrays.copyOf(line, Math.min(MAX_LINE_SIZE, Math.max(line.length * 2, length + count)));
+    }
+    System.arraycopy(b, off, line, length, count);
+    return line;
+  }
+
+  private static String encode(
+    final String value
+  ) {
+    return URLEncoder.encode(value, UTF_8);
+  }
+
+}
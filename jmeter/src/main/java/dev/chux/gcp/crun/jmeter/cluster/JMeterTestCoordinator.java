@@ -0,0 +1,173 @@
+package dev.chux.gcp.crun.jmeter.cluster;
+
+import java.io.OutputStream;
+
+import java.net.http.HttpClient;
+
+import java.time.Duration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ExecutorService;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.apache.commons.io.output.TeeOutputStream;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// shards tests across the JMaaS workers listed in `jmeter.workers`:
+//   - workers are JMaaS base URLs, i.e.: `http://localhost:8081/jmeter`.
+//   - merged samples of all shards are recorded as the metrics of the logical test.
+public class JMeterTestCoordinator {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestCoordinator.class);
+
+  public static final String PROPERTY_JMETER_WORKERS = "jmeter.workers";
+
+  private static final CharMatcher TRAILING_SLASH = CharMatcher.is('/');
+
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+  private final List<String> workers;
+  private final HttpClient client;
+  private final ExecutorService executor;
+
+  private final Map<String, DistributedJMeterTest> tests = Maps.newConcurrentMap();
+  // IDs of tests from `create(...)` until `run(...)` is complete: metrics are registered by ID.
+  private final Set<String> ids = Sets.newConcurrentHashSet();
+
+  @Inject
+  JMeterTestCoordinator(
+    final ConfigService configService,
+    final JMeterTestMetricsService jMeterTestMetricsService,
+    final ExecutionModel executionModel
+  ) {
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+    this.executor = executionModel.newExecutor("jmeter-coordinator");
+    this.workers = workers(configService.getMultivalueAppProp(PROPERTY_JMETER_WORKERS));
+    this.client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(Duration.ofSeconds(10))
+      .executor(this.executor)
+      .build();
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("workers", this.workers)
+      .add("tests", this.tests.keySet())
+      .toString();
+  }
+
+  public List<String> workers() {
+    return this.workers;
+  }
+
+  public static List<String> workers(
+    final List<String> workers
+  ) {
+    final ImmutableList.Builder<String> w = ImmutableList.builder();
+    for ( final String worker : workers ) {
+      if ( !isNullOrEmpty(worker) ) {
+        w.add(TRAILING_SLASH.trimTrailingFrom(worker.trim()));
+      }
+    }
+    return w.build();
+  }
+
+  // duration of a load profile; `0` if the profile is not valid.
+  public static int duration(
+    final String mode,
+    final String profile
+  ) {
+    return LoadShards.duration(mode, LoadShards.parse(mode, profile));
+  }
+
+  public Optional<DistributedJMeterTest> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    return fromNullable(this.tests.get(id));
+  }
+
+  public DistributedJMeterTest create(
+    final String id,
+    final String mode,
+    final String profile,
+    final List<String> workers,
+    final String method,
+    final Map<String, String> params,
+    final Map<String, String> headers,
+    final Optional<String> body,
+    final OutputStream output
+  ) {
+    checkArgument(!isNullOrEmpty(id), "ID is required");
+    // the ID is reserved before anything is registered for it.
+    checkState(this.ids.add(id), "test is already running: %s", id);
+    try {
+      // merged samples are also recorded as the metrics of the logical test.
+      final OutputStream stream = new TeeOutputStream(this.jMeterTestMetricsService
+        .watch(id, mode, fromNullable(profile)), output);
+      try {
+        return new DistributedJMeterTest(id, mode, profile, workers,
+          method, params, headers, body, this.client, this.executor, stream);
+      } catch(final RuntimeException e) {
+        this.jMeterTestMetricsService.complete(id);
+        throw e;
+      }
+    } catch(final RuntimeException e) {
+      this.ids.remove(id);
+      throw e;
+    }
+  }
+
+  // blocks until the distributed test is complete.
+  public boolean run(
+    final DistributedJMeterTest test
+  ) throws Exception {
+    final String id = test.id();
+    checkState(this.tests.putIfAbsent(id, test) == null, "test is already running: %s", id);
+    try {
+      return test.run();
+    } finally {
+      this.tests.remove(id, test);
+      this.jMeterTestMetricsService.complete(id);
+      this.ids.remove(id);
+    }
+  }
+
+  public void runAsync(
+    final DistributedJMeterTest test
+  ) {
+    this.executor.execute(() -> {
+      try {
+        this.run(test);
+      } catch(final Exception e) {
+        logger.error("{}/failed: {}\n{}", test.id(), test, getStackTraceAsString(e));
+      }
+    });
+  }
+
+}
@@ -0,0 +1,205 @@
+package dev.chux.gcp.crun.jmeter.cluster;
+
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import dev.chux.gcp.crun.jmeter.LoadProfile;
+
+// splits load profiles across workers, and computes what remains of them after some time:
+//   - `qps` profiles are `3-tuples`: `start_qps,end_qps,duration`.
+//   - `concurrency` profiles are `5-tuples`: `thread_count,initial_delay,rampup_time,duration,shutdown_time`.
+// JMaaS validates every item of a `concurrency` tuple to be positive, so generated tuples never contain `0`.
+final class LoadShards {
+
+  static final String MODE_QPS = "qps";
+
+  private static final Joiner ITEM_JOINER = Joiner.on(',');
+  private static final Joiner STEP_JOINER = Joiner.on(';');
+
+  private LoadShards() {}
+
+  static int tupleSize(
+    final String mode
+  ) {
+    return mode.equalsIgnoreCase(MODE_QPS) ? 3 : 5;
+  }
+
+  // returns an empty list if the profile is not valid.
+  static List<int[]> parse(
+    final String mode,
+    final String profile
+  ) {
+    final int size = tupleSize(mode);
+    final List<String> items = LoadProfile.split(profile);
+    if ( items.isEmpty() || (items.size() % size) != 0 ) {
+      return ImmutableList.of();
+    }
+    final List<int[]> steps = Lists.newArrayListWithCapacity(items.size() / size);
+    for ( int index = 0; index < items.size(); index += size ) {
+      final int[] step = new int[size];
+      for ( int i = 0; i < size; i++ ) {
+        final Integer value = Ints.tryParse(items.get(index + i));
+        if ( value == null ) {
+          return ImmutableList.of();
+        }
+        step[i] = value.intValue();
+      }
+      steps.add(step);
+    }
+    return steps;
+  }
+
+  static String format(
+    final List<int[]> steps
+  ) {
+    final List<String> s = Lists.newArrayListWithCapacity(steps.size());
+    for ( final int[] step : steps ) {
+      s.add(ITEM_JOINER.join(Ints.asList(step)));
+    }
+    return STEP_JOINER.join(s);
+  }
+
+  // same rules as `JMeterTestImpl`: the test `duration` must match the profile's.
+  static int duration(
+    final String mode,
+    final List<int[]> steps
+  ) {
+    int duration = 0;
+    for ( final int[] step : steps ) {
+      if ( mode.equalsIgnoreCase(MODE_QPS) ) {
+        duration += step[2];
+      } else {
+        duration += step[2] + step[3] + step[4];
+      }
+    }
+    return duration;
+  }
+
+  // share `i` of `n` of `value`: shares always add up to `value`.
+  static int share(
+    final int value,
+    final int i,
+    final int n
+  ) {
+    final long v = Math.max(0, value);
+    return (int) (((v * (i + 1)) / n) - ((v * i) / n));
+  }
+
+  // splits the load of every step proportionally: `qps` shards keep the same timeline,
+  // `concurrency` shards drop the steps in which they have no threads.
+  //   non-positive QPS are executed as `1`, so `qps` profiles are only split across as many workers
+  //   as the lowest QPS of the profile: shards of the remaining workers are empty.
+  static List<List<int[]>> split(
+    final String mode,
+    final List<int[]> steps,
+    final int n
+  ) {
+    final boolean qps = mode.equalsIgnoreCase(MODE_QPS);
+    final int k = qps ? Math.min(n, minQPS(steps)) : n;
+    final List<List<int[]>> shards = Lists.newArrayListWithCapacity(n);
+    for ( int i = 0; i < k; i++ ) {
+      final List<int[]> shard = Lists.newArrayListWithCapacity(steps.size());
+      for ( final int[] step : steps ) {
+        final int[] s = step.clone();
+        if ( qps ) {
+          s[0] = share(Math.max(1, step[0]), i, k);
+          s[1] = share(Math.max(1, step[1]), i, k);
+        } else {
+          s[0] = share(step[0], i, k);
+          if ( s[0] <= 0 ) {
+            continue;
+          }
+        }
+        shard.add(s);
+      }
+      shards.add(shard);
+    }
+    for ( int i = k; i < n; i++ ) {
+      shards.add(ImmutableList.<int[]>of());
+    }
+    return shards;
+  }
+
+  // lowest QPS of a `qps` profile, as executed: at least `1`.
+  static int minQPS(
+    final List<int[]> steps
+  ) {
+    int min = Integer.MAX_VALUE;
+    for ( final int[] step : steps ) {
+      min = Math.min(min, Math.min(step[0], step[1]));
+    }
+    return Math.max(1, min);
+  }
+
+  // the part of the profile that has not been executed after `elapsed` seconds.
+  static List<int[]> remaining(
+    final String mode,
+    final List<int[]> steps,
+    final int elapsed
+  ) {
+    if ( elapsed <= 0 ) {
+      return steps;
+    }
+    return mode.equalsIgnoreCase(MODE_QPS)
+      ? remainingQPS(steps, elapsed)
+      : remainingConcurrency(steps, elapsed);
+  }
+
+  private static List<int[]> remainingQPS(
+    final List<int[]> steps,
+    final int elapsed
+  ) {
+    final List<int[]> remaining = Lists.newArrayList();
+    int start = 0;
+    for ( final int[] step : steps ) {
+      final int end = start + step[2];
+      if ( end > elapsed ) {
+        if ( start >= elapsed ) {
+          remaining.add(step.clone());
+        } else {
+          // linear interpolation of QPS at the cut point
+          final int offset = elapsed - start;
+          final int qps = step[0] + (int) (((long) (step[1] - step[0]) * offset) / step[2]);
+          remaining.add(new int[] { qps, step[1], end - elapsed });
+        }
+      }
+      start = end;
+    }
+    return remaining;
+  }
+
+  private static List<int[]> remainingConcurrency(
+    final List<int[]> steps,
+    final int elapsed
+  ) {
+    final List<int[]> remaining = Lists.newArrayList();
+    for ( final int[] step : steps ) {
+      int consumed = elapsed - step[1];
+      if ( consumed <= 0 ) {
+        // not started yet: only the initial delay is shorter
+        remaining.add(new int[] { step[0], Math.max(1, -consumed), step[2], step[3], step[4] });
+        continue;
+      }
+      // consume rampup, then duration, then shutdown
+      final int[] s = new int[] { step[0], 1, step[2], step[3], step[4] };
+      for ( int i = 2; i < 5 && consumed > 0; i++ ) {
+        final int c = Math.min(consumed, s[i]);
+        s[i] -= c;
+        consumed -= c;
+      }
+      if ( (s[3] + s[4]) <= 0 ) {
+        continue;
+      }
+      s[2] = Math.max(1, s[2]);
+      s[3] = Math.max(1, s[3]);
+      s[4] = Math.max(1, s[4]);
+      remaining.add(s);
+    }
+    return remaining;
+  }
+
+}
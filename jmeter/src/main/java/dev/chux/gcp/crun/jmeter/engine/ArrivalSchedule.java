@@ -0,0 +1,150 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+
+// intended start times of all requests of a `qps` profile in the form of `3-tuples`: `start_qps,end_qps,duration`:
+//   - every tuple is a `line(start_qps,end_qps,duration)`: the rate changes linearly along it.
+//   - arrivals within a line are placed where the area below the rate reaches the next whole request:
+//       N(t) = r0 * t + ( r1 - r0 ) * t^2 / ( 2 * D ), solved for `t`.
+//   - fractions of requests are carried over to the next line, so no request is lost between lines.
+//   - non-positive QPS are executed as `1`, same as for the `VariableThroughputTimer`.
+//   - instances are not thread-safe: every consumer of a schedule must create its own.
+public final class ArrivalSchedule {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static final class Line {
+
+    private final double r0;
+    private final double r1;
+    private final double duration;
+    // seconds since the start of the test
+    private final double start;
+    // requests issued by all previous lines
+    private final double before;
+    private final double requests;
+
+    private Line(
+      final int r0,
+      final int r1,
+      final int duration,
+      final double start,
+      final double before
+    ) {
+      this.r0 = r0;
+      this.r1 = r1;
+      this.duration = duration;
+      this.start = start;
+      this.before = before;
+      this.requests = ((r0 + r1) * duration) / 2d;
+    }
+
+    // seconds since the start of the line at which `N(t) = n`; `0 <= n <= requests`.
+    private double at(
+      final double n
+    ) {
+      final double a = (this.r1 - this.r0) / (2d * this.duration);
+      if ( a == 0d ) {
+        return n / this.r0;
+      }
+      // same root as `( -r0 + sqrt(r0^2 + 4an) ) / 2a` without cancellation when `a` is small.
+      final double d = Math.max(0d, (this.r0 * this.r0) + (4d * a * n));
+      return (2d * n) / (this.r0 + Math.sqrt(d));
+    }
+
+  }
+
+  private final ImmutableList<Line> lines;
+  private final long requests;
+  private final int duration;
+  private final int maxQPS;
+
+  private int line = 0;
+  private long next = 0;
+
+  private ArrivalSchedule(
+    final ImmutableList<Line> lines,
+    final int duration,
+    final int maxQPS
+  ) {
+    this.lines = lines;
+    final Line last = lines.get(lines.size() - 1);
+    this.requests = (long) Math.ceil(last.before + last.requests);
+    this.duration = duration;
+    this.maxQPS = maxQPS;
+  }
+
+  public static Optional<ArrivalSchedule> of(
+    final List<String> profile
+  ) {
+    if ( profile.isEmpty() || (profile.size() % 3) != 0 ) {
+      return absent();
+    }
+    final ImmutableList.Builder<Line> lines = ImmutableList.<Line>builder();
+    int duration = 0;
+    int maxQPS = 0;
+    double requests = 0d;
+    for ( int index = 0; index < profile.size(); index += 3 ) {
+      final Integer r0 = Ints.tryParse(profile.get(index));
+      final Integer r1 = Ints.tryParse(profile.get(index + 1));
+      final Integer d = Ints.tryParse(profile.get(index + 2));
+      if ( r0 == null || r1 == null || d == null || d.intValue() <= 0 ) {
+        return absent();
+      }
+      final int start = Math.max(1, r0.intValue());
+      final int end = Math.max(1, r1.intValue());
+      final Line line = new Line(start, end, d.intValue(), duration, requests);
+      lines.add(line);
+      duration += d.intValue();
+      requests += line.requests;
+      maxQPS = Math.max(maxQPS, Math.max(start, end));
+    }
+    return Optional.of(new ArrivalSchedule(lines.build(), duration, maxQPS));
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("lines", this.lines.size())
+      .add("requests", this.requests)
+      .add("duration", this.duration)
+      .add("max_qps", this.maxQPS)
+      .toString();
+  }
+
+  // seconds
+  public int duration() {
+    return this.duration;
+  }
+
+  public int maxQPS() {
+    return this.maxQPS;
+  }
+
+  public long requests() {
+    return this.requests;
+  }
+
+  // nanoseconds since the start of the test at which the next request must be issued; `-1` when there are no more.
+  public long next() {
+    if ( this.next >= this.requests ) {
+      return -1l;
+    }
+    final double n = this.next++;
+    Line line = this.lines.get(this.line);
+    while ( n > (line.before + line.requests) && (this.line + 1) < this.lines.size() ) {
+      line = this.lines.get(++this.line);
+    }
+    final double seconds = line.start + line.at(Math.min(n - line.before, line.requests));
+    return (long) (seconds * NANOS_PER_SECOND);
+  }
+
+}
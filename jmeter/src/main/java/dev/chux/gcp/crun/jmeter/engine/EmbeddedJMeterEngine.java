@@ -0,0 +1,179 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.InvocationTargetException;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+public class EmbeddedJMeterEngine implements Consumer<JMeterTest> {
+
+  private static final Logger logger = LoggerFactory.getLogger(EmbeddedJMeterEngine.class);
+
+  public static final String PROPERTY_PLANS_CACHE_SIZE = "jmeter.plans.cache_size";
+
+  private static final String DEFAULT_JMETER_HOME = "/opt/jmeter";
+  private static final int DEFAULT_PLANS_CACHE_SIZE = 16;
+
+  private static final String RUNNER_CLASS = "dev.chux.gcp.crun.jmeter.engine.EmbeddedJMeterRunner";
+
+  private final String jmeterHome;
+  private final int maxPlans;
+  private final ListeningExecutorService executor;
+
+  // JMeter properties are JVM wide: only 1 embedded test may run at a time.
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private Optional<Method> runner = Optional.absent();
+
+  @Inject
+  public EmbeddedJMeterEngine(
+    final ConfigService configService,
+    final ExecutionModel executionModel
+  ) {
+    this.jmeterHome = configService.getOptionalEnvVar("JMETER_HOME")
+      .or(configService.getOptionalAppProp("jmeter.home"))
+      .or(DEFAULT_JMETER_HOME);
+    this.maxPlans = configService.getIntAppProp(PROPERTY_PLANS_CACHE_SIZE).or(DEFAULT_PLANS_CACHE_SIZE);
+    this.executor = MoreExecutors.listeningDecorator(executionModel.newExecutor("jmeter-embedded"));
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("home", this.jmeterHome)
+      .add("loaded", this.runner.isPresent())
+      .add("max_plans", this.maxPlans)
+      .toString();
+  }
+
+  // parsed plans are kept by the runner, so there are none until the first test.
+  @SuppressWarnings("unchecked")
+  public JMeterPlanStats plans() {
+    final Optional<Method> runner = this.runner;
+    if ( !runner.isPresent() ) {
+      return new JMeterPlanStats();
+    }
+    try {
+      return new JMeterPlanStats((Map<String, Long>)
+        runner.get().getDeclaringClass().getMethod("plans").invoke(null));
+    } catch(final Exception e) {
+      logger.error("failed to get plans stats =>\n{}", getStackTraceAsString(e));
+      return new JMeterPlanStats();
+    }
+  }
+
+  @Override
+  public void accept(
+    final JMeterTest test
+  ) {
+    logger.info("embedded: {}", test);
+    try {
+      // the engine writes into a pipe so that results flow through
+      //   the same `ProcessOutput` used by forked tests.
+      final Pipe pipe = Pipe.open();
+      final ListenableFuture<Long> samples = this.executor.submit(() -> this.run(test, pipe));
+      try ( final InputStream stream = Channels.newInputStream(pipe.source()) ) {
+        test.getOutput().from(stream);
+      }
+      logger.info("{}/embedded test complete: {} samples", test.id(), samples.get());
+    } catch(final Exception e) {
+      logger.error("{}/embedded test failed =>\n{}",
+        test.id(), getStackTraceAsString(e));
+    }
+  }
+
+  private Long run(
+    final JMeterTest test,
+    final Pipe pipe
+  ) throws Exception {
+    this.lock.lock();
+    final Thread thread = Thread.currentThread();
+    final ClassLoader contextClassLoader = thread.getContextClassLoader();
+    try ( final OutputStream stream = Channels.newOutputStream(pipe.sink()) ) {
+      final Method runner = this.runner();
+      // JMeter discovers plugins and functions through the context class loader.
+      thread.setContextClassLoader(runner.getDeclaringClass().getClassLoader());
+      return (Long) runner.invoke(null, this.jmeterHome, test.plan(), test.properties(), stream);
+    } catch(final InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+      this.lock.unlock();
+    }
+  }
+
+  private Method runner() throws Exception {
+    if ( this.runner.isPresent() ) {
+      return this.runner.get();
+    }
+    final ClassLoader classLoader = this.newClassLoader();
+    final Class<?> runnerClass = Class.forName(RUNNER_CLASS, true, classLoader);
+    final Method runner = runnerClass.getMethod("run",
+      String.class, String.class, Map.class, OutputStream.class);
+    runnerClass.getMethod("maxPlans", int.class).invoke(null, this.maxPlans);
+    this.runner = Optional.of(runner);
+    logger.info("embedded engine loaded: {}", this);
+    return runner;
+  }
+
+  private ClassLoader newClassLoader() throws Exception {
+    // JMeter and its plugins are loaded in isolation so that their dependencies
+    //   do not clash with JMaaS; JMaaS classes are appended last so that
+    //   the runner can be loaded by the same class loader as JMeter.
+    final ImmutableList.Builder<URL> urls = ImmutableList.<URL>builder();
+    this.addJars(urls, new File(this.jmeterHome, "lib"));
+    this.addJars(urls, new File(this.jmeterHome, "lib/ext"));
+    urls.add(EmbeddedJMeterEngine.class
+      .getProtectionDomain().getCodeSource().getLocation());
+    final URL[] classpath = urls.build().toArray(new URL[0]);
+    logger.debug("embedded engine classpath: {}", Arrays.toString(classpath));
+    return new URLClassLoader(classpath, ClassLoader.getPlatformClassLoader());
+  }
+
+  private void addJars(
+    final ImmutableList.Builder<URL> urls,
+    final File dir
+  ) throws Exception {
+    final File[] jars = dir.listFiles((d, name) -> name.endsWith(".jar"));
+    if ( jars == null ) {
+      logger.warn("no JMeter libraries found at: {}", dir);
+      return;
+    }
+    Arrays.sort(jars);
+    for ( final File jar : jars ) {
+      urls.add(jar.toURI().toURL());
+    }
+  }
+
+}
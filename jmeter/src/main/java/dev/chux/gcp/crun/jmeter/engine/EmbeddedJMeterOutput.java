@@ -0,0 +1,98 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.save.CSVSaveService;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// writes samples using the same CSV format as `jmeter -n -l /dev/stdout`
+final class EmbeddedJMeterOutput extends AbstractTestElement
+  implements SampleListener, TestStateListener, NoThreadClone {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final byte[] NEW_LINE = new byte[] { '\n' };
+
+  private final transient OutputStream stream;
+
+  private long samples = 0;
+  private boolean broken = false;
+
+  EmbeddedJMeterOutput(
+    final OutputStream stream
+  ) {
+    this.stream = stream;
+    this.setName("jmaas-embedded-output");
+  }
+
+  long samples() {
+    return this.samples;
+  }
+
+  private synchronized void println(
+    final String line
+  ) {
+    if ( this.broken ) {
+      return;
+    }
+    try {
+      this.stream.write(line.getBytes(UTF_8));
+      this.stream.write(NEW_LINE);
+    } catch(final IOException e) {
+      // the reading side is gone: drop all remaining output
+      this.broken = true;
+    }
+  }
+
+  @Override
+  public void sampleOccurred(
+    final SampleEvent event
+  ) {
+    final SampleSaveConfiguration config = SampleSaveConfiguration.staticConfig();
+    this.println(CSVSaveService.resultToDelimitedString(
+      event, event.getResult(), config, config.getDelimiter()));
+    synchronized(this) {
+      this.samples += 1;
+    }
+  }
+
+  @Override
+  public void sampleStarted(final SampleEvent event) {}
+
+  @Override
+  public void sampleStopped(final SampleEvent event) {}
+
+  @Override
+  public void testStarted() {
+    this.println(CSVSaveService.printableFieldNamesToString(
+      SampleSaveConfiguration.staticConfig()));
+  }
+
+  @Override
+  public void testStarted(final String host) {
+    this.testStarted();
+  }
+
+  @Override
+  public synchronized void testEnded() {
+    try {
+      this.stream.flush();
+    } catch(final IOException e) {
+      this.broken = true;
+    }
+  }
+
+  @Override
+  public void testEnded(final String host) {
+    this.testEnded();
+  }
+
+}
@@ -0,0 +1,100 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.OutputStream;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.jmeter.engine.StandardJMeterEngine;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.HashTree;
+
+// executes a JMX plan using JMeter's `StandardJMeterEngine`.
+//   - this class is loaded by `EmbeddedJMeterEngine` within the JMeter class loader,
+//     so it must only exchange JDK types with JMaaS.
+public final class EmbeddedJMeterRunner {
+
+  private static final JMeterPlanCache PLANS = new JMeterPlanCache();
+
+  private static boolean initialized = false;
+
+  private EmbeddedJMeterRunner() {}
+
+  static synchronized void initialize(
+    final String jmeterHome
+  ) {
+    if ( initialized ) {
+      return;
+    }
+    // same bootstrap as `jmeter -n`, without forking a new JVM
+    JMeterUtils.setJMeterHome(jmeterHome);
+    JMeterUtils.loadJMeterProperties(jmeterHome + "/bin/jmeter.properties");
+    JMeterUtils.initLocale();
+    initialized = true;
+  }
+
+  // parses the plan, and loads the classes it uses, ahead of its execution.
+  static void warmUp(
+    final String jmeterHome,
+    final String plan
+  ) throws Exception {
+    initialize(jmeterHome);
+    PLANS.get(plan);
+    new StandardJMeterEngine();
+  }
+
+  static JMeterPlanCache.Plan plan(
+    final String jmeterHome,
+    final String plan
+  ) throws Exception {
+    initialize(jmeterHome);
+    return PLANS.get(plan);
+  }
+
+  public static void maxPlans(
+    final int maxPlans
+  ) {
+    PLANS.maxSize(maxPlans);
+  }
+
+  // `hits`, `misses`, `entries`, `parse_nanos`, and `copy_nanos`
+  public static Map<String, Long> plans() {
+    return PLANS.stats();
+  }
+
+  public static Long run(
+    final String jmeterHome,
+    final String plan,
+    final Map<String, String> properties,
+    final OutputStream stream
+  ) throws Exception {
+    return run(plan(jmeterHome, plan).tree, properties, stream);
+  }
+
+  static Long run(
+    final HashTree tree,
+    final Map<String, String> properties,
+    final OutputStream stream
+  ) throws Exception {
+    // in-memory equivalent of `-J<key>=<value>`
+    final Properties jmeterProperties = JMeterUtils.getJMeterProperties();
+    jmeterProperties.putAll(properties);
+
+    try {
+      final EmbeddedJMeterOutput output = new EmbeddedJMeterOutput(stream);
+      tree.add(tree.getArray()[0], output);
+
+      final StandardJMeterEngine engine = new StandardJMeterEngine();
+      engine.configure(tree);
+      // `run()` blocks until all thread groups are done
+      engine.run();
+
+      return Long.valueOf(output.samples());
+    } finally {
+      for ( final String key : properties.keySet() ) {
+        jmeterProperties.remove(key);
+      }
+    }
+  }
+
+}
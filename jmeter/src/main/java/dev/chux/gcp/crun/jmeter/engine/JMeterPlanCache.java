@@ -0,0 +1,138 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.File;
+
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.jmeter.JMeter;
+import org.apache.jmeter.engine.TreeCloner;
+import org.apache.jmeter.save.SaveService;
+import org.apache.jorphan.collections.HashTree;
+
+// parsed JMX plans, so that tests using the same script do not parse it again:
+//   - loaded within the JMeter class loader, so it must only exchange JDK types with JMaaS.
+//   - plans are found by path, and used only if the SHA-256 of the file's content did not change;
+//     a changed file is parsed again, and replaces the previous plan.
+//   - tests get a deep copy: the engine modifies the plan, and keeps state in its elements.
+//   - least recently used plans are evicted.
+final class JMeterPlanCache {
+
+  static final int DEFAULT_MAX_SIZE = 16;
+
+  static final class Plan {
+
+    final HashTree tree;
+    final boolean hit;
+    // nanoseconds spent parsing the plan on a miss, or copying it on a hit.
+    final long nanos;
+
+    private Plan(
+      final HashTree tree,
+      final boolean hit,
+      final long nanos
+    ) {
+      this.tree = tree;
+      this.hit = hit;
+      this.nanos = nanos;
+    }
+
+  }
+
+  private static final class Entry {
+
+    private final String hash;
+    private final HashTree tree;
+
+    private Entry(
+      final String hash,
+      final HashTree tree
+    ) {
+      this.hash = hash;
+      this.tree = tree;
+    }
+
+  }
+
+  private final LinkedHashMap<String, Entry> plans =
+    new LinkedHashMap<String, Entry>(DEFAULT_MAX_SIZE, 0.75f, /* accessOrder */ true) {
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<String, Entry> eldest
+      ) {
+        return this.size() > maxSize;
+      }
+    };
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long parseNanos = 0;
+  private long copyNanos = 0;
+
+  synchronized void maxSize(
+    final int maxSize
+  ) {
+    this.maxSize = Math.max(1, maxSize);
+  }
+
+  synchronized Plan get(
+    final String path
+  ) throws Exception {
+    final File file = new File(path);
+    final String hash = hash(Files.readAllBytes(file.toPath()));
+    final long start = System.nanoTime();
+    Entry entry = this.plans.get(path);
+    final boolean hit = (entry != null) && entry.hash.equals(hash);
+    if ( !hit ) {
+      entry = new Entry(hash, JMeter.convertSubTree(SaveService.loadTree(file), /* removeDisabled */ true));
+      this.plans.put(path, entry);
+    }
+    final HashTree tree = copy(entry.tree);
+    final long nanos = System.nanoTime() - start;
+    if ( hit ) {
+      this.hits += 1;
+      this.copyNanos += nanos;
+    } else {
+      this.misses += 1;
+      this.parseNanos += nanos;
+    }
+    return new Plan(tree, hit, nanos);
+  }
+
+  synchronized Map<String, Long> stats() {
+    final Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("hits", this.hits);
+    stats.put("misses", this.misses);
+    stats.put("entries", (long) this.plans.size());
+    stats.put("parse_nanos", this.parseNanos);
+    stats.put("copy_nanos", this.copyNanos);
+    return stats;
+  }
+
+  private static HashTree copy(
+    final HashTree tree
+  ) {
+    final TreeCloner cloner = new TreeCloner(/* honourNoThreadClone */ false);
+    tree.traverse(cloner);
+    return cloner.getClonedTree();
+  }
+
+  private static String hash(
+    final byte[] content
+  ) throws Exception {
+    final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+    final StringBuilder hash = new StringBuilder(2 * digest.length);
+    for ( final byte b : digest ) {
+      hash.append(Character.forDigit((b >> 4) & 0x0F, 16))
+        .append(Character.forDigit(b & 0x0F, 16));
+    }
+    return hash.toString();
+  }
+
+}
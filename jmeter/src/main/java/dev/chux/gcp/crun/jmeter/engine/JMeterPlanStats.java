@@ -0,0 +1,95 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.util.Map;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// usage of the plans cache of an engine; times are in milliseconds.
+public final class JMeterPlanStats {
+
+  private static final double NANOS_PER_MILLI = 1000000d;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="hits")
+  private final long hits;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="misses")
+  private final long misses;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="entries")
+  private final long entries;
+
+  // mean time to parse a plan on a miss
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="parse_time")
+  private final double parseTime;
+
+  // mean time to copy a cached plan on a hit
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="copy_time")
+  private final double copyTime;
+
+  JMeterPlanStats(
+    final long hits,
+    final long misses,
+    final long entries,
+    final long parseNanos,
+    final long copyNanos
+  ) {
+    this.hits = hits;
+    this.misses = misses;
+    this.entries = entries;
+    this.parseTime = mean(parseNanos, misses);
+    this.copyTime = mean(copyNanos, hits);
+  }
+
+  // from `EmbeddedJMeterRunner#plans()`
+  JMeterPlanStats(
+    final Map<String, Long> stats
+  ) {
+    this(get(stats, "hits"), get(stats, "misses"), get(stats, "entries"),
+      get(stats, "parse_nanos"), get(stats, "copy_nanos"));
+  }
+
+  JMeterPlanStats() {
+    this(0, 0, 0, 0, 0);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("hits", this.hits)
+      .add("misses", this.misses)
+      .add("entries", this.entries)
+      .add("parse_time", this.parseTime)
+      .add("copy_time", this.copyTime)
+      .toString();
+  }
+
+  private static double mean(
+    final long nanos,
+    final long count
+  ) {
+    return (count == 0) ? 0d : (nanos / NANOS_PER_MILLI / count);
+  }
+
+  private static long get(
+    final Map<String, Long> stats,
+    final String key
+  ) {
+    final Long value = stats.get(key);
+    return (value == null) ? 0l : value.longValue();
+  }
+
+}
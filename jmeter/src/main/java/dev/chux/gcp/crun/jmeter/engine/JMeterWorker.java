@@ -0,0 +1,76 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// entry point of the JVMs kept by `JMeterWorkerPool`:
+//   - runs with the JMeter classpath, so it must only depend on the JDK and JMeter.
+//   - JMeter is bootstrapped, and the default plan is loaded, before a test arrives.
+//   - `stdin` is the control channel: the plan path in the 1st line, followed by
+//     the test properties in `java.util.Properties` format until the end of the stream.
+//   - `stdout` says `ready` once JMeter is bootstrapped, and answers with `plan: <hit|miss> <nanos>`
+//     once the plan is ready, followed by the same CSV results as the `embedded` engine; runs a single test.
+public final class JMeterWorker {
+
+  private JMeterWorker() {}
+
+  // usage: `JMeterWorker <jmeter_home> [plan]`
+  public static void main(
+    final String[] args
+  ) throws Exception {
+    final String jmeterHome = args[0];
+
+    // JMeter may print to `System.out`: keep results alone in `stdout`
+    final OutputStream stream = new FileOutputStream(FileDescriptor.out);
+    System.setOut(System.err);
+
+    if ( args.length > 1 ) {
+      try {
+        EmbeddedJMeterRunner.warmUp(jmeterHome, args[1]);
+      } catch(final Exception e) {
+        // the test may still be able to run
+        e.printStackTrace();
+      }
+    }
+    // tests shipped before this line is sent wait for the bootstrap: they are not `pooled` starts.
+    stream.write("ready\n".getBytes(UTF_8));
+
+    final BufferedReader control = new BufferedReader(new InputStreamReader(System.in, UTF_8));
+    final String plan = control.readLine();
+    if ( plan == null ) {
+      // the pool is done with this worker
+      System.exit(0);
+    }
+
+    final Properties properties = new Properties();
+    properties.load(control);
+    final Map<String, String> testProperties = new HashMap<>();
+    for ( final String key : properties.stringPropertyNames() ) {
+      testProperties.put(key, properties.getProperty(key));
+    }
+
+    int status = 0;
+    try {
+      final JMeterPlanCache.Plan testPlan = EmbeddedJMeterRunner.plan(jmeterHome, plan);
+      stream.write(("plan: " + (testPlan.hit ? "hit " : "miss ") + testPlan.nanos + "\n").getBytes(UTF_8));
+      EmbeddedJMeterRunner.run(testPlan.tree, testProperties, stream);
+    } catch(final Exception e) {
+      e.printStackTrace();
+      status = 1;
+    } finally {
+      stream.close();
+    }
+    // JMeter may leave non-daemon threads behind
+    System.exit(status);
+  }
+
+}
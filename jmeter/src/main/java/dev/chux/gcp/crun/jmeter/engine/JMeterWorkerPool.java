@@ -0,0 +1,492 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.metrics.LatencyHistogram;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// keeps JVMs with JMeter already bootstrapped, so that tests do not pay for JVM startup:
+//   - the pool is started by the first `pooled` test, which is a `cold` start: instances which
+//     never run `pooled` tests do not keep idle JVMs around.
+//   - every worker runs a single test, and is replaced once the test is complete;
+//     replacements are not started while the test runs so that they do not compete for CPU.
+//   - when no worker is idle, a new one is started for the test: a `cold` start; so is a test which
+//     takes an idle worker that has not said it is `ready` yet, i.e.: it is still bootstrapping JMeter.
+//   - workers parse the default plan ahead of time, and report whether the test's plan was cached.
+//   - workers idle for longer than `jmeter.pool.idle_ttl` are stopped, and not replaced.
+public class JMeterWorkerPool implements Consumer<JMeterTest> {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterWorkerPool.class);
+
+  public static final String PROPERTY_POOL_SIZE = "jmeter.pool.size";
+  public static final String PROPERTY_POOL_IDLE_TTL = "jmeter.pool.idle_ttl";
+  public static final String PROPERTY_POOL_JVM_ARGS = "jmeter.pool.jvm_args";
+
+  private static final int DEFAULT_POOL_SIZE = 1;
+  // seconds; `0` keeps idle workers forever
+  private static final long DEFAULT_POOL_IDLE_TTL = 600l;
+  // same as `jmeter`'s default `HEAP`
+  private static final String DEFAULT_POOL_JVM_ARGS = "-Xms1g -Xmx1g -XX:MaxMetaspaceSize=256m";
+
+  private static final String DEFAULT_JMETER_HOME = "/opt/jmeter";
+
+  private static final String WORKER_CLASS = "dev.chux.gcp.crun.jmeter.engine.JMeterWorker";
+
+  private static final String POOLED = "pooled";
+  private static final String COLD = "cold";
+
+  private static final class Worker {
+
+    private final Process process;
+    // workers run a single test: they are idle since they are created
+    private final long created;
+
+    private Worker(
+      final Process process
+    ) {
+      this.process = process;
+      this.created = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("pid", this.process.pid())
+        .add("created", this.created)
+        .toString();
+    }
+
+  }
+
+  // time between test start and its first sample, by kind of worker.
+  public static final class FirstSample {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="tests")
+    private final long tests;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="min")
+    private final long min;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean")
+    private final long mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max")
+    private final long max;
+
+    private FirstSample(
+      final LatencyHistogram histogram
+    ) {
+      this.tests = histogram.count();
+      this.min = histogram.min();
+      this.mean = Math.round(histogram.mean());
+      this.p50 = histogram.percentile(50d);
+      this.max = histogram.max();
+    }
+
+  }
+
+  public static final class Status {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="size")
+    private final int size;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="idle_ttl")
+    private final long idleTTL;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="idle")
+    private final int idle;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="running")
+    private final int running;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="expired")
+    private final long expired;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="plans")
+    private final JMeterPlanStats plans;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="pooled")
+    private final FirstSample pooled;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cold")
+    private final FirstSample cold;
+
+    private Status(
+      final JMeterWorkerPool pool
+    ) {
+      this.size = pool.size;
+      this.idleTTL = pool.idleTTL;
+      this.idle = pool.idle.size();
+      this.running = pool.running;
+      this.expired = pool.expired;
+      // every worker parses its own plans
+      this.plans = new JMeterPlanStats(pool.planHits, pool.planMisses,
+        /* entries */ 0, pool.parseNanos, pool.copyNanos);
+      this.pooled = new FirstSample(pool.pooled);
+      this.cold = new FirstSample(pool.cold);
+    }
+
+  }
+
+  private final String jmeterHome;
+  private final int size;
+  private final long idleTTL;
+  private final List<String> command;
+
+  // workers running tests, by test ID
+  private final Map<String, Process> processes = Maps.newConcurrentMap();
+
+  // guarded by `this`
+  private final Deque<Worker> idle = new ArrayDeque<>();
+  private final LatencyHistogram pooled = new LatencyHistogram();
+  private final LatencyHistogram cold = new LatencyHistogram();
+  private int running = 0;
+  private boolean started = false;
+  private long expired = 0;
+  private long planHits = 0;
+  private long planMisses = 0;
+  private long parseNanos = 0;
+  private long copyNanos = 0;
+
+  @Inject
+  public JMeterWorkerPool(
+    final ConfigService configService,
+    final ExecutionModel executionModel,
+    @Named("jmeter://jmx.dir") final Provider<String> jmeterTestDirProvider,
+    @Named("jmeter://test.jmx") final Provider<String> jmeterTestProvider
+  ) {
+    this.jmeterHome = configService.getOptionalEnvVar("JMETER_HOME")
+      .or(configService.getOptionalAppProp("jmeter.home"))
+      .or(DEFAULT_JMETER_HOME);
+    this.idleTTL = configService.getLongAppProp(PROPERTY_POOL_IDLE_TTL).or(DEFAULT_POOL_IDLE_TTL);
+
+    final String jvmArgs = configService.getAppPropOrDefault(PROPERTY_POOL_JVM_ARGS, DEFAULT_POOL_JVM_ARGS);
+    final String plan = jmeterTestDirProvider.get() + "/" + jmeterTestProvider.get() + ".jmx";
+    final Optional<String> classpath = this.classpath();
+    this.command = ImmutableList.<String>builder()
+      .add(System.getProperty("java.home") + "/bin/java")
+      .addAll(Splitter.on(' ').omitEmptyStrings().trimResults().split(jvmArgs))
+      .add("-Djava.awt.headless=true")
+      .add("-Dlog4j.configurationFile=" + this.jmeterHome + "/bin/log4j2.xml")
+      .add("-Djmeter.logfile=/dev/stderr")
+      .add("-cp", classpath.or(""))
+      .add(WORKER_CLASS, this.jmeterHome, plan)
+      .build();
+
+    if ( classpath.isPresent() ) {
+      this.size = configService.getIntAppProp(PROPERTY_POOL_SIZE).or(DEFAULT_POOL_SIZE);
+    } else {
+      logger.warn("no JMeter libraries found at: {}/lib; pool is disabled", this.jmeterHome);
+      this.size = 0;
+    }
+
+    if ( this.size > 0 && this.idleTTL > 0 ) {
+      final ScheduledExecutorService scheduler = executionModel.newScheduledExecutor("jmeter-pool", 1);
+      final long period = Math.max(1l, this.idleTTL / 4);
+      scheduler.scheduleAtFixedRate(this::expire, period, period, TimeUnit.SECONDS);
+    }
+
+    logger.info("{}", this);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return toStringHelper(this)
+      .add("home", this.jmeterHome)
+      .add("size", this.size)
+      .add("idle_ttl", this.idleTTL)
+      .add("idle", this.idle.size())
+      .add("running", this.running)
+      .add("started", this.started)
+      .toString();
+  }
+
+  public synchronized Status status() {
+    return new Status(this);
+  }
+
+  // JVM running the test, if any.
+  public Optional<ProcessHandle> process(
+    final String id
+  ) {
+    final Optional<Process> process = fromNullable(this.processes.get(id));
+    return process.isPresent() ? Optional.of(process.get().toHandle()) : absent();
+  }
+
+  @Override
+  public void accept(
+    final JMeterTest test
+  ) {
+    final JMeterTestConfig config = test.get();
+    Optional<Worker> worker = this.poll();
+    String kind = COLD;
+    try {
+      if ( !worker.isPresent() ) {
+        worker = Optional.of(this.newWorker());
+      } else if ( isReady(worker.get()) ) {
+        kind = POOLED;
+      }
+      final Process process = worker.get().process;
+      this.processes.put(test.id(), process);
+      logger.info("{}/worker: {} | {}", test.id(), kind, worker.get());
+
+      // ship the test to the worker
+      try ( final Writer control = new OutputStreamWriter(process.getOutputStream(), UTF_8) ) {
+        control.write(test.plan());
+        control.write('\n');
+        final Properties properties = new Properties();
+        properties.putAll(test.properties());
+        properties.store(control, /* comments */ null);
+      }
+
+      try ( final InputStream stream = process.getInputStream() ) {
+        this.ready(test, stream);
+        this.plan(test, stream);
+        test.getOutput().from(stream);
+      }
+      final int status = process.waitFor();
+      this.record(config, kind);
+      logger.info("{}/worker test complete: {} | exit={}", test.id(), kind, status);
+    } catch(final Exception e) {
+      logger.error("{}/worker test failed: {} =>\n{}",
+        test.id(), kind, getStackTraceAsString(e));
+      if ( worker.isPresent() ) {
+        worker.get().process.destroyForcibly();
+      }
+    } finally {
+      this.processes.remove(test.id());
+      synchronized(this) {
+        this.running -= 1;
+      }
+      this.refill();
+    }
+  }
+
+  // whether the worker already said `ready`: nothing else is written to its `stdout` before it gets a test.
+  private static boolean isReady(
+    final Worker worker
+  ) {
+    try {
+      return worker.process.getInputStream().available() > 0;
+    } catch(final IOException e) {
+      return false;
+    }
+  }
+
+  // `ready`; sent by the worker once JMeter is bootstrapped, before the plan.
+  private void ready(
+    final JMeterTest test,
+    final InputStream stream
+  ) throws IOException {
+    final String line = readLine(stream);
+    if ( !line.equals("ready") ) {
+      logger.warn("{}/worker ready: '{}'", test.id(), line);
+    }
+  }
+
+  private static String readLine(
+    final InputStream stream
+  ) throws IOException {
+    final StringBuilder line = new StringBuilder();
+    int b;
+    while ( (b = stream.read()) >= 0 && b != '\n' ) {
+      line.append((char) b);
+    }
+    return line.toString();
+  }
+
+  // `plan: <hit|miss> <nanos>`; sent by the worker before the results.
+  private void plan(
+    final JMeterTest test,
+    final InputStream stream
+  ) throws IOException {
+    final String line = readLine(stream);
+    final List<String> plan = Splitter.on(' ').splitToList(line);
+    if ( plan.size() != 3 || !plan.get(0).equals("plan:") ) {
+      logger.warn("{}/worker plan: '{}'", test.id(), line);
+      return;
+    }
+    final boolean hit = plan.get(1).equals("hit");
+    final long nanos = fromNullable(Longs.tryParse(plan.get(2))).or(0l);
+    synchronized(this) {
+      if ( hit ) {
+        this.planHits += 1;
+        this.copyNanos += nanos;
+      } else {
+        this.planMisses += 1;
+        this.parseNanos += nanos;
+      }
+    }
+    logger.info("{}/worker plan: {} | {}ns", test.id(), plan.get(1), nanos);
+  }
+
+  private synchronized Optional<Worker> poll() {
+    this.running += 1;
+    this.started = true;
+    while ( !this.idle.isEmpty() ) {
+      final Worker worker = this.idle.pollFirst();
+      if ( worker.process.isAlive() ) {
+        return Optional.of(worker);
+      }
+      logger.warn("worker is gone: {} | exit={}", worker, worker.process.exitValue());
+    }
+    return absent();
+  }
+
+  private Worker newWorker() throws IOException {
+    final Process process = new ProcessBuilder(this.command)
+      .redirectError(ProcessBuilder.Redirect.INHERIT)
+      .start();
+    return new Worker(process);
+  }
+
+  private synchronized void refill() {
+    // workers are replaced only while no test is running
+    if ( !this.started || this.running > 0 ) {
+      return;
+    }
+    while ( this.idle.size() < this.size ) {
+      try {
+        final Worker worker = this.newWorker();
+        this.idle.addLast(worker);
+        logger.info("worker started: {}", worker);
+      } catch(final IOException e) {
+        logger.error("failed to start worker =>\n{}", getStackTraceAsString(e));
+        return;
+      }
+    }
+  }
+
+  private synchronized void expire() {
+    final long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(this.idleTTL);
+    final Iterator<Worker> workers = this.idle.iterator();
+    while ( workers.hasNext() ) {
+      final Worker worker = workers.next();
+      if ( worker.created <= deadline ) {
+        workers.remove();
+        worker.process.destroy();
+        this.expired += 1;
+        logger.info("worker expired: {}", worker);
+      }
+    }
+  }
+
+  private synchronized void record(
+    final JMeterTestConfig config,
+    final String kind
+  ) {
+    final long started = config.started();
+    final long firstSample = config.firstSample();
+    if ( started <= 0 || firstSample <= 0 ) {
+      return;
+    }
+    final long elapsed = firstSample - started;
+    if ( kind.equals(POOLED) ) {
+      this.pooled.record(elapsed);
+    } else {
+      this.cold.record(elapsed);
+    }
+    logger.info("{}/first sample: {} worker | {}ms", config.id(), kind, elapsed);
+  }
+
+  private Optional<String> classpath() {
+    // same classpath as the `embedded` engine
+    final ImmutableList.Builder<String> classpath = ImmutableList.<String>builder();
+    final int jars = this.addJars(classpath, new File(this.jmeterHome, "lib"));
+    if ( jars == 0 ) {
+      return absent();
+    }
+    this.addJars(classpath, new File(this.jmeterHome, "lib/ext"));
+    classpath.add(new File(JMeterWorkerPool.class
+      .getProtectionDomain().getCodeSource().getLocation().getPath()).getPath());
+    return Optional.of(Joiner.on(File.pathSeparatorChar).join(classpath.build()));
+  }
+
+  private int addJars(
+    final ImmutableList.Builder<String> classpath,
+    final File dir
+  ) {
+    final File[] jars = dir.listFiles((d, name) -> name.endsWith(".jar"));
+    if ( jars == null ) {
+      return 0;
+    }
+    Arrays.sort(jars);
+    for ( final File jar : jars ) {
+      classpath.add(jar.getPath());
+    }
+    return jars.length;
+  }
+
+}
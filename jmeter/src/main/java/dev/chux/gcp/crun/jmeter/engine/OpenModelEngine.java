@@ -0,0 +1,306 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+import java.time.Duration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.LoadProfile;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// executes `qps` tests using an open model instead of a JMX plan:
+//   - requests are issued at the intended times given by the load profile ( see: `ArrivalSchedule` ),
+//     regardless of how long previous requests take; there are no sampling threads to size.
+//   - requests are sent asynchronously by a single HTTP client; at most `maxQPS * timeout / 1000` requests
+//     are in flight, when all of them are taken the next requests are issued as soon as one completes.
+//   - `timeStamp`, `elapsed` and `Latency` are measured from the intended start of every request, so that
+//     time spent waiting to be issued is not omitted ( coordinated omission ).
+public class OpenModelEngine implements Consumer<JMeterTest> {
+
+  private static final Logger logger = LoggerFactory.getLogger(OpenModelEngine.class);
+
+  private static final String LABEL = "gcp/cloud-run/test/http/request";
+  private static final String THREAD_NAME = "open-model";
+
+  // headers which are set by the HTTP client, and may not be set by tests.
+  private static final ImmutableSet<String> RESTRICTED_HEADERS =
+    ImmutableSet.of("connection", "content-length", "expect", "host", "upgrade");
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final ListeningExecutorService executor;
+  private final HttpClient client;
+
+  @Inject
+  public OpenModelEngine(
+    final ConfigService configService,
+    final ExecutionModel executionModel
+  ) {
+    this.executor = MoreExecutors.listeningDecorator(executionModel.newExecutor("jmeter-open"));
+    final ExecutorService clientExecutor = executionModel.newExecutor("jmeter-open-http");
+    this.client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .executor(clientExecutor)
+      .build();
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("client", this.client)
+      .toString();
+  }
+
+  @Override
+  public void accept(
+    final JMeterTest test
+  ) {
+    logger.info("open: {}", test);
+    final JMeterTestConfig config = test.get();
+    final Optional<ArrivalSchedule> schedule =
+      ArrivalSchedule.of(LoadProfile.split(config.profile().orNull()));
+    if ( !schedule.isPresent() ) {
+      logger.error("{}/open test failed: invalid 'qps' profile: {}", test.id(), config.profile());
+      return;
+    }
+    if ( schedule.get().duration() != config.duration() ) {
+      logger.error("{}/open test failed: invalid 'duration': {} != {}",
+        test.id(), schedule.get().duration(), config.duration());
+      return;
+    }
+    try {
+      // samples flow through the same `ProcessOutput` used by forked tests.
+      final Pipe pipe = Pipe.open();
+      final ListenableFuture<Long> samples = this.executor.submit(() -> this.run(test, schedule.get(), pipe));
+      try ( final InputStream stream = Channels.newInputStream(pipe.source()) ) {
+        test.getOutput().from(stream);
+      }
+      logger.info("{}/open test complete: {} samples", test.id(), samples.get());
+    } catch(final Exception e) {
+      logger.error("{}/open test failed =>\n{}",
+        test.id(), getStackTraceAsString(e));
+    }
+  }
+
+  private Long run(
+    final JMeterTest test,
+    final ArrivalSchedule schedule,
+    final Pipe pipe
+  ) throws Exception {
+    try ( final OutputStream stream = Channels.newOutputStream(pipe.sink()) ) {
+      final OpenModelOutput output = new OpenModelOutput(stream);
+      final Map<String, String> properties = test.properties();
+      final int timeout = Ints.tryParse(properties.get("request_timeout")).intValue();
+      final HttpRequest request = this.request(test.get(), properties, timeout);
+      final String url = request.uri().toString();
+      final long sentBytes = request.bodyPublisher().get().contentLength();
+
+      final int permits = LoadProfile.requestsInFlight(schedule.maxQPS(), timeout);
+      final Semaphore inFlight = new Semaphore(permits);
+
+      logger.info("{}/open: {} {} | {} | in_flight={}", test.id(), request.method(), url, schedule, permits);
+
+      output.header();
+      final long epoch = System.currentTimeMillis();
+      final long start = System.nanoTime();
+      long offset;
+      while ( (offset = schedule.next()) >= 0l ) {
+        final long intended = start + offset;
+        waitUntil(intended);
+        inFlight.acquire();
+        final Exchange exchange = new Exchange(intended);
+        final long timestamp = epoch + (offset / NANOS_PER_MILLI);
+        this.client.sendAsync(request, exchange).whenComplete((response, error) -> {
+          final long now = System.nanoTime();
+          final int threads = permits - inFlight.availablePermits();
+          final long elapsed = (now - intended) / NANOS_PER_MILLI;
+          if ( error == null ) {
+            final int code = response.statusCode();
+            final boolean success = (code >= 200) && (code < 400);
+            output.sample(timestamp, elapsed, LABEL, Integer.toString(code), "", THREAD_NAME,
+              success, "", exchange.bytes(response), Math.max(0l, sentBytes), threads,
+              url, exchange.latency(now));
+          } else {
+            final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+              ? error.getCause() : error;
+            output.sample(timestamp, elapsed, LABEL,
+              "Non HTTP response code: " + cause.getClass().getName(),
+              "Non HTTP response message: " + String.valueOf(cause.getMessage()),
+              THREAD_NAME, false, "", 0l, 0l, threads, url, elapsed);
+          }
+          inFlight.release();
+        });
+      }
+
+      // requests still in flight complete or time out within `timeout`.
+      if ( !inFlight.tryAcquire(permits, timeout + 1000l, TimeUnit.MILLISECONDS) ) {
+        logger.warn("{}/open: {} requests still in flight", test.id(),
+          permits - inFlight.availablePermits());
+      }
+      output.flush();
+      return Long.valueOf(output.samples());
+    }
+  }
+
+  private HttpRequest request(
+    final JMeterTestConfig config,
+    final Map<String, String> properties,
+    final int timeout
+  ) throws Exception {
+    final StringBuilder url = new StringBuilder()
+      .append(properties.get("proto")).append("://")
+      .append(properties.get("host")).append(':')
+      .append(properties.get("port"))
+      .append(properties.get("path"));
+    final Map<String, String> query = config.query().or(Map.of());
+    char separator = url.indexOf("?") < 0 ? '?' : '&';
+    for ( final Map.Entry<String, String> param : query.entrySet() ) {
+      url.append(separator)
+        .append(URLEncoder.encode(param.getKey(), UTF_8)).append('=')
+        .append(URLEncoder.encode(param.getValue(), UTF_8));
+      separator = '&';
+    }
+
+    final Optional<String> body = config.body();
+    final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url.toString()))
+      .timeout(Duration.ofMillis(timeout))
+      .method(properties.get("http_method"), body.isPresent()
+        ? HttpRequest.BodyPublishers.ofString(body.get())
+        : HttpRequest.BodyPublishers.noBody());
+
+    final Map<String, String> headers = config.headers().or(Map.of());
+    for ( final Map.Entry<String, String> header : headers.entrySet() ) {
+      if ( isNullOrEmpty(header.getKey()) || RESTRICTED_HEADERS.contains(header.getKey().toLowerCase()) ) {
+        logger.warn("{}/open: header '{}' is ignored", config.id(), header.getKey());
+        continue;
+      }
+      request.header(header.getKey(), header.getValue());
+    }
+    return request.build();
+  }
+
+  // parks until `deadline`; late requests are issued right away.
+  private static void waitUntil(
+    final long deadline
+  ) throws InterruptedException {
+    long remaining;
+    while ( (remaining = deadline - System.nanoTime()) > 0l ) {
+      LockSupport.parkNanos(remaining);
+      if ( Thread.interrupted() ) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  // a single request: the time at which its response headers arrive, and the size of its response body.
+  private static final class Exchange implements HttpResponse.BodyHandler<Long> {
+
+    private final long intended;
+    private volatile long headers = 0l;
+
+    private Exchange(
+      final long intended
+    ) {
+      this.intended = intended;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<Long> apply(
+      final HttpResponse.ResponseInfo info
+    ) {
+      this.headers = System.nanoTime();
+      return HttpResponse.BodySubscribers.fromSubscriber(new Counter(), Counter::bytes);
+    }
+
+    private long latency(
+      final long now
+    ) {
+      final long headers = this.headers;
+      return ((headers == 0l ? now : headers) - this.intended) / NANOS_PER_MILLI;
+    }
+
+    private long bytes(
+      final HttpResponse<Long> response
+    ) {
+      final Long bytes = response.body();
+      return (bytes == null) ? 0l : bytes.longValue();
+    }
+
+  }
+
+  // response bodies are counted, and discarded.
+  private static final class Counter implements Flow.Subscriber<List<ByteBuffer>> {
+
+    private long bytes = 0l;
+
+    @Override
+    public void onSubscribe(
+      final Flow.Subscription subscription
+    ) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(
+      final List<ByteBuffer> buffers
+    ) {
+      for ( final ByteBuffer buffer : buffers ) {
+        this.bytes += buffer.remaining();
+      }
+    }
+
+    @Override
+    public void onError(final Throwable error) {}
+
+    @Override
+    public void onComplete() {}
+
+    private Long bytes() {
+      return Long.valueOf(this.bytes);
+    }
+
+  }
+
+}
@@ -0,0 +1,114 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.common.base.CharMatcher;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// writes samples using the same CSV format as `jmeter -n -l /dev/stdout`
+final class OpenModelOutput {
+
+  // see: https://jmeter.apache.org/usermanual/listeners.html#csvlogformat
+  private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,"
+    + "dataType,success,failureMessage,bytes,sentBytes,grpThreads,allThreads,URL,Latency,IdleTime,Connect";
+
+  private static final CharMatcher NEW_LINES = CharMatcher.anyOf("\r\n");
+
+  private final OutputStream stream;
+  private final StringBuilder line = new StringBuilder(256);
+
+  private long samples = 0;
+  private boolean broken = false;
+
+  OpenModelOutput(
+    final OutputStream stream
+  ) {
+    this.stream = stream;
+  }
+
+  synchronized long samples() {
+    return this.samples;
+  }
+
+  synchronized void header() {
+    this.println(HEADER);
+  }
+
+  synchronized void sample(
+    final long timestamp,
+    final long elapsed,
+    final String label,
+    final String code,
+    final String message,
+    final String thread,
+    final boolean success,
+    final String failure,
+    final long bytes,
+    final long sentBytes,
+    final int threads,
+    final String url,
+    final long latency
+  ) {
+    this.line.setLength(0);
+    this.line.append(timestamp).append(',')
+      .append(elapsed).append(',')
+      .append(label).append(',')
+      .append(code).append(',');
+    this.field(message).append(',')
+      .append(thread).append(',')
+      .append("text").append(',')
+      .append(success).append(',');
+    this.field(failure).append(',')
+      .append(bytes).append(',')
+      .append(sentBytes).append(',')
+      .append(threads).append(',')
+      .append(threads).append(',');
+    this.field(url).append(',')
+      .append(latency).append(',')
+      // connections are set up by the HTTP client, and not measured separately
+      .append(0).append(',')
+      .append(0);
+    this.samples += 1;
+    this.println(this.line.toString());
+  }
+
+  synchronized void flush() {
+    if ( this.broken ) {
+      return;
+    }
+    try {
+      this.stream.flush();
+    } catch(final IOException e) {
+      this.broken = true;
+    }
+  }
+
+  private StringBuilder field(
+    final String value
+  ) {
+    if ( value.indexOf(',') < 0 && value.indexOf('"') < 0 ) {
+      return this.line.append(NEW_LINES.replaceFrom(value, ' '));
+    }
+    return this.line.append('"')
+      .append(NEW_LINES.replaceFrom(value, ' ').replace("\"", "\"\""))
+      .append('"');
+  }
+
+  private void println(
+    final String line
+  ) {
+    if ( this.broken ) {
+      return;
+    }
+    try {
+      this.stream.write(line.getBytes(UTF_8));
+      this.stream.write('\n');
+    } catch(final IOException e) {
+      // the reading side is gone: drop all remaining output
+      this.broken = true;
+    }
+  }
+
+}
@@ -0,0 +1,201 @@
+package dev.chux.gcp.crun.jmeter.logs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.io.SegmentedLog;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// keeps the output of tests on disk, so that it may be replayed after they started, or after they are complete:
+//   - the output of every test is appended to a segmented log under `jmeter.logs.dir`; directories are named
+//     after a hash of the test ID, which may be anything a client sent, so that logs never reach outside of it.
+//   - logs of complete tests are deleted after `jmeter.logs.retention.time` minutes, or sooner
+//     ( oldest first ) when all logs take more than `jmeter.logs.retention.size` MiB.
+public class JMeterTestLogService {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestLogService.class);
+
+  public static final String PROPERTY_LOGS_DIR = "jmeter.logs.dir";
+  public static final String PROPERTY_SEGMENT_SIZE = "jmeter.logs.segment_size";
+  public static final String PROPERTY_RETENTION_SIZE = "jmeter.logs.retention.size";
+  public static final String PROPERTY_RETENTION_TIME = "jmeter.logs.retention.time";
+
+  private static final String DEFAULT_LOGS_DIR = "/tmp/jmaas/logs";
+  // MiB
+  private static final int DEFAULT_SEGMENT_SIZE = 16;
+  private static final long DEFAULT_RETENTION_SIZE = 1024l;
+  // minutes
+  private static final long DEFAULT_RETENTION_TIME = 60l;
+
+  private static final long MiB = 1024l * 1024l;
+
+  private final Path dir;
+  private final int segmentSize;
+  private final long retentionSize;
+  private final long retentionMillis;
+  private final ScheduledExecutorService executor;
+
+  private final Map<String, SegmentedLog> logs = Maps.newConcurrentMap();
+  // logs of the same test ID are kept apart: a deleted log is only removed once its readers are done.
+  private final AtomicLong generation = new AtomicLong(0);
+
+  @Inject
+  JMeterTestLogService(
+    final ConfigService configService,
+    final ExecutionModel executionModel
+  ) {
+    this.dir = Paths.get(configService.getAppPropOrDefault(PROPERTY_LOGS_DIR, DEFAULT_LOGS_DIR));
+    this.segmentSize = (int) (configService.getIntAppProp(PROPERTY_SEGMENT_SIZE).or(DEFAULT_SEGMENT_SIZE) * MiB);
+    this.retentionSize = configService.getLongAppProp(PROPERTY_RETENTION_SIZE).or(DEFAULT_RETENTION_SIZE) * MiB;
+    this.retentionMillis = TimeUnit.MINUTES.toMillis(
+      configService.getLongAppProp(PROPERTY_RETENTION_TIME).or(DEFAULT_RETENTION_TIME)
+    );
+    this.executor = executionModel.newScheduledExecutor("jmeter-logs", 1);
+    this.purge();
+    this.executor.scheduleWithFixedDelay(this::retain, 1, 1, TimeUnit.MINUTES);
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("dir", this.dir)
+      .add("segment_size", this.segmentSize)
+      .add("retention_size", this.retentionSize)
+      .add("retention_millis", this.retentionMillis)
+      .add("logs", this.logs.size())
+      .toString();
+  }
+
+  // returns a stream which appends test output to its log; absent if the log cannot be created.
+  public Optional<OutputStream> create(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    final Optional<SegmentedLog> previous = this.get(id);
+    if ( previous.isPresent() ) {
+      if ( !previous.get().isClosed() ) {
+        // the test is already running: this output will be discarded.
+        logger.warn("{}/log already being written", id);
+        return absent();
+      }
+      this.delete(id, previous.get());
+    }
+    try {
+      final SegmentedLog log = new SegmentedLog(this.dir.resolve(
+        Hashing.sha256().hashString(id, UTF_8) + "." + this.generation.incrementAndGet()), this.segmentSize);
+      this.logs.put(id, log);
+      return Optional.<OutputStream>of(log);
+    } catch(final IOException e) {
+      logger.error("{}/failed to create log =>\n{}", id, getStackTraceAsString(e));
+      return absent();
+    } finally {
+      this.executor.execute(this::retain);
+    }
+  }
+
+  public Optional<SegmentedLog> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    return fromNullable(this.logs.get(id));
+  }
+
+  public void complete(
+    final String id
+  ) {
+    final Optional<SegmentedLog> log = this.get(id);
+    if ( !log.isPresent() ) {
+      return;
+    }
+    try {
+      log.get().close();
+      logger.info("{}/log: {}", id, log.get());
+    } catch(final IOException e) {
+      logger.error("{}/failed to close log =>\n{}", id, getStackTraceAsString(e));
+    }
+  }
+
+  private void delete(
+    final String id,
+    final SegmentedLog log
+  ) {
+    if ( !this.logs.remove(id, log) ) {
+      return;
+    }
+    try {
+      log.delete();
+      logger.info("{}/deleted log: {}", id, log.dir());
+    } catch(final IOException e) {
+      logger.error("{}/failed to delete log =>\n{}", id, getStackTraceAsString(e));
+    }
+  }
+
+  // logs left behind by a previous instance cannot be replayed.
+  private void purge() {
+    try {
+      if ( Files.isDirectory(this.dir) ) {
+        MoreFiles.deleteDirectoryContents(this.dir, RecursiveDeleteOption.ALLOW_INSECURE);
+      }
+    } catch(final IOException e) {
+      logger.error("failed to purge logs at '{}' =>\n{}", this.dir, getStackTraceAsString(e));
+    }
+  }
+
+  // logs of running tests are never deleted.
+  private void retain() {
+    final long now = System.currentTimeMillis();
+    final List<Map.Entry<String, SegmentedLog>> complete = new ArrayList<>();
+    long size = 0;
+    for ( final Map.Entry<String, SegmentedLog> log : this.logs.entrySet() ) {
+      size += log.getValue().size();
+      if ( log.getValue().isClosed() ) {
+        complete.add(log);
+      }
+    }
+    complete.sort(Comparator.comparingLong(log -> log.getValue().modified()));
+    for ( final Map.Entry<String, SegmentedLog> log : complete ) {
+      final boolean expired = (now - log.getValue().modified()) > this.retentionMillis;
+      if ( !expired && size <= this.retentionSize ) {
+        break;
+      }
+      size -= log.getValue().size();
+      this.delete(log.getKey(), log.getValue());
+    }
+  }
+
+}
@@ -0,0 +1,522 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.engine.JMeterWorkerPool;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// samples the resources of the load generator every second while tests are running, so that tests limited by
+//   the instance running them are not mistaken for tests limited by their target:
+//   - the JMaaS JVM: CPU, heap, GC pauses, threads, file descriptors and sockets.
+//   - the JMeter JVM of `process` and `pooled` tests: CPU, RSS, threads, file descriptors and sockets ( `/proc` ).
+//   - the container: CPU usage and throttling ( cgroup v2 `cpu.stat` ), and the TCP sockets of the host
+//     compared with the ephemeral ports range.
+//   - every second is recorded along with the throughput of each test; a test crossing any threshold
+//     for `jmeter.saturation.min_seconds` consecutive seconds is flagged as `generator-saturated`.
+public class GeneratorMonitor {
+
+  private static final Logger logger = LoggerFactory.getLogger(GeneratorMonitor.class);
+
+  public static final String PROPERTY_CPU = "jmeter.saturation.cpu";
+  public static final String PROPERTY_THROTTLED = "jmeter.saturation.throttled";
+  public static final String PROPERTY_GC = "jmeter.saturation.gc";
+  public static final String PROPERTY_HEAP = "jmeter.saturation.heap";
+  public static final String PROPERTY_FDS = "jmeter.saturation.fds";
+  public static final String PROPERTY_PORTS = "jmeter.saturation.ports";
+  public static final String PROPERTY_MIN_SECONDS = "jmeter.saturation.min_seconds";
+
+  public static final String CPU = "cpu";
+  public static final String CPU_THROTTLING = "cpu_throttling";
+  public static final String GC = "gc";
+  public static final String HEAP = "heap";
+  public static final String FDS = "fds";
+  public static final String EPHEMERAL_PORTS = "ephemeral_ports";
+
+  // share of the CPUs available
+  private static final double DEFAULT_CPU = 0.9d;
+  // share of CPU periods throttled
+  private static final double DEFAULT_THROTTLED = 0.2d;
+  // share of time paused by GC
+  private static final double DEFAULT_GC = 0.1d;
+  // share of the max heap used
+  private static final double DEFAULT_HEAP = 0.9d;
+  // share of the max file descriptors used
+  private static final double DEFAULT_FDS = 0.9d;
+  // share of the ephemeral ports range used by TCP sockets
+  private static final double DEFAULT_PORTS = 0.8d;
+  private static final int DEFAULT_MIN_SECONDS = 3;
+
+  private static final int MAX_COMPLETE_TESTS = 32;
+
+  private static final long MiB = 1024l * 1024l;
+  // `USER_HZ`: unit of CPU times in `/proc/<pid>/stat`
+  private static final long CLOCK_TICKS = 100l;
+
+  private static final Path PROC = Paths.get("/proc");
+  private static final Path CGROUP = Paths.get("/sys/fs/cgroup");
+
+  private static final Splitter SPACES = Splitter.on(CharMatcher.whitespace()).omitEmptyStrings();
+
+  private final double cpuThreshold;
+  private final double throttledThreshold;
+  private final double gcThreshold;
+  private final double heapThreshold;
+  private final double fdsThreshold;
+  private final double portsThreshold;
+  private final int minSeconds;
+
+  private final JMeterWorkerPool workerPool;
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+
+  private final OperatingSystemMXBean os;
+  private final int cpus;
+  private final long maxFds;
+  private final long ephemeralPorts;
+  private final Optional<Double> cpuLimit;
+
+  private final Map<String, GeneratorSaturation> running = Maps.newConcurrentMap();
+
+  // usage of complete tests is kept around for a while, same as their metrics.
+  private final Cache<String, GeneratorSaturation> complete = CacheBuilder.newBuilder()
+    .maximumSize(MAX_COMPLETE_TESTS)
+    .expireAfterWrite(1, TimeUnit.HOURS)
+    .build();
+
+  // counters at the previous second
+  private long lastNanos = 0l;
+  private long lastCpuTime = -1l;
+  private long lastGcTime = -1l;
+  private Map<String, Long> lastCpuStat = ImmutableMap.of();
+
+  @Inject
+  public GeneratorMonitor(
+    final ConfigService configService,
+    final ExecutionModel executionModel,
+    final JMeterWorkerPool workerPool,
+    final JMeterTestMetricsService jMeterTestMetricsService
+  ) {
+    this.cpuThreshold = configService.getDoubleAppProp(PROPERTY_CPU).or(DEFAULT_CPU);
+    this.throttledThreshold = configService.getDoubleAppProp(PROPERTY_THROTTLED).or(DEFAULT_THROTTLED);
+    this.gcThreshold = configService.getDoubleAppProp(PROPERTY_GC).or(DEFAULT_GC);
+    this.heapThreshold = configService.getDoubleAppProp(PROPERTY_HEAP).or(DEFAULT_HEAP);
+    this.fdsThreshold = configService.getDoubleAppProp(PROPERTY_FDS).or(DEFAULT_FDS);
+    this.portsThreshold = configService.getDoubleAppProp(PROPERTY_PORTS).or(DEFAULT_PORTS);
+    this.minSeconds = configService.getIntAppProp(PROPERTY_MIN_SECONDS).or(DEFAULT_MIN_SECONDS);
+
+    this.workerPool = workerPool;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+
+    this.os = ManagementFactory.getOperatingSystemMXBean();
+    this.cpus = Runtime.getRuntime().availableProcessors();
+    this.maxFds = (this.os instanceof UnixOperatingSystemMXBean)
+      ? ((UnixOperatingSystemMXBean) this.os).getMaxFileDescriptorCount() : 0l;
+    this.ephemeralPorts = ephemeralPorts();
+    this.cpuLimit = cpuLimit();
+
+    final ScheduledExecutorService scheduler = executionModel.newScheduledExecutor("jmeter-generator", 1);
+    scheduler.scheduleAtFixedRate(this::sample, 1l, 1l, TimeUnit.SECONDS);
+
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("cpus", this.cpus)
+      .add("cpu_limit", this.cpuLimit)
+      .add("max_fds", this.maxFds)
+      .add("ephemeral_ports", this.ephemeralPorts)
+      .add("running", this.running.keySet())
+      .add("complete", this.complete.size())
+      .toString();
+  }
+
+  public void watch(
+    final JMeterTest test
+  ) {
+    checkArgument(!isNullOrEmpty(test.id()));
+    if ( this.running.putIfAbsent(test.id(), new GeneratorSaturation(test, this.minSeconds)) == null ) {
+      this.complete.invalidate(test.id());
+    }
+  }
+
+  public Optional<GeneratorSaturation> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    final Optional<GeneratorSaturation> saturation = fromNullable(this.running.get(id));
+    if ( saturation.isPresent() ) {
+      return saturation;
+    }
+    return fromNullable(this.complete.getIfPresent(id));
+  }
+
+  // usage of a test by second; the test does not need to be running yet.
+  public Function<Long, Optional<GeneratorUsage>> usage(
+    final String id
+  ) {
+    return (second) -> {
+      final Optional<GeneratorSaturation> saturation = this.get(id);
+      return saturation.isPresent() ? saturation.get().at(second.longValue()) : Optional.absent();
+    };
+  }
+
+  public void complete(
+    final String id
+  ) {
+    final Optional<GeneratorSaturation> saturation = fromNullable(this.running.remove(id));
+    if ( saturation.isPresent() ) {
+      this.complete.put(id, saturation.get());
+      logger.info("{}/generator: {}", id, saturation.get());
+    }
+  }
+
+  private void sample() {
+    try {
+      final long nanos = System.nanoTime();
+      final long elapsed = nanos - this.lastNanos;
+      this.lastNanos = nanos;
+
+      // counters are always sampled so that deltas are known once a test starts.
+      final GeneratorUsage.ProcessUsage jmaas = this.jmaas(elapsed);
+      final Optional<GeneratorUsage.ContainerUsage> container = this.container(elapsed);
+      if ( this.running.isEmpty() ) {
+        return;
+      }
+      final long tcpSockets = tcpSockets();
+
+      final long timestamp = System.currentTimeMillis();
+      for ( final GeneratorSaturation saturation : this.running.values() ) {
+        final Optional<GeneratorUsage.ProcessUsage> jmeter = this.jmeter(saturation, elapsed);
+        final Set<String> saturated = this.saturated(elapsed, jmaas, jmeter, container, tcpSockets);
+        final GeneratorUsage usage = new GeneratorUsage(timestamp, this.qps(saturation.test()),
+          jmaas, jmeter.orNull(), container.orNull(), tcpSockets, this.ephemeralPorts, saturated);
+        if ( saturation.record(usage) ) {
+          final JMeterTestConfig config = saturation.test().get();
+          config.flag(GeneratorSaturation.FLAG);
+          logger.warn("{}/{}: {} | {}", config.id(), GeneratorSaturation.FLAG, saturation.reasons(), usage);
+        }
+      }
+    } catch(final Exception e) {
+      // the sampler must keep running
+      logger.error("failed to sample generator usage =>\n{}", getStackTraceAsString(e));
+    }
+  }
+
+  private Set<String> saturated(
+    final long elapsed,
+    final GeneratorUsage.ProcessUsage jmaas,
+    final Optional<GeneratorUsage.ProcessUsage> jmeter,
+    final Optional<GeneratorUsage.ContainerUsage> container,
+    final long tcpSockets
+  ) {
+    final Set<String> saturated = Sets.newTreeSet();
+
+    final double cpu = container.isPresent()
+      ? container.get().cpu()
+      : jmaas.cpu() + (jmeter.isPresent() ? jmeter.get().cpu() : 0d);
+    if ( cpu >= (this.cpuThreshold * this.cpuLimit.or((double) this.cpus)) ) {
+      saturated.add(CPU);
+    }
+    if ( container.isPresent() && container.get().throttled() >= this.throttledThreshold ) {
+      saturated.add(CPU_THROTTLING);
+    }
+    final double millis = Math.max(1d, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    if ( (jmaas.gcTime() / millis) >= this.gcThreshold ) {
+      saturated.add(GC);
+    }
+    if ( jmaas.heapMax() > 0l && ((double) jmaas.heapUsed() / jmaas.heapMax()) >= this.heapThreshold ) {
+      saturated.add(HEAP);
+    }
+    final long fds = Math.max(jmaas.fds(), jmeter.isPresent() ? jmeter.get().fds() : 0l);
+    if ( this.maxFds > 0l && ((double) fds / this.maxFds) >= this.fdsThreshold ) {
+      saturated.add(FDS);
+    }
+    if ( this.ephemeralPorts > 0l && ((double) tcpSockets / this.ephemeralPorts) >= this.portsThreshold ) {
+      saturated.add(EPHEMERAL_PORTS);
+    }
+    return saturated;
+  }
+
+  private double qps(
+    final JMeterTest test
+  ) {
+    final Optional<JMeterTestMetrics> metrics = this.jMeterTestMetricsService.get(test.id());
+    return metrics.isPresent() ? metrics.get().snapshot().shortWindow().qps() : 0d;
+  }
+
+  private GeneratorUsage.ProcessUsage jmaas(
+    final long elapsed
+  ) {
+    final long cpuTime = (this.os instanceof com.sun.management.OperatingSystemMXBean)
+      ? ((com.sun.management.OperatingSystemMXBean) this.os).getProcessCpuTime() : 0l;
+    final double cpu = (this.lastCpuTime < 0l) ? 0d : ((double) (cpuTime - this.lastCpuTime) / elapsed);
+    this.lastCpuTime = cpuTime;
+
+    long gcTime = 0l;
+    for ( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+      gcTime += Math.max(0l, gc.getCollectionTime());
+    }
+    final long gcDelta = (this.lastGcTime < 0l) ? 0l : (gcTime - this.lastGcTime);
+    this.lastGcTime = gcTime;
+
+    final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    final long heapMax = (heap.getMax() > 0l) ? heap.getMax() : heap.getCommitted();
+
+    final long pid = ProcessHandle.current().pid();
+    final Map<String, Long> status = status(pid);
+    final long[] fds = fds(pid);
+    return new GeneratorUsage.ProcessUsage(pid, cpu,
+      status.getOrDefault("VmRSS", 0l) / 1024l, status.getOrDefault("Threads", 0l),
+      fds[0], fds[1], heap.getUsed() / MiB, heapMax / MiB, gcDelta);
+  }
+
+  private Optional<GeneratorUsage.ProcessUsage> jmeter(
+    final GeneratorSaturation saturation,
+    final long elapsed
+  ) {
+    final Optional<ProcessHandle> process = this.process(saturation);
+    if ( !process.isPresent() ) {
+      return Optional.absent();
+    }
+    final long pid = process.get().pid();
+    final long ticks = cpuTicks(pid);
+    final long previous = saturation.cpuTicks(ticks);
+    final double cpu = (previous < 0l || ticks < previous) ? 0d
+      : ((double) TimeUnit.SECONDS.toNanos(ticks - previous) / CLOCK_TICKS) / elapsed;
+    final Map<String, Long> status = status(pid);
+    final long[] fds = fds(pid);
+    return Optional.of(new GeneratorUsage.ProcessUsage(pid, cpu,
+      status.getOrDefault("VmRSS", 0l) / 1024l, status.getOrDefault("Threads", 0l),
+      fds[0], fds[1], null, null, null));
+  }
+
+  // the JMeter JVM of a test: a worker of the pool, or a descendant of JMaaS started with the test ID.
+  private Optional<ProcessHandle> process(
+    final GeneratorSaturation saturation
+  ) {
+    final Optional<ProcessHandle> known = saturation.process();
+    if ( known.isPresent() && known.get().isAlive() ) {
+      return known;
+    }
+    final JMeterTest test = saturation.test();
+    final JMeterTestConfig config = test.get();
+    Optional<ProcessHandle> process = Optional.absent();
+    if ( config.pooled() ) {
+      process = this.workerPool.process(test.id());
+    } else if ( !config.embedded() && !config.open() ) {
+      final String tid = "-Jtid=" + test.id();
+      try ( final Stream<ProcessHandle> descendants = ProcessHandle.current().descendants() ) {
+        // the `jmeter` script starts `java` with the same arguments
+        process = Optional.fromJavaUtil(descendants
+          .filter((p) -> p.info().arguments().map((args) -> List.of(args).contains(tid)).orElse(false))
+          .filter((p) -> p.info().command().map((command) -> command.endsWith("java")).orElse(false))
+          .findFirst());
+      }
+    }
+    if ( process.isPresent() ) {
+      saturation.process(process.get());
+    }
+    return process;
+  }
+
+  private Optional<GeneratorUsage.ContainerUsage> container(
+    final long elapsed
+  ) {
+    final Map<String, Long> cpuStat = keyValues(CGROUP.resolve("cpu.stat"));
+    final Map<String, Long> last = this.lastCpuStat;
+    this.lastCpuStat = cpuStat;
+    if ( cpuStat.isEmpty() || last.isEmpty() ) {
+      return Optional.absent();
+    }
+    final long usage = delta(cpuStat, last, "usage_usec");
+    final long periods = delta(cpuStat, last, "nr_periods");
+    final long throttled = delta(cpuStat, last, "nr_throttled");
+    final long throttledTime = delta(cpuStat, last, "throttled_usec");
+    return Optional.of(new GeneratorUsage.ContainerUsage(
+      ((double) TimeUnit.MICROSECONDS.toNanos(usage)) / elapsed,
+      this.cpuLimit.or((double) this.cpus),
+      (periods == 0l) ? 0d : ((double) throttled / periods),
+      TimeUnit.MICROSECONDS.toMillis(throttledTime)));
+  }
+
+  private static long delta(
+    final Map<String, Long> current,
+    final Map<String, Long> previous,
+    final String key
+  ) {
+    return Math.max(0l, current.getOrDefault(key, 0l) - previous.getOrDefault(key, 0l));
+  }
+
+  // cgroup v2 `cpu.max`: `<quota> <period>`, or `max <period>` when not limited.
+  private static Optional<Double> cpuLimit() {
+    final List<String> max = SPACES.splitToList(read(CGROUP.resolve("cpu.max")));
+    if ( max.size() != 2 ) {
+      return Optional.absent();
+    }
+    final Double quota = Doubles.tryParse(max.get(0));
+    final Double period = Doubles.tryParse(max.get(1));
+    if ( quota == null || period == null || period.doubleValue() <= 0d ) {
+      return Optional.absent();
+    }
+    return Optional.of(quota / period);
+  }
+
+  private static long ephemeralPorts() {
+    final List<String> range = SPACES.splitToList(read(PROC.resolve("sys/net/ipv4/ip_local_port_range")));
+    if ( range.size() != 2 ) {
+      return 0l;
+    }
+    final Long low = Longs.tryParse(range.get(0));
+    final Long high = Longs.tryParse(range.get(1));
+    return (low == null || high == null) ? 0l : (high - low + 1l);
+  }
+
+  // entries of `/proc/net/tcp` and `/proc/net/tcp6`: sockets in any state, including `TIME_WAIT`.
+  private static long tcpSockets() {
+    long sockets = 0l;
+    for ( final String table : new String[] { "net/tcp", "net/tcp6" } ) {
+      try ( final Stream<String> lines = Files.lines(PROC.resolve(table), UTF_8) ) {
+        // skip the header
+        sockets += Math.max(0l, lines.count() - 1l);
+      } catch(final IOException e) {
+        // not available
+      }
+    }
+    return sockets;
+  }
+
+  // `utime + stime` of `/proc/<pid>/stat`, in clock ticks.
+  private static long cpuTicks(
+    final long pid
+  ) {
+    final String stat = read(PROC.resolve(pid + "/stat"));
+    // the command may contain spaces, and is wrapped in parentheses
+    final int end = stat.lastIndexOf(')');
+    if ( end < 0 ) {
+      return -1l;
+    }
+    final List<String> fields = SPACES.splitToList(stat.substring(end + 1));
+    if ( fields.size() < 13 ) {
+      return -1l;
+    }
+    return fromNullable(Longs.tryParse(fields.get(11))).or(0l)
+      + fromNullable(Longs.tryParse(fields.get(12))).or(0l);
+  }
+
+  // `/proc/<pid>/status` numeric values, i.e.: `VmRSS` in KiB, and `Threads`.
+  private static Map<String, Long> status(
+    final long pid
+  ) {
+    final Map<String, Long> status = Maps.newHashMap();
+    for ( final String line : Splitter.on('\n').split(read(PROC.resolve(pid + "/status"))) ) {
+      final int colon = line.indexOf(':');
+      if ( colon > 0 ) {
+        final List<String> value = SPACES.splitToList(line.substring(colon + 1));
+        final Long number = value.isEmpty() ? null : Longs.tryParse(value.get(0));
+        if ( number != null ) {
+          status.put(line.substring(0, colon), number);
+        }
+      }
+    }
+    return status;
+  }
+
+  // open file descriptors, and how many of them are sockets.
+  private static long[] fds(
+    final long pid
+  ) {
+    final long[] fds = new long[] { 0l, 0l };
+    try ( final DirectoryStream<Path> links = Files.newDirectoryStream(PROC.resolve(pid + "/fd")) ) {
+      for ( final Path link : links ) {
+        fds[0] += 1;
+        try {
+          if ( Files.readSymbolicLink(link).toString().startsWith("socket:") ) {
+            fds[1] += 1;
+          }
+        } catch(final IOException e) {
+          // closed while being listed
+        }
+      }
+    } catch(final IOException e) {
+      // not available
+    }
+    return fds;
+  }
+
+  private static Map<String, Long> keyValues(
+    final Path path
+  ) {
+    final Map<String, Long> values = Maps.newHashMap();
+    for ( final String line : Splitter.on('\n').omitEmptyStrings().split(read(path)) ) {
+      final List<String> kv = SPACES.splitToList(line);
+      if ( kv.size() == 2 ) {
+        final Long value = Longs.tryParse(kv.get(1));
+        if ( value != null ) {
+          values.put(kv.get(0), value);
+        }
+      }
+    }
+    return values;
+  }
+
+  private static String read(
+    final Path path
+  ) {
+    // files in `/proc` report a size of `0`: they must be read until EOF
+    try ( final InputStream stream = Files.newInputStream(path) ) {
+      return new String(stream.readAllBytes(), UTF_8).trim();
+    } catch(final IOException e) {
+      return "";
+    }
+  }
+
+}
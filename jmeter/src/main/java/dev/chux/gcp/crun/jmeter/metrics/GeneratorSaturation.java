@@ -0,0 +1,173 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// load generator usage of a single test:
+//   - keeps the usage of the latest `SECONDS` seconds.
+//   - a threshold is reported once it is crossed for `min_seconds` consecutive seconds;
+//     reported thresholds are kept until the test is complete.
+public final class GeneratorSaturation {
+
+  public static final String FLAG = "generator-saturated";
+
+  private static final int SECONDS = 60;
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="saturated")
+    private final boolean saturated;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="reasons")
+    private final Set<String> reasons;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="since")
+    private final long since;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="seconds")
+    private final List<GeneratorUsage> seconds;
+
+    private Snapshot(
+      final Set<String> reasons,
+      final long since,
+      final List<GeneratorUsage> seconds
+    ) {
+      this.saturated = !reasons.isEmpty();
+      this.reasons = reasons;
+      this.since = since;
+      this.seconds = seconds;
+    }
+
+  }
+
+  private final JMeterTest test;
+  private final int minSeconds;
+
+  private final Deque<GeneratorUsage> seconds = new ArrayDeque<>(SECONDS);
+  private final Map<String, Integer> consecutive = Maps.newHashMap();
+  private final Set<String> reasons = Sets.newTreeSet();
+  private long since = 0l;
+
+  // JMeter JVM of the test, once found
+  private Optional<ProcessHandle> process = Optional.absent();
+  private long cpuTicks = -1l;
+
+  GeneratorSaturation(
+    final JMeterTest test,
+    final int minSeconds
+  ) {
+    this.test = test;
+    this.minSeconds = Math.max(1, minSeconds);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return toStringHelper(this)
+      .add("id", this.test.id())
+      .add("reasons", this.reasons)
+      .add("since", this.since)
+      .add("seconds", this.seconds.size())
+      .toString();
+  }
+
+  JMeterTest test() {
+    return this.test;
+  }
+
+  Optional<ProcessHandle> process() {
+    return this.process;
+  }
+
+  void process(
+    final ProcessHandle process
+  ) {
+    this.process = Optional.of(process);
+  }
+
+  // CPU time of the JMeter JVM at the previous second, in clock ticks; `-1` if unknown.
+  long cpuTicks(
+    final long cpuTicks
+  ) {
+    final long previous = this.cpuTicks;
+    this.cpuTicks = cpuTicks;
+    return previous;
+  }
+
+  // returns `true` when the test becomes saturated.
+  synchronized boolean record(
+    final GeneratorUsage usage
+  ) {
+    if ( this.seconds.size() == SECONDS ) {
+      this.seconds.removeFirst();
+    }
+    this.seconds.addLast(usage);
+
+    final boolean saturated = !this.reasons.isEmpty();
+    for ( final String reason : ImmutableSet.copyOf(this.consecutive.keySet()) ) {
+      if ( !usage.saturated().contains(reason) ) {
+        this.consecutive.remove(reason);
+      }
+    }
+    for ( final String reason : usage.saturated() ) {
+      final int count = this.consecutive.getOrDefault(reason, 0) + 1;
+      this.consecutive.put(reason, count);
+      if ( count >= this.minSeconds && this.reasons.add(reason) && this.since == 0l ) {
+        this.since = usage.timestamp();
+      }
+    }
+    return !saturated && !this.reasons.isEmpty();
+  }
+
+  public synchronized boolean saturated() {
+    return !this.reasons.isEmpty();
+  }
+
+  public synchronized Set<String> reasons() {
+    return ImmutableSet.copyOf(this.reasons);
+  }
+
+  // usage recorded for `second`, or for the latest second before it.
+  public synchronized Optional<GeneratorUsage> at(
+    final long second
+  ) {
+    final Iterator<GeneratorUsage> usages = this.seconds.descendingIterator();
+    while ( usages.hasNext() ) {
+      final GeneratorUsage usage = usages.next();
+      if ( (usage.timestamp() / 1000l) <= second ) {
+        return Optional.of(usage);
+      }
+    }
+    return Optional.absent();
+  }
+
+  public synchronized Snapshot snapshot() {
+    return new Snapshot(ImmutableSet.copyOf(this.reasons), this.since, ImmutableList.copyOf(this.seconds));
+  }
+
+}
@@ -0,0 +1,303 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// resources used by the load generator during 1 second of a test, along with the test's throughput.
+public final class GeneratorUsage {
+
+  // a process generating load: the JMaaS JVM, or the JMeter JVM of a `process` or `pooled` test.
+  public static final class ProcessUsage {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="pid")
+    private final long pid;
+
+    // CPUs used
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cpu")
+    private final double cpu;
+
+    // MiB
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="rss")
+    private final long rss;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="threads")
+    private final long threads;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="fds")
+    private final long fds;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="sockets")
+    private final long sockets;
+
+    // MiB; only known for the JMaaS JVM
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="heap_used")
+    private final Long heapUsed;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="heap_max")
+    private final Long heapMax;
+
+    // milliseconds paused by GC during the second
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="gc_time")
+    private final Long gcTime;
+
+    ProcessUsage(
+      final long pid,
+      final double cpu,
+      final long rss,
+      final long threads,
+      final long fds,
+      final long sockets,
+      @Nullable final Long heapUsed,
+      @Nullable final Long heapMax,
+      @Nullable final Long gcTime
+    ) {
+      this.pid = pid;
+      this.cpu = cpu;
+      this.rss = rss;
+      this.threads = threads;
+      this.fds = fds;
+      this.sockets = sockets;
+      this.heapUsed = heapUsed;
+      this.heapMax = heapMax;
+      this.gcTime = gcTime;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .omitNullValues()
+        .add("pid", this.pid)
+        .add("cpu", this.cpu)
+        .add("rss", this.rss)
+        .add("threads", this.threads)
+        .add("fds", this.fds)
+        .add("sockets", this.sockets)
+        .add("heap_used", this.heapUsed)
+        .add("heap_max", this.heapMax)
+        .add("gc_time", this.gcTime)
+        .toString();
+    }
+
+    public double cpu() {
+      return this.cpu;
+    }
+
+    public long fds() {
+      return this.fds;
+    }
+
+    public long sockets() {
+      return this.sockets;
+    }
+
+    public long heapUsed() {
+      return (this.heapUsed == null) ? 0l : this.heapUsed.longValue();
+    }
+
+    public long heapMax() {
+      return (this.heapMax == null) ? 0l : this.heapMax.longValue();
+    }
+
+    public long gcTime() {
+      return (this.gcTime == null) ? 0l : this.gcTime.longValue();
+    }
+
+  }
+
+  // CPU of the container ( cgroup v2 ) JMaaS runs in.
+  public static final class ContainerUsage {
+
+    // CPUs used
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cpu")
+    private final double cpu;
+
+    // CPUs available: `cpu.max`, or all CPUs when not limited
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="cpu_limit")
+    private final double cpuLimit;
+
+    // share of CPU periods during which the container was throttled
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="throttled")
+    private final double throttled;
+
+    // milliseconds
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="throttled_time")
+    private final long throttledTime;
+
+    ContainerUsage(
+      final double cpu,
+      final double cpuLimit,
+      final double throttled,
+      final long throttledTime
+    ) {
+      this.cpu = cpu;
+      this.cpuLimit = cpuLimit;
+      this.throttled = throttled;
+      this.throttledTime = throttledTime;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("cpu", this.cpu)
+        .add("cpu_limit", this.cpuLimit)
+        .add("throttled", this.throttled)
+        .add("throttled_time", this.throttledTime)
+        .toString();
+    }
+
+    public double cpu() {
+      return this.cpu;
+    }
+
+    public double throttled() {
+      return this.throttled;
+    }
+
+  }
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="timestamp")
+  private final long timestamp;
+
+  // samples per second of the test during the last complete second
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="qps")
+  private final double qps;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="jmaas")
+  private final ProcessUsage jmaas;
+
+  // absent for `embedded` and `open` tests: they run within JMaaS
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="jmeter")
+  private final ProcessUsage jmeter;
+
+  // absent when not running in a cgroup v2 container
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="container")
+  private final ContainerUsage container;
+
+  // TCP sockets of the host, and the size of the ephemeral ports range
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="tcp_sockets")
+  private final long tcpSockets;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="ephemeral_ports")
+  private final long ephemeralPorts;
+
+  // thresholds crossed during this second
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="saturated")
+  private final Set<String> saturated;
+
+  GeneratorUsage(
+    final long timestamp,
+    final double qps,
+    final ProcessUsage jmaas,
+    @Nullable final ProcessUsage jmeter,
+    @Nullable final ContainerUsage container,
+    final long tcpSockets,
+    final long ephemeralPorts,
+    final Set<String> saturated
+  ) {
+    this.timestamp = timestamp;
+    this.qps = qps;
+    this.jmaas = jmaas;
+    this.jmeter = jmeter;
+    this.container = container;
+    this.tcpSockets = tcpSockets;
+    this.ephemeralPorts = ephemeralPorts;
+    this.saturated = ImmutableSet.copyOf(saturated);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .omitNullValues()
+      .add("timestamp", this.timestamp)
+      .add("qps", this.qps)
+      .add("jmaas", this.jmaas)
+      .add("jmeter", this.jmeter)
+      .add("container", this.container)
+      .add("tcp_sockets", this.tcpSockets)
+      .add("ephemeral_ports", this.ephemeralPorts)
+      .add("saturated", this.saturated)
+      .toString();
+  }
+
+  public long timestamp() {
+    return this.timestamp;
+  }
+
+  public double qps() {
+    return this.qps;
+  }
+
+  public ProcessUsage jmaas() {
+    return this.jmaas;
+  }
+
+  @Nullable
+  public ProcessUsage jmeter() {
+    return this.jmeter;
+  }
+
+  @Nullable
+  public ContainerUsage container() {
+    return this.container;
+  }
+
+  public long tcpSockets() {
+    return this.tcpSockets;
+  }
+
+  public Set<String> saturated() {
+    return this.saturated;
+  }
+
+}
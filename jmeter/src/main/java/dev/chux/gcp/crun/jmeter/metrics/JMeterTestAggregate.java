@@ -0,0 +1,73 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+// latency of many tests ( from this or other instances ) as if they were a single one:
+//   their sketches are merged, so that percentiles are those of all of their samples;
+//   averaging percentiles of every test is not.
+public final class JMeterTestAggregate {
+
+  public static final String METRIC_LATENCY = "latency";
+  public static final String METRIC_CORRECTED_LATENCY = "corrected_latency";
+  public static final String METRIC_SCHEDULE_LAG = "schedule_lag";
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="metric")
+  private final String metric;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="samples")
+  private final long samples;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="aggregate")
+  private final JMeterTestMetrics.Latency aggregate;
+
+  // test IDs, or names given to posted sketches.
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="sources")
+  private final Map<String, JMeterTestMetrics.Latency> sources;
+
+  public JMeterTestAggregate(
+    final String metric,
+    final Map<String, LatencySketch> sketches
+  ) {
+    final LatencySketch aggregate = new LatencySketch();
+    final ImmutableMap.Builder<String, JMeterTestMetrics.Latency> sources = ImmutableMap.builder();
+    for ( final Map.Entry<String, LatencySketch> sketch : sketches.entrySet() ) {
+      aggregate.add(sketch.getValue());
+      sources.put(sketch.getKey(), new JMeterTestMetrics.Latency(sketch.getValue()));
+    }
+    this.metric = metric;
+    this.samples = aggregate.count();
+    this.aggregate = new JMeterTestMetrics.Latency(aggregate);
+    this.sources = sources.build();
+  }
+
+  public static boolean isMetric(
+    final String metric
+  ) {
+    return METRIC_LATENCY.equals(metric)
+      || METRIC_CORRECTED_LATENCY.equals(metric)
+      || METRIC_SCHEDULE_LAG.equals(metric);
+  }
+
+  public String metric() {
+    return this.metric;
+  }
+
+  public long samples() {
+    return this.samples;
+  }
+
+}
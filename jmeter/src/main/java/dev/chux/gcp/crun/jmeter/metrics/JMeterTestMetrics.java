@@ -0,0 +1,533 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.jmeter.engine.ArrivalSchedule;
+import dev.chux.gcp.crun.jmeter.output.JMeterOutputListener;
+import dev.chux.gcp.crun.jmeter.output.JMeterSample;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// rolling aggregates of a single test's samples:
+//   - windows are keyed by the sample's own timestamp, so they do not depend on output buffering.
+//   - the hot path only updates primitives and pre-allocated histograms: it never allocates.
+//   - samples are recorded by the thread copying the test output; snapshots may be taken concurrently.
+//   - `qps` tests are also measured against their load profile: the n-th sample is compared with the n-th
+//     request of the schedule, which starts with the first sample. A sample issued after its intended start
+//     was delayed by the load generator, not by the target: the delay is its `schedule_lag`, and it is added
+//     to its `elapsed` time to produce its `corrected_latency` ( coordinated omission ).
+//   - samples are also kept as time series for the whole test ( see: `JMeterTestSeries` ).
+public final class JMeterTestMetrics implements JMeterOutputListener {
+
+  // more slots than the widest window: the current ( incomplete ) second never overlaps it.
+  private static final int SLOTS = 12;
+
+  private static final int SHORT_WINDOW = 1;
+  private static final int LONG_WINDOW = 10;
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String id;
+  private final Optional<ArrivalSchedule> schedule;
+  private final boolean scheduled;
+
+  private final Window total;
+  private final Window[] seconds = new Window[SLOTS];
+
+  private final JMeterTestSeries series;
+
+  private volatile long firstTimestamp = 0;
+  private volatile long lastTimestamp = 0;
+
+  private static final class Window {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // only for scheduled tests
+    private final LatencyHistogram corrected;
+    private final LatencyHistogram lag;
+
+    private volatile long second = -1;
+    private volatile long samples = 0;
+    private volatile long errors = 0;
+    private volatile long bytes = 0;
+
+    private Window(
+      final boolean scheduled
+    ) {
+      this.corrected = scheduled ? new LatencyHistogram() : null;
+      this.lag = scheduled ? new LatencyHistogram() : null;
+    }
+
+    private void record(
+      final JMeterSample sample,
+      final long lag
+    ) {
+      this.latency.record(sample.elapsed());
+      if ( this.corrected != null ) {
+        this.corrected.record(sample.elapsed() + lag);
+        this.lag.record(lag);
+      }
+      this.bytes += sample.bytes();
+      if ( !sample.success() ) {
+        this.errors += 1;
+      }
+      this.samples += 1;
+    }
+
+    private void reset(
+      final long second
+    ) {
+      this.second = -1;
+      this.latency.reset();
+      if ( this.corrected != null ) {
+        this.corrected.reset();
+        this.lag.reset();
+      }
+      this.samples = 0;
+      this.errors = 0;
+      this.bytes = 0;
+      this.second = second;
+    }
+
+    private void addTo(
+      final Window window
+    ) {
+      window.latency.add(this.latency);
+      if ( this.corrected != null && window.corrected != null ) {
+        window.corrected.add(this.corrected);
+        window.lag.add(this.lag);
+      }
+      window.samples += this.samples;
+      window.errors += this.errors;
+      window.bytes += this.bytes;
+    }
+
+  }
+
+  public static final class Latency {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="min")
+    private final long min;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean")
+    private final double mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p90")
+    private final long p90;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p99")
+    private final long p99;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p999")
+    private final long p999;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max")
+    private final long max;
+
+    // mergeable form of the aggregates above: base64 of `LatencySketch#encode()`.
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="sketch")
+    private final String encodedSketch;
+
+    private final LatencySketch sketch;
+
+    Latency(
+      final LatencyHistogram histogram
+    ) {
+      this(LatencySketch.of(histogram));
+    }
+
+    public Latency(
+      final LatencySketch sketch
+    ) {
+      this.min = sketch.min();
+      this.mean = sketch.mean();
+      this.p50 = sketch.percentile(50d);
+      this.p90 = sketch.percentile(90d);
+      this.p99 = sketch.percentile(99d);
+      this.p999 = sketch.percentile(99.9d);
+      this.max = sketch.max();
+      this.encodedSketch = sketch.toBase64();
+      this.sketch = sketch;
+    }
+
+    public long p50() {
+      return this.p50;
+    }
+
+    public long p99() {
+      return this.p99;
+    }
+
+    public LatencySketch sketch() {
+      return this.sketch.copy();
+    }
+
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="window")
+    private final String window;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="seconds")
+    private final long seconds;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="samples")
+    private final long samples;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="errors")
+    private final long errors;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="error_rate")
+    private final double errorRate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="qps")
+    private final double qps;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_per_sec")
+    private final double bytesPerSecond;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="latency")
+    private final Latency latency;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="corrected_latency")
+    private final Latency correctedLatency;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="schedule_lag")
+    private final Latency scheduleLag;
+
+    private Snapshot(
+      final String window,
+      final long seconds,
+      final Window data
+    ) {
+      final double s = Math.max(1, seconds);
+      this.window = window;
+      this.seconds = seconds;
+      this.samples = data.samples;
+      this.errors = data.errors;
+      this.errorRate = (data.samples == 0) ? 0d : ((double) data.errors / data.samples);
+      this.qps = data.samples / s;
+      this.bytesPerSecond = data.bytes / s;
+      this.latency = new Latency(data.latency);
+      this.correctedLatency = (data.corrected == null) ? null : new Latency(data.corrected);
+      this.scheduleLag = (data.lag == null) ? null : new Latency(data.lag);
+    }
+
+    public long samples() {
+      return this.samples;
+    }
+
+    public long errors() {
+      return this.errors;
+    }
+
+    public double qps() {
+      return this.qps;
+    }
+
+    public double errorRate() {
+      return this.errorRate;
+    }
+
+    public Latency latency() {
+      return this.latency;
+    }
+
+    public Optional<Latency> correctedLatency() {
+      return Optional.fromNullable(this.correctedLatency);
+    }
+
+    public Optional<Latency> scheduleLag() {
+      return Optional.fromNullable(this.scheduleLag);
+    }
+
+  }
+
+  public static final class Snapshots {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="id")
+    private final String id;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="first_sample")
+    private final long firstSample;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_sample")
+    private final long lastSample;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="1s")
+    private final Snapshot shortWindow;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="10s")
+    private final Snapshot longWindow;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="test")
+    private final Snapshot test;
+
+    // load generator usage of the test, when known ( see: `GeneratorMonitor` )
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="generator")
+    private final GeneratorSaturation.Snapshot generator;
+
+    private Snapshots(
+      final String id,
+      final long firstSample,
+      final long lastSample,
+      final Snapshot shortWindow,
+      final Snapshot longWindow,
+      final Snapshot test,
+      final GeneratorSaturation.Snapshot generator
+    ) {
+      this.id = id;
+      this.firstSample = firstSample;
+      this.lastSample = lastSample;
+      this.shortWindow = shortWindow;
+      this.longWindow = longWindow;
+      this.test = test;
+      this.generator = generator;
+    }
+
+    public Snapshots generator(
+      final GeneratorSaturation.Snapshot generator
+    ) {
+      return new Snapshots(this.id, this.firstSample, this.lastSample,
+        this.shortWindow, this.longWindow, this.test, generator);
+    }
+
+    public String id() {
+      return this.id;
+    }
+
+    public Snapshot shortWindow() {
+      return this.shortWindow;
+    }
+
+    public Snapshot longWindow() {
+      return this.longWindow;
+    }
+
+    public Snapshot test() {
+      return this.test;
+    }
+
+  }
+
+  public JMeterTestMetrics(
+    final String id
+  ) {
+    this(id, Optional.absent());
+  }
+
+  public JMeterTestMetrics(
+    final String id,
+    final Optional<ArrivalSchedule> schedule
+  ) {
+    this(id, schedule, new JMeterTestSeries(id,
+      JMeterTestSeries.DEFAULT_BUCKETS, JMeterTestSeries.DEFAULT_MAX_KEYS));
+  }
+
+  public JMeterTestMetrics(
+    final String id,
+    final Optional<ArrivalSchedule> schedule,
+    final JMeterTestSeries series
+  ) {
+    this.id = id;
+    this.schedule = schedule;
+    this.series = series;
+    this.scheduled = schedule.isPresent();
+    this.total = new Window(this.scheduled);
+    for ( int i = 0; i < SLOTS; i++ ) {
+      this.seconds[i] = new Window(this.scheduled);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("id", this.id)
+      .add("samples", this.total.samples)
+      .add("errors", this.total.errors)
+      .add("latency", this.total.latency)
+      .add("corrected_latency", this.total.corrected)
+      .add("schedule_lag", this.total.lag)
+      .toString();
+  }
+
+  public String id() {
+    return this.id;
+  }
+
+  public long samples() {
+    return this.total.samples;
+  }
+
+  public JMeterTestSeries series() {
+    return this.series;
+  }
+
+  // sketch of the whole test: see `JMeterTestAggregate` for metrics;
+  //   `corrected_latency` and `schedule_lag` are only available for `qps` tests.
+  public Optional<LatencySketch> sketch(
+    final String metric
+  ) {
+    if ( JMeterTestAggregate.METRIC_LATENCY.equals(metric) ) {
+      return Optional.of(LatencySketch.of(this.total.latency));
+    }
+    if ( JMeterTestAggregate.METRIC_CORRECTED_LATENCY.equals(metric) && this.scheduled ) {
+      return Optional.of(LatencySketch.of(this.total.corrected));
+    }
+    if ( JMeterTestAggregate.METRIC_SCHEDULE_LAG.equals(metric) && this.scheduled ) {
+      return Optional.of(LatencySketch.of(this.total.lag));
+    }
+    return Optional.absent();
+  }
+
+  @Override
+  public void onSample(
+    final JMeterSample sample
+  ) {
+    final long timestamp = sample.timestamp();
+    final long second = timestamp / 1000l;
+
+    if ( this.firstTimestamp == 0 ) {
+      this.firstTimestamp = timestamp;
+    }
+    if ( timestamp > this.lastTimestamp ) {
+      this.lastTimestamp = timestamp;
+    }
+
+    final long lag = this.lag(timestamp);
+
+    this.series.record(sample);
+
+    final Window slot = this.seconds[(int) (second % SLOTS)];
+    if ( slot.second != second ) {
+      if ( second < slot.second ) {
+        // too late for any rolling window
+        this.total.record(sample, lag);
+        return;
+      }
+      slot.reset(second);
+    }
+    slot.record(sample, lag);
+    this.total.record(sample, lag);
+  }
+
+  // milliseconds between the intended start of the next request of the schedule and `timestamp`;
+  //   samples issued ahead of the schedule, or beyond its end ( ramp-down ), are not late.
+  private long lag(
+    final long timestamp
+  ) {
+    if ( !this.scheduled ) {
+      return 0l;
+    }
+    final long offset = this.schedule.get().next();
+    if ( offset < 0l ) {
+      return 0l;
+    }
+    return Math.max(0l, timestamp - (this.firstTimestamp + (offset / NANOS_PER_MILLI)));
+  }
+
+  @Override
+  public void onLog(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    // logs are not metrics
+  }
+
+  @Override
+  public void flush() throws IOException {}
+
+  @Override
+  public void close() throws IOException {}
+
+  public Snapshots snapshot() {
+    // windows are relative to the latest sample: they freeze once the test is complete.
+    final long last = this.lastTimestamp;
+    final long first = this.firstTimestamp;
+    final long now = last / 1000l;
+    final long seconds = (last > first) ? ((last - first) / 1000l) + 1 : 1;
+    return new Snapshots(this.id, first, last,
+      new Snapshot("1s", SHORT_WINDOW, this.window(now, SHORT_WINDOW)),
+      new Snapshot("10s", LONG_WINDOW, this.window(now, LONG_WINDOW)),
+      new Snapshot("test", seconds, this.total), null);
+  }
+
+  // merges the last `size` complete seconds before `now`.
+  private Window window(
+    final long now,
+    final int size
+  ) {
+    final Window window = new Window(this.scheduled);
+    for ( long second = now - size; second < now; second++ ) {
+      final Window slot = this.seconds[(int) (Math.max(0, second) % SLOTS)];
+      if ( slot.second == second ) {
+        slot.addTo(window);
+      }
+    }
+    return window;
+  }
+
+}
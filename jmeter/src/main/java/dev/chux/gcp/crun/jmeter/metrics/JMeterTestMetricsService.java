@@ -0,0 +1,111 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.io.OutputStream;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.LoadProfile;
+import dev.chux.gcp.crun.jmeter.engine.ArrivalSchedule;
+import dev.chux.gcp.crun.jmeter.output.JMeterOutputParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+public class JMeterTestMetricsService {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestMetricsService.class);
+
+  private static final int MAX_COMPLETE_TESTS = 32;
+
+  private static final String MODE_QPS = "qps";
+
+  public static final String PROPERTY_SERIES_BUCKETS = "jmeter.series.buckets";
+  public static final String PROPERTY_SERIES_MAX_KEYS = "jmeter.series.max_keys";
+
+  private final int seriesBuckets;
+  private final int seriesMaxKeys;
+
+  private final Map<String, JMeterTestMetrics> running = Maps.newConcurrentMap();
+
+  // metrics of complete tests are kept around for a while so that final results may be queried.
+  private final Cache<String, JMeterTestMetrics> complete = CacheBuilder.newBuilder()
+    .maximumSize(MAX_COMPLETE_TESTS)
+    .expireAfterWrite(1, TimeUnit.HOURS)
+    .build();
+
+  @Inject
+  JMeterTestMetricsService(
+    final ConfigService configService
+  ) {
+    this.seriesBuckets = Math.max(1,
+      configService.getIntAppProp(PROPERTY_SERIES_BUCKETS).or(JMeterTestSeries.DEFAULT_BUCKETS));
+    this.seriesMaxKeys = Math.max(1,
+      configService.getIntAppProp(PROPERTY_SERIES_MAX_KEYS).or(JMeterTestSeries.DEFAULT_MAX_KEYS));
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("running", this.running.keySet())
+      .add("complete", this.complete.size())
+      .toString();
+  }
+
+  // returns a stream which parses test output and records its samples;
+  //   samples of `qps` tests are also measured against their load profile.
+  public OutputStream watch(
+    final String id,
+    final String mode,
+    final Optional<String> profile
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    final Optional<ArrivalSchedule> schedule = mode.equalsIgnoreCase(MODE_QPS)
+      ? ArrivalSchedule.of(LoadProfile.split(profile.orNull()))
+      : Optional.absent();
+    final JMeterTestMetrics metrics = new JMeterTestMetrics(id, schedule,
+      new JMeterTestSeries(id, this.seriesBuckets, this.seriesMaxKeys));
+    if ( this.running.putIfAbsent(id, metrics) == null ) {
+      this.complete.invalidate(id);
+    } else {
+      // the test is already running: this output will be discarded.
+      logger.warn("{}/metrics already being recorded", id);
+    }
+    return new JMeterOutputParser(metrics);
+  }
+
+  public Optional<JMeterTestMetrics> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    final Optional<JMeterTestMetrics> metrics = fromNullable(this.running.get(id));
+    if ( metrics.isPresent() ) {
+      return metrics;
+    }
+    return fromNullable(this.complete.getIfPresent(id));
+  }
+
+  public void complete(
+    final String id
+  ) {
+    final Optional<JMeterTestMetrics> metrics = fromNullable(this.running.remove(id));
+    if ( metrics.isPresent() ) {
+      this.complete.put(id, metrics.get());
+      logger.info("{}/metrics: {}", id, metrics.get());
+    }
+  }
+
+}
@@ -0,0 +1,246 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.jmeter.output.ByteDictionary;
+import dev.chux.gcp.crun.jmeter.output.JMeterSample;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// per-second time series of a single test's samples, downsampled to `10s` and `1m` buckets so that
+//   long tests take the same memory as short ones ( see: `SampleSeries` ).
+//   - series are kept for the whole test, and also for every label and response code.
+//   - labels and codes are looked up in their raw bytes: names are only created the first time they are seen;
+//     once `maxKeys` of them are known, samples of any other one are recorded into the `_other` series.
+public final class JMeterTestSeries {
+
+  public static final int DEFAULT_BUCKETS = 360;
+  public static final int DEFAULT_MAX_KEYS = 16;
+
+  public static final String RESOLUTION_AUTO = "auto";
+
+  private static final String OTHER = "_other";
+
+  private final String id;
+  private final int buckets;
+
+  private final SampleSeries total;
+  private final Keyed labels;
+  private final Keyed codes;
+
+  private long firstTimestamp = 0;
+  private long lastTimestamp = 0;
+
+  private static final class Keyed {
+
+    private final int buckets;
+    private final ByteDictionary dictionary;
+    private final List<String> names = Lists.newArrayList();
+    private final List<SampleSeries> series = Lists.newArrayList();
+    private SampleSeries other = null;
+
+    private Keyed(
+      final int buckets,
+      final int maxKeys
+    ) {
+      this.buckets = buckets;
+      this.dictionary = new ByteDictionary(maxKeys);
+    }
+
+    private SampleSeries get(
+      final byte[] buffer,
+      final int offset,
+      final int length
+    ) {
+      final int id = this.dictionary.get(buffer, offset, length);
+      if ( id >= 0 ) {
+        return this.series.get(id);
+      }
+      if ( this.dictionary.isFull() ) {
+        if ( this.other == null ) {
+          this.other = new SampleSeries(this.buckets);
+        }
+        return this.other;
+      }
+      this.dictionary.add(buffer, offset, length);
+      final SampleSeries series = new SampleSeries(this.buckets);
+      this.names.add(new String(buffer, offset, length, UTF_8));
+      this.series.add(series);
+      return series;
+    }
+
+    private Map<String, List<SampleSeries.Bucket>> buckets(
+      final int resolution,
+      final long from
+    ) {
+      final Map<String, List<SampleSeries.Bucket>> buckets = Maps.newTreeMap();
+      for ( int i = 0; i < this.names.size(); i++ ) {
+        buckets.put(this.names.get(i), this.series.get(i).buckets(resolution, from));
+      }
+      if ( this.other != null ) {
+        buckets.put(OTHER, this.other.buckets(resolution, from));
+      }
+      return ImmutableMap.copyOf(buckets);
+    }
+
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="id")
+    private final String id;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="resolution")
+    private final String resolution;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="first_sample")
+    private final long firstSample;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_sample")
+    private final long lastSample;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="total")
+    private final List<SampleSeries.Bucket> total;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="labels")
+    private final Map<String, List<SampleSeries.Bucket>> labels;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="codes")
+    private final Map<String, List<SampleSeries.Bucket>> codes;
+
+    private Snapshot(
+      final String id,
+      final String resolution,
+      final long firstSample,
+      final long lastSample,
+      final List<SampleSeries.Bucket> total,
+      final Map<String, List<SampleSeries.Bucket>> labels,
+      final Map<String, List<SampleSeries.Bucket>> codes
+    ) {
+      this.id = id;
+      this.resolution = resolution;
+      this.firstSample = firstSample;
+      this.lastSample = lastSample;
+      this.total = total;
+      this.labels = labels;
+      this.codes = codes;
+    }
+
+    public String id() {
+      return this.id;
+    }
+
+    public String resolution() {
+      return this.resolution;
+    }
+
+  }
+
+  public JMeterTestSeries(
+    final String id,
+    final int buckets,
+    final int maxKeys
+  ) {
+    this.id = id;
+    this.buckets = buckets;
+    this.total = new SampleSeries(buckets);
+    this.labels = new Keyed(buckets, maxKeys);
+    this.codes = new Keyed(buckets, maxKeys);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return toStringHelper(this)
+      .add("id", this.id)
+      .add("buckets", this.buckets)
+      .add("labels", this.labels.names)
+      .add("codes", this.codes.names)
+      .toString();
+  }
+
+  public String id() {
+    return this.id;
+  }
+
+  public static boolean isResolution(
+    final String resolution
+  ) {
+    if ( RESOLUTION_AUTO.equalsIgnoreCase(resolution) ) {
+      return true;
+    }
+    for ( final String name : SampleSeries.RESOLUTIONS ) {
+      if ( name.equalsIgnoreCase(resolution) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public synchronized void record(
+    final JMeterSample sample
+  ) {
+    final long timestamp = sample.timestamp();
+    final int elapsed = sample.elapsed();
+    final long bytes = sample.bytes();
+    final boolean success = sample.success();
+
+    if ( this.firstTimestamp == 0 ) {
+      this.firstTimestamp = timestamp;
+    }
+    if ( timestamp > this.lastTimestamp ) {
+      this.lastTimestamp = timestamp;
+    }
+
+    final byte[] buffer = sample.buffer();
+    this.total.record(timestamp, elapsed, bytes, success);
+    this.labels.get(buffer, sample.labelOffset(), sample.labelLength())
+      .record(timestamp, elapsed, bytes, success);
+    this.codes.get(buffer, sample.codeOffset(), sample.codeLength())
+      .record(timestamp, elapsed, bytes, success);
+  }
+
+  // buckets since `from` ( the first sample by default ) at the given resolution;
+  //   `auto` picks the finest resolution which still holds all of them.
+  public synchronized Snapshot snapshot(
+    final String resolution,
+    final Optional<Long> from,
+    final boolean byLabel,
+    final boolean byCode
+  ) {
+    final long since = from.or(this.firstTimestamp);
+    final int index = RESOLUTION_AUTO.equalsIgnoreCase(resolution)
+      ? this.total.resolution(since)
+      : SampleSeries.resolution(resolution);
+    return new Snapshot(this.id, SampleSeries.RESOLUTIONS[index],
+      this.firstTimestamp, this.lastTimestamp,
+      this.total.buckets(index, since),
+      byLabel ? this.labels.buckets(index, since) : null,
+      byCode ? this.codes.buckets(index, since) : null);
+  }
+
+}
@@ -0,0 +1,175 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+// HdrHistogram style log-linear histogram for millisecond latencies:
+//   - values below 128 are recorded exactly.
+//   - every power of 2 above is split in 64 linear sub-buckets: relative error is at most 1/64 ( ~1.6% ).
+//   - recording is lock-free and never allocates; it is meant to have a single writer.
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+  // ~24 days in milliseconds: larger values are clamped.
+  static final long MAX_VALUE = Integer.MAX_VALUE;
+
+  static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private volatile long count = 0;
+  private volatile long sum = 0;
+  private volatile long min = Long.MAX_VALUE;
+  private volatile long max = 0;
+
+  public LatencyHistogram() {}
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("count", this.count())
+      .add("min", this.min())
+      .add("p50", this.percentile(50))
+      .add("p99", this.percentile(99))
+      .add("max", this.max())
+      .toString();
+  }
+
+  static int index(
+    final long value
+  ) {
+    if ( value < SUB_BUCKET_COUNT ) {
+      return (int) Math.max(0, value);
+    }
+    final int msb = 63 - Long.numberOfLeadingZeros(value);
+    final int exponent = msb - (SUB_BUCKET_BITS - 1);
+    final int subBucket = (int) (value >>> exponent) - SUB_BUCKET_HALF_COUNT;
+    return SUB_BUCKET_COUNT + ((exponent - 1) * SUB_BUCKET_HALF_COUNT) + subBucket;
+  }
+
+  static long lowestEquivalentValue(
+    final int index
+  ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    }
+    final int exponent = ((index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT) + 1;
+    final long subBucket = ((index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT) + SUB_BUCKET_HALF_COUNT;
+    return subBucket << exponent;
+  }
+
+  static long highestEquivalentValue(
+    final int index
+  ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    }
+    return lowestEquivalentValue(index + 1) - 1;
+  }
+
+  public void record(
+    final long value
+  ) {
+    this.record(value, 1);
+  }
+
+  public void record(
+    long value,
+    final long times
+  ) {
+    if ( times <= 0 ) {
+      return;
+    }
+    value = Math.max(0, Math.min(value, MAX_VALUE));
+    final int index = index(value);
+    // single writer: plain read-modify-write with ordered stores is enough.
+    this.counts.lazySet(index, this.counts.get(index) + times);
+    this.sum += value * times;
+    if ( value < this.min ) {
+      this.min = value;
+    }
+    if ( value > this.max ) {
+      this.max = value;
+    }
+    this.count += times;
+  }
+
+  public long count() {
+    return this.count;
+  }
+
+  public long min() {
+    return (this.count == 0) ? 0 : this.min;
+  }
+
+  public long max() {
+    return this.max;
+  }
+
+  public double mean() {
+    final long count = this.count;
+    return (count == 0) ? 0d : ((double) this.sum / count);
+  }
+
+  public long percentile(
+    final double percentile
+  ) {
+    checkArgument(percentile >= 0d && percentile <= 100d, "invalid percentile: %s", percentile);
+    long total = 0;
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      total += this.counts.get(i);
+    }
+    if ( total == 0 ) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil((percentile / 100d) * total));
+    long seen = 0;
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      seen += this.counts.get(i);
+      if ( seen >= target ) {
+        return Math.min(highestEquivalentValue(i), this.max);
+      }
+    }
+    return this.max;
+  }
+
+  // adds all values recorded by `other` into this histogram.
+  public void add(
+    final LatencyHistogram other
+  ) {
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      final long count = other.counts.get(i);
+      if ( count > 0 ) {
+        this.counts.lazySet(i, this.counts.get(i) + count);
+      }
+    }
+    if ( other.count > 0 ) {
+      this.sum += other.sum;
+      this.min = Math.min(this.min, other.min);
+      this.max = Math.max(this.max, other.max);
+      this.count += other.count;
+    }
+  }
+
+  public void reset() {
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      this.counts.lazySet(i, 0);
+    }
+    this.sum = 0;
+    this.min = Long.MAX_VALUE;
+    this.max = 0;
+    this.count = 0;
+  }
+
+  long countAt(
+    final int index
+  ) {
+    return this.counts.get(index);
+  }
+
+}
@@ -0,0 +1,292 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.io.BaseEncoding;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+// sparse version of `LatencyHistogram`: same buckets, and same relative error, but only buckets
+//   with values take memory, so that many of them may be kept, i.e.: one per time series bucket.
+//   - buckets are kept sorted in primitive arrays, which grow as needed.
+//   - sketches are mergeable: adding one sketch into another is the same as recording all of its values.
+//   - sketches are encoded as a version byte, the number of buckets, every bucket as the varint delta of its
+//     index and its varint count, and then `min`, `max`, and `sum`: a few bytes per bucket, base64 in JSON.
+//   - not thread-safe: callers must synchronize.
+public final class LatencySketch {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private static final byte VERSION = 1;
+
+  // padding is optional: Gson would escape it.
+  private static final BaseEncoding BASE64 = BaseEncoding.base64().omitPadding();
+  private static final CharMatcher PADDING = CharMatcher.is('=');
+
+  private int[] indexes = new int[INITIAL_CAPACITY];
+  private long[] counts = new long[INITIAL_CAPACITY];
+  private int size = 0;
+
+  private long count = 0;
+  private long sum = 0;
+  private long min = Long.MAX_VALUE;
+  private long max = 0;
+
+  public LatencySketch() {}
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("count", this.count())
+      .add("buckets", this.size)
+      .add("min", this.min())
+      .add("p50", this.percentile(50))
+      .add("p99", this.percentile(99))
+      .add("max", this.max())
+      .toString();
+  }
+
+  public void record(
+    final long value
+  ) {
+    this.record(value, 1);
+  }
+
+  public void record(
+    long value,
+    final long times
+  ) {
+    if ( times <= 0 ) {
+      return;
+    }
+    value = Math.max(0, Math.min(value, LatencyHistogram.MAX_VALUE));
+    this.increment(LatencyHistogram.index(value), times);
+    this.sum += value * times;
+    if ( value < this.min ) {
+      this.min = value;
+    }
+    if ( value > this.max ) {
+      this.max = value;
+    }
+    this.count += times;
+  }
+
+  private void increment(
+    final int index,
+    final long times
+  ) {
+    int i = Arrays.binarySearch(this.indexes, 0, this.size, index);
+    if ( i >= 0 ) {
+      this.counts[i] += times;
+      return;
+    }
+    i = -(i + 1);
+    if ( this.size == this.indexes.length ) {
+      this.indexes = Arrays.copyOf(this.indexes, this.size << 1);
+      this.counts = Arrays.copyOf(this.counts, this.size << 1);
+    }
+    System.arraycopy(this.indexes, i, this.indexes, i + 1, this.size - i);
+    System.arraycopy(this.counts, i, this.counts, i + 1, this.size - i);
+    this.indexes[i] = index;
+    this.counts[i] = times;
+    this.size += 1;
+  }
+
+  public long count() {
+    return this.count;
+  }
+
+  public long min() {
+    return (this.count == 0) ? 0 : this.min;
+  }
+
+  public long max() {
+    return this.max;
+  }
+
+  public double mean() {
+    return (this.count == 0) ? 0d : ((double) this.sum / this.count);
+  }
+
+  public long percentile(
+    final double percentile
+  ) {
+    checkArgument(percentile >= 0d && percentile <= 100d, "invalid percentile: %s", percentile);
+    if ( this.count == 0 ) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil((percentile / 100d) * this.count));
+    long seen = 0;
+    for ( int i = 0; i < this.size; i++ ) {
+      seen += this.counts[i];
+      if ( seen >= target ) {
+        return Math.min(LatencyHistogram.highestEquivalentValue(this.indexes[i]), this.max);
+      }
+    }
+    return this.max;
+  }
+
+  // adds all values recorded by `other` into this sketch;
+  //   fails, leaving this sketch as it was, if its count or sum would overflow.
+  public void add(
+    final LatencySketch other
+  ) {
+    if ( other.count == 0 ) {
+      return;
+    }
+    // no bucket count overflows unless the total count does
+    checkArgument(fits(this.count, other.count), "sketch count overflows");
+    checkArgument(fits(this.sum, other.sum), "sketch sum overflows");
+    for ( int i = 0; i < other.size; i++ ) {
+      this.increment(other.indexes[i], other.counts[i]);
+    }
+    this.sum += other.sum;
+    this.min = Math.min(this.min, other.min);
+    this.max = Math.max(this.max, other.max);
+    this.count += other.count;
+  }
+
+  // keeps the arrays: buckets of a ring are reset over and over.
+  public void reset() {
+    this.size = 0;
+    this.sum = 0;
+    this.min = Long.MAX_VALUE;
+    this.max = 0;
+    this.count = 0;
+  }
+
+  public LatencySketch copy() {
+    final LatencySketch copy = new LatencySketch();
+    copy.add(this);
+    return copy;
+  }
+
+  // only non-empty buckets of `histogram` are kept; they may be recorded while they are copied.
+  static LatencySketch of(
+    final LatencyHistogram histogram
+  ) {
+    final LatencySketch sketch = new LatencySketch();
+    for ( int i = 0; i < LatencyHistogram.BUCKETS; i++ ) {
+      final long count = histogram.countAt(i);
+      if ( count > 0 ) {
+        sketch.increment(i, count);
+        sketch.count += count;
+      }
+    }
+    if ( sketch.count > 0 ) {
+      sketch.sum = (long) (histogram.mean() * sketch.count);
+      sketch.min = histogram.min();
+      sketch.max = histogram.max();
+    }
+    return sketch;
+  }
+
+  public byte[] encode() {
+    // at most 10 bytes per varint
+    final ByteBuffer buffer = ByteBuffer.allocate(1 + 10 + (this.size * 20) + 30);
+    buffer.put(VERSION);
+    putVarint(buffer, this.size);
+    int previous = 0;
+    for ( int i = 0; i < this.size; i++ ) {
+      putVarint(buffer, this.indexes[i] - previous);
+      putVarint(buffer, this.counts[i]);
+      previous = this.indexes[i];
+    }
+    putVarint(buffer, this.min());
+    putVarint(buffer, this.max);
+    putVarint(buffer, this.sum);
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  public String toBase64() {
+    return BASE64.encode(this.encode());
+  }
+
+  public static LatencySketch decode(
+    final byte[] bytes
+  ) {
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      checkArgument(buffer.get() == VERSION, "invalid sketch version");
+      final long size = getVarint(buffer);
+      checkArgument(size >= 0 && size <= LatencyHistogram.BUCKETS, "invalid sketch size: %s", size);
+      final LatencySketch sketch = new LatencySketch();
+      long index = -1;
+      for ( int i = 0; i < size; i++ ) {
+        final long delta = getVarint(buffer);
+        final long count = getVarint(buffer);
+        index = (i == 0) ? delta : (index + delta);
+        checkArgument((i == 0 || delta > 0) && index >= 0
+          && index < LatencyHistogram.BUCKETS, "invalid sketch bucket: %s", index);
+        checkArgument(count > 0, "invalid sketch count: %s", count);
+        checkArgument(fits(sketch.count, count), "sketch count overflows");
+        sketch.increment((int) index, count);
+        sketch.count += count;
+      }
+      final long min = getVarint(buffer);
+      final long max = getVarint(buffer);
+      final long sum = getVarint(buffer);
+      if ( sketch.count > 0 ) {
+        checkArgument(min >= 0 && min <= max && max <= LatencyHistogram.MAX_VALUE, "invalid sketch range");
+        // varints are unsigned: a negative sum overflowed
+        checkArgument(sum >= 0, "sketch sum overflows");
+        sketch.min = min;
+        sketch.max = max;
+        sketch.sum = sum;
+      }
+      return sketch;
+    } catch(final BufferUnderflowException e) {
+      throw new IllegalArgumentException("truncated sketch", e);
+    }
+  }
+
+  public static LatencySketch fromBase64(
+    final String sketch
+  ) {
+    return decode(BASE64.decode(PADDING.trimTrailingFrom(sketch.trim())));
+  }
+
+  // whether `a + b` does not overflow.
+  private static boolean fits(
+    final long a,
+    final long b
+  ) {
+    try {
+      Math.addExact(a, b);
+      return true;
+    } catch(final ArithmeticException e) {
+      return false;
+    }
+  }
+
+  private static void putVarint(
+    final ByteBuffer buffer,
+    long value
+  ) {
+    while ( (value & ~0x7FL) != 0 ) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long getVarint(
+    final ByteBuffer buffer
+  ) {
+    long value = 0;
+    for ( int shift = 0; shift < 64; shift += 7 ) {
+      final byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ( (b & 0x80) == 0 ) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("invalid sketch varint");
+  }
+
+}
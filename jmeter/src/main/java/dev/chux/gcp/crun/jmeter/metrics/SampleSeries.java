@@ -0,0 +1,246 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+// samples of a test ( or only those of one label, or response code ) in fixed-interval buckets:
+//   - every sample is added to the buckets of all resolutions: `1s`, `10s`, and `1m`.
+//   - every resolution keeps its latest `buckets` buckets in a ring of primitive arrays, so that memory
+//     does not depend on how long the test is: older buckets are only available at coarser resolutions.
+//   - not thread-safe: callers must synchronize.
+final class SampleSeries {
+
+  static final String[] RESOLUTIONS = { "1s", "10s", "1m" };
+  private static final long[] RESOLUTION_MILLIS = { 1000l, 10000l, 60000l };
+
+  public static final class Bucket {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="t")
+    private final long timestamp;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="samples")
+    private final long samples;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="errors")
+    private final long errors;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes")
+    private final long bytes;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="min")
+    private final long min;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean")
+    private final double mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p90")
+    private final long p90;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p99")
+    private final long p99;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max")
+    private final long max;
+
+    // see: `JMeterTestMetrics.Latency`
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="sketch")
+    private final String sketch;
+
+    private Bucket(
+      final long timestamp,
+      final long samples,
+      final long errors,
+      final long bytes,
+      final LatencySketch latency
+    ) {
+      this.timestamp = timestamp;
+      this.samples = samples;
+      this.errors = errors;
+      this.bytes = bytes;
+      this.min = latency.min();
+      this.mean = latency.mean();
+      this.p50 = latency.percentile(50);
+      this.p90 = latency.percentile(90);
+      this.p99 = latency.percentile(99);
+      this.max = latency.max();
+      this.sketch = latency.toBase64();
+    }
+
+    public long timestamp() {
+      return this.timestamp;
+    }
+
+  }
+
+  private static final class Ring {
+
+    private final long resolution;
+    private final int size;
+
+    // start of the bucket held by every slot; `-1` when empty.
+    private final long[] timestamps;
+    private final long[] samples;
+    private final long[] errors;
+    private final long[] bytes;
+    private final LatencySketch[] latencies;
+
+    private Ring(
+      final long resolution,
+      final int size
+    ) {
+      this.resolution = resolution;
+      this.size = size;
+      this.timestamps = new long[size];
+      this.samples = new long[size];
+      this.errors = new long[size];
+      this.bytes = new long[size];
+      this.latencies = new LatencySketch[size];
+      Arrays.fill(this.timestamps, -1l);
+    }
+
+    private void record(
+      final long timestamp,
+      final int elapsed,
+      final long bytes,
+      final boolean success
+    ) {
+      final long bucket = timestamp / this.resolution;
+      final int slot = (int) (bucket % this.size);
+      final long start = bucket * this.resolution;
+      if ( this.timestamps[slot] != start ) {
+        if ( start < this.timestamps[slot] ) {
+          // older than every bucket kept at this resolution
+          return;
+        }
+        this.timestamps[slot] = start;
+        this.samples[slot] = 0l;
+        this.errors[slot] = 0l;
+        this.bytes[slot] = 0l;
+        if ( this.latencies[slot] == null ) {
+          this.latencies[slot] = new LatencySketch();
+        } else {
+          this.latencies[slot].reset();
+        }
+      }
+      this.samples[slot] += 1;
+      if ( !success ) {
+        this.errors[slot] += 1;
+      }
+      this.bytes[slot] += bytes;
+      this.latencies[slot].record(elapsed);
+    }
+
+    private long oldest() {
+      long oldest = Long.MAX_VALUE;
+      for ( final long timestamp : this.timestamps ) {
+        if ( timestamp >= 0l && timestamp < oldest ) {
+          oldest = timestamp;
+        }
+      }
+      return oldest;
+    }
+
+    private List<Bucket> buckets(
+      final long from
+    ) {
+      final List<Bucket> buckets = Lists.newArrayList();
+      for ( int slot = 0; slot < this.size; slot++ ) {
+        final long timestamp = this.timestamps[slot];
+        // the bucket that contains `from` is included
+        if ( timestamp >= 0l && (timestamp + this.resolution) > from ) {
+          buckets.add(new Bucket(timestamp, this.samples[slot],
+            this.errors[slot], this.bytes[slot], this.latencies[slot]));
+        }
+      }
+      buckets.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+      return ImmutableList.copyOf(buckets);
+    }
+
+  }
+
+  private final Ring[] rings = new Ring[RESOLUTIONS.length];
+
+  SampleSeries(
+    final int buckets
+  ) {
+    for ( int i = 0; i < RESOLUTIONS.length; i++ ) {
+      this.rings[i] = new Ring(RESOLUTION_MILLIS[i], buckets);
+    }
+  }
+
+  void record(
+    final long timestamp,
+    final int elapsed,
+    final long bytes,
+    final boolean success
+  ) {
+    for ( final Ring ring : this.rings ) {
+      ring.record(timestamp, elapsed, bytes, success);
+    }
+  }
+
+  // index of the finest resolution which still holds `timestamp`; the coarsest one if none does.
+  int resolution(
+    final long timestamp
+  ) {
+    for ( int i = 0; i < this.rings.length; i++ ) {
+      final long oldest = this.rings[i].oldest();
+      // all resolutions are empty until the first sample
+      if ( oldest == Long.MAX_VALUE || oldest <= timestamp ) {
+        return i;
+      }
+    }
+    return this.rings.length - 1;
+  }
+
+  List<Bucket> buckets(
+    final int resolution,
+    final long from
+  ) {
+    return this.rings[resolution].buckets(from);
+  }
+
+  static int resolution(
+    final String name
+  ) {
+    for ( int i = 0; i < RESOLUTIONS.length; i++ ) {
+      if ( RESOLUTIONS[i].equalsIgnoreCase(name) ) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("invalid resolution: " + name);
+  }
+
+}
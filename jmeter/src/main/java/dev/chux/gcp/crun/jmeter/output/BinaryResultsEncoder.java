@@ -0,0 +1,243 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// compact encoding of JMeter results, negotiated with `Accept: application/x-jmaas-results`.
+//
+// the stream is a sequence of frames: `[type: u8][length: varint][payload: length bytes]`
+//   - `HELLO`  : "JMR" + version ( u8 ); always the first frame.
+//   - `SAMPLE` : zigzag varint timestamp delta ( vs previous sample ), then varints:
+//                elapsed, latency, connect, bytes, label ID, response code ID;
+//                and a flags byte: `0x01` is success.
+//   - `LABEL`  : varint ID + UTF-8 label; always sent before the first sample using it.
+//   - `CODE`   : varint ID + UTF-8 response code; always sent before the first sample using it.
+//   - `LOG`    : UTF-8 text line; JMeter logs and JMaaS markers are sent on this channel.
+//   - `RESET`  : empty; dictionaries and timestamp base must be discarded.
+public class BinaryResultsEncoder implements JMeterOutputListener {
+
+  public static final String MIME_TYPE = "application/x-jmaas-results";
+
+  static final byte VERSION = 1;
+
+  static final byte HELLO = 0x00;
+  static final byte SAMPLE = 0x01;
+  static final byte LABEL = 0x02;
+  static final byte CODE = 0x03;
+  static final byte LOG = 0x04;
+  static final byte RESET = 0x05;
+
+  private static final byte SUCCESS = 0x01;
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int DICTIONARY_SIZE = 1024;
+
+  // varint encoded values take at most 10 bytes
+  private static final int MAX_SAMPLE_SIZE = 7 * 10 + 1;
+
+  private final OutputStream stream;
+
+  private final ByteDictionary labels = new ByteDictionary(DICTIONARY_SIZE);
+  private final ByteDictionary codes = new ByteDictionary(DICTIONARY_SIZE);
+
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position = 0;
+
+  private final byte[] frame = new byte[MAX_SAMPLE_SIZE];
+  private int framePosition = 0;
+
+  private long lastTimestamp = 0;
+  private long samples = 0;
+  private boolean started = false;
+
+  public BinaryResultsEncoder(
+    final OutputStream stream
+  ) {
+    this.stream = checkNotNull(stream);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("samples", this.samples)
+      .add("labels", this.labels.size())
+      .add("codes", this.codes.size())
+      .toString();
+  }
+
+  @Override
+  public void onSample(
+    final JMeterSample sample
+  ) throws IOException {
+    this.start();
+
+    final byte[] line = sample.buffer();
+    int label = this.labels.get(line, sample.labelOffset(), sample.labelLength());
+    int code = this.codes.get(line, sample.codeOffset(), sample.codeLength());
+
+    if ( (label < 0 && this.labels.isFull()) || (code < 0 && this.codes.isFull()) ) {
+      this.reset();
+      label = -1;
+      code = -1;
+    }
+    if ( label < 0 ) {
+      label = this.define(LABEL, this.labels, line, sample.labelOffset(), sample.labelLength());
+    }
+    if ( code < 0 ) {
+      code = this.define(CODE, this.codes, line, sample.codeOffset(), sample.codeLength());
+    }
+
+    final long timestamp = sample.timestamp();
+    this.framePosition = 0;
+    this.frameVarLong(zigzag(timestamp - this.lastTimestamp));
+    this.frameVarLong(Math.max(0, sample.elapsed()));
+    this.frameVarLong(Math.max(0, sample.latency()));
+    this.frameVarLong(Math.max(0, sample.connect()));
+    this.frameVarLong(Math.max(0l, sample.bytes()));
+    this.frameVarLong(label);
+    this.frameVarLong(code);
+    this.frame[this.framePosition++] = sample.success() ? SUCCESS : 0;
+    this.lastTimestamp = timestamp;
+
+    this.header(SAMPLE, this.framePosition);
+    this.put(this.frame, 0, this.framePosition);
+    this.samples += 1;
+  }
+
+  @Override
+  public void onLog(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) throws IOException {
+    this.start();
+    this.header(LOG, length);
+    this.put(line, offset, length);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    this.drain();
+    this.stream.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.flush();
+  }
+
+  private void start() throws IOException {
+    if ( this.started ) {
+      return;
+    }
+    this.started = true;
+    this.header(HELLO, 4);
+    this.putByte('J');
+    this.putByte('M');
+    this.putByte('R');
+    this.putByte(VERSION);
+  }
+
+  private void reset() throws IOException {
+    this.labels.clear();
+    this.codes.clear();
+    this.lastTimestamp = 0;
+    this.header(RESET, 0);
+  }
+
+  private int define(
+    final byte type,
+    final ByteDictionary dictionary,
+    final byte[] b,
+    final int off,
+    final int len
+  ) throws IOException {
+    final int id = dictionary.add(b, off, len);
+    this.header(type, varIntSize(id) + len);
+    this.putVarLong(id);
+    this.put(b, off, len);
+    return id;
+  }
+
+  private void header(
+    final byte type,
+    final int length
+  ) throws IOException {
+    this.putByte(type);
+    this.putVarLong(length);
+  }
+
+  private void frameVarLong(
+    long value
+  ) {
+    while ( (value & ~0x7FL) != 0 ) {
+      this.frame[this.framePosition++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    this.frame[this.framePosition++] = (byte) value;
+  }
+
+  private void putVarLong(
+    long value
+  ) throws IOException {
+    while ( (value & ~0x7FL) != 0 ) {
+      this.putByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    this.putByte((int) value);
+  }
+
+  private void putByte(
+    final int b
+  ) throws IOException {
+    if ( this.position == this.buffer.length ) {
+      this.drain();
+    }
+    this.buffer[this.position++] = (byte) b;
+  }
+
+  private void put(
+    final byte[] b,
+    int off,
+    int len
+  ) throws IOException {
+    while ( len > 0 ) {
+      if ( this.position == this.buffer.length ) {
+        this.drain();
+      }
+      final int count = Math.min(len, this.buffer.length - this.position);
+      System.arraycopy(b, off, this.buffer, this.position, count);
+      this.position += count;
+      off += count;
+      len -= count;
+    }
+  }
+
+  private void drain() throws IOException {
+    if ( this.position > 0 ) {
+      this.stream.write(this.buffer, 0, this.position);
+      this.position = 0;
+    }
+  }
+
+  private static long zigzag(
+    final long value
+  ) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int varIntSize(
+    int value
+  ) {
+    int size = 1;
+    while ( (value & ~0x7F) != 0 ) {
+      value >>>= 7;
+      size += 1;
+    }
+    return size;
+  }
+
+}
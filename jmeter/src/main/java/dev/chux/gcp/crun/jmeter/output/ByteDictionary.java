@@ -0,0 +1,93 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import java.util.Arrays;
+
+// assigns sequential IDs to byte sequences without creating intermediate objects on lookups.
+public final class ByteDictionary {
+
+  private final int capacity;
+
+  // open addressing table: at least 2x the capacity ( rounded up to a power of 2 ) keeps probe sequences short.
+  private final byte[][] keys;
+  private final int[] ids;
+  private int size = 0;
+
+  public ByteDictionary(
+    final int capacity
+  ) {
+    this.capacity = capacity;
+    this.keys = new byte[Integer.highestOneBit(Math.max(1, (capacity << 1) - 1)) << 1][];
+    this.ids = new int[this.keys.length];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public boolean isFull() {
+    return this.size >= this.capacity;
+  }
+
+  public void clear() {
+    Arrays.fill(this.keys, null);
+    this.size = 0;
+  }
+
+  // returns the ID of the given bytes, or `-1` if they have not been added yet.
+  public int get(
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    final int mask = this.keys.length - 1;
+    for ( int slot = hash(b, off, len) & mask; ; slot = (slot + 1) & mask ) {
+      final byte[] key = this.keys[slot];
+      if ( key == null ) {
+        return -1;
+      }
+      if ( equals(key, b, off, len) ) {
+        return this.ids[slot];
+      }
+    }
+  }
+
+  public int add(
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    final int mask = this.keys.length - 1;
+    int slot = hash(b, off, len) & mask;
+    while ( this.keys[slot] != null ) {
+      slot = (slot + 1) & mask;
+    }
+    this.keys[slot] = Arrays.copyOfRange(b, off, off + len);
+    this.ids[slot] = this.size;
+    return this.size++;
+  }
+
+  private static int hash(
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    // FNV-1a
+    int hash = 0x811c9dc5;
+    for ( int i = off, end = off + len; i < end; i++ ) {
+      hash ^= b[i];
+      hash *= 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean equals(
+    final byte[] key,
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    return key.length == len
+      && Arrays.equals(key, 0, len, b, off, off + len);
+  }
+
+}
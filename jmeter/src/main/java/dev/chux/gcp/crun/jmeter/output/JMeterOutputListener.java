@@ -0,0 +1,17 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import java.io.IOException;
+
+public interface JMeterOutputListener {
+
+  // `sample` is reused for every line: it is only valid during this call.
+  public void onSample(final JMeterSample sample) throws IOException;
+
+  // any line which is not a sample nor the CSV header: JMeter logs, JMaaS markers, etc...
+  public void onLog(final byte[] line, final int offset, final int length) throws IOException;
+
+  public void flush() throws IOException;
+
+  public void close() throws IOException;
+
+}
@@ -0,0 +1,153 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// splits the raw output of a JMeter test into lines and classifies them:
+//   - CSV sample lines are parsed into a reusable `JMeterSample`.
+//   - the CSV header updates the columns mapping.
+//   - every other line is reported as a log line.
+public class JMeterOutputParser extends OutputStream {
+
+  private static final int INITIAL_LINE_SIZE = 1024;
+  private static final int MAX_LINE_SIZE = 64 * 1024;
+
+  private final JMeterOutputListener listener;
+  private final JMeterSample sample = new JMeterSample();
+
+  private final byte[] single = new byte[1];
+
+  private byte[] line = new byte[INITIAL_LINE_SIZE];
+  private int length = 0;
+
+  // when connecting to a running test, the first bytes may belong to a partial line.
+  private boolean skipping;
+
+  public JMeterOutputParser(
+    final JMeterOutputListener listener
+  ) {
+    this(listener, /* resync */ false);
+  }
+
+  public JMeterOutputParser(
+    final JMeterOutputListener listener,
+    final boolean resync
+  ) {
+    this.listener = checkNotNull(listener);
+    this.skipping = resync;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("listener", this.listener)
+      .add("buffered", this.length)
+      .toString();
+  }
+
+  // discards all bytes up to the next line terminator.
+  public synchronized void resync() {
+    this.skipping = true;
+    this.length = 0;
+  }
+
+  @Override
+  public synchronized void write(
+    final int b
+  ) throws IOException {
+    if ( b == '\n' ) {
+      this.endOfLine();
+    } else if ( !this.skipping ) {
+      this.single[0] = (byte) b;
+      this.append(this.single, 0, 1);
+    }
+  }
+
+  @Override
+  public synchronized void write(
+    final byte[] b,
+    final int off,
+    final int len
+  ) throws IOException {
+    int start = off;
+    final int end = off + len;
+    for ( int i = off; i < end; i++ ) {
+      if ( b[i] == '\n' ) {
+        if ( !this.skipping ) {
+          this.append(b, start, i - start);
+        }
+        this.endOfLine();
+        start = i + 1;
+      }
+    }
+    if ( start < end && !this.skipping ) {
+      this.append(b, start, end - start);
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    this.listener.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if ( this.length > 0 ) {
+      this.endOfLine();
+    }
+    this.listener.close();
+  }
+
+  private void append(
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    if ( len <= 0 ) {
+      return;
+    }
+    if ( (this.length + len) > this.line.length ) {
+      this.grow(this.length + len);
+    }
+    // oversized lines are truncated
+    final int count = Math.min(len, this.line.length - this.length);
+    System.arraycopy(b, off, this.line, this.length, count);
+    this.length += count;
+  }
+
+  private void grow(
+    final int required
+  ) {
+    if ( this.line.length >= MAX_LINE_SIZE ) {
+      return;
+    }
+    final byte[] line = new byte[
+      Math.min(MAX_LINE_SIZE, Math.max(required, 2 * this.line.length))];
+    System.arraycopy(this.line, 0, line, 0, this.length);
+    this.line = line;
+  }
+
+  private void endOfLine() throws IOException {
+    if ( this.skipping ) {
+      this.skipping = false;
+      this.length = 0;
+      return;
+    }
+    int length = this.length;
+    this.length = 0;
+    if ( length > 0 && this.line[length-1] == '\r' ) {
+      length -= 1;
+    }
+    if ( this.sample.parse(this.line, 0, length) ) {
+      this.listener.onSample(this.sample);
+    } else if ( JMeterSample.isHeader(this.line, 0, length) ) {
+      this.sample.header(this.line, 0, length);
+    } else {
+      this.listener.onLog(this.line, 0, length);
+    }
+  }
+
+}
@@ -0,0 +1,335 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+// flyweight view over a CSV sample line produced by `jmeter -n -l /dev/stdout`:
+//   - instances are reused for every line, consumers must copy whatever they need to keep.
+//   - numeric fields are parsed straight from bytes, no intermediate `String`s are created.
+public final class JMeterSample {
+
+  private static final int EPOCH_DIGITS = 13;
+
+  private static final int MAX_FIELDS = 64;
+
+  // see: https://jmeter.apache.org/usermanual/listeners.html#csvlogformat
+  private static final String[] DEFAULT_HEADER = new String[] {
+    "timeStamp", "elapsed", "label", "responseCode", "responseMessage", "threadName",
+    "dataType", "success", "failureMessage", "bytes", "sentBytes", "grpThreads",
+    "allThreads", "URL", "Latency", "IdleTime", "Connect",
+  };
+
+  private static final byte[] HEADER_PREFIX = "timeStamp".getBytes(UTF_8);
+
+  private int timestampColumn;
+  private int elapsedColumn;
+  private int labelColumn;
+  private int codeColumn;
+  private int successColumn;
+  private int bytesColumn;
+  private int sentBytesColumn;
+  private int grpThreadsColumn;
+  private int allThreadsColumn;
+  private int latencyColumn;
+  private int idleColumn;
+  private int connectColumn;
+
+  private final int[] starts = new int[MAX_FIELDS];
+  private final int[] ends = new int[MAX_FIELDS];
+  private int fields = 0;
+
+  private byte[] line;
+
+  private long timestamp;
+  private int elapsed;
+  private int latency;
+  private int connect;
+  private int idle;
+  private long bytes;
+  private long sentBytes;
+  private int grpThreads;
+  private int allThreads;
+  private boolean success;
+
+  public JMeterSample() {
+    this.columns(DEFAULT_HEADER);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("timestamp", this.timestamp)
+      .add("label", this.label())
+      .add("code", this.code())
+      .add("elapsed", this.elapsed)
+      .add("latency", this.latency)
+      .add("connect", this.connect)
+      .add("bytes", this.bytes)
+      .add("success", this.success)
+      .toString();
+  }
+
+  public static boolean isHeader(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    if ( length < HEADER_PREFIX.length ) {
+      return false;
+    }
+    for ( int i = 0; i < HEADER_PREFIX.length; i++ ) {
+      if ( line[offset+i] != HEADER_PREFIX[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean isSample(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    if ( length <= EPOCH_DIGITS || line[offset+EPOCH_DIGITS] != ',' ) {
+      return false;
+    }
+    for ( int i = offset, end = offset+EPOCH_DIGITS; i < end; i++ ) {
+      if ( line[i] < '0' || line[i] > '9' ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // maps columns using a header line; CSV header names never require quoting.
+  void header(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    this.split(line, offset, length);
+    final String[] names = new String[this.fields];
+    for ( int i = 0; i < this.fields; i++ ) {
+      names[i] = new String(line, this.starts[i], this.ends[i]-this.starts[i], UTF_8);
+    }
+    this.columns(names);
+  }
+
+  private void columns(
+    final String[] names
+  ) {
+    this.timestampColumn = indexOf(names, "timeStamp");
+    this.elapsedColumn = indexOf(names, "elapsed");
+    this.labelColumn = indexOf(names, "label");
+    this.codeColumn = indexOf(names, "responseCode");
+    this.successColumn = indexOf(names, "success");
+    this.bytesColumn = indexOf(names, "bytes");
+    this.sentBytesColumn = indexOf(names, "sentBytes");
+    this.grpThreadsColumn = indexOf(names, "grpThreads");
+    this.allThreadsColumn = indexOf(names, "allThreads");
+    this.latencyColumn = indexOf(names, "Latency");
+    this.idleColumn = indexOf(names, "IdleTime");
+    this.connectColumn = indexOf(names, "Connect");
+  }
+
+  private static int indexOf(
+    final String[] names,
+    final String name
+  ) {
+    for ( int i = 0; i < names.length; i++ ) {
+      if ( names[i].equals(name) ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  boolean parse(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    if ( !isSample(line, offset, length) ) {
+      return false;
+    }
+    this.line = line;
+    this.split(line, offset, length);
+    this.timestamp = this.longField(this.timestampColumn);
+    this.elapsed = (int) this.longField(this.elapsedColumn);
+    this.latency = (int) this.longField(this.latencyColumn);
+    this.connect = (int) this.longField(this.connectColumn);
+    this.idle = (int) this.longField(this.idleColumn);
+    this.bytes = this.longField(this.bytesColumn);
+    this.sentBytes = this.longField(this.sentBytesColumn);
+    this.grpThreads = (int) this.longField(this.grpThreadsColumn);
+    this.allThreads = (int) this.longField(this.allThreadsColumn);
+    this.success = this.boolField(this.successColumn);
+    return true;
+  }
+
+  // splits a CSV line honoring double quoted fields; quotes are excluded from field boundaries.
+  private void split(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    final int end = offset + length;
+    int fields = 0;
+    int start = offset;
+    boolean quoted = false;
+    for ( int i = offset; i <= end && fields < MAX_FIELDS; i++ ) {
+      if ( i < end ) {
+        final byte b = line[i];
+        if ( b == '"' ) {
+          quoted = !quoted;
+          continue;
+        }
+        if ( quoted || b != ',' ) {
+          continue;
+        }
+      }
+      int s = start, e = i;
+      if ( (e - s) >= 2 && line[s] == '"' && line[e-1] == '"' ) {
+        s += 1;
+        e -= 1;
+      }
+      this.starts[fields] = s;
+      this.ends[fields] = e;
+      fields += 1;
+      start = i + 1;
+    }
+    this.fields = fields;
+  }
+
+  private long longField(
+    final int column
+  ) {
+    if ( column < 0 || column >= this.fields ) {
+      return 0;
+    }
+    long value = 0;
+    boolean negative = false;
+    for ( int i = this.starts[column], end = this.ends[column]; i < end; i++ ) {
+      final byte b = this.line[i];
+      if ( b == '-' && i == this.starts[column] ) {
+        negative = true;
+      } else if ( b >= '0' && b <= '9' ) {
+        value = (value * 10) + (b - '0');
+      } else {
+        break;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  private boolean boolField(
+    final int column
+  ) {
+    if ( column < 0 || column >= this.fields ) {
+      return false;
+    }
+    // `true` is the only value starting with `t`
+    final int start = this.starts[column];
+    return (this.ends[column] > start) && (this.line[start] == 't');
+  }
+
+  public long timestamp() {
+    return this.timestamp;
+  }
+
+  public int elapsed() {
+    return this.elapsed;
+  }
+
+  public int latency() {
+    return this.latency;
+  }
+
+  public int connect() {
+    return this.connect;
+  }
+
+  public int idle() {
+    return this.idle;
+  }
+
+  public long bytes() {
+    return this.bytes;
+  }
+
+  public long sentBytes() {
+    return this.sentBytes;
+  }
+
+  public int grpThreads() {
+    return this.grpThreads;
+  }
+
+  public int allThreads() {
+    return this.allThreads;
+  }
+
+  public boolean success() {
+    return this.success;
+  }
+
+  public byte[] buffer() {
+    return this.line;
+  }
+
+  public int labelOffset() {
+    return this.fieldOffset(this.labelColumn);
+  }
+
+  public int labelLength() {
+    return this.fieldLength(this.labelColumn);
+  }
+
+  public int codeOffset() {
+    return this.fieldOffset(this.codeColumn);
+  }
+
+  public int codeLength() {
+    return this.fieldLength(this.codeColumn);
+  }
+
+  // allocates, prefer `buffer()` along with `labelOffset()`/`labelLength()` on hot paths.
+  public String label() {
+    return this.field(this.labelColumn);
+  }
+
+  // allocates, prefer `buffer()` along with `codeOffset()`/`codeLength()` on hot paths.
+  public String code() {
+    return this.field(this.codeColumn);
+  }
+
+  private int fieldOffset(
+    final int column
+  ) {
+    if ( column < 0 || column >= this.fields ) {
+      return 0;
+    }
+    return this.starts[column];
+  }
+
+  private int fieldLength(
+    final int column
+  ) {
+    if ( column < 0 || column >= this.fields ) {
+      return 0;
+    }
+    return this.ends[column] - this.starts[column];
+  }
+
+  private String field(
+    final int column
+  ) {
+    if ( this.line == null ) {
+      return "";
+    }
+    return new String(this.line,
+      this.fieldOffset(column), this.fieldLength(column), UTF_8);
+  }
+
+}
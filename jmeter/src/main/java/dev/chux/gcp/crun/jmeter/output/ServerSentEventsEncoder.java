@@ -0,0 +1,355 @@
+package dev.chux.gcp.crun.jmeter.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.function.Function;
+
+import com.google.common.base.Optional;
+
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorUsage;
+import dev.chux.gcp.crun.jmeter.metrics.LatencyHistogram;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// JMeter results as Server-Sent Events, negotiated with `Accept: text/event-stream`.
+//
+// every event carries a single line of JSON, or text:
+//   - `samples`   : JSON array of samples, batched until the output is flushed.
+//   - `tick`      : JSON aggregates of the samples started within a second; sent once a later second starts.
+//                   includes `generator`: the load generator usage during that second, when known.
+//   - `log`       : text line; JMeter logs.
+//   - `lifecycle` : JSON `{ event, id, details }` for JMaaS markers, i.e.: `---- test/start: <id> ----`.
+public class ServerSentEventsEncoder implements JMeterOutputListener {
+
+  public static final String MIME_TYPE = "text/event-stream";
+
+  private static final byte[] SAMPLES = "event: samples\ndata: [".getBytes(UTF_8);
+  private static final byte[] SAMPLES_END = "]\n\n".getBytes(UTF_8);
+  private static final byte[] TICK = "event: tick\ndata: ".getBytes(UTF_8);
+  private static final byte[] LOG = "event: log\ndata: ".getBytes(UTF_8);
+  private static final byte[] LIFECYCLE = "event: lifecycle\ndata: ".getBytes(UTF_8);
+  private static final byte[] END = "\n\n".getBytes(UTF_8);
+
+  private static final byte[] MARKER_PREFIX = "---- ".getBytes(UTF_8);
+  private static final String MARKER_SUFFIX = " ----";
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_BATCH_SIZE = 512;
+
+  private final OutputStream stream;
+  // load generator usage by second
+  private final Function<Long, Optional<GeneratorUsage>> generator;
+
+  // events are built here, and written at once
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  private int position = 0;
+
+  private int batched = 0;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private long second = -1;
+  private long samples = 0;
+  private long errors = 0;
+  private long bytes = 0;
+  private int threads = 0;
+
+  public ServerSentEventsEncoder(
+    final OutputStream stream
+  ) {
+    this(stream, (second) -> Optional.absent());
+  }
+
+  public ServerSentEventsEncoder(
+    final OutputStream stream,
+    final Function<Long, Optional<GeneratorUsage>> generator
+  ) {
+    this.stream = checkNotNull(stream);
+    this.generator = checkNotNull(generator);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("second", this.second)
+      .add("batched", this.batched)
+      .toString();
+  }
+
+  @Override
+  public void onSample(
+    final JMeterSample sample
+  ) throws IOException {
+    final long second = sample.timestamp() / 1000l;
+    if ( second > this.second ) {
+      this.tick();
+      this.second = second;
+    }
+    // late samples are aggregated into the current second
+    this.latency.record(sample.elapsed());
+    this.samples += 1;
+    this.bytes += sample.bytes();
+    this.threads = sample.allThreads();
+    if ( !sample.success() ) {
+      this.errors += 1;
+    }
+
+    if ( this.batched == 0 ) {
+      this.put(SAMPLES);
+    } else {
+      this.putByte(',');
+    }
+    final byte[] line = sample.buffer();
+    this.putAscii("{\"timestamp\":").putLong(sample.timestamp())
+      .putAscii(",\"elapsed\":").putLong(sample.elapsed())
+      .putAscii(",\"latency\":").putLong(sample.latency())
+      .putAscii(",\"connect\":").putLong(sample.connect())
+      .putAscii(",\"bytes\":").putLong(sample.bytes())
+      .putAscii(",\"label\":").putJson(line, sample.labelOffset(), sample.labelLength())
+      .putAscii(",\"code\":").putJson(line, sample.codeOffset(), sample.codeLength())
+      .putAscii(sample.success() ? ",\"success\":true}" : ",\"success\":false}");
+    this.batched += 1;
+
+    if ( this.batched == MAX_BATCH_SIZE ) {
+      this.endBatch();
+    }
+  }
+
+  @Override
+  public void onLog(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) throws IOException {
+    if ( isMarker(line, offset, length) ) {
+      this.lifecycle(new String(line, offset, length, UTF_8));
+      return;
+    }
+    this.endBatch();
+    this.put(LOG);
+    for ( int i = offset, end = offset + length; i < end; i++ ) {
+      // a carriage return would end the event's data
+      this.putByte(line[i] == '\r' ? ' ' : line[i]);
+    }
+    this.put(END);
+    this.drain();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    this.endBatch();
+    this.stream.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.tick();
+    this.flush();
+  }
+
+  // `---- <event>: <<id>>[ <details>] ----`
+  private void lifecycle(
+    final String marker
+  ) throws IOException {
+    // aggregates are complete when the test starts or stops
+    this.tick();
+    final String body = marker.substring(MARKER_PREFIX.length, marker.length() - MARKER_SUFFIX.length());
+    final int colon = body.indexOf(':');
+    final int open = body.indexOf('<', colon);
+    final int close = body.indexOf('>', open);
+    if ( colon < 0 || open < 0 || close < 0 ) {
+      this.put(LOG).putUtf8(marker).put(END);
+      this.drain();
+      return;
+    }
+    this.put(LIFECYCLE)
+      .putAscii("{\"event\":").putJson(body.substring(0, colon))
+      .putAscii(",\"id\":").putJson(body.substring(open + 1, close))
+      .putAscii(",\"details\":").putJson(body.substring(close + 1).trim())
+      .putByte('}')
+      .put(END);
+    this.drain();
+  }
+
+  private void tick() throws IOException {
+    this.endBatch();
+    if ( this.samples == 0 ) {
+      return;
+    }
+    this.put(TICK)
+      .putAscii("{\"timestamp\":").putLong(this.second * 1000l)
+      .putAscii(",\"samples\":").putLong(this.samples)
+      .putAscii(",\"errors\":").putLong(this.errors)
+      .putAscii(",\"bytes\":").putLong(this.bytes)
+      .putAscii(",\"threads\":").putLong(this.threads)
+      .putAscii(",\"latency\":{\"min\":").putLong(this.latency.min())
+      .putAscii(",\"mean\":").putLong(Math.round(this.latency.mean()))
+      .putAscii(",\"p50\":").putLong(this.latency.percentile(50d))
+      .putAscii(",\"p90\":").putLong(this.latency.percentile(90d))
+      .putAscii(",\"p99\":").putLong(this.latency.percentile(99d))
+      .putAscii(",\"max\":").putLong(this.latency.max())
+      .putByte('}');
+    // usage is sampled once a second is over, so the tick's second is covered by the usage sampled after it.
+    final Optional<GeneratorUsage> usage = this.generator.apply(Long.valueOf(this.second + 1l));
+    if ( usage.isPresent() ) {
+      this.generator(usage.get());
+    }
+    this.putByte('}').put(END);
+    this.drain();
+    this.latency.reset();
+    this.samples = 0;
+    this.errors = 0;
+    this.bytes = 0;
+  }
+
+  private void generator(
+    final GeneratorUsage usage
+  ) {
+    final GeneratorUsage.ProcessUsage jmaas = usage.jmaas();
+    final GeneratorUsage.ProcessUsage jmeter = usage.jmeter();
+    final GeneratorUsage.ContainerUsage container = usage.container();
+    // the container includes both JVMs
+    final double cpu = (container != null)
+      ? container.cpu() : jmaas.cpu() + ((jmeter == null) ? 0d : jmeter.cpu());
+    // CPUs are reported in thousandths
+    this.putAscii(",\"generator\":{\"cpu\":").putAscii(Double.toString(Math.round(cpu * 1000d) / 1000d))
+      .putAscii(",\"throttled\":")
+      .putAscii(Double.toString((container == null) ? 0d : (Math.round(container.throttled() * 1000d) / 1000d)))
+      .putAscii(",\"gc_time\":").putLong(jmaas.gcTime())
+      .putAscii(",\"heap_used\":").putLong(jmaas.heapUsed())
+      .putAscii(",\"fds\":").putLong(jmaas.fds() + ((jmeter == null) ? 0l : jmeter.fds()))
+      .putAscii(",\"sockets\":").putLong(jmaas.sockets() + ((jmeter == null) ? 0l : jmeter.sockets()))
+      .putAscii(",\"tcp_sockets\":").putLong(usage.tcpSockets())
+      .putAscii(",\"saturated\":[");
+    boolean first = true;
+    for ( final String reason : usage.saturated() ) {
+      if ( !first ) {
+        this.putByte(',');
+      }
+      this.putJson(reason);
+      first = false;
+    }
+    this.putAscii("]}");
+  }
+
+  private void endBatch() throws IOException {
+    if ( this.batched == 0 ) {
+      return;
+    }
+    this.batched = 0;
+    this.put(SAMPLES_END);
+    this.drain();
+  }
+
+  private void drain() throws IOException {
+    if ( this.position > 0 ) {
+      this.stream.write(this.buffer, 0, this.position);
+      this.position = 0;
+    }
+  }
+
+  private static boolean isMarker(
+    final byte[] line,
+    final int offset,
+    final int length
+  ) {
+    if ( length < (MARKER_PREFIX.length + MARKER_SUFFIX.length()) ) {
+      return false;
+    }
+    for ( int i = 0; i < MARKER_PREFIX.length; i++ ) {
+      if ( line[offset+i] != MARKER_PREFIX[i] ) {
+        return false;
+      }
+    }
+    final int end = offset + length;
+    return line[end-1] == '-' && line[end-5] == ' ';
+  }
+
+  private ServerSentEventsEncoder putByte(
+    final int b
+  ) {
+    if ( this.position == this.buffer.length ) {
+      final byte[] buffer = new byte[2 * this.buffer.length];
+      System.arraycopy(this.buffer, 0, buffer, 0, this.position);
+      this.buffer = buffer;
+    }
+    this.buffer[this.position++] = (byte) b;
+    return this;
+  }
+
+  private ServerSentEventsEncoder put(
+    final byte[] b
+  ) {
+    for ( final byte x : b ) {
+      this.putByte(x);
+    }
+    return this;
+  }
+
+  private ServerSentEventsEncoder putAscii(
+    final String s
+  ) {
+    for ( int i = 0; i < s.length(); i++ ) {
+      this.putByte(s.charAt(i));
+    }
+    return this;
+  }
+
+  private ServerSentEventsEncoder putUtf8(
+    final String s
+  ) {
+    return this.put(s.getBytes(UTF_8));
+  }
+
+  private ServerSentEventsEncoder putLong(
+    final long value
+  ) {
+    if ( value < 0 ) {
+      // only `Long.MIN_VALUE` cannot be negated
+      return (value == Long.MIN_VALUE)
+        ? this.putAscii(Long.toString(value))
+        : this.putByte('-').putLong(-value);
+    }
+    long divisor = 1;
+    while ( (value / divisor) >= 10 ) {
+      divisor *= 10;
+    }
+    for ( ; divisor > 0; divisor /= 10 ) {
+      this.putByte('0' + (int) ((value / divisor) % 10));
+    }
+    return this;
+  }
+
+  private ServerSentEventsEncoder putJson(
+    final String s
+  ) {
+    final byte[] b = s.getBytes(UTF_8);
+    return this.putJson(b, 0, b.length);
+  }
+
+  // JSON string; UTF-8 sequences are copied as is.
+  private ServerSentEventsEncoder putJson(
+    final byte[] b,
+    final int off,
+    final int len
+  ) {
+    this.putByte('"');
+    for ( int i = off, end = off + len; i < end; i++ ) {
+      final int c = b[i] & 0xFF;
+      if ( c == '"' || c == '\\' ) {
+        this.putByte('\\').putByte(c);
+      } else if ( c < 0x20 ) {
+        this.putAscii("\\u00").putByte(HEX[c >> 4]).putByte(HEX[c & 0x0F]);
+      } else {
+        this.putByte(c);
+      }
+    }
+    return this.putByte('"');
+  }
+
+}
@@ -0,0 +1,308 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.io.OutputStream;
+
+import java.lang.reflect.Type;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletOutputStream;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.batch.JMeterTestBatch;
+import dev.chux.gcp.crun.jmeter.batch.JMeterTestBatchService;
+import dev.chux.gcp.crun.jmeter.batch.JMeterTestDefinition;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
+import dev.chux.gcp.crun.jmeter.output.BinaryResultsEncoder;
+import dev.chux.gcp.crun.jmeter.output.JMeterOutputParser;
+import dev.chux.gcp.crun.jmeter.output.ServerSentEventsEncoder;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+import static spark.Spark.*;
+
+public class BatchJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchJMeterTestController.class);
+
+  private static final Type DEFINITIONS_TYPE = new TypeToken<List<JMeterTestDefinition>>(){}.getType();
+
+  private final Gson gson;
+  private final JMeterTestBatchService jMeterTestBatchService;
+  private final JMeterTestService jMeterTestService;
+  private final GeneratorMonitor generatorMonitor;
+
+  private static class ApiResponse extends RestResponse<JMeterTestBatch> {
+
+    private ApiResponse(
+      final RestController controller,
+      final JMeterTestBatch batch
+    ) {
+      super(controller, batch);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestBatch batch
+    ) {
+      final String id = batch.id();
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + id,
+        "stream", controller.apiPath() + "/" + id + "/stream"
+      );
+    }
+
+  }
+
+  @Inject
+  public BatchJMeterTestController(
+    final Gson gson,
+    final JMeterTestBatchService jMeterTestBatchService,
+    final JMeterTestService jMeterTestService,
+    final GeneratorMonitor generatorMonitor
+  ) {
+    this.gson = gson;
+    this.jMeterTestBatchService = jMeterTestBatchService;
+    this.jMeterTestService = jMeterTestService;
+    this.generatorMonitor = generatorMonitor;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "batch");
+    path(apiBase(), () -> {
+      post("/batch", "*/*", this);
+      post("/batch/:id", "*/*", this);
+
+      get("/batch/:id", "application/json", this::status);
+      delete("/batch/:id", "application/json", this::cancel);
+
+      get("/batch/:id/stream", "text/plain", this::stream);
+      get("/batch/:id/stream", BinaryResultsEncoder.MIME_TYPE, this::stream);
+      get("/batch/:id/stream", ServerSentEventsEncoder.MIME_TYPE, this::stream);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[POST|GET|DELETE] " + apiPath() + "/:id";
+  }
+
+  private String toJson(
+    final Response response,
+    final JMeterTestBatch batch
+  ) {
+    setHeader(response, "id", batch.id());
+    response.type("application/json");
+    return this.gson.toJson(new ApiResponse(this, batch), ApiResponse.class);
+  }
+
+  private Optional<JMeterTestBatch> batch(
+    final Request request
+  ) {
+    final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() ) {
+      halt(400, "missing batch ID");
+      return Optional.absent();
+    }
+    final Optional<JMeterTestBatch> batch = this.jMeterTestBatchService.get(id.get());
+    if ( !batch.isPresent() ) {
+      halt(404, "batch ID not found: " + id.get());
+    }
+    return batch;
+  }
+
+  // the body is either a JSON array of tests, or an object: `{"parallel":<bool>,"tests":[...]}`.
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final String batchID = id(request);
+    if ( !JMeterTestBatchService.isValidID(batchID) ) {
+      return this.badRequest(response, "invalid batch ID: letters, digits, '.', '_' and '-' only");
+    }
+
+    final Optional<String> body = body(request);
+    if ( !body.isPresent() ) {
+      return this.badRequest(response, "tests are required");
+    }
+
+    boolean parallel = this.optionalBoolParamOr(request, "parallel", false);
+    final List<JMeterTestDefinition> tests;
+    try {
+      final JsonElement json = this.gson.fromJson(body.get(), JsonElement.class);
+      final JsonArray array;
+      if ( json != null && json.isJsonObject() ) {
+        final JsonObject object = json.getAsJsonObject();
+        if ( object.has("parallel") ) {
+          parallel = object.get("parallel").getAsBoolean();
+        }
+        array = object.has("tests") ? object.getAsJsonArray("tests") : null;
+      } else {
+        array = (json != null && json.isJsonArray()) ? json.getAsJsonArray() : null;
+      }
+      tests = (array == null) ? ImmutableList.<JMeterTestDefinition>of()
+        : this.gson.<List<JMeterTestDefinition>>fromJson(array, DEFINITIONS_TYPE);
+    } catch(final JsonParseException | IllegalStateException | ClassCastException e) {
+      return this.badRequest(response, "invalid batch: " + e.getMessage());
+    }
+
+    if ( tests.isEmpty() ) {
+      return this.badRequest(response, "tests are required");
+    }
+    if ( tests.size() > this.jMeterTestBatchService.maxTests() ) {
+      return this.badRequest(response, "at most " + this.jMeterTestBatchService.maxTests() + " tests are allowed");
+    }
+    for ( int index = 0; index < tests.size(); index++ ) {
+      final JMeterTestDefinition test = tests.get(index);
+      if ( test == null ) {
+        return this.badRequest(response, "tests[" + index + "]: test is required");
+      }
+      final Optional<String> error = this.jMeterTestBatchService.validate(test);
+      if ( error.isPresent() ) {
+        return this.badRequest(response, "tests[" + index + "]: " + error.get());
+      }
+    }
+
+    final Optional<JMeterTestBatch> batch =
+      this.jMeterTestBatchService.submit(batchID, parallel, tests);
+    if ( !batch.isPresent() ) {
+      response.status(409);
+      return "batch already exists: " + batchID;
+    }
+
+    logger.info(
+      toStringHelper(batchID)
+      .add("parallel", parallel)
+      .add("tests", tests)
+      .toString()
+    );
+
+    setHeader(response, "status", appendToPath(batchID));
+    setHeader(response, "stream", appendToPath(batchID + "/stream"));
+    response.status(202);
+    return this.toJson(response, batch.get());
+  }
+
+  private Object status(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<JMeterTestBatch> batch = this.batch(request);
+    if ( !batch.isPresent() ) {
+      return null;
+    }
+    return this.toJson(response, batch.get());
+  }
+
+  // only queued tests are cancelled: running tests are allowed to complete.
+  private Object cancel(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<JMeterTestBatch> batch = this.batch(request);
+    if ( !batch.isPresent() ) {
+      return null;
+    }
+    final int cancelled = this.jMeterTestBatchService.cancel(batch.get());
+    setHeader(response, "cancelled", Integer.toString(cancelled));
+    return this.toJson(response, batch.get());
+  }
+
+  // blocks while the output of every test of the batch is streamed, in order; waits for queued tests.
+  private Object stream(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<JMeterTestBatch> batch = this.batch(request);
+    if ( !batch.isPresent() ) {
+      return null;
+    }
+
+    final String batchID = batch.get().id();
+    setHeader(response, "id", batchID);
+
+    // generator usage is reported for the test being streamed
+    final AtomicReference<String> current = new AtomicReference<>(batchID);
+
+    final ServletOutputStream responseOutput = response.raw().getOutputStream();
+    final OutputStream stream = encode(request, response, responseOutput,
+      second -> this.generatorMonitor.usage(current.get()).apply(second));
+
+    println(stream, "---- batch/start: <" + batchID + "> ----");
+    stream.flush();
+
+    for ( final JMeterTestBatch.Test test : batch.get().tests() ) {
+      final String testID = test.id();
+      if ( !test.awaitStart() ) {
+        println(stream, "---- test/skipped: <" + testID + "> status=" + test.status() + " ----");
+        stream.flush();
+        continue;
+      }
+
+      current.set(testID);
+      println(stream, "---- test/start: <" + testID + "> ----");
+
+      if ( stream instanceof JMeterOutputParser ) {
+        // output of the previous test may end with a partial line
+        ((JMeterOutputParser) stream).resync();
+      }
+
+      if ( this.jMeterTestService.replayable(testID) ) {
+        // replay from the log, and follow it until the test is complete
+        this.jMeterTestService.replay(testID, stream, JMeterTestService.fromOffset(0));
+        final Optional<JMeterTest> t = this.jMeterTestService.get(testID);
+        if ( t.isPresent() ) {
+          this.jMeterTestService.getTest(testID).or(Futures.immediateFuture(t.get())).get();
+        }
+      } else {
+        final Optional<JMeterTest> t = this.jMeterTestService.get(testID);
+        if ( t.isPresent() ) {
+          this.jMeterTestService
+            .connect(t.get(), stream, Optional.absent())
+            .or(Futures.immediateFuture(t.get()))
+            .get();
+        }
+      }
+
+      println(stream, "---- test/stopped: <" + testID + "> ----");
+      stream.flush();
+    }
+
+    println(stream, "---- batch/stop: <" + batchID + "> ----");
+    stream.flush();
+
+    return null;
+  }
+
+}
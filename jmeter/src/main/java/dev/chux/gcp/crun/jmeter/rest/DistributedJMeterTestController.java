@@ -0,0 +1,202 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletOutputStream;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.cluster.DistributedJMeterTest;
+import dev.chux.gcp.crun.jmeter.cluster.JMeterTestCoordinator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+import static spark.Spark.*;
+
+public class DistributedJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(DistributedJMeterTestController.class);
+
+  private static final Splitter WORKERS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Joiner WORKERS_JOINER = Joiner.on(',');
+
+  // parameters set by the coordinator for every shard.
+  private static final Set<String> SHARD_PARAMS = ImmutableSet.of(
+    "id", "mode", "method", MODE_QPS, MODE_CONCURRENCY,
+    "duration", "async", "output", "workers");
+
+  // headers propagated to workers, along with all `x-jmaas-test-*` headers.
+  private static final Set<String> FORWARDED_HEADERS = ImmutableSet.of(
+    "authorization", "traceparent", "x-cloud-trace-context");
+
+  private final JMeterTestCoordinator jMeterTestCoordinator;
+  private final Set<String> modes;
+
+  @Inject
+  public DistributedJMeterTestController(
+    final ConfigService configService,
+    final JMeterTestCoordinator jMeterTestCoordinator
+  ) {
+    this.jMeterTestCoordinator = jMeterTestCoordinator;
+    this.modes = this.jmeterModes(configService);
+  }
+
+  @Override
+  public void register(final String basePath) {
+    register(basePath, "distribute");
+    path(apiBase(), () -> {
+      get("/distribute", "*/*", this);
+      get("/distribute/:id", "*/*", this);
+
+      post("/distribute", "*/*", this);
+      post("/distribute/:id", "*/*", this);
+    });
+  }
+
+  @Override
+  public String endpoint(final String basePath) {
+    return "[GET|POST] " + apiPath();
+  }
+
+  private List<String> workers(
+    final Request request
+  ) {
+    final Optional<String> workers = this.optionalParam(request, "workers");
+    if ( workers.isPresent() ) {
+      return JMeterTestCoordinator.workers(WORKERS_SPLITTER.splitToList(workers.get()));
+    }
+    return this.jMeterTestCoordinator.workers();
+  }
+
+  // query parameters, and `x-jmaas-test-*` headers, are passed as is to all workers.
+  private Map<String, String> shardParams(
+    final Request request
+  ) {
+    final Map<String, String> params = Maps.newLinkedHashMap();
+    for ( final String param : request.queryParams() ) {
+      if ( !SHARD_PARAMS.contains(param) ) {
+        params.put(param, request.queryParams(param));
+      }
+    }
+    return params;
+  }
+
+  private Map<String, String> shardHeaders(
+    final Request request
+  ) {
+    final Map<String, String> headers = Maps.newLinkedHashMap();
+    for ( final String header : request.headers() ) {
+      final String name = header.toLowerCase();
+      if ( name.startsWith("x-jmaas-test-") || FORWARDED_HEADERS.contains(name) ) {
+        headers.put(name, request.headers(header));
+      }
+    }
+    return headers;
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final String testID = id(request);
+
+    final List<String> workers = this.workers(request);
+    if ( workers.isEmpty() ) {
+      return this.badRequest(response, "no workers: set 'workers' or the property '"
+        + JMeterTestCoordinator.PROPERTY_JMETER_WORKERS + "'");
+    }
+
+    if ( isNullOrEmpty(host(request)) ) {
+      return this.badRequest(response, "host is required");
+    }
+
+    final String mode = mode(request);
+    if ( !this.modes.contains(mode) ) {
+      return this.badRequest(response, "invalid mode: " + mode);
+    }
+
+    final Optional<String> profile = mode.equalsIgnoreCase(MODE_QPS) ? qps(request) : concurrency(request);
+    if ( !profile.isPresent() ) {
+      return this.badRequest(response, "parameter '" + mode + "' is required when 'mode' is set to '" + mode + "'");
+    }
+
+    final int duration = JMeterTestCoordinator.duration(mode, profile.get());
+    if ( duration <= 0 ) {
+      return this.badRequest(response, "invalid " + mode + " profile: " + profile.get());
+    }
+    if ( duration != duration(request) ) {
+      return this.badRequest(response, "'duration' must be " + duration);
+    }
+
+    final boolean async = async(request);
+    final String output = output(request);
+
+    final OutputStream stream;
+    if ( async || output.equalsIgnoreCase(SYS_OUT) ) {
+      stream = System.out;
+    } else {
+      final ServletOutputStream rawOutput = response.raw().getOutputStream();
+      // text or binary results, based on the `Accept` header
+      stream = encode(request, response, rawOutput);
+    }
+
+    final DistributedJMeterTest test;
+    try {
+      test = this.jMeterTestCoordinator.create(testID, mode, profile.get(), workers,
+        method(request).or("GET"), this.shardParams(request), this.shardHeaders(request),
+        body(request), stream);
+    } catch(final IllegalArgumentException e) {
+      return this.badRequest(response, e.getMessage());
+    } catch(final IllegalStateException e) {
+      // the ID is reserved atomically by `create(...)`: nothing has been written yet.
+      response.status(409);
+      return "test is already running: " + testID;
+    }
+
+    logger.info(
+      toStringHelper(testID)
+      .add("async", async)
+      .add("output", output)
+      .add("mode", mode)
+      .add("profile", profile)
+      .add("workers", workers)
+      .toString()
+    );
+
+    setHeader(response, "id", testID);
+    setHeader(response, "workers", WORKERS_JOINER.join(workers));
+    setHeader(response, "metrics", appendToBase("metrics/" + testID));
+
+    if ( async ) {
+      this.jMeterTestCoordinator.runAsync(test);
+      response.status(204);
+      return "";
+    }
+
+    println(stream, "---- test/start: <" + testID + "> ----");
+    stream.flush();
+    final boolean complete = this.jMeterTestCoordinator.run(test);
+    println(stream, "---- test/stopped: <" + testID + "> complete=" + complete + " ----");
+    stream.flush();
+    return null;
+  }
+
+}
@@ -9,10 +9,13 @@ import com.google.inject.Inject;
 
 import com.google.common.collect.ImmutableMap;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import spark.Request;
 import spark.Response;
@@ -20,6 +23,9 @@ import spark.Response;
 import dev.chux.gcp.crun.jmeter.JMeterTest;
 import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
 import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestAdmission;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResult;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
 import dev.chux.gcp.crun.rest.RestController;
 import dev.chux.gcp.crun.rest.RestResponse;
 
@@ -36,6 +42,8 @@ public class GetJMeterTestController extends JMeterTestController {
 
   private final Gson gson;
   private final JMeterTestService jMeterTestService;
+  private final JMeterTestAdmission jMeterTestAdmission;
+  private final JMeterTestResultService jMeterTestResultService;
 
   private String root;
   private String path;
@@ -63,13 +71,63 @@ public class GetJMeterTestController extends JMeterTestController {
 
   }
 
+  // config of a complete test, as it was stored.
+  private static class ResultResponse extends RestResponse<JsonElement> {
+
+    private ResultResponse(
+      final RestController controller,
+      final JsonObject record
+    ) {
+      super(controller, record.get("config"));
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JsonElement config
+    ) {
+      final String id = config.getAsJsonObject().get("id").getAsString();
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + id,
+        "result", controller.apiBase() + "/results/" + id
+      );
+    }
+
+  }
+
+  private static class BudgetResponse extends RestResponse<JMeterTestAdmission.Budget> {
+
+    private BudgetResponse(
+      final RestController controller,
+      final JMeterTestAdmission.Budget budget
+    ) {
+      super(controller, budget);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestAdmission.Budget budget
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath(),
+        "run", controller.apiBase() + "/run"
+      );
+    }
+
+  }
+
   @Inject
   public GetJMeterTestController(
     final Gson gson,
-    final JMeterTestService jMeterTestService
+    final JMeterTestService jMeterTestService,
+    final JMeterTestAdmission jMeterTestAdmission,
+    final JMeterTestResultService jMeterTestResultService
   ) {
     this.gson = gson;
     this.jMeterTestService = jMeterTestService;
+    this.jMeterTestAdmission = jMeterTestAdmission;
+    this.jMeterTestResultService = jMeterTestResultService;
   }
 
   @Override
@@ -107,6 +165,14 @@ public class GetJMeterTestController extends JMeterTestController {
     final Response response
   ) throws Exception {
     final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() && !isHEAD(request) ) {
+      // without a test ID: report the resources available to run more tests.
+      response.type("application/json");
+      return this.gson.toJson(
+        new BudgetResponse(this, this.jMeterTestAdmission.budget()),
+        BudgetResponse.class
+      );
+    }
     if ( !id.isPresent() ) {
       halt(400, "missing test ID");
       return null;
@@ -121,8 +187,8 @@ public class GetJMeterTestController extends JMeterTestController {
     final Optional<JMeterTest> test = this.jMeterTestService.get(testID);
 
     if ( !test.isPresent() ) {
-      halt(404, "test ID not found: " + testID);
-      return null;
+      // complete tests are no longer running: their stored result is used instead.
+      return this.stored(request, response, testID);
     }
 
     final JMeterTest t = test.get();
@@ -132,6 +198,8 @@ public class GetJMeterTestController extends JMeterTestController {
     setHeader(response, "trace-id", t.traceID());
     setHeader(response, "instance-id", t.instanceID());
     setHeader(response, "script", t.script());
+    // i.e.: `generator-saturated`
+    setHeader(response, "flags", Joiner.on(',').join(t.get().flags()));
 
     final Optional<
       ListenableFuture<JMeterTest>
@@ -156,4 +224,40 @@ public class GetJMeterTestController extends JMeterTestController {
     return this.toJSON(t);
   }
 
+  private Object stored(
+    final Request request,
+    final Response response,
+    final String testID
+  ) {
+    final Optional<JMeterTestResult> result = this.jMeterTestResultService.get(testID);
+    final Optional<JsonObject> record = (result.isPresent() && !isHEAD(request))
+      ? this.jMeterTestResultService.read(testID) : Optional.<JsonObject>absent();
+
+    if ( !result.isPresent() || ( !isHEAD(request) && !record.isPresent() ) ) {
+      halt(404, "test ID not found: " + testID);
+      return null;
+    }
+
+    final JMeterTestResult r = result.get();
+
+    setHeader(response, "id", r.id());
+    setHeader(response, "trace-id", r.traceID().orNull());
+    setHeader(response, "instance-id", r.instanceID());
+    setHeader(response, "script", r.script().orNull());
+    setHeader(response, "flags", Joiner.on(',').join(r.flags()));
+    setHeader(response, "status", "complete");
+    setHeader(response, "result", appendToBase("results/" + testID));
+
+    if ( isHEAD(request) ) {
+      return "";
+    }
+
+    response.type("application/json");
+
+    return this.gson.toJson(
+      new ResultResponse(this, record.get()),
+      ResultResponse.class
+    );
+  }
+
 }
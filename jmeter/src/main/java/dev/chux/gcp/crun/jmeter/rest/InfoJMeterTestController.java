@@ -0,0 +1,223 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.engine.EmbeddedJMeterEngine;
+import dev.chux.gcp.crun.jmeter.engine.JMeterPlanStats;
+import dev.chux.gcp.crun.jmeter.engine.JMeterWorkerPool;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.process.ProcessOutputStats;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import static spark.Spark.*;
+
+public class InfoJMeterTestController extends JMeterTestController {
+
+  private final Gson gson;
+  private final JMeterWorkerPool jMeterWorkerPool;
+  private final EmbeddedJMeterEngine embeddedJMeterEngine;
+  private final JMeterTestService jMeterTestService;
+
+  private static class Embedded {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="plans")
+    private final JMeterPlanStats plans;
+
+    private Embedded(
+      final EmbeddedJMeterEngine engine
+    ) {
+      this.plans = engine.plans();
+    }
+
+  }
+
+  // how the output of a running test is being copied: see `process.output.*`.
+  private static class Output {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="read")
+    private final long read;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="written")
+    private final long written;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="dropped")
+    private final long dropped;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="spilled")
+    private final long spilled;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="blocked_ms")
+    private final long blockedMillis;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="read_bps")
+    private final long readRate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="write_bps")
+    private final long writeRate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="queue_depth")
+    private final int queueDepth;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max_queue_depth")
+    private final int maxQueueDepth;
+
+    private Output(
+      final ProcessOutputStats stats
+    ) {
+      this.read = stats.read();
+      this.written = stats.written();
+      this.dropped = stats.dropped();
+      this.spilled = stats.spilled();
+      this.blockedMillis = stats.blockedMillis();
+      this.readRate = stats.readRate();
+      this.writeRate = stats.writeRate();
+      this.queueDepth = stats.queueDepth();
+      this.maxQueueDepth = stats.maxQueueDepth();
+    }
+
+  }
+
+  private static class Info {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="pool")
+    private final JMeterWorkerPool.Status pool;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="embedded")
+    private final Embedded embedded;
+
+    // by test ID
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="output")
+    private final Map<String, Output> output;
+
+    private Info(
+      final JMeterWorkerPool.Status pool,
+      final Embedded embedded,
+      final Map<String, Output> output
+    ) {
+      this.pool = pool;
+      this.embedded = embedded;
+      this.output = output;
+    }
+
+  }
+
+  private static class ApiResponse extends RestResponse<Info> {
+
+    private ApiResponse(
+      final RestController controller,
+      final Info info
+    ) {
+      super(controller, info);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final Info info
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath(),
+        "run", controller.apiBase() + "/run"
+      );
+    }
+
+  }
+
+  @Inject
+  public InfoJMeterTestController(
+    final Gson gson,
+    final JMeterWorkerPool jMeterWorkerPool,
+    final EmbeddedJMeterEngine embeddedJMeterEngine,
+    final JMeterTestService jMeterTestService
+  ) {
+    this.gson = gson;
+    this.jMeterWorkerPool = jMeterWorkerPool;
+    this.embeddedJMeterEngine = embeddedJMeterEngine;
+    this.jMeterTestService = jMeterTestService;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "info");
+    path(apiBase(), () -> {
+      get("/info", "application/json", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiPath();
+  }
+
+  private Map<String, Output> output() {
+    final ImmutableMap.Builder<String, Output> output = ImmutableMap.builder();
+    for ( final JMeterTest test : this.jMeterTestService.getAll() ) {
+      final Optional<ProcessOutputStats> stats = test.outputStats();
+      if ( stats.isPresent() ) {
+        output.put(test.id(), new Output(stats.get()));
+      }
+    }
+    return output.buildKeepingLast();
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Info info = new Info(
+      this.jMeterWorkerPool.status(),
+      new Embedded(this.embeddedJMeterEngine),
+      this.output());
+    response.type("application/json");
+    return this.gson.toJson(
+      new ApiResponse(this, info),
+      ApiResponse.class
+    );
+  }
+
+}
@@ -1,11 +1,17 @@
 package dev.chux.gcp.crun.jmeter.rest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.time.Instant;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import javax.servlet.ServletOutputStream;
 
@@ -25,6 +31,10 @@ import spark.Request;
 import spark.Response;
 
 import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorUsage;
+import dev.chux.gcp.crun.jmeter.output.BinaryResultsEncoder;
+import dev.chux.gcp.crun.jmeter.output.JMeterOutputParser;
+import dev.chux.gcp.crun.jmeter.output.ServerSentEventsEncoder;
 import dev.chux.gcp.crun.rest.RestController;
 
 import org.slf4j.Logger;
@@ -46,6 +56,7 @@ abstract class JMeterTestController extends RestController {
   private static final Logger logger = LoggerFactory.getLogger(JMeterTestController.class);
 
   public static final String PROPERTY_JMETER_MODES = "jmeter.modes";
+  public static final String PROPERTY_JMETER_ENGINE = "jmeter.engine";
 
   public static final String DEFAULT_TRACE_ID = "00000000000000000000000000000000";
 
@@ -71,6 +82,7 @@ abstract class JMeterTestController extends RestController {
   private static final Joiner HEADER_JOINER = Joiner.on('-').skipNulls();
 
   private static final CharMatcher UNDERSCORE = CharMatcher.is('_');
+  private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
 
   private static final String HEADER_PREFIX = "x-jmaas-test";
 
@@ -186,6 +198,27 @@ abstract class JMeterTestController extends RestController {
     return this.optionalParam(request, param).or(value);
   }
 
+  // a point in time: epoch milliseconds, or ISO-8601.
+  protected final Optional<Long> optionalTimeParam(
+    final Request request,
+    final String param
+  ) {
+    final Optional<String> time = this.optionalParam(request, param);
+    if ( !time.isPresent() ) {
+      return Optional.absent();
+    }
+    final String t = time.get().trim();
+    try {
+      if ( DIGITS.matchesAllOf(t) ) {
+        return Optional.of(Long.valueOf(t));
+      }
+      return Optional.of(Long.valueOf(Instant.parse(t).toEpochMilli()));
+    } catch(final RuntimeException e) {
+      halt(400, "invalid " + param + ": " + t);
+    }
+    return Optional.absent();
+  }
+
   protected final Map<String, String> metadata(
     final Request request,
     final String param
@@ -225,6 +258,27 @@ abstract class JMeterTestController extends RestController {
     return this.optionalParamOr(request, "mode", MODE_CONCURRENCY).toLowerCase();
   }
 
+  protected final Optional<String> engine(final Request request) {
+    final Optional<String> engine = this.optionalParam(request, "engine");
+    if ( engine.isPresent() ) {
+      return Optional.of(engine.get().toLowerCase());
+    }
+    return engine;
+  }
+
+  // reuse connections across requests; only supported by `*_full` scripts.
+  protected final boolean keepAlive(final Request request) {
+    return this.optionalBoolParamOr(request, "keepalive", false);
+  }
+
+  protected final boolean queue(final Request request) {
+    return this.optionalBoolParamOr(request, "queue", false);
+  }
+
+  protected final int queueTimeout(final Request request, final int timeout) {
+    return this.optionalIntParamOr(request, "queue_timeout", Integer.valueOf(timeout));
+  }
+
   protected final String output(final Request request) {
     return this.optionalParamOr(request, "output", RES_OUT).toLowerCase();
   }
@@ -337,6 +391,56 @@ abstract class JMeterTestController extends RestController {
     }
   }
 
+  private boolean accepts(final Request request, final String mimeType) {
+    final Optional<String> accept = fromNullable(emptyToNull(request.headers("Accept")));
+    return accept.isPresent() && accept.get().contains(mimeType);
+  }
+
+  protected final boolean binary(final Request request) {
+    return this.accepts(request, BinaryResultsEncoder.MIME_TYPE);
+  }
+
+  protected final boolean events(final Request request) {
+    return this.accepts(request, ServerSentEventsEncoder.MIME_TYPE);
+  }
+
+  // JMeter output is re-encoded only when the client explicitly accepts the binary format, or events.
+  protected final OutputStream encode(
+    final Request request,
+    final Response response,
+    final OutputStream stream
+  ) {
+    return this.encode(request, response, stream, (second) -> Optional.absent());
+  }
+
+  // events include the load generator usage given by `generator`.
+  protected final OutputStream encode(
+    final Request request,
+    final Response response,
+    final OutputStream stream,
+    final Function<Long, Optional<GeneratorUsage>> generator
+  ) {
+    if ( this.binary(request) ) {
+      response.type(BinaryResultsEncoder.MIME_TYPE);
+      return new JMeterOutputParser(new BinaryResultsEncoder(stream));
+    }
+    if ( this.events(request) ) {
+      response.type(ServerSentEventsEncoder.MIME_TYPE);
+      response.header("Cache-Control", "no-cache");
+      return new JMeterOutputParser(new ServerSentEventsEncoder(stream, generator));
+    }
+    response.type("text/plain");
+    return stream;
+  }
+
+  protected final void println(
+    final OutputStream stream,
+    final String line
+  ) throws IOException {
+    // same line terminator as `ServletOutputStream#println`
+    stream.write((line + "\r\n").getBytes(UTF_8));
+  }
+
   protected Object badRequest(
     final Response response,
     final String message
@@ -0,0 +1,126 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorSaturation;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static spark.Spark.*;
+
+public class MetricsJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(MetricsJMeterTestController.class);
+
+  private final Gson gson;
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+  private final GeneratorMonitor generatorMonitor;
+
+  private static class ApiResponse extends RestResponse<JMeterTestMetrics.Snapshots> {
+
+    private ApiResponse(
+      final RestController controller,
+      final JMeterTestMetrics.Snapshots snapshots
+    ) {
+      super(controller, snapshots);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestMetrics.Snapshots snapshots
+    ) {
+      final String id = snapshots.id();
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + id,
+        "status", controller.apiBase() + "/status/" + id,
+        "stream", controller.apiBase() + "/stream/" + id
+      );
+    }
+
+  }
+
+  @Inject
+  public MetricsJMeterTestController(
+    final Gson gson,
+    final JMeterTestMetricsService jMeterTestMetricsService,
+    final GeneratorMonitor generatorMonitor
+  ) {
+    this.gson = gson;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+    this.generatorMonitor = generatorMonitor;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "metrics");
+    path(apiBase(), () -> {
+      get("/metrics", "application/json", this);
+      get("/metrics/:id", "application/json", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiPath() + "/:id";
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() ) {
+      halt(400, "missing test ID");
+      return null;
+    }
+
+    final String testID = id.get();
+
+    final Optional<JMeterTestMetrics> metrics = this.jMeterTestMetricsService.get(testID);
+
+    if ( !metrics.isPresent() ) {
+      halt(404, "test ID not found: " + testID);
+      return null;
+    }
+
+    logger.debug("metrics: {}", metrics.get());
+
+    JMeterTestMetrics.Snapshots snapshots = metrics.get().snapshot();
+    final Optional<GeneratorSaturation> generator = this.generatorMonitor.get(testID);
+    if ( generator.isPresent() ) {
+      snapshots = snapshots.generator(generator.get().snapshot());
+      setHeader(response, "generator-saturated", Boolean.toString(generator.get().saturated()));
+    }
+
+    setHeader(response, "id", testID);
+
+    response.type("application/json");
+
+    return this.gson.toJson(
+      new ApiResponse(this, snapshots),
+      ApiResponse.class
+    );
+  }
+
+}
@@ -17,12 +17,33 @@ public class RestModule extends AbstractModule {
     routesBinder.addBinding("jmeter://rest/run-test")
       .to(RunJMeterTestController.class).in(Scopes.SINGLETON);
 
+    routesBinder.addBinding("jmeter://rest/distribute-test")
+      .to(DistributedJMeterTestController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding("jmeter://rest/batch-test")
+      .to(BatchJMeterTestController.class).in(Scopes.SINGLETON);
+
     routesBinder.addBinding("jmeter://rest/stream-test")
       .to(StreamJMeterTestController.class).in(Scopes.SINGLETON);
 
     routesBinder.addBinding("jmeter://rest/get-test")
       .to(GetJMeterTestController.class).in(Scopes.SINGLETON);
 
+    routesBinder.addBinding("jmeter://rest/test-results")
+      .to(ResultsJMeterTestController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding("jmeter://rest/test-metrics")
+      .to(MetricsJMeterTestController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding("jmeter://rest/test-series")
+      .to(SeriesJMeterTestController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding("jmeter://rest/test-sketches")
+      .to(SketchesJMeterTestController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding("jmeter://rest/test-info")
+      .to(InfoJMeterTestController.class).in(Scopes.SINGLETON);
+
     routesBinder.addBinding("jmeter://rest/test-catalog")
       .to(CatalogJMeterTestController.class).in(Scopes.SINGLETON);
 
@@ -0,0 +1,193 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.results.JMeterTestComparison;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResult;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static spark.Spark.*;
+
+public class ResultsJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResultsJMeterTestController.class);
+
+  private static final Integer DEFAULT_LIMIT = Integer.valueOf(100);
+
+  private final Gson gson;
+  private final JMeterTestResultService jMeterTestResultService;
+
+  private static class ListResponse extends RestResponse<List<JMeterTestResult>> {
+
+    private ListResponse(
+      final RestController controller,
+      final List<JMeterTestResult> results
+    ) {
+      super(controller, results);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final List<JMeterTestResult> results
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath()
+      );
+    }
+
+  }
+
+  private static class ResultResponse extends RestResponse<JsonObject> {
+
+    private ResultResponse(
+      final RestController controller,
+      final JsonObject result
+    ) {
+      super(controller, result);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JsonObject result
+    ) {
+      final String id = result.getAsJsonObject("result").get("id").getAsString();
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + id,
+        "status", controller.apiBase() + "/status/" + id,
+        "results", controller.apiPath()
+      );
+    }
+
+  }
+
+  private static class ComparisonResponse extends RestResponse<JMeterTestComparison> {
+
+    private ComparisonResponse(
+      final RestController controller,
+      final JMeterTestComparison comparison
+    ) {
+      super(controller, comparison);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestComparison comparison
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + comparison.a() + "/compare/" + comparison.b(),
+        "a", controller.apiPath() + "/" + comparison.a(),
+        "b", controller.apiPath() + "/" + comparison.b()
+      );
+    }
+
+  }
+
+  @Inject
+  public ResultsJMeterTestController(
+    final Gson gson,
+    final JMeterTestResultService jMeterTestResultService
+  ) {
+    this.gson = gson;
+    this.jMeterTestResultService = jMeterTestResultService;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "results");
+    path(apiBase(), () -> {
+      get("/results", "application/json", this);
+      get("/results/:id", "application/json", this::result);
+      get("/results/:id/compare/:other", "application/json", this::compare);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiPath() + "[/:id[/compare/:other]]";
+  }
+
+  // lists stored tests, newest first: `from`, `to`, `host`, `script`, `trace_id`, and `limit`.
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final List<JMeterTestResult> results = this.jMeterTestResultService.list(
+      this.optionalTimeParam(request, "from"), this.optionalTimeParam(request, "to"),
+      this.optionalParam(request, "host"), this.script(request),
+      this.optionalParam(request, "trace_id"),
+      this.optionalIntParamOr(request, "limit", DEFAULT_LIMIT));
+
+    logger.debug("results: {}", results.size());
+
+    response.type("application/json");
+    return this.gson.toJson(new ListResponse(this, results), ListResponse.class);
+  }
+
+  private Object result(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() ) {
+      halt(400, "missing test ID");
+      return null;
+    }
+
+    final Optional<JsonObject> result = this.jMeterTestResultService.read(id.get());
+    if ( !result.isPresent() ) {
+      halt(404, "test ID not found: " + id.get());
+      return null;
+    }
+
+    setHeader(response, "id", id.get());
+    response.type("application/json");
+    return this.gson.toJson(new ResultResponse(this, result.get()), ResultResponse.class);
+  }
+
+  private Object compare(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> id = optionalID(request);
+    final Optional<String> other = this.optionalParam(request, "other");
+    if ( !id.isPresent() || !other.isPresent() ) {
+      halt(400, "missing test IDs");
+      return null;
+    }
+
+    final Optional<JMeterTestComparison> comparison =
+      this.jMeterTestResultService.compare(id.get(), other.get());
+    if ( !comparison.isPresent() ) {
+      halt(404, "test IDs not found: " + id.get() + ", " + other.get());
+      return null;
+    }
+
+    response.type("application/json");
+    return this.gson.toJson(new ComparisonResponse(this, comparison.get()), ComparisonResponse.class);
+  }
+
+}
@@ -1,10 +1,12 @@
 package dev.chux.gcp.crun.jmeter.rest;
 
+import java.io.OutputStream;
+
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletOutputStream;
 
@@ -23,7 +25,11 @@ import spark.Response;
 
 import dev.chux.gcp.crun.ConfigService;
 import dev.chux.gcp.crun.jmeter.JMeterTest;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
 import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestAdmission;
+import dev.chux.gcp.crun.jmeter.admission.JMeterTestCost;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,35 +49,34 @@ public class RunJMeterTestController extends JMeterTestController {
   private static final Logger logger = LoggerFactory.getLogger(RunJMeterTestController.class);
 
   private final JMeterTestService jMeterTestService;
+  private final GeneratorMonitor generatorMonitor;
+  private final JMeterTestAdmission jMeterTestAdmission;
   private final Set<String> modes;
   private final String instanceID;
-
-  private final AtomicBoolean lock = new AtomicBoolean(false);
+  private final String engine;
 
   private static class Callback implements FutureCallback<JMeterTest>, Supplier<String> {
 
     private static final Logger logger = LoggerFactory.getLogger(Callback.class);
 
-    private final AtomicBoolean lock;
+    private final JMeterTestAdmission.Ticket ticket;
     private final String instanceID;
     private final String testID;
 
     private Callback(
-      final AtomicBoolean lock,
+      final JMeterTestAdmission.Ticket ticket,
       final String instanceID,
       final String testID
     ) {
-      this.lock = lock;
+      this.ticket = ticket;
       this.instanceID = instanceID;
       this.testID = testID;
     }
 
     private void release() {
-      if ( this.lock.compareAndSet(true, false) ) {
-        logger.info("{} | is now available", this.instanceID);
-      } else {
-        logger.error("{} | is not available", this.instanceID);
-      }
+      // give back the resources reserved by this test
+      this.ticket.close();
+      logger.info("{} | released: {}", this.instanceID, this.ticket);
     }
 
     private void always(
@@ -147,11 +152,18 @@ public class RunJMeterTestController extends JMeterTestController {
   @Inject
   public RunJMeterTestController(
     final ConfigService configService,
-    final JMeterTestService jMeterTestService
+    final JMeterTestService jMeterTestService,
+    final JMeterTestAdmission jMeterTestAdmission,
+    final GeneratorMonitor generatorMonitor
   ) {
     this.jMeterTestService = jMeterTestService;
+    this.jMeterTestAdmission = jMeterTestAdmission;
+    this.generatorMonitor = generatorMonitor;
     this.modes = this.jmeterModes(configService);
     this.instanceID = this.instanceID(configService);
+    this.engine = configService
+      .getOptionalAppProp(PROPERTY_JMETER_ENGINE)
+      .or(JMeterTestConfig.ENGINE_PROCESS);
     logger.info("com.google.cloud.run.instance.id={}", this.instanceID);
   }
 
@@ -204,28 +216,24 @@ public class RunJMeterTestController extends JMeterTestController {
       .hash().toString();
   }
 
-  protected final Object badRequest(
+  private Object busy(
     final Response response,
-    final String message
+    final String testID
   ) {
-    // ALWAYS unlock before halting a request!
-    this.lock.set(false);
-    return super.badRequest(response, message);
+    final long retryAfter = this.jMeterTestAdmission.retryAfter();
+    logger.error("Worker is busy: {}/{} => {} | retry after: {}s",
+      this.instanceID, testID, this.jMeterTestAdmission, retryAfter);
+    response.status(429);
+    response.header("Retry-After", Long.toString(retryAfter, 10));
+    return "busy";
   }
 
   public Object handle(
     final Request request,
     final Response response
   ) throws Exception {
-    // allows at most 1 execution per worker
-    if ( !this.lock.compareAndSet(false, true) ) {
-      logger.error("Worker is busy: {} => {}", this.instanceID, this.lock);
-      response.status(409);
-      return "busy";
-    }
-    
     final Optional<String> body = body(request);
-    final ServletOutputStream responseOutput = response.raw().getOutputStream();
+    final ServletOutputStream rawOutput = response.raw().getOutputStream();
 
     final String output = output(request);
     final String testID = id(request);
@@ -249,6 +257,19 @@ public class RunJMeterTestController extends JMeterTestController {
 
     final boolean async = async(request);
 
+    // engine to execute the test with, may be: `process`, `embedded`, `pooled`, or `open`.
+    final String engine = engine(request).or(this.engine);
+    if ( !engine.equals(JMeterTestConfig.ENGINE_PROCESS)
+        && !engine.equals(JMeterTestConfig.ENGINE_EMBEDDED)
+        && !engine.equals(JMeterTestConfig.ENGINE_POOLED)
+        && !engine.equals(JMeterTestConfig.ENGINE_OPEN) ) {
+      return this.badRequest(response, "invalid engine: " + engine);
+    }
+    final boolean open = engine.equals(JMeterTestConfig.ENGINE_OPEN);
+    if ( open && !mode.equalsIgnoreCase(MODE_QPS) ) {
+      return this.badRequest(response, "engine 'open' requires 'mode' to be set to 'qps'");
+    }
+
     // test to execute base on the name of JMX files ( case sensitive ).
     final Optional<String> jmx         = script(request);
 
@@ -302,9 +323,23 @@ public class RunJMeterTestController extends JMeterTestController {
     final int rampupTime  = rampupTime(request);
     final int rampupSteps = rampupSteps(request);
 
+    // reuse connections across requests instead of opening a new one for each request.
+    final boolean keepAlive = keepAlive(request);
+
+    // wait for resources to be available instead of rejecting the test right away.
+    final boolean queue = queue(request);
+    final int queueTimeout = queueTimeout(request, this.jMeterTestAdmission.queueTimeout());
+
+    // reserved before anything is registered for the test: concurrent requests with the same ID are rejected.
+    if ( !this.jMeterTestService.reserve(testID) ) {
+      response.status(409);
+      return "test is already running: " + testID;
+    }
+
     logger.info(
       toStringHelper(testID)
       .add("async", async)
+      .add("engine", engine)
       .add("instance", this.instanceID)
       .add("trace_id", traceID)
       .add("output", output)
@@ -326,29 +361,68 @@ public class RunJMeterTestController extends JMeterTestController {
       .add("threads", threads)
       .add("rampup_time", rampupTime)
       .add("rampup_steps", rampupSteps)
+      .add("keepalive", keepAlive)
+      .add("queue", queue)
       .toString()
     );
 
-    final Callback cb = new Callback(this.lock, this.instanceID, testID);
+    final boolean embedded = engine.equals(JMeterTestConfig.ENGINE_EMBEDDED);
+    final JMeterTestCost cost = this.jMeterTestAdmission.cost(mode,
+      concurrency, qps, threads, maxLatency, embedded, open);
+
+    final Optional<JMeterTestAdmission.Ticket> ticket;
+    try {
+      ticket = queue
+        ? this.jMeterTestAdmission.admit(testID, cost, embedded, duration, queueTimeout, TimeUnit.SECONDS)
+        : this.jMeterTestAdmission.tryAdmit(testID, cost, embedded, duration);
+    } catch(final Exception e) {
+      this.jMeterTestService.release(testID);
+      throw e;
+    }
+
+    if ( !ticket.isPresent() ) {
+      this.jMeterTestService.release(testID);
+      return this.busy(response, testID);
+    }
+
+    final OutputStream responseOutput;
+    try {
+      // text or binary results, based on the `Accept` header
+      responseOutput = encode(request, response,
+        rawOutput, this.generatorMonitor.usage(testID));
+    } catch(final Exception e) {
+      // the budget of an admitted test that never starts must be returned.
+      ticket.get().close();
+      this.jMeterTestService.release(testID);
+      throw e;
+    }
+
+    final Callback cb = new Callback(ticket.get(), this.instanceID, testID);
 
     logger.info("starting: {}/{}", this.instanceID, testID);
 
     final ListenableFuture<JMeterTest> test;
-    if( async || output.equalsIgnoreCase(SYS_OUT) ) {
-      test = this.jMeterTestService.start(cb,
-        this.instanceID, testID, traceID,
-        jmx, mode, proto, method, host, port, path,
-        query, headers, body, concurrency, qps,
-        threads, duration, rampupTime, rampupSteps,
-        minLatency, maxLatency);
-    } else {
-      test = this.jMeterTestService.start(cb,
-        this.instanceID, testID, traceID,
-        jmx, mode, proto, method, host, port, path,
-        query, headers, body, concurrency, qps,
-        threads, duration, rampupTime, rampupSteps,
-        responseOutput, false /* closeable */,
-        minLatency, maxLatency);
+    try {
+      if( async || output.equalsIgnoreCase(SYS_OUT) ) {
+        test = this.jMeterTestService.start(cb,
+          this.instanceID, testID, traceID,
+          jmx, mode, proto, method, host, port, path,
+          query, headers, body, concurrency, qps,
+          threads, duration, rampupTime, rampupSteps,
+          minLatency, maxLatency, Optional.of(engine), keepAlive);
+      } else {
+        test = this.jMeterTestService.start(cb,
+          this.instanceID, testID, traceID,
+          jmx, mode, proto, method, host, port, path,
+          query, headers, body, concurrency, qps,
+          threads, duration, rampupTime, rampupSteps,
+          responseOutput, false /* closeable */,
+          minLatency, maxLatency, Optional.of(engine), keepAlive);
+      }
+    } catch(final RuntimeException e) {
+      // the test will never run: its resources must be released right away.
+      ticket.get().close();
+      throw e;
     }
 
     setHeader(response, "id", testID);
@@ -366,12 +440,10 @@ public class RunJMeterTestController extends JMeterTestController {
       return "";
     }
 
-    response.type("text/plain");
-
-    responseOutput.println("---- test/start: <" + testID + "> ----");
+    println(responseOutput, "---- test/start: <" + testID + "> ----");
     responseOutput.flush();
     final JMeterTest t = test.get();
-    responseOutput.println("---- test/stopped: <" + t.id() + "> ----");
+    println(responseOutput, "---- test/stopped: <" + t.id() + "> ----");
     responseOutput.flush();
     return null;
   }
@@ -0,0 +1,138 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import com.google.gson.Gson;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestSeries;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static spark.Spark.*;
+
+public class SeriesJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(SeriesJMeterTestController.class);
+
+  private static final Splitter BY_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private static final String BY_LABEL = "label";
+  private static final String BY_CODE = "code";
+
+  private final Gson gson;
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+
+  private static class ApiResponse extends RestResponse<JMeterTestSeries.Snapshot> {
+
+    private ApiResponse(
+      final RestController controller,
+      final JMeterTestSeries.Snapshot snapshot
+    ) {
+      super(controller, snapshot);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestSeries.Snapshot snapshot
+    ) {
+      final String id = snapshot.id();
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath() + "/" + id,
+        "metrics", controller.apiBase() + "/metrics/" + id,
+        "status", controller.apiBase() + "/status/" + id
+      );
+    }
+
+  }
+
+  @Inject
+  public SeriesJMeterTestController(
+    final Gson gson,
+    final JMeterTestMetricsService jMeterTestMetricsService
+  ) {
+    this.gson = gson;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "series");
+    path(apiBase(), () -> {
+      get("/series", "application/json", this);
+      get("/series/:id", "application/json", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiPath() + "/:id";
+  }
+
+  // buckets of a test since `from`: `resolution` is one of `auto`, `1s`, `10s`, or `1m`;
+  //   `by` adds the series of every `label` and/or response `code`, i.e.: `by=label,code`.
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() ) {
+      halt(400, "missing test ID");
+      return null;
+    }
+
+    final String testID = id.get();
+
+    final String resolution = this.optionalParamOr(request, "resolution", JMeterTestSeries.RESOLUTION_AUTO);
+    if ( !JMeterTestSeries.isResolution(resolution) ) {
+      halt(400, "invalid resolution: " + resolution);
+      return null;
+    }
+
+    final Set<String> by = ImmutableSet.copyOf(
+      BY_SPLITTER.split(this.optionalParamOr(request, "by", "").toLowerCase()));
+
+    final Optional<JMeterTestMetrics> metrics = this.jMeterTestMetricsService.get(testID);
+
+    if ( !metrics.isPresent() ) {
+      halt(404, "test ID not found: " + testID);
+      return null;
+    }
+
+    final JMeterTestSeries.Snapshot snapshot = metrics.get().series().snapshot(resolution,
+      this.optionalTimeParam(request, "from"), by.contains(BY_LABEL), by.contains(BY_CODE));
+
+    logger.debug("series: {}", metrics.get().series());
+
+    setHeader(response, "id", testID);
+    setHeader(response, "resolution", snapshot.resolution());
+
+    response.type("application/json");
+
+    return this.gson.toJson(
+      new ApiResponse(this, snapshot),
+      ApiResponse.class
+    );
+  }
+
+}
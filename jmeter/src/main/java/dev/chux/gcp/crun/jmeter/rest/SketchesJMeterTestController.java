@@ -0,0 +1,200 @@
+package dev.chux.gcp.crun.jmeter.rest;
+
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestAggregate;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetricsService;
+import dev.chux.gcp.crun.jmeter.metrics.LatencySketch;
+import dev.chux.gcp.crun.jmeter.results.JMeterTestResultService;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static spark.Spark.*;
+
+public class SketchesJMeterTestController extends JMeterTestController {
+
+  private static final Logger logger = LoggerFactory.getLogger(SketchesJMeterTestController.class);
+
+  private final Gson gson;
+  private final JMeterTestMetricsService jMeterTestMetricsService;
+  private final JMeterTestResultService jMeterTestResultService;
+
+  private static class ApiResponse extends RestResponse<JMeterTestAggregate> {
+
+    private ApiResponse(
+      final RestController controller,
+      final JMeterTestAggregate aggregate
+    ) {
+      super(controller, aggregate);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final JMeterTestAggregate aggregate
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiPath(),
+        "results", controller.apiBase() + "/results"
+      );
+    }
+
+  }
+
+  @Inject
+  public SketchesJMeterTestController(
+    final Gson gson,
+    final JMeterTestMetricsService jMeterTestMetricsService,
+    final JMeterTestResultService jMeterTestResultService
+  ) {
+    this.gson = gson;
+    this.jMeterTestMetricsService = jMeterTestMetricsService;
+    this.jMeterTestResultService = jMeterTestResultService;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "sketches");
+    path(apiBase(), () -> {
+      get("/sketches/:id", "application/json", this::sketch);
+      post("/sketches", "*/*", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET|POST] " + apiPath() + "[/:id]";
+  }
+
+  // sketches of running and recently complete tests are built from their metrics;
+  //   those of older tests are read from their stored results.
+  private Optional<LatencySketch> sketch(
+    final String id,
+    final String metric
+  ) {
+    final Optional<JMeterTestMetrics> metrics = this.jMeterTestMetricsService.get(id);
+    if ( metrics.isPresent() ) {
+      return metrics.get().sketch(metric);
+    }
+    return this.jMeterTestResultService.sketch(id, metric);
+  }
+
+  private String metric(
+    final String metric
+  ) {
+    if ( !JMeterTestAggregate.isMetric(metric) ) {
+      halt(400, "invalid metric: " + metric);
+    }
+    return metric;
+  }
+
+  private Object sketch(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> id = optionalID(request);
+    if ( !id.isPresent() ) {
+      halt(400, "missing test ID");
+      return null;
+    }
+
+    final String metric = this.metric(
+      this.optionalParamOr(request, "metric", JMeterTestAggregate.METRIC_LATENCY));
+
+    final Optional<LatencySketch> sketch = this.sketch(id.get(), metric);
+    if ( !sketch.isPresent() ) {
+      halt(404, metric + " of test ID not found: " + id.get());
+      return null;
+    }
+
+    setHeader(response, "id", id.get());
+    response.type("application/json");
+    return this.gson.toJson(new ApiResponse(this,
+      new JMeterTestAggregate(metric, ImmutableMap.of(id.get(), sketch.get()))), ApiResponse.class);
+  }
+
+  // merges sketches of local tests and/or sketches posted from other instances:
+  //   `{"metric":"latency","ids":["<test-id>",...],"sketches":{"<name>":"<base64>",...}}`.
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> body = body(request);
+    if ( !body.isPresent() ) {
+      return this.badRequest(response, "sketches are required");
+    }
+
+    final Map<String, LatencySketch> sketches = Maps.newLinkedHashMap();
+    final String metric;
+    try {
+      final JsonObject json = this.gson.fromJson(body.get(), JsonObject.class);
+      if ( json == null ) {
+        return this.badRequest(response, "sketches are required");
+      }
+      metric = this.metric(json.has("metric")
+        ? json.get("metric").getAsString() : JMeterTestAggregate.METRIC_LATENCY);
+      if ( json.has("ids") ) {
+        for ( final JsonElement element : json.getAsJsonArray("ids") ) {
+          final String id = element.getAsString();
+          final Optional<LatencySketch> sketch = this.sketch(id, metric);
+          if ( !sketch.isPresent() ) {
+            halt(404, metric + " of test ID not found: " + id);
+            return null;
+          }
+          sketches.put(id, sketch.get());
+        }
+      }
+      if ( json.has("sketches") ) {
+        for ( final Map.Entry<String, JsonElement> entry : json.getAsJsonObject("sketches").entrySet() ) {
+          try {
+            sketches.put(entry.getKey(), LatencySketch.fromBase64(entry.getValue().getAsString()));
+          } catch(final IllegalArgumentException e) {
+            return this.badRequest(response, "invalid sketch " + entry.getKey() + ": " + e.getMessage());
+          }
+        }
+      }
+    } catch(final JsonParseException | IllegalStateException | ClassCastException | UnsupportedOperationException e) {
+      return this.badRequest(response, "invalid sketches: " + e.getMessage());
+    }
+
+    if ( sketches.isEmpty() ) {
+      return this.badRequest(response, "sketches are required");
+    }
+
+    final JMeterTestAggregate aggregate;
+    try {
+      aggregate = new JMeterTestAggregate(metric, sketches);
+    } catch(final IllegalArgumentException e) {
+      // i.e.: merged counts or sums overflow
+      return this.badRequest(response, "invalid sketches: " + e.getMessage());
+    }
+
+    logger.debug("aggregate/{}: {} sources, {} samples", metric, sketches.size(), aggregate.samples());
+
+    response.type("application/json");
+    return this.gson.toJson(new ApiResponse(this, aggregate), ApiResponse.class);
+  }
+
+}
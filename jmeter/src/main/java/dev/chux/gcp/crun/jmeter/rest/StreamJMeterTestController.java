@@ -1,18 +1,35 @@
 package dev.chux.gcp.crun.jmeter.rest;
 
+import java.io.OutputStream;
+
+import java.time.Instant;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
 import javax.servlet.ServletOutputStream;
 
 import com.google.inject.Inject;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
 
 import spark.Request;
 import spark.Response;
 
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.io.CoalescingOutputStream;
+import dev.chux.gcp.crun.io.OutputBroadcaster;
+import dev.chux.gcp.crun.io.SegmentedLog;
 import dev.chux.gcp.crun.jmeter.JMeterTest;
 import dev.chux.gcp.crun.jmeter.JMeterTestService;
+import dev.chux.gcp.crun.jmeter.metrics.GeneratorMonitor;
+import dev.chux.gcp.crun.jmeter.output.BinaryResultsEncoder;
+import dev.chux.gcp.crun.jmeter.output.JMeterOutputParser;
+import dev.chux.gcp.crun.jmeter.output.ServerSentEventsEncoder;
+import dev.chux.gcp.crun.rest.ExecutionModel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,13 +40,38 @@ public class StreamJMeterTestController extends JMeterTestController {
 
   private static final Logger logger = LoggerFactory.getLogger(StreamJMeterTestController.class);
 
+  public static final String PROPERTY_COALESCE_SIZE = "jmeter.stream.coalesce.size";
+  public static final String PROPERTY_COALESCE_MILLIS = "jmeter.stream.coalesce.millis";
+
+  // KiB
+  private static final int DEFAULT_COALESCE_SIZE = 64;
+  private static final long DEFAULT_COALESCE_MILLIS = 100l;
+
+  private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
+
   private final JMeterTestService jMeterTestService;
+  private final GeneratorMonitor generatorMonitor;
+  private final int coalesceSize;
+  private final long coalesceMillis;
+  // tracks when coalesced output is due, and forwards it: see `CoalescingOutputStream`.
+  private final ScheduledExecutorService timer;
+  private final Executor flusher;
 
   @Inject
   public StreamJMeterTestController(
-    final JMeterTestService jMeterTestService
+    final JMeterTestService jMeterTestService,
+    final GeneratorMonitor generatorMonitor,
+    final ConfigService configService,
+    final ExecutionModel executionModel
   ) {
     this.jMeterTestService = jMeterTestService;
+    this.generatorMonitor = generatorMonitor;
+    this.coalesceSize = configService
+      .getIntAppProp(PROPERTY_COALESCE_SIZE).or(DEFAULT_COALESCE_SIZE) * 1024;
+    this.coalesceMillis = configService
+      .getLongAppProp(PROPERTY_COALESCE_MILLIS).or(DEFAULT_COALESCE_MILLIS);
+    this.timer = executionModel.newScheduledExecutor("jmeter-stream-timer", 1);
+    this.flusher = executionModel.newExecutor("jmeter-stream-flush", /* daemon */ true);
   }
 
   @Override
@@ -40,6 +82,10 @@ public class StreamJMeterTestController extends JMeterTestController {
     path(apiBase(), () -> {
       get("/stream", "text/plain", this);
       get("/stream/:id", "text/plain", this);
+      get("/stream", BinaryResultsEncoder.MIME_TYPE, this);
+      get("/stream/:id", BinaryResultsEncoder.MIME_TYPE, this);
+      get("/stream", ServerSentEventsEncoder.MIME_TYPE, this);
+      get("/stream/:id", ServerSentEventsEncoder.MIME_TYPE, this);
     });
   }
 
@@ -50,6 +96,52 @@ public class StreamJMeterTestController extends JMeterTestController {
     return "[GET] " + apiPath() + "/:id";
   }
 
+  // what to skip when this client falls behind: `drop` the oldest output, or skip to the `latest`.
+  private Optional<OutputBroadcaster.Overflow> overflow(
+    final Request request
+  ) {
+    final Optional<String> overflow = this.optionalParam(request, "overflow");
+    if ( overflow.isPresent() ) {
+      try {
+        return Optional.of(OutputBroadcaster.Overflow.of(overflow.get()));
+      } catch(final IllegalArgumentException e) {
+        halt(400, "invalid overflow: " + overflow.get());
+      }
+    }
+    return Optional.absent();
+  }
+
+  // where to replay output from: `start`, a byte offset, or an ISO-8601 point in time.
+  private Optional<Function<SegmentedLog, Long>> from(
+    final Request request
+  ) {
+    final Optional<String> from = this.optionalParam(request, "from");
+    if ( !from.isPresent() ) {
+      return Optional.absent();
+    }
+    final String f = from.get().trim();
+    if ( f.equalsIgnoreCase("start") ) {
+      return Optional.of(JMeterTestService.fromOffset(0));
+    }
+    try {
+      if ( DIGITS.matchesAllOf(f) ) {
+        return Optional.of(JMeterTestService.fromOffset(Long.parseLong(f)));
+      }
+      return Optional.of(JMeterTestService.fromMillis(Instant.parse(f).toEpochMilli()));
+    } catch(final RuntimeException e) {
+      halt(400, "invalid from: " + f);
+    }
+    return Optional.absent();
+  }
+
+  private boolean fromStart(
+    final Request request
+  ) {
+    final String from = this.optionalParamOr(request, "from", "").trim();
+    return from.equalsIgnoreCase("start")
+      || (!from.isEmpty() && DIGITS.matchesAllOf(from) && Long.parseLong(from) == 0l);
+  }
+
   public Object handle(
     final Request request,
     final Response response
@@ -61,43 +153,63 @@ public class StreamJMeterTestController extends JMeterTestController {
     }
 
     final String testID = id.get();
+    final Optional<OutputBroadcaster.Overflow> overflow = this.overflow(request);
+    final Optional<Function<SegmentedLog, Long>> from = this.from(request);
 
     setHeader(response, "id", testID);
 
-    response.type("text/plain");
-
-    final ServletOutputStream stream = response.raw().getOutputStream();
+    final ServletOutputStream responseOutput = response.raw().getOutputStream();
+    // output is written in chunks of up to `jmeter.stream.coalesce.size` KiB,
+    //   at least every `jmeter.stream.coalesce.millis` while there is any.
+    final CoalescingOutputStream coalescedOutput =
+      new CoalescingOutputStream(responseOutput, this.coalesceSize, this.coalesceMillis, this.timer, this.flusher);
+    final OutputStream stream = encode(request, response,
+      coalescedOutput, this.generatorMonitor.usage(testID));
 
     final Optional<JMeterTest> test = this.jMeterTestService.get(testID);
 
-    if ( !test.isPresent() ) {
+    // output of complete tests may still be replayed
+    final boolean replay = from.isPresent() && this.jMeterTestService.replayable(testID);
+
+    if ( !test.isPresent() && !replay ) {
       halt(404, "test ID not found: " + testID);
       return null;
     }
-    
-    JMeterTest t = test.get();
-
-    setHeader(response, "id", t.id());
-    setHeader(response, "name", t.name());
-    setHeader(response, "trace-id", t.traceID());
-    setHeader(response, "instance-id", t.instanceID());
-    setHeader(response, "script", t.script());
 
-    logger.info("connecting to test: {}", t);
+    if ( test.isPresent() ) {
+      final JMeterTest t = test.get();
+      setHeader(response, "name", t.name());
+      setHeader(response, "trace-id", t.traceID());
+      setHeader(response, "instance-id", t.instanceID());
+      setHeader(response, "script", t.script());
+      logger.info("connecting to test: {}", t);
+    }
 
-    stream.println("---- stream/start: <" + t.id() + "> ----");
+    println(stream, "---- stream/start: <" + testID + "> ----");
 
-    final ListenableFuture<
-      JMeterTest
-    > futureTest = this.jMeterTestService
-      .connect(t, stream)
-      .or(Futures.immediateFuture(t));
+    if ( stream instanceof JMeterOutputParser && !(replay && this.fromStart(request)) ) {
+      // joining live output, or replaying from an arbitrary offset: skip partial lines;
+      //   replays from the start must keep the first line ( i.e.: the CSV header ).
+      ((JMeterOutputParser) stream).resync();
+    }
 
-    // block until test is complete
-    t = futureTest.get();
+    if ( replay ) {
+      // replay from the log, and follow it until the test is complete
+      this.jMeterTestService.replay(testID, stream, from.get());
+      if ( test.isPresent() ) {
+        this.jMeterTestService.getTest(testID).or(Futures.immediateFuture(test.get())).get();
+      }
+    } else {
+      // block until test is complete: output has been fully transferred
+      this.jMeterTestService
+        .connect(test.get(), stream, overflow)
+        .or(Futures.immediateFuture(test.get()))
+        .get();
+    }
 
-    stream.println("---- stream/stop: <" + t.id() + "> ----");
+    println(stream, "---- stream/stop: <" + testID + "> ----");
     stream.flush();
+    coalescedOutput.drain();
 
     return null;
   }
@@ -0,0 +1,114 @@
+package dev.chux.gcp.crun.jmeter.results;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+// aggregates of two stored tests, side by side: every numeric metric of `a` and `b`,
+//   i.e.: `qps`, `error_rate`, or `latency.p99`, along with how much it changed from `a` to `b`.
+public final class JMeterTestComparison {
+
+  public static final class Difference {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="a")
+    private final Double a;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="b")
+    private final Double b;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="delta")
+    private final Double delta;
+
+    // relative to `a`; absent when `a` is `0`.
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="change")
+    private final Double change;
+
+    private Difference(
+      final Double a,
+      final Double b
+    ) {
+      this.a = a;
+      this.b = b;
+      this.delta = (a == null || b == null) ? null : Double.valueOf(b - a);
+      this.change = (this.delta == null || a == 0d) ? null : Double.valueOf(this.delta / a);
+    }
+
+  }
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="a")
+  private final JMeterTestResult a;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="b")
+  private final JMeterTestResult b;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="metrics")
+  private final Map<String, Difference> metrics;
+
+  JMeterTestComparison(
+    final JMeterTestResult a,
+    final JsonObject metricsOfA,
+    final JMeterTestResult b,
+    final JsonObject metricsOfB
+  ) {
+    this.a = a;
+    this.b = b;
+    final Map<String, Double> valuesOfA = Maps.newTreeMap();
+    final Map<String, Double> valuesOfB = Maps.newTreeMap();
+    flatten("", metricsOfA, valuesOfA);
+    flatten("", metricsOfB, valuesOfB);
+    final Set<String> names = Sets.newTreeSet(valuesOfA.keySet());
+    names.addAll(valuesOfB.keySet());
+    this.metrics = Maps.newLinkedHashMap();
+    for ( final String name : names ) {
+      this.metrics.put(name, new Difference(valuesOfA.get(name), valuesOfB.get(name)));
+    }
+  }
+
+  public String a() {
+    return this.a.id();
+  }
+
+  public String b() {
+    return this.b.id();
+  }
+
+  private static void flatten(
+    final String prefix,
+    final JsonObject object,
+    final Map<String, Double> values
+  ) {
+    for ( final Map.Entry<String, JsonElement> entry : object.entrySet() ) {
+      final String name = prefix + entry.getKey();
+      final JsonElement value = entry.getValue();
+      if ( value.isJsonObject() ) {
+        flatten(name + ".", value.getAsJsonObject(), values);
+      } else if ( value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber() ) {
+        values.put(name, Double.valueOf(value.getAsDouble()));
+      }
+    }
+  }
+
+}
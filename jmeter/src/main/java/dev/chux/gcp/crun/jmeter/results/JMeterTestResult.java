@@ -0,0 +1,219 @@
+package dev.chux.gcp.crun.jmeter.results;
+
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+
+// index entry of a stored test: what tests are queried, and listed, by;
+//   the full record ( config and metrics ) is read from its segment only when requested.
+public final class JMeterTestResult {
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="id")
+  private String id;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="instance_id")
+  private String instanceID;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="trace_id")
+  private String traceID;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="script")
+  private String script;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="mode")
+  private String mode;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="engine")
+  private String engine;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="host")
+  private String host;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="path")
+  private String path;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="started")
+  private long started;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="finished")
+  private long finished;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="samples")
+  private long samples;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="error_rate")
+  private double errorRate;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="qps")
+  private double qps;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="p99")
+  private long p99;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="flags")
+  private Set<String> flags;
+
+  // where the full record is: not exposed, the index keeps it next to every entry.
+  private String segment;
+  private long offset;
+  private int length;
+
+  // last time the record was stored or read; drives eviction, never persisted.
+  private volatile long accessed;
+
+  private JMeterTestResult() {}
+
+  JMeterTestResult(
+    final JMeterTestConfig config,
+    final Optional<JMeterTestMetrics.Snapshot> metrics
+  ) {
+    this.id = config.id();
+    this.instanceID = config.instanceID();
+    this.traceID = config.traceID().orNull();
+    this.script = config.jmx().orNull();
+    this.mode = config.mode();
+    this.engine = config.engine();
+    this.host = config.host();
+    this.path = config.path().orNull();
+    this.started = config.started();
+    this.finished = config.finished();
+    if ( metrics.isPresent() ) {
+      this.samples = metrics.get().samples();
+      this.errorRate = metrics.get().errorRate();
+      this.qps = metrics.get().qps();
+      this.p99 = metrics.get().latency().p99();
+    }
+    final Set<String> flags = config.flags();
+    this.flags = flags.isEmpty() ? null : ImmutableSet.copyOf(flags);
+    this.accessed = System.currentTimeMillis();
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .omitNullValues()
+      .add("id", this.id)
+      .add("trace_id", this.traceID)
+      .add("script", this.script)
+      .add("host", this.host)
+      .add("started", this.started)
+      .add("finished", this.finished)
+      .add("segment", this.segment)
+      .add("offset", this.offset)
+      .add("length", this.length)
+      .toString();
+  }
+
+  public String id() {
+    return this.id;
+  }
+
+  public String instanceID() {
+    return this.instanceID;
+  }
+
+  public Optional<String> traceID() {
+    return fromNullable(this.traceID);
+  }
+
+  public Optional<String> script() {
+    return fromNullable(this.script);
+  }
+
+  public Optional<String> host() {
+    return fromNullable(this.host);
+  }
+
+  public long started() {
+    return this.started;
+  }
+
+  public long finished() {
+    return this.finished;
+  }
+
+  public Set<String> flags() {
+    return (this.flags == null) ? ImmutableSet.<String>of() : this.flags;
+  }
+
+  String segment() {
+    return this.segment;
+  }
+
+  long offset() {
+    return this.offset;
+  }
+
+  int length() {
+    return this.length;
+  }
+
+  JMeterTestResult locate(
+    final String segment,
+    final long offset,
+    final int length
+  ) {
+    this.segment = segment;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  long accessed() {
+    return this.accessed;
+  }
+
+  JMeterTestResult access() {
+    this.accessed = System.currentTimeMillis();
+    return this;
+  }
+
+  JMeterTestResult accessed(
+    final long accessed
+  ) {
+    this.accessed = accessed;
+    return this;
+  }
+
+}
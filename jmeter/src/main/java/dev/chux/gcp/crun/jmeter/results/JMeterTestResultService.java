@@ -0,0 +1,523 @@
+package dev.chux.gcp.crun.jmeter.results;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.JMeterTestConfig;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestMetrics;
+import dev.chux.gcp.crun.jmeter.metrics.JMeterTestSeries;
+import dev.chux.gcp.crun.jmeter.metrics.LatencySketch;
+import dev.chux.gcp.crun.rest.ExecutionModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// keeps the config, timestamps and final metrics of complete tests, so that they may be queried
+//   long after the test, and its output, are gone:
+//   - every test is a JSON line appended to the active segment under `jmeter.results.dir`; a new
+//     segment is started once the active one takes `jmeter.results.segment_size` MiB.
+//   - `index` keeps one compact line per test ( where its record is, and what it is queried by ),
+//     so that the index is all that is read to list tests; it is rebuilt from segments if lost.
+//   - tests are forgotten `jmeter.results.retention.time` minutes after they were last stored or read;
+//     when all segments take more than `jmeter.results.retention.size` MiB, the oldest segment is
+//     deleted, and only the tests read since it was last written to are kept.
+public class JMeterTestResultService {
+
+  private static final Logger logger = LoggerFactory.getLogger(JMeterTestResultService.class);
+
+  public static final String PROPERTY_RESULTS_DIR = "jmeter.results.dir";
+  public static final String PROPERTY_SEGMENT_SIZE = "jmeter.results.segment_size";
+  public static final String PROPERTY_RETENTION_SIZE = "jmeter.results.retention.size";
+  public static final String PROPERTY_RETENTION_TIME = "jmeter.results.retention.time";
+
+  private static final String DEFAULT_RESULTS_DIR = "/tmp/jmaas/results";
+  // MiB
+  private static final int DEFAULT_SEGMENT_SIZE = 16;
+  private static final long DEFAULT_RETENTION_SIZE = 256l;
+  // minutes: 7 days
+  private static final long DEFAULT_RETENTION_TIME = 10080l;
+
+  private static final long MiB = 1024l * 1024l;
+
+  private static final String INDEX = "index";
+  private static final String SEGMENT_PREFIX = "results-";
+  private static final String SEGMENT_SUFFIX = ".jsonl";
+
+  private static final char SEPARATOR = '\t';
+  private static final Splitter INDEX_SPLITTER = Splitter.on(SEPARATOR).limit(5);
+
+  // never written to disk
+  private static final Set<String> REDACTED_HEADERS =
+    ImmutableSet.of("authorization", "proxy-authorization", "cookie");
+  public static final String REDACTED = "<redacted>";
+
+  private final Gson gson;
+
+  private final Path dir;
+  private final Path index;
+  private final long segmentSize;
+  private final long retentionSize;
+  private final long retentionMillis;
+
+  // all guarded by `this`: tests in the order they were stored, and segments by name ( oldest first ).
+  private final Map<String, JMeterTestResult> results = Maps.newLinkedHashMap();
+  private final Map<String, Long> segments = Maps.newTreeMap();
+  private Optional<String> active = absent();
+  private long sequence = 0l;
+  // whether tests were read since `index` was last written
+  private boolean accessed = false;
+
+  @Inject
+  public JMeterTestResultService(
+    final Gson gson,
+    final ConfigService configService,
+    final ExecutionModel executionModel
+  ) {
+    this.gson = gson;
+    this.dir = Paths.get(configService.getAppPropOrDefault(PROPERTY_RESULTS_DIR, DEFAULT_RESULTS_DIR));
+    this.index = this.dir.resolve(INDEX);
+    this.segmentSize = configService.getIntAppProp(PROPERTY_SEGMENT_SIZE).or(DEFAULT_SEGMENT_SIZE) * MiB;
+    this.retentionSize = configService.getLongAppProp(PROPERTY_RETENTION_SIZE).or(DEFAULT_RETENTION_SIZE) * MiB;
+    this.retentionMillis = TimeUnit.MINUTES.toMillis(
+      configService.getLongAppProp(PROPERTY_RETENTION_TIME).or(DEFAULT_RETENTION_TIME)
+    );
+
+    this.load();
+
+    final ScheduledExecutorService scheduler = executionModel.newScheduledExecutor("jmeter-results", 1);
+    scheduler.scheduleWithFixedDelay(this::retain, 1l, 1l, TimeUnit.MINUTES);
+
+    logger.info("{}", this);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return toStringHelper(this)
+      .add("dir", this.dir)
+      .add("segment_size", this.segmentSize)
+      .add("retention_size", this.retentionSize)
+      .add("retention_millis", this.retentionMillis)
+      .add("results", this.results.size())
+      .add("segments", this.segments.size())
+      .add("active", this.active.orNull())
+      .toString();
+  }
+
+  // appends the record of a complete test; failures are logged, and never fail the test.
+  public synchronized void store(
+    final JMeterTestConfig config,
+    final Optional<JMeterTestMetrics> metrics
+  ) {
+    try {
+      final Optional<JMeterTestMetrics.Snapshot> snapshot = metrics.isPresent()
+        ? Optional.of(metrics.get().snapshot().test())
+        : Optional.<JMeterTestMetrics.Snapshot>absent();
+      final JMeterTestResult result = new JMeterTestResult(config, snapshot);
+
+      final JsonObject record = new JsonObject();
+      record.add("result", this.gson.toJsonTree(result));
+      record.add("config", redact(this.gson.toJsonTree(config)));
+      if ( snapshot.isPresent() ) {
+        record.add("metrics", this.gson.toJsonTree(snapshot.get()));
+        // the whole test at the finest resolution that still holds it
+        record.add("series", this.gson.toJsonTree(metrics.get().series()
+          .snapshot(JMeterTestSeries.RESOLUTION_AUTO, absent(), false, false)));
+      }
+
+      this.append(result, (this.gson.toJson(record) + "\n").getBytes(UTF_8));
+      Files.write(this.index, this.toIndexLine(result).getBytes(UTF_8),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      // a test ID may be used again: only its latest record is kept.
+      this.results.remove(result.id());
+      this.results.put(result.id(), result);
+      logger.info("{}/stored: {}", result.id(), result);
+    } catch(final Exception e) {
+      logger.error("{}/failed to store result =>\n{}", config.id(), getStackTraceAsString(e));
+    }
+  }
+
+  public synchronized Optional<JMeterTestResult> get(
+    final String id
+  ) {
+    checkArgument(!isNullOrEmpty(id));
+    return fromNullable(this.results.get(id));
+  }
+
+  // returns the full record of a test: `result`, `config`, `metrics`, and `series`.
+  public synchronized Optional<JsonObject> read(
+    final String id
+  ) {
+    final Optional<JMeterTestResult> result = this.get(id);
+    if ( !result.isPresent() ) {
+      return absent();
+    }
+    final Optional<byte[]> record = this.bytes(result.get());
+    if ( !record.isPresent() ) {
+      return absent();
+    }
+    result.get().access();
+    this.accessed = true;
+    return fromNullable(
+      this.gson.fromJson(new String(record.get(), UTF_8), JsonObject.class)
+    );
+  }
+
+  // tests started within [`from`, `to`), newest first; only the index is read.
+  public synchronized List<JMeterTestResult> list(
+    final Optional<Long> from,
+    final Optional<Long> to,
+    final Optional<String> host,
+    final Optional<String> script,
+    final Optional<String> traceID,
+    final int limit
+  ) {
+    final List<JMeterTestResult> results = Lists.newArrayList();
+    for ( final JMeterTestResult result : this.results.values() ) {
+      if ( ( from.isPresent() && result.started() < from.get() )
+          || ( to.isPresent() && result.started() >= to.get() )
+          || ( host.isPresent() && !host.get().equalsIgnoreCase(result.host().orNull()) )
+          || ( script.isPresent() && !script.get().equals(result.script().orNull()) )
+          || ( traceID.isPresent() && !traceID.get().equalsIgnoreCase(result.traceID().orNull()) ) ) {
+        continue;
+      }
+      results.add(result);
+    }
+    results.sort(Comparator.comparingLong(JMeterTestResult::started).reversed());
+    return ImmutableList.copyOf(results.subList(0, Math.min(Math.max(0, limit), results.size())));
+  }
+
+  public Optional<JMeterTestComparison> compare(
+    final String a,
+    final String b
+  ) {
+    final Optional<JsonObject> recordOfA = this.read(a);
+    final Optional<JsonObject> recordOfB = this.read(b);
+    if ( !recordOfA.isPresent() || !recordOfB.isPresent() ) {
+      return absent();
+    }
+    return Optional.of(new JMeterTestComparison(
+      this.get(a).get(), metrics(recordOfA.get()),
+      this.get(b).get(), metrics(recordOfB.get())
+    ));
+  }
+
+  // sketch of a stored test's `metric` ( see: `JMeterTestAggregate` ); absent for tests stored without it.
+  public Optional<LatencySketch> sketch(
+    final String id,
+    final String metric
+  ) {
+    final Optional<JsonObject> record = this.read(id);
+    if ( !record.isPresent() ) {
+      return absent();
+    }
+    final JsonObject metrics = metrics(record.get());
+    if ( !metrics.has(metric) || !metrics.getAsJsonObject(metric).has("sketch") ) {
+      return absent();
+    }
+    try {
+      return Optional.of(LatencySketch.fromBase64(
+        metrics.getAsJsonObject(metric).get("sketch").getAsString()));
+    } catch(final IllegalArgumentException e) {
+      logger.error("{}/invalid stored sketch =>\n{}", id, getStackTraceAsString(e));
+    }
+    return absent();
+  }
+
+  private static JsonObject metrics(
+    final JsonObject record
+  ) {
+    return record.has("metrics") ? record.getAsJsonObject("metrics") : new JsonObject();
+  }
+
+  // replaces the values of credential headers in a serialized test configuration, so that it may be written to disk.
+  public static JsonElement redact(
+    final JsonElement config
+  ) {
+    if ( !config.isJsonObject() || !config.getAsJsonObject().has("headers") ) {
+      return config;
+    }
+    final JsonElement headers = config.getAsJsonObject().get("headers");
+    if ( !headers.isJsonObject() ) {
+      return config;
+    }
+    for ( final Map.Entry<String, JsonElement> header : headers.getAsJsonObject().entrySet() ) {
+      if ( REDACTED_HEADERS.contains(header.getKey().toLowerCase()) ) {
+        header.setValue(new JsonPrimitive(REDACTED));
+      }
+    }
+    return config;
+  }
+
+  // appends a record to the active segment, starting a new one if it would take more than `segment_size`.
+  private void append(
+    final JMeterTestResult result,
+    final byte[] record
+  ) throws IOException {
+    Files.createDirectories(this.dir);
+    if ( !this.active.isPresent()
+        || ( this.segments.get(this.active.get()) > 0l
+          && this.segments.get(this.active.get()) + record.length > this.segmentSize ) ) {
+      this.active = Optional.of(this.newSegment());
+      this.segments.put(this.active.get(), Long.valueOf(0l));
+    }
+    final String segment = this.active.get();
+    final long offset = this.segments.get(segment);
+    Files.write(this.dir.resolve(segment), record, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    this.segments.put(segment, Long.valueOf(offset + record.length));
+    result.locate(segment, offset, record.length);
+  }
+
+  // segment names sort by the time they were started.
+  private String newSegment() {
+    this.sequence = Math.max(this.sequence + 1, System.currentTimeMillis());
+    return String.format("%s%013d%s", SEGMENT_PREFIX, this.sequence, SEGMENT_SUFFIX);
+  }
+
+  private String toIndexLine(
+    final JMeterTestResult result
+  ) {
+    return new StringBuilder()
+      .append(result.segment()).append(SEPARATOR)
+      .append(result.offset()).append(SEPARATOR)
+      .append(result.length()).append(SEPARATOR)
+      .append(result.accessed()).append(SEPARATOR)
+      .append(this.gson.toJson(result, JMeterTestResult.class))
+      .append('\n')
+      .toString();
+  }
+
+  // the index is written to a temporary file first, so that a crash never leaves a partial index.
+  private void writeIndex() throws IOException {
+    final Path tmp = this.dir.resolve(INDEX + ".tmp");
+    try ( final Writer writer = Files.newBufferedWriter(tmp, UTF_8) ) {
+      for ( final JMeterTestResult result : this.results.values() ) {
+        writer.write(this.toIndexLine(result));
+      }
+    }
+    Files.move(tmp, this.index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.accessed = false;
+  }
+
+  private synchronized void load() {
+    try {
+      if ( !Files.isDirectory(this.dir) ) {
+        return;
+      }
+      try ( final DirectoryStream<Path> files =
+              Files.newDirectoryStream(this.dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX) ) {
+        for ( final Path file : files ) {
+          this.segments.put(file.getFileName().toString(), Long.valueOf(Files.size(file)));
+        }
+      }
+      if ( Files.exists(this.index) ) {
+        this.loadIndex();
+      } else {
+        for ( final String segment : this.segments.keySet() ) {
+          this.loadSegment(segment);
+        }
+      }
+      for ( final String segment : this.segments.keySet() ) {
+        // segments are started by this instance: the newest one may still be appended to.
+        this.active = Optional.of(segment);
+      }
+      this.writeIndex();
+      logger.info("loaded {} results from {} segments", this.results.size(), this.segments.size());
+    } catch(final Exception e) {
+      logger.error("failed to load results from '{}' =>\n{}", this.dir, getStackTraceAsString(e));
+    }
+    this.retain();
+  }
+
+  private void loadIndex() throws IOException {
+    try ( final BufferedReader reader = Files.newBufferedReader(this.index, UTF_8) ) {
+      String line;
+      while ( (line = reader.readLine()) != null ) {
+        try {
+          final List<String> fields = INDEX_SPLITTER.splitToList(line);
+          if ( fields.size() != 5 ) {
+            continue;
+          }
+          final String segment = fields.get(0);
+          final long offset = Long.parseLong(fields.get(1));
+          final int length = Integer.parseInt(fields.get(2));
+          final Long size = this.segments.get(segment);
+          // records of deleted, or truncated, segments are gone.
+          if ( size == null || (offset + length) > size ) {
+            continue;
+          }
+          final JMeterTestResult result = this.gson.fromJson(fields.get(4), JMeterTestResult.class);
+          if ( result == null || isNullOrEmpty(result.id()) ) {
+            continue;
+          }
+          result.locate(segment, offset, length).accessed(Long.parseLong(fields.get(3)));
+          this.results.remove(result.id());
+          this.results.put(result.id(), result);
+        } catch(final RuntimeException e) {
+          logger.warn("invalid index line: {}", line);
+        }
+      }
+    }
+  }
+
+  // only used when the index is lost: records are read line by line.
+  private void loadSegment(
+    final String segment
+  ) throws IOException {
+    final Path path = this.dir.resolve(segment);
+    final long modified = Files.getLastModifiedTime(path).toMillis();
+    try ( final InputStream stream = Files.newInputStream(path) ) {
+      final byte[] bytes = ByteStreams.toByteArray(stream);
+      int start = 0;
+      for ( int i = 0; i < bytes.length; i++ ) {
+        if ( bytes[i] != '\n' ) {
+          continue;
+        }
+        final int length = (i + 1) - start;
+        try {
+          final JsonObject record = this.gson.fromJson(new String(bytes, start, length, UTF_8), JsonObject.class);
+          final JMeterTestResult result = this.gson.fromJson(record.get("result"), JMeterTestResult.class);
+          if ( result != null && !isNullOrEmpty(result.id()) ) {
+            result.locate(segment, start, length).accessed(modified);
+            this.results.remove(result.id());
+            this.results.put(result.id(), result);
+          }
+        } catch(final RuntimeException e) {
+          logger.warn("invalid record at {}:{}", segment, start);
+        }
+        start = i + 1;
+      }
+    }
+  }
+
+  private synchronized void retain() {
+    try {
+      boolean changed = this.accessed;
+
+      final long deadline = System.currentTimeMillis() - this.retentionMillis;
+      for ( final JMeterTestResult result : ImmutableList.copyOf(this.results.values()) ) {
+        if ( result.accessed() < deadline ) {
+          this.results.remove(result.id());
+          logger.info("{}/expired: {}", result.id(), result);
+          changed = true;
+        }
+      }
+
+      long size = 0l;
+      for ( final Long s : this.segments.values() ) {
+        size += s;
+      }
+
+      // records moved below may start a new segment: the active one is kept nonetheless.
+      final Optional<String> active = this.active;
+      for ( final String segment : ImmutableList.copyOf(this.segments.keySet()) ) {
+        if ( segment.equals(active.orNull()) ) {
+          continue;
+        }
+        final List<JMeterTestResult> results = this.resultsOf(segment);
+        if ( size <= this.retentionSize && !results.isEmpty() ) {
+          continue;
+        }
+        final Path path = this.dir.resolve(segment);
+        final long written = Files.getLastModifiedTime(path).toMillis();
+        for ( final JMeterTestResult result : results ) {
+          if ( result.accessed() <= written ) {
+            this.results.remove(result.id());
+            logger.info("{}/evicted: {}", result.id(), result);
+            continue;
+          }
+          // read since the segment was last written to: keep it in the active segment.
+          final Optional<byte[]> record = this.bytes(result);
+          if ( record.isPresent() ) {
+            this.append(result, record.get());
+            size += record.get().length;
+          } else {
+            this.results.remove(result.id());
+          }
+        }
+        size -= this.segments.remove(segment);
+        Files.deleteIfExists(path);
+        logger.info("deleted segment: {}", path);
+        changed = true;
+      }
+
+      if ( changed ) {
+        this.writeIndex();
+      }
+    } catch(final Exception e) {
+      logger.error("failed to retain results at '{}' =>\n{}", this.dir, getStackTraceAsString(e));
+    }
+  }
+
+  private List<JMeterTestResult> resultsOf(
+    final String segment
+  ) {
+    final List<JMeterTestResult> results = Lists.newArrayList();
+    for ( final JMeterTestResult result : this.results.values() ) {
+      if ( segment.equals(result.segment()) ) {
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  private Optional<byte[]> bytes(
+    final JMeterTestResult result
+  ) {
+    final ByteBuffer buffer = ByteBuffer.allocate(result.length());
+    try ( final FileChannel channel = FileChannel.open(this.dir.resolve(result.segment()), StandardOpenOption.READ) ) {
+      while ( buffer.hasRemaining() ) {
+        if ( channel.read(buffer, result.offset() + buffer.position()) < 0 ) {
+          throw new IOException("truncated segment: " + result.segment());
+        }
+      }
+      return Optional.of(buffer.array());
+    } catch(final IOException e) {
+      logger.error("{}/failed to read result: {} =>\n{}", result.id(), result, getStackTraceAsString(e));
+      return absent();
+    }
+  }
+
+}
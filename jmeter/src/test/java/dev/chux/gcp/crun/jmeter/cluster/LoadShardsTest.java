@@ -0,0 +1,94 @@
+package dev.chux.gcp.crun.jmeter.cluster;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadShardsTest {
+
+  private static final String MODE_CONCURRENCY = "concurrency";
+
+  // QPS executed by all workers at both ends of every step: non-positive QPS are executed as `1`.
+  private static void assertQPS(
+    final String profile,
+    final int workers
+  ) {
+    final List<int[]> steps = LoadShards.parse(LoadShards.MODE_QPS, profile);
+    final List<List<int[]>> shards = LoadShards.split(LoadShards.MODE_QPS, steps, workers);
+    assertEquals(workers, shards.size());
+    for ( int index = 0; index < steps.size(); index++ ) {
+      final int[] step = steps.get(index);
+      int start = 0;
+      int end = 0;
+      for ( final List<int[]> shard : shards ) {
+        if ( shard.isEmpty() ) {
+          continue;
+        }
+        final int[] s = shard.get(index);
+        assertEquals(step[2], s[2]);
+        start += Math.max(1, s[0]);
+        end += Math.max(1, s[1]);
+      }
+      assertEquals(profile, Math.max(1, step[0]), start);
+      assertEquals(profile, Math.max(1, step[1]), end);
+    }
+  }
+
+  @Test
+  public void testSplitQPS() {
+    assertQPS("100,100,60", 3);
+    assertQPS("10,100,60;100,100,300;100,10,60", 4);
+    assertQPS("7,11,30", 2);
+  }
+
+  @Test
+  public void testSplitQPS_lowerThanWorkers() {
+    assertQPS("1,1,60", 3);
+    assertQPS("2,50,60;50,50,60", 3);
+    assertQPS("0,100,60", 4);
+  }
+
+  @Test
+  public void testSplitQPS_emptyShards() {
+    final List<List<int[]>> shards = LoadShards.split(LoadShards.MODE_QPS,
+      LoadShards.parse(LoadShards.MODE_QPS, "1,1,60"), 3);
+    assertEquals(1, shards.get(0).size());
+    assertTrue(shards.get(1).isEmpty());
+    assertTrue(shards.get(2).isEmpty());
+  }
+
+  @Test
+  public void testSplitConcurrency() {
+    final List<int[]> steps = LoadShards.parse(MODE_CONCURRENCY, "10,1,10,60,10;2,30,10,30,10");
+    final List<List<int[]>> shards = LoadShards.split(MODE_CONCURRENCY, steps, 4);
+    assertEquals(4, shards.size());
+    int first = 0;
+    int second = 0;
+    for ( final List<int[]> shard : shards ) {
+      for ( final int[] s : shard ) {
+        assertTrue(s[0] > 0);
+        if ( s[1] == 1 ) {
+          first += s[0];
+        } else {
+          second += s[0];
+        }
+      }
+    }
+    assertEquals(10, first);
+    assertEquals(2, second);
+  }
+
+  @Test
+  public void testShare() {
+    for ( int n = 1; n <= 7; n++ ) {
+      int total = 0;
+      for ( int i = 0; i < n; i++ ) {
+        total += LoadShards.share(23, i, n);
+      }
+      assertEquals(23, total);
+    }
+  }
+
+}
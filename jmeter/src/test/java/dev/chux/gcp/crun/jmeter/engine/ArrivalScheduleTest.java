@@ -0,0 +1,133 @@
+package dev.chux.gcp.crun.jmeter.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.primitives.Longs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ArrivalScheduleTest {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static ArrivalSchedule schedule(
+    final String profile
+  ) {
+    final Optional<ArrivalSchedule> schedule =
+      ArrivalSchedule.of(Splitter.on(',').splitToList(profile));
+    assertTrue(profile, schedule.isPresent());
+    return schedule.get();
+  }
+
+  // all arrivals of `profile`, checking that there are as many as the ceiling of the area below it,
+  //   that they never go back in time, and that all of them happen within the duration of the test.
+  private static long[] assertArrivals(
+    final String profile,
+    final long requests,
+    final int duration
+  ) {
+    final ArrivalSchedule schedule = schedule(profile);
+    assertEquals(profile, requests, schedule.requests());
+    assertEquals(profile, duration, schedule.duration());
+
+    final long[] arrivals = new long[(int) requests];
+    for ( int i = 0; i < requests; i++ ) {
+      arrivals[i] = schedule.next();
+      assertTrue(profile + ": " + i, arrivals[i] >= 0);
+      if ( i > 0 ) {
+        assertTrue(profile + ": " + i, arrivals[i] >= arrivals[i - 1]);
+      }
+    }
+    assertEquals(profile, 0, arrivals[0]);
+    assertTrue(profile, arrivals[arrivals.length - 1] < (duration * NANOS_PER_SECOND));
+    // exhausted schedules stay exhausted
+    assertEquals(profile, -1, schedule.next());
+    assertEquals(profile, -1, schedule.next());
+    return arrivals;
+  }
+
+  // arrivals in `[from, to)` seconds.
+  private static int count(
+    final long[] arrivals,
+    final int from,
+    final int to
+  ) {
+    int count = 0;
+    for ( final long arrival : arrivals ) {
+      if ( arrival >= (from * NANOS_PER_SECOND) && arrival < (to * NANOS_PER_SECOND) ) {
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testFlat() {
+    final long[] arrivals = assertArrivals("10,10,5", 50, 5);
+    for ( int i = 0; i < arrivals.length; i++ ) {
+      assertEquals(i * (NANOS_PER_SECOND / 10), arrivals[i], 1);
+    }
+    for ( int second = 0; second < 5; second++ ) {
+      assertEquals(10, count(arrivals, second, second + 1));
+    }
+  }
+
+  @Test
+  public void testRamp() {
+    // non-positive QPS are executed as `1`: ( 1 + 100 ) * 10 / 2
+    final long[] up = assertArrivals("0,100,10", 505, 10);
+    final long[] down = assertArrivals("100,1,10", 505, 10);
+    // the rate within every second follows the line: ~`r0 + 9.9 * ( second + 1/2 )`
+    for ( int second = 0; second < 10; second++ ) {
+      final double rate = 1d + (9.9d * (second + 0.5d));
+      assertEquals(rate, count(up, second, second + 1), 1d);
+      assertEquals(rate, count(down, 9 - second, 10 - second), 1d);
+    }
+  }
+
+  @Test
+  public void testFractional() {
+    // 4.5 requests: the fraction still gets its request
+    assertArrivals("1,2,3", 5, 3);
+    assertArrivals("1,1,1", 1, 1);
+  }
+
+  @Test
+  public void testMultiLine() {
+    // 37.5 + 40 + 42
+    final long[] arrivals = assertArrivals("5,20,3,20,20,2,20,1,4", 120, 9);
+    // fractions carry over between lines: no request is lost, nor issued twice
+    assertEquals(37, count(arrivals, 0, 3), 1);
+    assertEquals(40, count(arrivals, 3, 5), 1);
+    assertEquals(42, count(arrivals, 5, 9), 1);
+    assertEquals(arrivals.length, Longs.asList(arrivals).stream().distinct().count());
+  }
+
+  @Test
+  public void testMaxQPS() {
+    assertEquals(100, schedule("0,100,10").maxQPS());
+    assertEquals(20, schedule("5,20,3,20,20,2,20,1,4").maxQPS());
+    assertEquals(1, schedule("-5,0,3").maxQPS());
+  }
+
+  @Test
+  public void testInvalid() {
+    for ( final List<String> profile : Arrays.asList(
+      Arrays.<String>asList(),
+      Arrays.asList("10", "10"),
+      Arrays.asList("10", "10", "0"),
+      Arrays.asList("10", "10", "-1"),
+      Arrays.asList("10", "x", "5"),
+      Arrays.asList("10", "10", "5", "10")
+    ) ) {
+      assertFalse(profile.toString(), ArrivalSchedule.of(profile).isPresent());
+    }
+  }
+
+}
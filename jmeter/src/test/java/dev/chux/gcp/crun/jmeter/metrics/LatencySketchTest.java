@@ -0,0 +1,202 @@
+package dev.chux.gcp.crun.jmeter.metrics;
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencySketchTest {
+
+  // 7 bits of sub-buckets: values within a bucket differ by at most 1/64 of the lowest one.
+  private static final double MAX_RELATIVE_ERROR = 1d / 64;
+
+  private static final double[] PERCENTILES = { 0, 1, 10, 25, 50, 75, 90, 95, 99, 99.9, 100 };
+
+  private static LatencySketch sketch(
+    final long seed,
+    final int values
+  ) {
+    final Random random = new Random(seed);
+    final LatencySketch sketch = new LatencySketch();
+    for ( int i = 0; i < values; i++ ) {
+      sketch.record(random.nextInt(10_000_000));
+    }
+    return sketch;
+  }
+
+  private static void assertSameSketch(
+    final LatencySketch expected,
+    final LatencySketch actual
+  ) {
+    assertEquals(expected.count(), actual.count());
+    assertEquals(expected.min(), actual.min());
+    assertEquals(expected.max(), actual.max());
+    assertEquals(expected.mean(), actual.mean(), 0d);
+    for ( final double percentile : PERCENTILES ) {
+      assertEquals("p" + percentile, expected.percentile(percentile), actual.percentile(percentile));
+    }
+    assertArrayEquals(expected.encode(), actual.encode());
+  }
+
+  // the version byte, followed by the given values as varints.
+  private static byte[] encoded(
+    final long... values
+  ) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(1);
+    for ( long value : values ) {
+      while ( (value & ~0x7FL) != 0 ) {
+        bytes.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      bytes.write((int) value);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void assertRejected(
+    final byte[] bytes,
+    final String message
+  ) {
+    try {
+      LatencySketch.decode(bytes);
+      fail("decoded: " + Arrays.toString(bytes));
+    } catch(final IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final LatencySketch sketch = sketch(1, 10_000);
+    assertSameSketch(sketch, LatencySketch.decode(sketch.encode()));
+    assertSameSketch(sketch, LatencySketch.fromBase64(sketch.toBase64()));
+    // padding is optional
+    assertSameSketch(sketch, LatencySketch.fromBase64(sketch.toBase64() + "=="));
+  }
+
+  @Test
+  public void testRoundTripEmpty() {
+    final LatencySketch empty = LatencySketch.fromBase64(new LatencySketch().toBase64());
+    assertEquals(0, empty.count());
+    assertEquals(0, empty.min());
+    assertEquals(0, empty.max());
+    assertEquals(0, empty.percentile(99));
+  }
+
+  @Test
+  public void testRoundTripExtremes() {
+    final LatencySketch sketch = new LatencySketch();
+    sketch.record(0);
+    sketch.record(LatencyHistogram.MAX_VALUE, 3);
+    assertSameSketch(sketch, LatencySketch.decode(sketch.encode()));
+  }
+
+  @Test
+  public void testMergeEqualsRecord() {
+    final Random random = new Random(2);
+    final LatencySketch all = new LatencySketch();
+    final LatencySketch[] parts = new LatencySketch[4];
+    for ( int i = 0; i < parts.length; i++ ) {
+      parts[i] = new LatencySketch();
+    }
+    for ( int i = 0; i < 20_000; i++ ) {
+      final long value = random.nextInt(1_000_000);
+      all.record(value);
+      parts[random.nextInt(parts.length)].record(value);
+    }
+    final LatencySketch merged = new LatencySketch();
+    for ( final LatencySketch part : parts ) {
+      // merging what travelled over the wire is the same
+      merged.add(LatencySketch.decode(part.encode()));
+    }
+    merged.add(new LatencySketch());
+    assertSameSketch(all, merged);
+    assertSameSketch(all, all.copy());
+  }
+
+  @Test
+  public void testRejectsTruncated() {
+    final byte[] bytes = sketch(3, 1_000).encode();
+    for ( int length = 0; length < bytes.length; length++ ) {
+      try {
+        LatencySketch.decode(Arrays.copyOf(bytes, length));
+        fail("decoded " + length + " of " + bytes.length + " bytes");
+      } catch(final IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "truncated sketch");
+  }
+
+  @Test
+  public void testRejectsNonAscending() {
+    // 2 buckets: index 5, and then index 5 again
+    assertRejected(encoded(2, 5, 1, 0, 1, 0, 0, 0), "invalid sketch bucket");
+    // past the last bucket
+    assertRejected(encoded(1, LatencyHistogram.BUCKETS, 1, 0, 0, 0), "invalid sketch bucket");
+    assertRejected(encoded(1, 5, 0, 0, 0, 0), "invalid sketch count");
+  }
+
+  @Test
+  public void testRejectsOverflow() {
+    assertRejected(encoded(2, 0, Long.MAX_VALUE, 1, 1, 0, 1, 0), "sketch count overflows");
+    // an unsigned varint above `Long.MAX_VALUE`
+    assertRejected(encoded(1, 0, 1, 0, 0, -1), "sketch sum overflows");
+    assertRejected(encoded(1, 0, 1, 0, LatencyHistogram.MAX_VALUE + 1, 0), "invalid sketch range");
+  }
+
+  @Test
+  public void testMergeOverflowLeavesSketch() {
+    final LatencySketch full = new LatencySketch();
+    full.record(1, Long.MAX_VALUE);
+    final byte[] before = full.encode();
+    final LatencySketch one = new LatencySketch();
+    one.record(1);
+    try {
+      full.add(one);
+      fail("merged past Long.MAX_VALUE");
+    } catch(final IllegalArgumentException e) {
+      assertEquals("sketch count overflows", e.getMessage());
+    }
+    assertArrayEquals(before, full.encode());
+
+    final LatencySketch big = new LatencySketch();
+    big.record(LatencyHistogram.MAX_VALUE, Long.MAX_VALUE / LatencyHistogram.MAX_VALUE);
+    try {
+      big.add(big.copy());
+      fail("merged a sum past Long.MAX_VALUE");
+    } catch(final IllegalArgumentException e) {
+      assertEquals("sketch sum overflows", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testPercentileError() {
+    final Random random = new Random(4);
+    final int size = 100_000;
+    final long[] values = new long[size];
+    final LatencySketch sketch = new LatencySketch();
+    for ( int i = 0; i < size; i++ ) {
+      // log-uniform: every bucket magnitude gets values
+      values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+      sketch.record(values[i]);
+    }
+    Arrays.sort(values);
+    for ( final double percentile : PERCENTILES ) {
+      final int rank = (int) Math.max(1, Math.ceil((percentile / 100d) * size));
+      final long exact = values[rank - 1];
+      final long estimate = sketch.percentile(percentile);
+      assertTrue("p" + percentile + ": " + estimate + " < " + exact, estimate >= exact);
+      assertTrue("p" + percentile + ": " + estimate + " vs " + exact,
+        (estimate - exact) <= Math.max(1d, exact * MAX_RELATIVE_ERROR));
+    }
+    assertEquals(values[0], sketch.min());
+    assertEquals(values[size - 1], sketch.max());
+  }
+
+}
@@ -143,6 +143,168 @@ export const getConcurrency = (
     return [value, duration];
 };
 
+export const RESULTS_MIME_TYPE = 'application/x-jmaas-results';
+
+enum ResultsFrame {
+    HELLO = 0x00,
+    SAMPLE = 0x01,
+    LABEL = 0x02,
+    CODE = 0x03,
+    LOG = 0x04,
+    RESET = 0x05,
+}
+
+export type TestSample = {
+    timestamp: number;
+    elapsed: number;
+    latency: number;
+    connect: number;
+    bytes: number;
+    label: string;
+    code: string;
+    success: boolean;
+};
+
+export type TestResultsHandlers = {
+    onSample: (sample: TestSample) => void;
+    onLog?: (line: string) => void;
+};
+
+const textDecoder = new TextDecoder();
+
+// incremental decoder for the binary results format: frames may be split across network chunks.
+export class TestResultsDecoder {
+    private pending = new Uint8Array(0);
+    private labels: Array<string> = [];
+    private codes: Array<string> = [];
+    private lastTimestamp = 0;
+
+    constructor(private readonly handlers: TestResultsHandlers) {}
+
+    push(chunk: Uint8Array) {
+        const data = new Uint8Array(this.pending.length + chunk.length);
+        data.set(this.pending, 0);
+        data.set(chunk, this.pending.length);
+
+        let offset = 0;
+        while (offset < data.length) {
+            const type = data[offset];
+            const length = readVarint(data, offset + 1);
+            if (isUndefined(length)) {
+                break;
+            }
+            const start = length.next;
+            const end = start + length.value;
+            if (end > data.length) {
+                break;
+            }
+            this.frame(type, data.subarray(start, end));
+            offset = end;
+        }
+        this.pending = data.slice(offset);
+    }
+
+    private frame(type: number, payload: Uint8Array) {
+        switch (type) {
+            case ResultsFrame.SAMPLE:
+                return this.sample(payload);
+            case ResultsFrame.LABEL:
+                return this.define(this.labels, payload);
+            case ResultsFrame.CODE:
+                return this.define(this.codes, payload);
+            case ResultsFrame.LOG:
+                if (!isUndefined(this.handlers.onLog)) {
+                    this.handlers.onLog(textDecoder.decode(payload));
+                }
+                return;
+            case ResultsFrame.RESET:
+                this.labels = [];
+                this.codes = [];
+                this.lastTimestamp = 0;
+                return;
+            default:
+                // `HELLO` and unknown frames are skipped
+                return;
+        }
+    }
+
+    private define(dictionary: Array<string>, payload: Uint8Array) {
+        const id = readVarint(payload, 0)!;
+        dictionary[id.value] = textDecoder.decode(payload.subarray(id.next));
+    }
+
+    private sample(payload: Uint8Array) {
+        const values: Array<number> = [];
+        let offset = 0;
+        for (let i = 0; i < 7; i++) {
+            const v = readVarint(payload, offset)!;
+            values.push(v.value);
+            offset = v.next;
+        }
+        const delta = values[0] % 2 === 0 ? values[0] / 2 : -(values[0] + 1) / 2;
+        this.lastTimestamp += delta;
+        this.handlers.onSample({
+            timestamp: this.lastTimestamp,
+            elapsed: values[1],
+            latency: values[2],
+            connect: values[3],
+            bytes: values[4],
+            label: this.labels[values[5]] ?? '',
+            code: this.codes[values[6]] ?? '',
+            success: (payload[offset] & 0x01) === 0x01,
+        });
+    }
+}
+
+export const EVENTS_MIME_TYPE = 'text/event-stream';
+
+export type TestTick = {
+    timestamp: number;
+    samples: number;
+    errors: number;
+    bytes: number;
+    threads: number;
+    latency: {
+        min: number;
+        mean: number;
+        p50: number;
+        p90: number;
+        p99: number;
+        max: number;
+    };
+};
+
+export type TestLifecycle = {
+    event: string;
+    id: string;
+    details: string;
+};
+
+export type TestEventsHandlers = {
+    onSamples?: (samples: Array<TestSample>) => void;
+    onTick?: (tick: TestTick) => void;
+    onLog?: (line: string) => void;
+    onLifecycle?: (lifecycle: TestLifecycle) => void;
+};
+
+// varints may exceed 32 bits ( timestamps ), so bitwise operators cannot be used.
+const readVarint = (
+    data: Uint8Array,
+    offset: number,
+): { value: number, next: number } | undefined => {
+    let value = 0;
+    let scale = 1;
+    for (let i = offset; i < data.length; i++) {
+        const b = data[i];
+        value += (b & 0x7f) * scale;
+        if ((b & 0x80) === 0) {
+            return { value, next: i + 1 };
+        }
+        scale *= 128;
+    }
+    return undefined;
+};
+
 export const headersPrefix = "x-jmaas-test";
 
 const parseHeaders = (request: XMLHttpRequest): Headers => {
@@ -275,6 +437,65 @@ export default {
         });
     },
 
+    // streams test results using the binary format; `fetch` is used as XHR does not expose partial binary responses.
+    streamTestResults: async (
+        testID: string,
+        handlers: TestResultsHandlers,
+    ) => {
+        const response = await fetch(`${BASE}/stream/${testID}`, {
+            headers: {
+                Accept: RESULTS_MIME_TYPE,
+                [JMAAS_HEADERS.TEST_ID]: testID,
+            },
+        });
+        if (!response.ok || isNull(response.body)) {
+            throw new Error(`failed to stream test ${testID}: ${response.status}`);
+        }
+        const decoder = new TestResultsDecoder(handlers);
+        const reader = response.body.getReader();
+        for (;;) {
+            const { done, value } = await reader.read();
+            if (done) {
+                return;
+            }
+            decoder.push(value);
+        }
+    },
+
+    // streams test results as Server-Sent Events; complete once the stream stops.
+    streamTestEvents: (
+        testID: string,
+        handlers: TestEventsHandlers,
+    ): Promise<void> => {
+        return new Promise((resolve, reject) => {
+            const source = new EventSource(`${BASE}/stream/${testID}`);
+            const on = <T>(event: string, handler?: (data: T) => void) => {
+                source.addEventListener(event, (e: MessageEvent) => {
+                    if (!isUndefined(handler)) {
+                        handler(event === 'log' ? e.data : JSON.parse(e.data));
+                    }
+                });
+            };
+            on('samples', handlers.onSamples);
+            on('tick', handlers.onTick);
+            on('log', handlers.onLog);
+            on<TestLifecycle>('lifecycle', (lifecycle) => {
+                if (!isUndefined(handlers.onLifecycle)) {
+                    handlers.onLifecycle(lifecycle);
+                }
+                if (isEqual(lifecycle.event, 'stream/stop')) {
+                    source.close();
+                    resolve();
+                }
+            });
+            // `EventSource` reconnects on errors: streams are not resumed.
+            source.onerror = () => {
+                source.close();
+                reject(new Error(`failed to stream test ${testID}`));
+            };
+        });
+    },
+
     runTest: (
         test: Test,
         handler: TestStreamHandler,
@@ -0,0 +1,169 @@
+package dev.chux.gcp.crun.rest;
+
+import java.lang.reflect.Method;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+// threads used to handle HTTP requests, and to run work which blocks for long periods of time:
+//   - `platform`: bounded Jetty thread pool, and cached thread pools; the default.
+//   - `virtual`: a virtual thread per request and per task; requires a Java 21+ runtime,
+//      on older runtimes the `platform` model is used instead.
+public class ExecutionModel {
+
+  private static final Logger logger = LoggerFactory.getLogger(ExecutionModel.class);
+
+  public static final String PROPERTY_THREADS_MODEL = "server.threads.model";
+  public static final String PROPERTY_THREADS_MAX = "server.threads.max";
+  public static final String PROPERTY_THREADS_MIN = "server.threads.min";
+  public static final String PROPERTY_THREADS_IDLE_TIMEOUT = "server.threads.idle_timeout";
+
+  public static final String MODEL_PLATFORM = "platform";
+  public static final String MODEL_VIRTUAL = "virtual";
+
+  // same as Spark's defaults
+  private static final int DEFAULT_THREADS_MAX = 200;
+  private static final int DEFAULT_THREADS_MIN = 8;
+  // milliseconds
+  private static final int DEFAULT_THREADS_IDLE_TIMEOUT = 60000;
+
+  private final String model;
+  private final int maxThreads;
+  private final int minThreads;
+  private final int idleTimeout;
+
+  // `Thread.ofVirtual()` and `Executors.newThreadPerTaskExecutor(ThreadFactory)`
+  private final Optional<Method> virtualThreadBuilder;
+  private final Optional<Method> threadPerTaskExecutor;
+
+  @Inject
+  ExecutionModel(
+    final ConfigService configService
+  ) {
+    this.maxThreads = configService.getIntAppProp(PROPERTY_THREADS_MAX).or(DEFAULT_THREADS_MAX);
+    this.minThreads = configService.getIntAppProp(PROPERTY_THREADS_MIN).or(DEFAULT_THREADS_MIN);
+    this.idleTimeout = configService.getIntAppProp(PROPERTY_THREADS_IDLE_TIMEOUT).or(DEFAULT_THREADS_IDLE_TIMEOUT);
+
+    final String model = configService.getAppPropOrDefault(PROPERTY_THREADS_MODEL, MODEL_PLATFORM).trim().toLowerCase();
+    if ( model.equals(MODEL_VIRTUAL) ) {
+      this.virtualThreadBuilder = method(Thread.class, "ofVirtual");
+      this.threadPerTaskExecutor = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+    } else {
+      this.virtualThreadBuilder = absent();
+      this.threadPerTaskExecutor = absent();
+    }
+    final boolean virtual = this.virtualThreadBuilder.isPresent() && this.threadPerTaskExecutor.isPresent();
+    if ( model.equals(MODEL_VIRTUAL) && !virtual ) {
+      logger.warn("virtual threads are not available in Java {}; using: {}",
+        Runtime.version().feature(), MODEL_PLATFORM);
+    }
+    this.model = virtual ? MODEL_VIRTUAL : MODEL_PLATFORM;
+    logger.info("{}", this);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("model", this.model)
+      .add("max_threads", this.maxThreads)
+      .add("min_threads", this.minThreads)
+      .add("idle_timeout", this.idleTimeout)
+      .toString();
+  }
+
+  public final String model() {
+    return this.model;
+  }
+
+  public final boolean isVirtual() {
+    return this.model.equals(MODEL_VIRTUAL);
+  }
+
+  // threads to handle HTTP requests with.
+  public ThreadPool newServerThreadPool() {
+    if ( this.isVirtual() ) {
+      return new VirtualThreadPool(this.newExecutor("http"));
+    }
+    return new QueuedThreadPool(this.maxThreads, this.minThreads, this.idleTimeout);
+  }
+
+  // unbounded executor for tasks which block for long periods of time.
+  public ExecutorService newExecutor(
+    final String name
+  ) {
+    return this.newExecutor(name, false);
+  }
+
+  // `daemon` platform threads do not keep the JVM running; virtual threads never do.
+  public ExecutorService newExecutor(
+    final String name,
+    final boolean daemon
+  ) {
+    final ThreadFactory threadFactory = this.threadFactory(name, daemon);
+    if ( this.isVirtual() ) {
+      try {
+        return (ExecutorService) this.threadPerTaskExecutor.get().invoke(null, threadFactory);
+      } catch(final ReflectiveOperationException e) {
+        logger.error("failed to create virtual thread executor '{}' =>\n{}", name, getStackTraceAsString(e));
+      }
+    }
+    return Executors.newCachedThreadPool(threadFactory);
+  }
+
+  // timers: virtual threads in the `virtual` model, daemon platform threads otherwise.
+  public ScheduledExecutorService newScheduledExecutor(
+    final String name,
+    final int threads
+  ) {
+    return Executors.newScheduledThreadPool(threads, this.threadFactory(name, true));
+  }
+
+  private ThreadFactory threadFactory(
+    final String name,
+    final boolean daemon
+  ) {
+    if ( this.isVirtual() ) {
+      try {
+        Object builder = this.virtualThreadBuilder.get().invoke(null);
+        final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+        builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0l);
+        return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+      } catch(final ReflectiveOperationException e) {
+        logger.error("failed to create virtual thread factory '{}' =>\n{}", name, getStackTraceAsString(e));
+      }
+    }
+    return new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(daemon).build();
+  }
+
+  private static Optional<Method> method(
+    final Class<?> type,
+    final String name,
+    final Class<?>... parameterTypes
+  ) {
+    try {
+      return Optional.of(type.getMethod(name, parameterTypes));
+    } catch(final NoSuchMethodException e) {
+      return absent();
+    }
+  }
+
+}
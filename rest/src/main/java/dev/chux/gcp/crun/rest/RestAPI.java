@@ -8,6 +8,9 @@ import com.google.inject.name.Named;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
 import dev.chux.gcp.crun.ConfigService;
 
 import org.slf4j.Logger;
@@ -24,14 +27,17 @@ public class RestAPI implements Supplier<Map<String, Route>> {
 
   private final Optional<String> root;
   private final Map<String, Route> routes;
+  private final ExecutionModel executionModel;
 
   @Inject
   RestAPI(
     final ConfigService configService,
-    final Map<String, Route> routes
+    final Map<String, Route> routes,
+    final ExecutionModel executionModel
   ) {
     this.routes = routes;
     this.root = root(configService);
+    this.executionModel = executionModel;
   }
 
   static final Optional<String> root(final ConfigService configService) {
@@ -47,6 +53,9 @@ public class RestAPI implements Supplier<Map<String, Route>> {
   }
   
   public void serve(final int httpPort) {
+    // must be set before the server is initialized by the first route.
+    EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+      new EmbeddedJettyFactory().withThreadPool(this.executionModel.newServerThreadPool()));
     port(httpPort);
     staticFiles.location("/static");
     staticFiles.header("Content-Encoding", "gzip");
@@ -29,6 +29,7 @@ public class RestModule extends AbstractModule {
     routesBinder.addBinding("routes-info")
       .to(RestInfoController.class).in(Scopes.SINGLETON);
 
+    bind(ExecutionModel.class).in(Scopes.SINGLETON);
     bind(RestAPI.class).asEagerSingleton();
   }
 
@@ -0,0 +1,77 @@
+package dev.chux.gcp.crun.rest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// Jetty thread pool which runs every task on its own virtual thread:
+//   - there are no idle threads, and it never runs low on threads.
+//   - requests which block for long periods of time, i.e.: streaming test output, only hold a virtual thread.
+final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+  private final ExecutorService executor;
+  private final AtomicInteger threads = new AtomicInteger(0);
+
+  VirtualThreadPool(
+    final ExecutorService executor
+  ) {
+    this.executor = checkNotNull(executor);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("threads", this.threads.get())
+      .add("state", this.getState())
+      .toString();
+  }
+
+  @Override
+  public void execute(
+    final Runnable task
+  ) {
+    this.executor.execute(() -> {
+      this.threads.incrementAndGet();
+      try {
+        task.run();
+      } finally {
+        this.threads.decrementAndGet();
+      }
+    });
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    while ( !this.executor.awaitTermination(1, TimeUnit.MINUTES) ) {
+      // wait until all tasks are complete
+    }
+  }
+
+  @Override
+  public int getThreads() {
+    return this.threads.get();
+  }
+
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    this.executor.shutdown();
+    super.doStop();
+  }
+
+}